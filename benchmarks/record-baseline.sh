@@ -0,0 +1,96 @@
+#!/bin/bash
+
+# Copyright OpenSearch Contributors
+# SPDX-License-Identifier: Apache-2.0
+#
+# The OpenSearch Contributors require contributions made to
+# this file be licensed under the Apache-2.0 license or a
+# compatible open source license.
+
+# Runs the RatuDB bridge benchmarks and records the JMH results together with the
+# hardware, OS and JVM they were measured on, under benchmarks/results/<label>.*
+
+set -e
+
+function usage() {
+    echo "Usage: $0 -l LABEL [-b BENCHMARKS]"
+    echo ""
+    echo "Arguments:"
+    echo -e "-l LABEL\t[Required] Name of the result files, e.g. 'baseline' or the change being measured."
+    echo -e "-b BENCHMARKS\t[Optional] JMH benchmark pattern, default is 'org.apache.ratu.second'."
+    echo -e "-h help"
+}
+
+BENCHMARKS="org.apache.ratu.second"
+
+while getopts ":hl:b:" arg; do
+    case $arg in
+        h)
+            usage
+            exit 1
+            ;;
+        l)
+            LABEL=$OPTARG
+            ;;
+        b)
+            BENCHMARKS=$OPTARG
+            ;;
+        :)
+            echo "Error: -${OPTARG} requires an argument"
+            usage
+            exit 1
+            ;;
+        ?)
+            echo "Invalid option: -${arg}"
+            exit 1
+            ;;
+    esac
+done
+
+if [ -z "$LABEL" ]; then
+    echo "Error: You must specify the label"
+    usage
+    exit 1
+fi
+
+BENCHMARKS_DIR=$(cd "$(dirname "$0")" && pwd)
+ROOT_DIR=$(dirname "$BENCHMARKS_DIR")
+RESULTS_DIR="$BENCHMARKS_DIR/results"
+mkdir -p "$RESULTS_DIR"
+
+ENV_FILE="$RESULTS_DIR/$LABEL.env.txt"
+{
+    echo "label: $LABEL"
+    echo "recorded: $(date -u +%Y-%m-%dT%H:%M:%SZ)"
+    echo "commit: $(git -C "$ROOT_DIR" rev-parse HEAD)"
+    echo "benchmarks: $BENCHMARKS"
+    echo
+    echo "== os"
+    uname -a
+    echo
+    echo "== cpu"
+    if command -v lscpu > /dev/null; then
+        lscpu
+    else
+        sysctl -n machdep.cpu.brand_string hw.ncpu 2> /dev/null || true
+    fi
+    if [ -r /sys/devices/system/cpu/cpu0/cpufreq/scaling_governor ]; then
+        echo "scaling governor: $(cat /sys/devices/system/cpu/cpu0/cpufreq/scaling_governor)"
+    fi
+    echo
+    echo "== memory"
+    if command -v free > /dev/null; then
+        free -h
+    else
+        sysctl -n hw.memsize 2> /dev/null || true
+    fi
+    echo
+    echo "== jvm"
+    "${JAVA_HOME:+$JAVA_HOME/bin/}java" -XshowSettings:properties -version 2>&1 | grep -E 'java\.(vm\.)?(version|vendor|name)|os\.arch|version'
+    "${JAVA_HOME:+$JAVA_HOME/bin/}java" -XX:+PrintFlagsFinal -version 2> /dev/null | grep -E ' (UseG1GC|UseParallelGC|UseZGC|MaxHeapSize|UseCompressedOops) ' || true
+} > "$ENV_FILE"
+
+# JMH writes the result file relative to the benchmarks directory
+"$ROOT_DIR/gradlew" -p "$BENCHMARKS_DIR" run --args " $BENCHMARKS -rf json -rff results/$LABEL.json"
+
+echo "Recorded $RESULTS_DIR/$LABEL.json and $ENV_FILE"
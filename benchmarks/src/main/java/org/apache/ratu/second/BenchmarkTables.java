@@ -0,0 +1,193 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.cql3.QueryOptions;
+import org.apache.cassandra.db.Clustering;
+import org.apache.cassandra.db.LivenessInfo;
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.AsciiType;
+import org.apache.cassandra.db.marshal.BooleanType;
+import org.apache.cassandra.db.marshal.ByteType;
+import org.apache.cassandra.db.marshal.BytesType;
+import org.apache.cassandra.db.marshal.DecimalType;
+import org.apache.cassandra.db.marshal.DoubleType;
+import org.apache.cassandra.db.marshal.DurationType;
+import org.apache.cassandra.db.marshal.FloatType;
+import org.apache.cassandra.db.marshal.InetAddressType;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.db.marshal.IntegerType;
+import org.apache.cassandra.db.marshal.ListType;
+import org.apache.cassandra.db.marshal.LongType;
+import org.apache.cassandra.db.marshal.MapType;
+import org.apache.cassandra.db.marshal.SetType;
+import org.apache.cassandra.db.marshal.ShortType;
+import org.apache.cassandra.db.marshal.SimpleDateType;
+import org.apache.cassandra.db.marshal.TimeType;
+import org.apache.cassandra.db.marshal.TimeUUIDType;
+import org.apache.cassandra.db.marshal.TimestampType;
+import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.db.marshal.UUIDType;
+import org.apache.cassandra.db.rows.BTreeRow;
+import org.apache.cassandra.db.rows.BufferCell;
+import org.apache.cassandra.db.rows.CellPath;
+import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.schema.ColumnMetadata;
+import org.apache.cassandra.schema.TableMetadata;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.TimeUUID;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * In-memory Cassandra tables and rows for the RatuDB bridge benchmarks. Nothing here touches disk, the commit log or a running node.
+ */
+public final class BenchmarkTables {
+
+    public static final String KEYSPACE = "bench";
+
+    static {
+        DatabaseDescriptor.clientInitialization(false);
+    }
+
+    // column name -> sample value in its CQL string form, one column per native type
+    private static final Map<String, Object[]> NATIVE_COLUMNS = new LinkedHashMap<>();
+
+    static {
+        NATIVE_COLUMNS.put("c_ascii", new Object[] { AsciiType.instance, "ascii-value", "text" });
+        NATIVE_COLUMNS.put("c_bigint", new Object[] { LongType.instance, "1234567890123", "long" });
+        NATIVE_COLUMNS.put("c_blob", new Object[] { BytesType.instance, "68656c6c6f", "text" });
+        NATIVE_COLUMNS.put("c_boolean", new Object[] { BooleanType.instance, "true", "boolean" });
+        NATIVE_COLUMNS.put("c_date", new Object[] { SimpleDateType.instance, "2024-01-15", "text" });
+        NATIVE_COLUMNS.put("c_decimal", new Object[] { DecimalType.instance, "12345.6789", "float" });
+        NATIVE_COLUMNS.put("c_double", new Object[] { DoubleType.instance, "3.14159", "double" });
+        NATIVE_COLUMNS.put("c_duration", new Object[] { DurationType.instance, "1h30m", "text" });
+        NATIVE_COLUMNS.put("c_float", new Object[] { FloatType.instance, "2.5", "float" });
+        NATIVE_COLUMNS.put("c_inet", new Object[] { InetAddressType.instance, "192.168.1.10", "ip" });
+        NATIVE_COLUMNS.put("c_int", new Object[] { Int32Type.instance, "42", "integer" });
+        NATIVE_COLUMNS.put("c_smallint", new Object[] { ShortType.instance, "7", "integer" });
+        NATIVE_COLUMNS.put("c_text", new Object[] { UTF8Type.instance, "the quick brown fox jumps over the lazy dog", "text" });
+        NATIVE_COLUMNS.put("c_time", new Object[] { TimeType.instance, "12:34:56.789", "long" });
+        NATIVE_COLUMNS.put("c_timestamp", new Object[] { TimestampType.instance, "2024-01-15T10:00:00Z", "date" });
+        NATIVE_COLUMNS.put("c_timeuuid", new Object[] { TimeUUIDType.instance, "50554d6e-29bb-11e5-b345-feff819cdc9f", "text" });
+        NATIVE_COLUMNS.put("c_tinyint", new Object[] { ByteType.instance, "3", "integer" });
+        NATIVE_COLUMNS.put("c_uuid", new Object[] { UUIDType.instance, "5f8c8e0a-3a4b-4c1d-9e2f-0123456789ab", "text" });
+        NATIVE_COLUMNS.put("c_varint", new Object[] { IntegerType.instance, "123456789012345678901234567890", "text" });
+    }
+
+    private static final ListType<String> LIST = ListType.getInstance(UTF8Type.instance, true);
+    private static final SetType<Integer> SET = SetType.getInstance(Int32Type.instance, true);
+    private static final MapType<String, Double> MAP = MapType.getInstance(UTF8Type.instance, DoubleType.instance, true);
+    private static final ListType<Integer> FROZEN_LIST = ListType.getInstance(Int32Type.instance, false);
+
+    private BenchmarkTables() {}
+
+    /**
+     * A table with an int partition key and one column of every native CQL type, plus list, set, map and frozen list columns.
+     */
+    public static TableMetadata allTypes() {
+        TableMetadata.Builder builder = TableMetadata.builder(KEYSPACE, "all_types")
+            .partitioner(Murmur3Partitioner.instance)
+            .addPartitionKeyColumn("id", Int32Type.instance);
+        for (Map.Entry<String, Object[]> column : NATIVE_COLUMNS.entrySet()) {
+            builder.addRegularColumn(column.getKey(), (AbstractType<?>) column.getValue()[0]);
+        }
+        return builder.addRegularColumn("c_list", LIST)
+            .addRegularColumn("c_set", SET)
+            .addRegularColumn("c_map", MAP)
+            .addRegularColumn("c_frozen", FROZEN_LIST)
+            .build();
+    }
+
+    /**
+     * A table keyed by {@code partitionKeys} int/text partition key columns and {@code clusteringColumns} text clustering columns.
+     */
+    public static TableMetadata keyed(int partitionKeys, int clusteringColumns) {
+        TableMetadata.Builder builder = TableMetadata.builder(KEYSPACE, "keyed_" + partitionKeys + "_" + clusteringColumns)
+            .partitioner(Murmur3Partitioner.instance);
+        for (int i = 0; i < partitionKeys; i++) {
+            builder.addPartitionKeyColumn("pk" + i, i % 2 == 0 ? Int32Type.instance : UTF8Type.instance);
+        }
+        for (int i = 0; i < clusteringColumns; i++) {
+            builder.addClusteringColumn("ck" + i, UTF8Type.instance);
+        }
+        return builder.addRegularColumn("body", UTF8Type.instance).build();
+    }
+
+    /**
+     * The index {@code schema.fields} option covering every column of {@link #allTypes()}.
+     */
+    public static Map<String, Map<String, String>> allTypesSchema() {
+        Map<String, Map<String, String>> fields = new HashMap<>();
+        for (Map.Entry<String, Object[]> column : NATIVE_COLUMNS.entrySet()) {
+            fields.put(column.getKey(), field((String) column.getValue()[2]));
+        }
+        fields.put("c_list", field("text"));
+        fields.put("c_set", field("integer"));
+        fields.put("c_map", field("nested"));
+        fields.put("c_frozen", field("text"));
+        return fields;
+    }
+
+    private static Map<String, String> field(String type) {
+        Map<String, String> field = new HashMap<>();
+        field.put("type", type);
+        return field;
+    }
+
+    /**
+     * A live row of {@link #allTypes()} with every column set; {@code elements} is the size of each collection.
+     */
+    public static Row allTypesRow(TableMetadata metadata, int seed, int elements) {
+        long timestamp = FBUtilities.timestampMicros();
+        Row.Builder builder = BTreeRow.unsortedBuilder();
+        builder.newRow(Clustering.EMPTY);
+        builder.addPrimaryKeyLivenessInfo(LivenessInfo.create(timestamp, FBUtilities.nowInSeconds()));
+        for (Map.Entry<String, Object[]> column : NATIVE_COLUMNS.entrySet()) {
+            ColumnMetadata definition = metadata.getColumn(ByteBufferUtil.bytes(column.getKey()));
+            String sample = (String) column.getValue()[1];
+            if (definition.type instanceof UTF8Type || definition.type instanceof AsciiType) {
+                sample = sample + " " + seed;
+            }
+            builder.addCell(BufferCell.live(definition, timestamp, definition.type.fromString(sample)));
+        }
+
+        ColumnMetadata list = metadata.getColumn(ByteBufferUtil.bytes("c_list"));
+        ColumnMetadata set = metadata.getColumn(ByteBufferUtil.bytes("c_set"));
+        ColumnMetadata map = metadata.getColumn(ByteBufferUtil.bytes("c_map"));
+        Integer[] frozen = new Integer[elements];
+        for (int i = 0; i < elements; i++) {
+            ByteBuffer path = ByteBuffer.wrap(TimeUUID.Generator.nextTimeUUIDAsBytes());
+            builder.addCell(BufferCell.live(list, timestamp, UTF8Type.instance.decompose("element-" + i), CellPath.create(path)));
+            builder.addCell(BufferCell.live(set, timestamp, ByteBufferUtil.EMPTY_BYTE_BUFFER, CellPath.create(Int32Type.instance.decompose(seed + i))));
+            builder.addCell(
+                BufferCell.live(
+                    map,
+                    timestamp,
+                    DoubleType.instance.decompose(i * 1.5),
+                    CellPath.create(UTF8Type.instance.decompose(String.format(Locale.ROOT, "key-%03d", i)))
+                )
+            );
+            frozen[i] = seed + i;
+        }
+        ColumnMetadata frozenList = metadata.getColumn(ByteBufferUtil.bytes("c_frozen"));
+        builder.addCell(
+            BufferCell.live(frozenList, timestamp, FROZEN_LIST.fromJSONObject(Arrays.asList(frozen)).bindAndGet(QueryOptions.DEFAULT))
+        );
+        return builder.build();
+    }
+}
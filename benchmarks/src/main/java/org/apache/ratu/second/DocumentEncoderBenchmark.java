@@ -0,0 +1,67 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second;
+
+import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.schema.TableMetadata;
+import org.opensearch.common.xcontent.XContentType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Encodes a row with one column of every CQL type into the document sent to OpenSearch.
+ */
+@Fork(value = 3)
+@Warmup(iterations = 1, time = 1)
+@Measurement(iterations = 3, time = 3)
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Benchmark)
+public class DocumentEncoderBenchmark {
+
+    @Param({ "json", "smile" })
+    public String format;
+
+    @Param({ "false", "true" })
+    public boolean partial;
+
+    // size of each list, set and map column
+    @Param({ "1", "16" })
+    public int elements;
+
+    private DocumentEncoder encoder;
+    private Row row;
+
+    @Setup
+    public void setUp() {
+        TableMetadata metadata = BenchmarkTables.allTypes();
+        encoder = DocumentEncoder.compile(
+            metadata,
+            BenchmarkTables.allTypesSchema(),
+            XContentType.valueOf(format.toUpperCase(Locale.ROOT)),
+            partial
+        );
+        row = BenchmarkTables.allTypesRow(metadata, 1, elements);
+    }
+
+    @Benchmark
+    public Object encode() throws IOException {
+        return encoder.encode(row, "id", "1", 42L);
+    }
+}
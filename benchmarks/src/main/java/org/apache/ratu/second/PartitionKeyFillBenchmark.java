@@ -0,0 +1,72 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second;
+
+import com.alibaba.fastjson2.JSONObject;
+import org.apache.cassandra.schema.TableMetadata;
+import org.apache.ratu.second.esclient.SearchResultRow;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits one page of search hits into partition and clustering keys, as done before every hydration.
+ */
+@Fork(value = 3)
+@Warmup(iterations = 1, time = 1)
+@Measurement(iterations = 3, time = 3)
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Benchmark)
+public class PartitionKeyFillBenchmark {
+
+    // partition key columns:clustering columns
+    @Param({ "1:0", "2:1", "3:2" })
+    public String key;
+
+    @Param({ "100", "1000" })
+    public int hits;
+
+    private TableMetadata metadata;
+    private int partitionKeys;
+    private int clusteringColumns;
+    private List<SearchResultRow> rows;
+
+    @Setup
+    public void setUp() {
+        String[] counts = key.split(":");
+        partitionKeys = Integer.parseInt(counts[0]);
+        clusteringColumns = Integer.parseInt(counts[1]);
+        metadata = BenchmarkTables.keyed(partitionKeys, clusteringColumns);
+        rows = new ArrayList<>(hits);
+        for (int i = 0; i < hits; i++) {
+            String[] primaryKey = new String[partitionKeys + clusteringColumns];
+            for (int k = 0; k < primaryKey.length; k++) {
+                // int partition key columns alternate with text columns, see BenchmarkTables#keyed
+                primaryKey[k] = k < partitionKeys && k % 2 == 0 ? Integer.toString(i) : "key-" + k + "-" + i;
+            }
+            rows.add(new SearchResultRow(primaryKey, new JSONObject()));
+        }
+    }
+
+    @Benchmark
+    public List<SearchResultRow> fill() {
+        ElasticSecondaryIndex.fillPartitionAndClusteringKeys(rows, metadata, partitionKeys, clusteringColumns);
+        return rows;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+import com.alibaba.fastjson2.JSONObject;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.db.rows.UnfilteredRowIterator;
+import org.apache.cassandra.schema.ColumnMetadata;
+import org.apache.cassandra.schema.TableMetadata;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.ratu.second.BenchmarkTables;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Rebuilds hydrated rows into the rows returned to Cassandra: serializes the hit metadata into the result column, copies the
+ * cells and wraps the row in a {@link SingleRowIterator}, the per-row work of {@link EsPartitionIterator#next()}.
+ */
+@Fork(value = 3)
+@Warmup(iterations = 1, time = 1)
+@Measurement(iterations = 3, time = 3)
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Benchmark)
+public class EsPartitionRowBenchmark {
+
+    private static final String INDEX_COLUMN = "es_index";
+
+    @Param({ "1", "100" })
+    public int rows;
+
+    // size of each list, set and map column
+    @Param({ "1", "16" })
+    public int elements;
+
+    private TableMetadata metadata;
+    private ColumnMetadata resultColumn;
+    private Row[] hydrated;
+    private DecoratedKey[] keys;
+    private JSONObject[] hits;
+
+    @Setup
+    public void setUp() {
+        metadata = BenchmarkTables.allTypes();
+        resultColumn = EsPartitionIterator.resultColumn(metadata);
+        hydrated = new Row[rows];
+        keys = new DecoratedKey[rows];
+        hits = new JSONObject[rows];
+        for (int i = 0; i < rows; i++) {
+            hydrated[i] = BenchmarkTables.allTypesRow(metadata, i, elements);
+            keys[i] = metadata.partitioner.decorateKey(Int32Type.instance.decompose(i));
+            JSONObject hit = new JSONObject();
+            hit.put("_id", Integer.toString(i));
+            hit.put("_score", 1.0f + i);
+            hit.put("_index", "bench_all_types");
+            hits[i] = hit;
+        }
+    }
+
+    @Benchmark
+    public void rebuild(Blackhole bh) {
+        for (int i = 0; i < rows; i++) {
+            ByteBuffer value = ByteBufferUtil.bytes(hits[i].toString(), UTF_8);
+            Row row = EsPartitionIterator.withResultCell(hydrated[i], resultColumn, value, INDEX_COLUMN);
+            try (UnfilteredRowIterator iterator = new SingleRowIterator(metadata, row, keys[i], metadata.regularAndStaticColumns())) {
+                while (iterator.hasNext()) {
+                    bh.consume(iterator.next());
+                }
+            }
+        }
+    }
+}
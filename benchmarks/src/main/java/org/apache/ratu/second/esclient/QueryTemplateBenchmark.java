@@ -0,0 +1,106 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Translates {@code expr(...)} expressions into OpenSearch queries. {@code bindRepeated} sends the same expression every time,
+ * {@code bindVarying} changes the literals so only the compiled template is reused, {@code template} measures the normalization alone.
+ */
+@Fork(value = 3)
+@Warmup(iterations = 1, time = 1)
+@Measurement(iterations = 3, time = 3)
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Benchmark)
+public class QueryTemplateBenchmark {
+
+    private static final int VARIANTS = 1024;
+
+    @Param({ "term", "range", "bool", "aggs" })
+    public String expression;
+
+    private String fixed;
+    private String[] varying;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        fixed = expression(expression, 0);
+        varying = new String[VARIANTS];
+        for (int i = 0; i < VARIANTS; i++) {
+            varying[i] = expression(expression, i);
+        }
+        QueryTemplate.bind(fixed);
+    }
+
+    private static String expression(String kind, int i) {
+        switch (kind) {
+            case "term":
+                return String.format(Locale.ROOT, "{query: {type: \"term\", field: \"user\", value: \"user-%d\"}}", i);
+            case "range":
+                return String.format(
+                    Locale.ROOT,
+                    "{query: {type: \"range\", field: \"time\", gte: \"2014-04-%02d\", lte: \"2015-05-21\"}, size: %d}",
+                    i % 28 + 1,
+                    100 + i
+                );
+            case "bool":
+                return String.format(
+                    Locale.ROOT,
+                    "{query: {bool: {must: [{type: \"match\", field: \"message\", query: \"quick fox %d\"},"
+                        + " {type: \"range\", field: \"time\", gte: \"2014-04-25\"}],"
+                        + " filter: {type: \"term\", field: \"user\", value: \"user-%d\"},"
+                        + " must_not: {type: \"term\", field: \"deleted\", value: true},"
+                        + " minimum_should_match: 1}}}",
+                    i,
+                    i
+                );
+            case "aggs":
+                return String.format(
+                    Locale.ROOT,
+                    "{query: {type: \"range\", field: \"time\", gte: \"2014-04-%02d\"},"
+                        + " aggs: {user: {terms: {field: \"user.keyword\", size: %d}, aggs: {avg_latitude: {avg: {field: \"latitude\"}}}}}}",
+                    i % 28 + 1,
+                    10 + i % 10
+                );
+            default:
+                throw new IllegalArgumentException("unknown expression kind " + kind);
+        }
+    }
+
+    @Benchmark
+    public BoundQuery bindRepeated() {
+        return QueryTemplate.bind(fixed);
+    }
+
+    @Benchmark
+    public BoundQuery bindVarying() {
+        return QueryTemplate.bind(varying[next++ & (VARIANTS - 1)]);
+    }
+
+    @Benchmark
+    public String template() {
+        List<Object> params = new ArrayList<>();
+        return QueryTemplate.template(varying[next++ & (VARIANTS - 1)], params);
+    }
+}
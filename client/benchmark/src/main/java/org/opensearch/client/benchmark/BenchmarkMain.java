@@ -31,6 +31,8 @@
 
 package org.opensearch.client.benchmark;
 
+import org.opensearch.client.benchmark.ratu.LoadOptions;
+import org.opensearch.client.benchmark.ratu.RatuLoadBenchmark;
 import org.opensearch.client.benchmark.rest.RestClientBenchmark;
 import org.opensearch.common.SuppressForbidden;
 
@@ -41,7 +43,10 @@ public class BenchmarkMain {
     public static void main(String[] args) throws Exception {
         String type = args[0];
         AbstractBenchmark<?> benchmark = null;
-        if ("rest".equals(type)) {
+        if ("ratu".equals(type)) {
+            new RatuLoadBenchmark(LoadOptions.parse(Arrays.copyOfRange(args, 1, args.length))).run();
+            return;
+        } else if ("rest".equals(type)) {
             benchmark = new RestClientBenchmark();
         } else {
             System.err.println("Unknown client type [" + type + "]");
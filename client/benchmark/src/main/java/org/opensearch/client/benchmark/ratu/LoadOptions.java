@@ -0,0 +1,142 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.opensearch.client.benchmark.ratu;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Options of the write-to-searchable load benchmark, given as {@code key=value} arguments. Arguments starting with {@code index.}
+ * are passed to {@code CREATE CUSTOM INDEX ... WITH OPTIONS} without the prefix.
+ */
+public final class LoadOptions {
+
+    /** unpacked RatuDB distribution to start; without it an already running node on {@link #host} is used */
+    public final String home;
+    public final String host;
+    public final int port;
+    public final long startTimeoutMillis;
+
+    public final String keyspace;
+    public final String table;
+    public final boolean dropExisting;
+
+    public final int warmupSeconds;
+    public final int durationSeconds;
+
+    public final int writers;
+    /** total target write rate over all writers, 0 writes as fast as the writers can */
+    public final int writeRate;
+    public final int readers;
+    /** total target query rate over all readers, 0 queries as fast as the readers can */
+    public final int queryRate;
+    /** rows returned by each query */
+    public final int querySize;
+    public final int messageWords;
+    public final int vocabulary;
+
+    /** pause between two visibility probes */
+    public final long probeIntervalMillis;
+    /** pause between two searches while a probe is not yet visible */
+    public final long pollIntervalMillis;
+    public final long visibilityTimeoutMillis;
+
+    /** file the JSON report is written to, none when empty */
+    public final String output;
+
+    public final Map<String, String> indexOptions;
+
+    private LoadOptions(Map<String, String> values, Map<String, String> indexOptions) {
+        this.home = values.remove("home");
+        this.host = stringValue(values, "host", "127.0.0.1");
+        this.port = intValue(values, "port", 9042);
+        this.startTimeoutMillis = intValue(values, "start_timeout_s", 300) * 1000L;
+        this.keyspace = stringValue(values, "keyspace", "ratu_load");
+        this.table = stringValue(values, "table", "events");
+        this.dropExisting = Boolean.parseBoolean(stringValue(values, "drop", "true"));
+        this.warmupSeconds = intValue(values, "warmup_s", 30);
+        this.durationSeconds = intValue(values, "duration_s", 120);
+        this.writers = intValue(values, "writers", 4);
+        this.writeRate = intValue(values, "write_rate", 1000);
+        this.readers = intValue(values, "readers", 2);
+        this.queryRate = intValue(values, "query_rate", 50);
+        this.querySize = intValue(values, "query_size", 20);
+        this.messageWords = intValue(values, "message_words", 8);
+        this.vocabulary = intValue(values, "vocabulary", 1000);
+        this.probeIntervalMillis = intValue(values, "probe_interval_ms", 100);
+        this.pollIntervalMillis = intValue(values, "poll_interval_ms", 5);
+        this.visibilityTimeoutMillis = intValue(values, "visibility_timeout_ms", 30000);
+        this.output = stringValue(values, "output", "");
+        if (values.isEmpty() == false) {
+            throw new IllegalArgumentException("unknown options " + values.keySet());
+        }
+        if (writers < 1 || durationSeconds < 1) {
+            throw new IllegalArgumentException("writers and duration_s must be at least 1");
+        }
+        this.indexOptions = indexOptions;
+    }
+
+    public static LoadOptions parse(String[] args) {
+        Map<String, String> values = new TreeMap<>();
+        Map<String, String> indexOptions = new LinkedHashMap<>();
+        indexOptions.put("refresh_seconds", "1");
+        indexOptions.put("durability", "sync");
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("expected key=value but got [" + arg + "]");
+            }
+            String key = arg.substring(0, separator);
+            String value = arg.substring(separator + 1);
+            if (key.startsWith("index.")) {
+                indexOptions.put(key.substring("index.".length()), value);
+            } else {
+                values.put(key, value);
+            }
+        }
+        return new LoadOptions(values, indexOptions);
+    }
+
+    private static String stringValue(Map<String, String> values, String key, String defaultValue) {
+        String value = values.remove(key);
+        return value != null ? value : defaultValue;
+    }
+
+    private static int intValue(Map<String, String> values, String key, int defaultValue) {
+        String value = values.remove(key);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    /**
+     * All options as they were used, for the report
+     */
+    public Map<String, Object> asMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("home", home);
+        map.put("host", host);
+        map.put("port", port);
+        map.put("keyspace", keyspace);
+        map.put("table", table);
+        map.put("warmup_s", warmupSeconds);
+        map.put("duration_s", durationSeconds);
+        map.put("writers", writers);
+        map.put("write_rate", writeRate);
+        map.put("readers", readers);
+        map.put("query_rate", queryRate);
+        map.put("query_size", querySize);
+        map.put("message_words", messageWords);
+        map.put("vocabulary", vocabulary);
+        map.put("probe_interval_ms", probeIntervalMillis);
+        map.put("poll_interval_ms", pollIntervalMillis);
+        map.put("visibility_timeout_ms", visibilityTimeoutMillis);
+        map.put("index", indexOptions);
+        return map;
+    }
+}
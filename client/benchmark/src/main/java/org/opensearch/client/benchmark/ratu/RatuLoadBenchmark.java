@@ -0,0 +1,366 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.opensearch.client.benchmark.ratu;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import org.opensearch.client.benchmark.metrics.Metrics;
+import org.opensearch.client.benchmark.metrics.MetricsCalculator;
+import org.opensearch.client.benchmark.metrics.Sample;
+import org.opensearch.client.benchmark.metrics.SampleRecorder;
+import org.opensearch.common.SuppressForbidden;
+import org.opensearch.common.io.PathUtils;
+import org.opensearch.common.xcontent.XContentFactory;
+import org.opensearch.core.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures how long after a CQL {@code INSERT} the row can be found through the OpenSearch backed secondary index, together with
+ * the write throughput the node sustains and the latency of queries that load the matching rows back from Cassandra.
+ * <ul>
+ *     <li>writers insert rows with random messages at the target write rate;</li>
+ *     <li>one probe inserts a row with a unique {@code seq}, then searches for it until it is found: the time from the write being
+ *     acknowledged to the row being found is the visibility lag;</li>
+ *     <li>readers run {@code match} queries on the message with {@code load-rows=true}, so every hit is read back from Cassandra.</li>
+ * </ul>
+ * Latencies are measured from the scheduled start of each operation, so a node falling behind the target rate shows up in the
+ * latency percentiles rather than as a lower request rate.
+ */
+public final class RatuLoadBenchmark {
+
+    private static final String WRITE = "write";
+    private static final String VISIBILITY = "visibility";
+    private static final String QUERY = "query";
+
+    private final LoadOptions options;
+    private final String[] vocabulary;
+    private final AtomicLong ids = new AtomicLong();
+    private final LongAdder rowsReturned = new LongAdder();
+    private final List<SampleRecorder> recorders = new ArrayList<>();
+
+    private long measureStart;
+    private long measureEnd;
+
+    public RatuLoadBenchmark(LoadOptions options) {
+        this.options = options;
+        this.vocabulary = new String[options.vocabulary];
+        for (int i = 0; i < vocabulary.length; i++) {
+            vocabulary[i] = "w" + i;
+        }
+    }
+
+    @SuppressForbidden(reason = "system out is ok for a command line tool")
+    public void run() throws Exception {
+        RatuNode node = null;
+        if (options.home != null) {
+            System.out.println("Starting RatuDB node from " + options.home);
+            node = RatuNode.start(PathUtils.get(options.home), options.host, options.port, options.startTimeoutMillis);
+        }
+        try (
+            Cluster cluster = Cluster.builder().addContactPoint(options.host).withPort(options.port).build();
+            Session session = cluster.connect()
+        ) {
+            createSchema(session);
+            List<Metrics> metrics = runWorkload(session);
+            print(metrics);
+            report(metrics);
+        } finally {
+            if (node != null) {
+                node.close();
+            }
+        }
+    }
+
+    private String table() {
+        return options.keyspace + "." + options.table;
+    }
+
+    private String indexName() {
+        return options.table + "_index";
+    }
+
+    private void createSchema(Session session) {
+        session.execute(
+            "CREATE KEYSPACE IF NOT EXISTS "
+                + options.keyspace
+                + " WITH replication = {'class': 'SimpleStrategy', 'replication_factor': 1}"
+        );
+        if (options.dropExisting) {
+            session.execute("DROP TABLE IF EXISTS " + table());
+        }
+        session.execute("CREATE TABLE IF NOT EXISTS " + table() + " (id bigint PRIMARY KEY, user text, seq bigint, message text)");
+
+        Map<String, String> indexOptions = new LinkedHashMap<>(options.indexOptions);
+        indexOptions.putIfAbsent("schema", "{fields: {user: {type: \"text\"}, seq: {type: \"long\"}, message: {type: \"text\"}}}");
+        StringBuilder with = new StringBuilder();
+        for (Map.Entry<String, String> option : indexOptions.entrySet()) {
+            if (with.length() > 0) {
+                with.append(", ");
+            }
+            with.append(quote(option.getKey())).append(": ").append(quote(option.getValue()));
+        }
+        session.execute(
+            "CREATE CUSTOM INDEX IF NOT EXISTS "
+                + indexName()
+                + " ON "
+                + table()
+                + " () USING 'org.apache.ratu.second.ElasticSecondaryIndex' WITH OPTIONS = {"
+                + with
+                + "}"
+        );
+    }
+
+    private static String quote(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+
+    private List<Metrics> runWorkload(Session session) throws InterruptedException {
+        PreparedStatement insert = session.prepare("INSERT INTO " + table() + " (id, user, seq, message) VALUES (?, ?, ?, ?)");
+
+        long start = System.nanoTime();
+        measureStart = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds);
+        measureEnd = measureStart + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < options.writers; i++) {
+            SampleRecorder recorder = recorder();
+            Random random = new Random(i);
+            threads.add(new Thread(() -> paced(options.writeRate, options.writers, recorder, WRITE, () -> {
+                long id = ids.incrementAndGet();
+                session.execute(insert.bind(id, "user-" + (id % 1000), id, message(random)));
+                return true;
+            }), "ratu-load-writer-" + i));
+        }
+        for (int i = 0; i < options.readers; i++) {
+            SampleRecorder recorder = recorder();
+            Random random = new Random(1000 + i);
+            threads.add(new Thread(() -> paced(options.queryRate, options.readers, recorder, QUERY, () -> query(session, random)), "ratu-load-reader-" + i));
+        }
+        SampleRecorder probeRecorder = recorder();
+        threads.add(new Thread(() -> probe(session, insert, probeRecorder), "ratu-load-probe"));
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        List<Sample> samples = new ArrayList<>();
+        for (SampleRecorder recorder : recorders) {
+            samples.addAll(recorder.getSamples());
+        }
+        return MetricsCalculator.calculate(samples);
+    }
+
+    private synchronized SampleRecorder recorder() {
+        SampleRecorder recorder = new SampleRecorder(1024);
+        recorders.add(recorder);
+        return recorder;
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        boolean execute() throws Exception;
+    }
+
+    /**
+     * Runs one worker's share of {@code rate} operations per second until the measurement ends; a rate of 0 runs back to back.
+     */
+    private void paced(int rate, int workers, SampleRecorder recorder, String operation, Operation op) {
+        long interval = rate > 0 ? Math.max(1L, TimeUnit.SECONDS.toNanos(workers) / rate) : 0L;
+        long workerStart = System.nanoTime();
+        for (long iteration = 0;; iteration++) {
+            long expectedStart = interval > 0 ? workerStart + iteration * interval : System.nanoTime();
+            if (expectedStart >= measureEnd) {
+                return;
+            }
+            sleepUntil(expectedStart);
+            long begin = System.nanoTime();
+            boolean success;
+            try {
+                success = op.execute();
+            } catch (Exception e) {
+                success = false;
+            }
+            long stop = System.nanoTime();
+            if (expectedStart >= measureStart && stop <= measureEnd) {
+                recorder.addSample(new Sample(operation, expectedStart, begin, stop, success));
+            }
+        }
+    }
+
+    private boolean query(Session session, Random random) {
+        String word = vocabulary[random.nextInt(vocabulary.length)];
+        ResultSet rows = session.execute(
+            "SELECT * FROM "
+                + table()
+                + " WHERE expr("
+                + indexName()
+                + ", '#options:load-rows=true#{query: {type: \"match\", field: \"message\", query: \""
+                + word
+                + "\"}, size: "
+                + options.querySize
+                + "}') LIMIT "
+                + options.querySize
+        );
+        int count = 0;
+        for (Row ignored : rows) {
+            count++;
+        }
+        rowsReturned.add(count);
+        return true;
+    }
+
+    /**
+     * Writes a probe row, then searches for its {@code seq} until it is found or the timeout passes
+     */
+    private void probe(Session session, PreparedStatement insert, SampleRecorder recorder) {
+        Random random = new Random(-1);
+        while (System.nanoTime() < measureEnd) {
+            long id = ids.incrementAndGet();
+            try {
+                session.execute(insert.bind(id, "probe", id, message(random)));
+            } catch (Exception e) {
+                sleepUntil(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.probeIntervalMillis));
+                continue;
+            }
+            long acknowledged = System.nanoTime();
+            long deadline = acknowledged + TimeUnit.MILLISECONDS.toNanos(options.visibilityTimeoutMillis);
+            boolean visible = false;
+            long now = acknowledged;
+            while (now < deadline) {
+                try {
+                    visible = session.execute(
+                        "SELECT id FROM "
+                            + table()
+                            + " WHERE expr("
+                            + indexName()
+                            + ", '#options:load-rows=false#{query: {type: \"term\", field: \"seq\", value: "
+                            + id
+                            + "}}')"
+                    ).one() != null;
+                } catch (Exception e) {
+                    // the index may be busy under load, keep searching until the timeout
+                }
+                now = System.nanoTime();
+                if (visible) {
+                    break;
+                }
+                sleepUntil(now + TimeUnit.MILLISECONDS.toNanos(options.pollIntervalMillis));
+                now = System.nanoTime();
+            }
+            if (acknowledged >= measureStart && now <= measureEnd) {
+                recorder.addSample(new Sample(VISIBILITY, acknowledged, acknowledged, now, visible));
+            }
+            sleepUntil(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.probeIntervalMillis));
+        }
+    }
+
+    private String message(Random random) {
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < options.messageWords; i++) {
+            if (i > 0) {
+                message.append(' ');
+            }
+            message.append(vocabulary[random.nextInt(vocabulary.length)]);
+        }
+        return message.toString();
+    }
+
+    private static void sleepUntil(long nanos) {
+        long remaining;
+        while ((remaining = nanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    @SuppressForbidden(reason = "system out is ok for a command line tool")
+    private void print(List<Metrics> metrics) {
+        if (metrics.isEmpty()) {
+            System.out.println("No results.");
+        }
+        for (Metrics m : metrics) {
+            System.out.println("--------------------------------------------------------------------------------");
+            System.out.printf(Locale.ROOT, "%s: success count = %d, error count = %d%n", m.operation, m.successCount, m.errorCount);
+            System.out.printf(Locale.ROOT, "Throughput [ops/s]: %f%n", m.throughput);
+            System.out.printf(
+                Locale.ROOT,
+                "%s [ms]: p50 = %f, p99 = %f, p99.9 = %f%n",
+                VISIBILITY.equals(m.operation) ? "Visibility lag" : "Latency",
+                m.latencyP50,
+                m.latencyP99,
+                m.latencyP999
+            );
+        }
+        System.out.println("--------------------------------------------------------------------------------");
+        System.out.println("Rows returned by queries: " + rowsReturned.sum());
+    }
+
+    /**
+     * Writes the options and metrics as JSON to {@link LoadOptions#output}, or to standard out when no output is set
+     */
+    @SuppressForbidden(reason = "system out is ok for a command line tool")
+    private void report(List<Metrics> metrics) throws IOException {
+        Map<String, Object> operations = new LinkedHashMap<>();
+        for (Metrics m : metrics) {
+            Map<String, Object> operation = new LinkedHashMap<>();
+            operation.put("success_count", m.successCount);
+            operation.put("error_count", m.errorCount);
+            operation.put("throughput", m.throughput);
+            operation.put("latency_ms", percentiles(m.latencyP50, m.latencyP90, m.latencyP95, m.latencyP99, m.latencyP999, m.latencyP9999));
+            operation.put(
+                "service_time_ms",
+                percentiles(m.serviceTimeP50, m.serviceTimeP90, m.serviceTimeP95, m.serviceTimeP99, m.serviceTimeP999, m.serviceTimeP9999)
+            );
+            operations.put(m.operation, operation);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("options", options.asMap());
+        result.put("operations", operations);
+        result.put("rows_returned", rowsReturned.sum());
+
+        if (options.output.isEmpty()) {
+            XContentBuilder builder = XContentFactory.jsonBuilder().prettyPrint().map(result);
+            System.out.println(builder.toString());
+            return;
+        }
+        try (OutputStream out = Files.newOutputStream(PathUtils.get(options.output))) {
+            XContentFactory.jsonBuilder(out).prettyPrint().map(result).close();
+        }
+        System.out.println("Report written to " + options.output);
+    }
+
+    private static Map<String, Object> percentiles(double p50, double p90, double p95, double p99, double p999, double p9999) {
+        Map<String, Object> percentiles = new LinkedHashMap<>();
+        percentiles.put("p50", p50);
+        percentiles.put("p90", p90);
+        percentiles.put("p95", p95);
+        percentiles.put("p99", p99);
+        percentiles.put("p99_9", p999);
+        percentiles.put("p99_99", p9999);
+        return percentiles;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.opensearch.client.benchmark.ratu;
+
+import org.opensearch.common.SuppressForbidden;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single local RatuDB node (OpenSearch, Cassandra and JanusGraph in one JVM) started from an unpacked distribution with
+ * {@code bin/ratudb_server}. The node runs with the distribution's own configuration and data directories, so use a throwaway copy.
+ */
+public final class RatuNode implements Closeable {
+
+    private final Process process;
+
+    private RatuNode(Process process) {
+        this.process = process;
+    }
+
+    /**
+     * Starts the node and waits until its CQL port accepts connections. Cassandra starts after OpenSearch, so at that point the
+     * secondary index can reach OpenSearch as well.
+     */
+    @SuppressForbidden(reason = "starts the node under test")
+    public static RatuNode start(Path home, String host, int cqlPort, long timeoutMillis) throws IOException, InterruptedException {
+        Path script = home.resolve("bin").resolve("ratudb_server");
+        if (Files.isExecutable(script) == false) {
+            throw new IllegalArgumentException("[" + script + "] is not executable, home must be an unpacked RatuDB distribution");
+        }
+        Path logs = home.resolve("logs");
+        Files.createDirectories(logs);
+        Process process = new ProcessBuilder(script.toString()).directory(home.toFile())
+            .redirectErrorStream(true)
+            .redirectOutput(logs.resolve("load-benchmark-node.out").toFile())
+            .start();
+        RatuNode node = new RatuNode(process);
+        try {
+            node.awaitPort(host, cqlPort, timeoutMillis);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            node.close();
+            throw e;
+        }
+        return node;
+    }
+
+    private void awaitPort(String host, int port, long timeoutMillis) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (true) {
+            if (process.isAlive() == false) {
+                throw new IllegalStateException("node exited with code " + process.exitValue() + " before CQL was available");
+            }
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(host, port), 1000);
+                return;
+            } catch (IOException e) {
+                if (System.nanoTime() > deadline) {
+                    throw new IOException("CQL port " + host + ":" + port + " not available after " + timeoutMillis + "ms", e);
+                }
+            }
+            Thread.sleep(500);
+        }
+    }
+
+    @Override
+    public void close() {
+        process.destroy();
+        try {
+            if (process.waitFor(60, TimeUnit.SECONDS) == false) {
+                process.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -24,6 +24,11 @@ public interface OpenSearchClient extends Closeable {
 
     ESScriptResponse getStoredScript(String scriptName) throws IOException;
 
+    /**
+     * Whether the cluster can run scripts of the language in the given context, e.g. {@code update}.
+     */
+    boolean supportsScript(String language, String context) throws IOException;
+
     void createIndex(String indexName, Map<String,Object> settings) throws IOException;
 
     void updateIndexSettings(String indexName, Map<String,Object> settings) throws IOException;
@@ -52,12 +57,31 @@ public interface OpenSearchClient extends Closeable {
 
     Number sum(String indexName, Map<String,Object> requestData, String fieldName, Class<? extends Number> expectedType) throws IOException;
 
+    /**
+     * Counts the documents matching the request and computes the statistics of a numeric field over them in one request.
+     */
+    OpenSearchStats stats(String indexName, Map<String,Object> requestData, String fieldName) throws IOException;
+
     OpenSearchResponse search(String indexName, Map<String,Object> request, boolean useScroll) throws IOException;
 
     OpenSearchResponse search(String scrollId) throws IOException;
 
     void deleteScroll(String scrollId) throws IOException;
 
+    /**
+     * Opens a point in time on the index, kept alive as long as a scroll context.
+     * @return the id of the point in time
+     */
+    String createPointInTime(String indexName) throws IOException;
+
+    /**
+     * Searches the point in time, the request carries {@code sort} and, after the first page, {@code search_after}.
+     * The returned response carries the (possibly updated) point in time id and the sort values of its last hit.
+     */
+    OpenSearchResponse searchPointInTime(String pitId, Map<String,Object> request) throws IOException;
+
+    void deletePointInTime(String pitId) throws IOException;
+
     void addAlias(String alias, String index) throws IOException;
 
 }
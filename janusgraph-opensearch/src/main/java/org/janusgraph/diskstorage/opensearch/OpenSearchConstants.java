@@ -14,4 +14,13 @@ public class OpenSearchConstants {
     public static final String ES_ANALYZER = "analyzer";
     public static final String ES_GEO_COORDS_KEY = "coordinates";
     public static final String CUSTOM_ALL_FIELD = "all";
+
+    /**
+     * Script language of the compiled update of multi-valued fields registered by RatuDB
+     */
+    public static final String ES_NATIVE_UPDATE_LANG = "janusgraph";
+    public static final String ES_NATIVE_UPDATE_SOURCE = "update";
+    public static final String ES_NATIVE_UPDATE_CONTEXT = "update";
+    public static final String ES_PARAMS_DELETIONS_KEY = "deletions";
+    public static final String ES_PARAMS_ADDITIONS_KEY = "additions";
 }
@@ -7,6 +7,7 @@ import com.google.common.collect.Iterators;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.janusgraph.core.Cardinality;
 import org.janusgraph.core.JanusGraphException;
 import org.janusgraph.core.attribute.Cmp;
@@ -38,7 +39,6 @@ import org.janusgraph.diskstorage.opensearch.compat.ESCompatUtils;
 import org.janusgraph.diskstorage.opensearch.mapping.IndexMapping;
 import org.janusgraph.diskstorage.opensearch.rest.util.HttpAuthTypes;
 import org.janusgraph.diskstorage.opensearch.script.ESScriptResponse;
-import org.janusgraph.diskstorage.util.DefaultTransaction;
 import org.janusgraph.graphdb.configuration.PreInitializeConfigOptions;
 import org.janusgraph.graphdb.database.serialize.AttributeUtils;
 import org.janusgraph.graphdb.query.JanusGraphPredicate;
@@ -62,6 +62,7 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -73,6 +74,8 @@ import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -83,6 +86,8 @@ import static org.janusgraph.diskstorage.configuration.ConfigOption.disallowEmpt
 import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_DOC_KEY;
 import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_GEO_COORDS_KEY;
 import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_LANG_KEY;
+import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_NATIVE_UPDATE_CONTEXT;
+import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_NATIVE_UPDATE_LANG;
 import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_SCRIPT_KEY;
 import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_TYPE_KEY;
 import static org.janusgraph.graphdb.configuration.GraphDatabaseConfiguration.GRAPH_NAME;
@@ -108,6 +113,8 @@ public class OpenSearchIndex implements IndexProvider {
             new ConfigOption<>(OPENSEARCH_NS, "interface",
             "Interface for connecting to Elasticsearch. " +
             "TRANSPORT_CLIENT and NODE were previously supported, but now are required to migrate to REST_CLIENT. " +
+            "LOCAL_NODE calls the transport actions of an OpenSearch node running in the same JVM and falls back to " +
+            "REST_CLIENT when there is none. " +
             "See the JanusGraph upgrade instructions for more details.",
             ConfigOption.Type.MASKABLE, String.class, OpenSearchSetup.REST_CLIENT.toString(),
             disallowEmpty(String.class));
@@ -168,6 +175,25 @@ public class OpenSearchIndex implements IndexProvider {
             new ConfigOption<>(OPENSEARCH_NS, "scroll-keep-alive",
             "How long (in seconds) elasticsearch should keep alive the scroll context.", ConfigOption.Type.GLOBAL_OFFLINE, 60);
 
+    public static final ConfigOption<Boolean> ES_USE_POINT_IN_TIME =
+            new ConfigOption<>(OPENSEARCH_NS, "use-point-in-time",
+            "Whether queries returning more results than " + INDEX_MAX_RESULT_SET_SIZE.getName() + " page through them with " +
+            "a point in time and search_after instead of a scroll. The next page is requested while the current one is " +
+            "consumed and query offsets are applied by OpenSearch. The point in time is kept alive for " +
+            "scroll-keep-alive seconds between two pages.", ConfigOption.Type.MASKABLE, true);
+
+    public static final ConfigOption<Integer> ES_PREFETCH_THREADS =
+            new ConfigOption<>(OPENSEARCH_NS, "prefetch-threads",
+            "Number of threads requesting the next page of point in time queries in the background.",
+            ConfigOption.Type.MASKABLE, Runtime.getRuntime().availableProcessors());
+
+    public static final ConfigOption<Boolean> ES_USE_NATIVE_UPDATES =
+            new ConfigOption<>(OPENSEARCH_NS, "use-native-updates",
+            "Whether changes to an existing document are sent as a single update running the compiled '" +
+            ES_NATIVE_UPDATE_LANG + "' script instead of separate painless updates for deletions and additions of " +
+            "LIST and SET values. Only used when the cluster provides that script language.",
+            ConfigOption.Type.MASKABLE, true);
+
     public static final ConfigNamespace ES_INGEST_PIPELINES =
             new ConfigNamespace(OPENSEARCH_NS, "ingest-pipeline", "Ingest pipeline applicable to a store of an index.");
 
@@ -274,6 +300,27 @@ public class OpenSearchIndex implements IndexProvider {
         new ConfigOption<>(OPENSEARCH_NS, "retry_on_conflict",
             "Specify how many times should the operation be retried when a conflict occurs.", ConfigOption.Type.MASKABLE, 0);
 
+    public static final ConfigOption<Integer> BULK_CHUNK_SIZE =
+        new ConfigOption<>(OPENSEARCH_NS, "bulk-chunk-size",
+            "Maximal size in bytes of a single bulk request, larger mutations are split into several requests. " +
+                "A single document larger than this value is sent on its own.", ConfigOption.Type.MASKABLE, 5 * 1024 * 1024);
+
+    public static final ConfigOption<Integer> BULK_CONCURRENCY =
+        new ConfigOption<>(OPENSEARCH_NS, "bulk-concurrency",
+            "Maximal number of bulk requests of one mutation sent at the same time. The documents are spread over " +
+                "this many lanes by id and the chunks of a lane are sent one after another, so the mutations of a " +
+                "document keep their order.", ConfigOption.Type.MASKABLE, 2);
+
+    public static final ConfigOption<Integer> BULK_MAX_RETRIES =
+        new ConfigOption<>(OPENSEARCH_NS, "bulk-max-retries",
+            "How many times the items of a bulk request rejected with 429 (too many requests) or 409 (version conflict) " +
+                "are sent again before the mutation fails.", ConfigOption.Type.MASKABLE, 5);
+
+    public static final ConfigOption<Long> BULK_RETRY_INITIAL_WAIT =
+        new ConfigOption<>(OPENSEARCH_NS, "bulk-retry-initial-wait",
+            "Wait (in milliseconds) before the first retry of rejected bulk items, doubled on every further retry.",
+            ConfigOption.Type.MASKABLE, 100L);
+
     public static final ConfigOption<Boolean> ENABLE_INDEX_STORE_NAMES_CACHE =
         new ConfigOption<>(OPENSEARCH_NS, "enable_index_names_cache",
             "Enables cache for generated index store names. " +
@@ -355,6 +402,9 @@ public class OpenSearchIndex implements IndexProvider {
     private final String parameterizedDeletionScriptId;
     private final boolean supportsGeoShapePrefixTree;
     private final CircleProcessor bdbCircleProcessor;
+    private final boolean usePointInTime;
+    private final boolean useNativeUpdates;
+    private final ExecutorService prefetchExecutor;
 
     public OpenSearchIndex(Configuration config) throws BackendException {
         indexName = determineIndexName(config);
@@ -370,6 +420,11 @@ public class OpenSearchIndex implements IndexProvider {
         batchSize = config.get(INDEX_MAX_RESULT_SET_SIZE);
         log.debug("Configured ES query nb result by query to {}", batchSize);
         bdbCircleProcessor = MixedIndexUtilsConfigOptions.buildBKDCircleProcessor(config);
+        usePointInTime = config.get(ES_USE_POINT_IN_TIME);
+        prefetchExecutor = usePointInTime
+            ? Executors.newFixedThreadPool(config.get(ES_PREFETCH_THREADS),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("opensearch-prefetch-" + indexName + "-%d").build())
+            : null;
 
         client = interfaceConfiguration(config).getClient();
         supportsGeoShapePrefixTree = client.getMajorVersion().getValue() <= 7;
@@ -380,6 +435,8 @@ public class OpenSearchIndex implements IndexProvider {
 
         indexSetting = OpenSearchSetup.getSettingsFromJanusGraphConf(config);
 
+        useNativeUpdates = config.get(ES_USE_NATIVE_UPDATES) && supportsNativeUpdates();
+
         setupMaxOpenScrollContextsIfNeeded(config);
 
         setupStoredScripts();
@@ -391,6 +448,18 @@ public class OpenSearchIndex implements IndexProvider {
             : config.get(INDEX_NAME);
     }
 
+    private boolean supportsNativeUpdates() {
+        try {
+            if (client.supportsScript(ES_NATIVE_UPDATE_LANG, ES_NATIVE_UPDATE_CONTEXT)) {
+                return true;
+            }
+            log.info("Script language {} is not available, using painless updates", ES_NATIVE_UPDATE_LANG);
+        } catch (final IOException e) {
+            log.warn("Unable to get the script languages, using painless updates", e);
+        }
+        return false;
+    }
+
     private void checkClusterHealth(String healthCheck) throws BackendException {
         try {
             client.clusterHealthRequest(healthCheck);
@@ -802,6 +871,7 @@ public class OpenSearchIndex implements IndexProvider {
                 final List<OpenSearchMutation> requestByStore = new ArrayList<>();
                 final String storeName = stores.getKey();
                 final String indexStoreName = getIndexStoreName(storeName);
+                invalidateAggregations(tx, indexStoreName);
                 for (final Map.Entry<String, IndexMutation> entry : stores.getValue().entrySet()) {
                     final String documentId = entry.getKey();
                     final IndexMutation mutation = entry.getValue();
@@ -809,6 +879,13 @@ public class OpenSearchIndex implements IndexProvider {
                     Preconditions.checkArgument(!(mutation.isNew() && mutation.isDeleted()));
                     Preconditions.checkArgument(!mutation.isNew() || !mutation.hasDeletions());
                     Preconditions.checkArgument(!mutation.isDeleted() || !mutation.hasAdditions());
+                    if (useNativeUpdates && !mutation.isNew() && !mutation.isDeleted()) {
+                        // a consolidated mutation may have nothing left to change, the legacy path sends nothing for it either
+                        if (mutation.hasAdditions() || mutation.hasDeletions()) {
+                            requestByStore.add(getNativeUpdate(information, storeName, indexStoreName, documentId, mutation));
+                        }
+                        continue;
+                    }
                     //Deletions first
                     if (mutation.hasDeletions()) {
                         if (mutation.isDeleted()) {
@@ -899,6 +976,31 @@ public class OpenSearchIndex implements IndexProvider {
         return result;
     }
 
+    /**
+     * All changes to an existing document as one update: deletions and additions of LIST and SET values are applied
+     * by the compiled native script along with the new SINGLE values, instead of up to three separate updates.
+     */
+    private OpenSearchMutation getNativeUpdate(KeyInformation.IndexRetriever information, String storeName,
+                                               String indexStoreName, String documentId,
+                                               IndexMutation mutation) throws BackendException {
+        final KeyInformation.StoreRetriever storeRetriever = information.get(storeName);
+        final List<Map<String, Object>> deletions = mutation.hasDeletions()
+            ? getParameters(storeRetriever, mutation.getDeletions(), true)
+            : Collections.emptyList();
+        final List<Map<String, Object>> additions = mutation.hasAdditions()
+            ? getParameters(storeRetriever, mutation.getAdditions(), false, Cardinality.SINGLE)
+            : Collections.emptyList();
+        final Map<String, Object> doc = mutation.hasAdditions()
+            ? getAdditionDoc(information, storeName, mutation)
+            : Collections.emptyMap();
+        final Map<String, Object> upsert = mutation.hasAdditions() && !mutation.hasDeletions()
+            ? getNewDocument(mutation.getAdditions(), storeRetriever)
+            : null;
+        log.trace("Native update of {} with deletions {}, additions {} and doc {}", documentId, deletions, additions, doc);
+        return OpenSearchMutation.createUpdateRequest(indexStoreName, storeName, documentId,
+            compat.prepareNativeUpdate(deletions, additions, doc), upsert);
+    }
+
     private Map<String,Object> getAdditionDoc(KeyInformation.IndexRetriever information,
                                               String store, IndexMutation mutation) throws PermanentBackendException {
         final Map<String,Object> doc = new HashMap<>();
@@ -924,6 +1026,7 @@ public class OpenSearchIndex implements IndexProvider {
                 final List<OpenSearchMutation> requestByStore = new ArrayList<>();
                 final String store = stores.getKey();
                 final String indexStoreName = getIndexStoreName(store);
+                invalidateAggregations(tx, indexStoreName);
                 for (final Map.Entry<String, List<IndexEntry>> entry : stores.getValue().entrySet()) {
                     final String docID = entry.getKey();
                     final List<IndexEntry> content = entry.getValue();
@@ -1197,6 +1300,10 @@ public class OpenSearchIndex implements IndexProvider {
         OpenSearchResponse response;
         try {
             final String indexStoreName = getIndexStoreName(query.getStore());
+            if (usePointInTime && sr.getSize() >= batchSize) {
+                return searchPointInTime(indexStoreName, sr, NULL_PARAMETERS, query.hasLimit() ? query.getLimit() : Long.MAX_VALUE)
+                    .map(RawQuery.Result::getResult);
+            }
             final boolean useScroll = sr.getSize() >= batchSize;
             response = client.search(indexStoreName,
                 compat.createRequestBody(sr, useScroll? NULL_PARAMETERS : TRACK_TOTAL_HITS_DISABLED_PARAMETERS),
@@ -1211,6 +1318,38 @@ public class OpenSearchIndex implements IndexProvider {
         }
     }
 
+    /**
+     * Runs the request on a new point in time and streams all its results, see {@link OpenSearchPointInTime}.
+     * The sort of the request is completed with the document id as a tie breaker, search_after needs a unique sort.
+     */
+    private Stream<RawQuery.Result<String>> searchPointInTime(String indexStoreName, OpenSearchRequest sr, Parameter<?>[] parameters,
+                                                               long limit) throws IOException {
+        if (sr.getSorts().isEmpty()) {
+            sr.addSort("_score", "desc", null);
+        }
+        sr.addSort("_id", "asc", null);
+        final Map<String, Object> requestBody = compat.createRequestBody(sr, parameters);
+        requestBody.put(TRACK_TOTAL_HITS_PARAMETER, false);
+
+        final String pitId = client.createPointInTime(indexStoreName);
+        final OpenSearchResponse response;
+        try {
+            response = client.searchPointInTime(pitId, new HashMap<>(requestBody));
+        } catch (final IOException | RuntimeException e) {
+            try {
+                client.deletePointInTime(pitId);
+            } catch (final IOException | RuntimeException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        log.debug("First executed point in time query in {} ms", response.getTook());
+        final OpenSearchPointInTime iterator = new OpenSearchPointInTime(client, pitId, requestBody, sr.getSize(), limit,
+            response, prefetchExecutor);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+            .onClose(iterator::close);
+    }
+
     private Iterator<RawQuery.Result<String>> getResultsIterator(boolean useScroll, OpenSearchResponse response, int windowSize){
         return (useScroll)? new OpenSearchScroll(client, response, windowSize) : response.getResults().iterator();
     }
@@ -1247,16 +1386,21 @@ public class OpenSearchIndex implements IndexProvider {
         return null;
     }
 
-    private OpenSearchResponse runCommonQuery(RawQuery query, KeyInformation.IndexRetriever informations, BaseTransaction tx, int size,
-                                              boolean useScroll) throws BackendException{
+    private OpenSearchRequest createRawRequest(RawQuery query, KeyInformation.IndexRetriever informations, int from, int size) {
         final OpenSearchRequest sr = new OpenSearchRequest();
         sr.setQuery(compat.queryString(query.getQuery()));
         if (!query.getOrders().isEmpty()) {
             addOrderToQuery(informations, sr, query.getOrders(), query.getStore());
         }
-        sr.setFrom(0);
+        sr.setFrom(from);
         sr.setSize(size);
         sr.setDisableSourceRetrieval(true);
+        return sr;
+    }
+
+    private OpenSearchResponse runCommonQuery(RawQuery query, KeyInformation.IndexRetriever informations, BaseTransaction tx, int from,
+                                              int size, boolean useScroll) throws BackendException{
+        final OpenSearchRequest sr = createRawRequest(query, informations, from, size);
         try {
             Map<String, Object> requestBody = compat.createRequestBody(sr, query.getParameters());
             if(!useScroll) {
@@ -1301,9 +1445,25 @@ public class OpenSearchIndex implements IndexProvider {
     @Override
     public Stream<RawQuery.Result<String>> query(RawQuery query, KeyInformation.IndexRetriever information,
                                                  BaseTransaction tx) throws BackendException {
+        if (usePointInTime) {
+            // the offset is applied by OpenSearch, index.max_result_window is raised when the index is created
+            final int size = query.hasLimit() ? Math.min(query.getLimit(), batchSize) : batchSize;
+            if (size < batchSize) {
+                final OpenSearchResponse response = runCommonQuery(query, information, tx, query.getOffset(), size, false);
+                log.debug("Executed query [{}] in {} ms", query.getQuery(), response.getTook());
+                return response.getResults();
+            }
+            try {
+                return searchPointInTime(getIndexStoreName(query.getStore()),
+                    createRawRequest(query, information, query.getOffset(), size), query.getParameters(),
+                    query.hasLimit() ? query.getLimit() : Long.MAX_VALUE);
+            } catch (final IOException | UncheckedIOException e) {
+                throw new PermanentBackendException(e);
+            }
+        }
         final int size = query.hasLimit() ? Math.min(query.getLimit() + query.getOffset(), batchSize) : batchSize;
         final boolean useScroll = size >= batchSize;
-        final OpenSearchResponse response = runCommonQuery(query, information, tx, size, useScroll);
+        final OpenSearchResponse response = runCommonQuery(query, information, tx, 0, size, useScroll);
         log.debug("First Executed query [{}] in {} ms", query.getQuery(), response.getTook());
         final Iterator<RawQuery.Result<String>> resultIterator = getResultsIterator(useScroll, response, size);
         final Stream<RawQuery.Result<String>> toReturn
@@ -1321,12 +1481,25 @@ public class OpenSearchIndex implements IndexProvider {
         try {
             final String indexName = getIndexStoreName(query.getStore());
             final Map<String,Object> requestData = compat.createRequestBody(sr, null);
+            if (!(tx instanceof OpenSearchTransaction)) {
+                switch (aggregation.getType()) {
+                    case COUNT: return QueryUtil.applyQueryLimitAfterCount(client.countTotal(indexName, requestData), query);
+                    case MIN: return client.min(indexName, requestData, aggregation.getFieldName(), aggregation.getDataType());
+                    case MAX: return client.max(indexName, requestData, aggregation.getFieldName(), aggregation.getDataType());
+                    case AVG: return client.avg(indexName, requestData, aggregation.getFieldName());
+                    case SUM: return client.sum(indexName, requestData, aggregation.getFieldName(), aggregation.getDataType());
+                    default: throw new UnsupportedOperationException();
+                }
+            }
+            // the count and all statistics of a field are computed by one request and reused within the transaction
+            final OpenSearchTransaction transaction = (OpenSearchTransaction) tx;
+            final String fieldName = aggregation.getFieldName();
             switch (aggregation.getType()) {
-                case COUNT: return QueryUtil.applyQueryLimitAfterCount(client.countTotal(indexName, requestData), query);
-                case MIN: return client.min(indexName, requestData, aggregation.getFieldName(), aggregation.getDataType());
-                case MAX: return client.max(indexName, requestData, aggregation.getFieldName(), aggregation.getDataType());
-                case AVG: return client.avg(indexName, requestData, aggregation.getFieldName());
-                case SUM: return client.sum(indexName, requestData, aggregation.getFieldName(), aggregation.getDataType());
+                case COUNT: return QueryUtil.applyQueryLimitAfterCount(countTotal(transaction, indexName, requestData), query);
+                case MIN: return OpenSearchStats.adaptNumberType(stats(transaction, indexName, requestData, fieldName).getMin(), aggregation.getDataType());
+                case MAX: return OpenSearchStats.adaptNumberType(stats(transaction, indexName, requestData, fieldName).getMax(), aggregation.getDataType());
+                case AVG: return stats(transaction, indexName, requestData, fieldName).getAvg();
+                case SUM: return OpenSearchStats.adaptSumType(stats(transaction, indexName, requestData, fieldName).getSum(), aggregation.getDataType());
                 default: throw new UnsupportedOperationException();
             }
         } catch (final IOException | UncheckedIOException e) {
@@ -1334,6 +1507,31 @@ public class OpenSearchIndex implements IndexProvider {
         }
     }
 
+    private static void invalidateAggregations(BaseTransaction tx, String indexName) {
+        if (tx instanceof OpenSearchTransaction) {
+            ((OpenSearchTransaction) tx).invalidate(indexName);
+        }
+    }
+
+    private long countTotal(OpenSearchTransaction tx, String indexName, Map<String, Object> requestData) throws IOException {
+        Long count = tx.getCount(indexName, requestData);
+        if (count == null) {
+            count = client.countTotal(indexName, new HashMap<>(requestData));
+            tx.putCount(indexName, requestData, count);
+        }
+        return count;
+    }
+
+    private OpenSearchStats stats(OpenSearchTransaction tx, String indexName, Map<String, Object> requestData,
+                                  String fieldName) throws IOException {
+        OpenSearchStats stats = tx.getStats(indexName, requestData, fieldName);
+        if (stats == null) {
+            stats = client.stats(indexName, new HashMap<>(requestData), fieldName);
+            tx.putStats(indexName, requestData, fieldName, stats);
+        }
+        return stats;
+    }
+
     @Override
     public Long totals(RawQuery query, KeyInformation.IndexRetriever information,
                        BaseTransaction tx) throws BackendException {
@@ -1419,11 +1617,14 @@ public class OpenSearchIndex implements IndexProvider {
 
     @Override
     public BaseTransactionConfigurable beginTransaction(BaseTransactionConfig config) throws BackendException {
-        return new DefaultTransaction(config);
+        return new OpenSearchTransaction(config);
     }
 
     @Override
     public void close() throws BackendException {
+        if (prefetchExecutor != null) {
+            prefetchExecutor.shutdownNow();
+        }
         try {
             client.close();
         } catch (final IOException e) {
@@ -0,0 +1,136 @@
+package org.janusgraph.diskstorage.opensearch;
+
+import org.janusgraph.diskstorage.indexing.RawQuery.Result;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Pages through the results of a query with a point in time and {@code search_after}. While a page is consumed the
+ * next one is already requested on the given executor, so deep traversals do not stall on every page boundary and
+ * no scroll context is held. The point in time is deleted once the last page is read or the iterator is closed.
+ */
+public class OpenSearchPointInTime implements Iterator<Result<String>>, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(OpenSearchPointInTime.class);
+
+    private static final String SEARCH_AFTER_PARAMETER = "search_after";
+
+    private final OpenSearchClient client;
+    private final Map<String, Object> request;
+    private final int pageSize;
+    private final Executor executor;
+
+    private String pitId;
+    private long remaining;
+    private Iterator<Result<String>> page = Collections.emptyIterator();
+    private CompletableFuture<OpenSearchResponse> nextPage;
+    private boolean closed;
+
+    /**
+     * @param request    body of the first page, with a sort ending on a unique tie breaker and {@code from} set to the offset
+     * @param limit      maximal number of results, {@code Long.MAX_VALUE} for all
+     * @param firstPage  response to {@code request}, fetched by the caller so that its failure surfaces as a backend error
+     */
+    public OpenSearchPointInTime(OpenSearchClient client, String pitId, Map<String, Object> request, int pageSize, long limit,
+                                 OpenSearchResponse firstPage, Executor executor) {
+        this.client = client;
+        this.pitId = pitId;
+        this.request = request;
+        this.pageSize = pageSize;
+        this.remaining = limit;
+        this.executor = executor;
+        update(firstPage);
+    }
+
+    private void update(OpenSearchResponse response) {
+        if (response.getPitId() != null) {
+            pitId = response.getPitId();
+        }
+        page = response.getResults().iterator();
+        remaining -= response.numResults();
+        final List<Object> lastSortValues = response.getLastSortValues();
+        if (response.numResults() < pageSize || remaining <= 0 || lastSortValues == null || lastSortValues.isEmpty()) {
+            nextPage = null;
+            close();
+            return;
+        }
+        final Map<String, Object> next = new HashMap<>(request);
+        // the offset only applies to the first page
+        next.remove("from");
+        next.put("size", (int) Math.min(pageSize, remaining));
+        next.put(SEARCH_AFTER_PARAMETER, lastSortValues);
+        final String id = pitId;
+        nextPage = CompletableFuture.supplyAsync(() -> {
+            try {
+                return client.searchPointInTime(id, next);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e.getMessage(), e);
+            }
+        }, executor);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!page.hasNext()) {
+            if (nextPage == null) {
+                return false;
+            }
+            final OpenSearchResponse response;
+            try {
+                response = nextPage.join();
+            } catch (CompletionException e) {
+                close();
+                if (e.getCause() instanceof UncheckedIOException) {
+                    throw (UncheckedIOException) e.getCause();
+                }
+                throw new UncheckedIOException(new IOException(e.getCause()));
+            } catch (CancellationException e) {
+                return false;
+            }
+            update(response);
+        }
+        return true;
+    }
+
+    @Override
+    public Result<String> next() {
+        if (hasNext()) {
+            return page.next();
+        }
+        throw new NoSuchElementException();
+    }
+
+    /**
+     * Stops prefetching and deletes the point in time, the results of the current page stay readable.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (nextPage != null) {
+            nextPage.cancel(false);
+            nextPage = null;
+        }
+        try {
+            client.deletePointInTime(pitId);
+        } catch (IOException | RuntimeException e) {
+            // the point in time expires with its keep alive anyway
+            log.warn("Unable to delete point in time {}", pitId, e);
+        }
+    }
+}
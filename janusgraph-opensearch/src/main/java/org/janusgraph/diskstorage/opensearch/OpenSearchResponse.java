@@ -11,6 +11,10 @@ public class OpenSearchResponse {
 
     private String scrollId;
 
+    private String pitId;
+
+    private List<Object> lastSortValues;
+
     private List<RawQuery.Result<String>> results;
 
     public long getTook() {
@@ -40,4 +44,23 @@ public class OpenSearchResponse {
     public void setScrollId(String scrollId) {
         this.scrollId = scrollId;
     }
+
+    public String getPitId() {
+        return pitId;
+    }
+
+    public void setPitId(String pitId) {
+        this.pitId = pitId;
+    }
+
+    /**
+     * Sort values of the last hit, used as {@code search_after} of the next page. Empty when there are no hits.
+     */
+    public List<Object> getLastSortValues() {
+        return lastSortValues;
+    }
+
+    public void setLastSortValues(List<Object> lastSortValues) {
+        this.lastSortValues = lastSortValues;
+    }
 }
@@ -24,8 +24,35 @@ public enum OpenSearchSetup {
         public Connection connect(Configuration config) throws IOException {
             return new Connection(new RestClientSetup().connect(config));
         }
+    },
+
+    /**
+     * Use the client registered with {@link #registerLocalClient(ClientFactory)} by the process that embeds the
+     * OpenSearch node, which calls the node's transport actions directly instead of going through HTTP.
+     * Falls back to {@link #REST_CLIENT} when no local client is registered.
+     */
+    LOCAL_NODE {
+        @Override
+        public Connection connect(Configuration config) throws IOException {
+            final ClientFactory factory = localClientFactory;
+            if (factory == null) {
+                log.warn("No local OpenSearch client registered, falling back to {}", REST_CLIENT);
+                return REST_CLIENT.connect(config);
+            }
+            return new Connection(factory.connect(config));
+        }
     };
 
+    private static volatile ClientFactory localClientFactory;
+
+    /**
+     * Registers the factory used by {@link #LOCAL_NODE}. Called by the process embedding the OpenSearch node before
+     * any graph using this index backend is opened.
+     */
+    public static void registerLocalClient(ClientFactory factory) {
+        localClientFactory = Preconditions.checkNotNull(factory);
+    }
+
     @SuppressWarnings("unchecked")
     static Map<String, Object> getSettingsFromJanusGraphConf(Configuration config) {
 
@@ -64,6 +91,12 @@ public enum OpenSearchSetup {
 
     public abstract Connection connect(Configuration config) throws IOException;
 
+    @FunctionalInterface
+    public interface ClientFactory {
+
+        OpenSearchClient connect(Configuration config) throws IOException;
+    }
+
     public static class Connection {
 
         private final OpenSearchClient client;
@@ -0,0 +1,70 @@
+package org.janusgraph.diskstorage.opensearch;
+
+/**
+ * Number of documents matching a query together with the min, max, avg and sum of one numeric field over them,
+ * computed by a single search request.
+ * Missing values (no document has the field) are reported as 0, like the single value aggregations.
+ */
+public class OpenSearchStats {
+
+    private final long count;
+    private final double min;
+    private final double max;
+    private final double avg;
+    private final double sum;
+
+    public OpenSearchStats(long count, double min, double max, double avg, double sum) {
+        this.count = count;
+        this.min = finiteOrZero(min);
+        this.max = finiteOrZero(max);
+        this.avg = finiteOrZero(avg);
+        this.sum = finiteOrZero(sum);
+    }
+
+    private static double finiteOrZero(double value) {
+        return Double.isFinite(value) ? value : 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getAvg() {
+        return avg;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * Converts a min or max value to the data type of the field, the value is returned as is without a type
+     */
+    public static Number adaptNumberType(double value, Class<? extends Number> expectedType) {
+        if (expectedType == null) return value;
+        else if (Byte.class.isAssignableFrom(expectedType)) return (byte) value;
+        else if (Short.class.isAssignableFrom(expectedType)) return (short) value;
+        else if (Integer.class.isAssignableFrom(expectedType)) return (int) value;
+        else if (Long.class.isAssignableFrom(expectedType)) return (long) value;
+        else if (Float.class.isAssignableFrom(expectedType)) return (float) value;
+        else return value;
+    }
+
+    /**
+     * Sums of floating point fields are doubles, sums of integral fields are longs
+     */
+    public static Number adaptSumType(double sum, Class<? extends Number> expectedType) {
+        if (Float.class.isAssignableFrom(expectedType) || Double.class.isAssignableFrom(expectedType))
+            return sum;
+        else
+            return (long) sum;
+    }
+}
@@ -0,0 +1,76 @@
+package org.janusgraph.diskstorage.opensearch;
+
+import org.janusgraph.diskstorage.BackendException;
+import org.janusgraph.diskstorage.BaseTransactionConfig;
+import org.janusgraph.diskstorage.util.DefaultTransaction;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index transaction remembering the counts and field statistics computed for the aggregation queries run in it.
+ * A traversal asking for several statistics over the same predicate, e.g. the count, min and max of a property,
+ * then sends a single search request instead of one per statistic.
+ * <p>
+ * Only the {@link #MAX_ENTRIES} most recently used results are kept, so a long-lived transaction running many
+ * different aggregations does not grow without bound. The results of an index are dropped when this transaction
+ * mutates that index, and all results are dropped on commit and rollback.
+ */
+public class OpenSearchTransaction extends DefaultTransaction {
+
+    static final int MAX_ENTRIES = 64;
+
+    // keyed by (index, request) for counts and (index, request, field) for statistics, values are Long or OpenSearchStats
+    private final Map<List<Object>, Object> results = new LinkedHashMap<List<Object>, Object>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, Object> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    public OpenSearchTransaction(BaseTransactionConfig config) {
+        super(config);
+    }
+
+    synchronized Long getCount(String indexName, Map<String, Object> request) {
+        return (Long) results.get(Arrays.asList(indexName, request));
+    }
+
+    synchronized void putCount(String indexName, Map<String, Object> request, long count) {
+        results.put(Arrays.asList(indexName, request), count);
+    }
+
+    synchronized OpenSearchStats getStats(String indexName, Map<String, Object> request, String fieldName) {
+        return (OpenSearchStats) results.get(Arrays.asList(indexName, request, fieldName));
+    }
+
+    synchronized void putStats(String indexName, Map<String, Object> request, String fieldName, OpenSearchStats result) {
+        results.put(Arrays.asList(indexName, request, fieldName), result);
+        putCount(indexName, request, result.getCount());
+    }
+
+    /**
+     * Drops the results computed on the given index, called before this transaction writes to it.
+     */
+    synchronized void invalidate(String indexName) {
+        results.keySet().removeIf(key -> indexName.equals(key.get(0)));
+    }
+
+    @Override
+    public void commit() throws BackendException {
+        clear();
+        super.commit();
+    }
+
+    @Override
+    public void rollback() throws BackendException {
+        clear();
+        super.rollback();
+    }
+
+    private synchronized void clear() {
+        results.clear();
+    }
+}
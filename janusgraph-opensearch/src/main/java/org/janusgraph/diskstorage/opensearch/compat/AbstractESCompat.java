@@ -16,8 +16,13 @@ import java.util.Map;
 import java.util.stream.Collectors;
 
 import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_ANALYZER;
+import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_DOC_KEY;
 import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_ID_KEY;
 import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_LANG_KEY;
+import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_NATIVE_UPDATE_LANG;
+import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_NATIVE_UPDATE_SOURCE;
+import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_PARAMS_ADDITIONS_KEY;
+import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_PARAMS_DELETIONS_KEY;
 import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_PARAMS_FIELDS_KEY;
 import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_PARAMS_KEY;
 import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_SCRIPT_KEY;
@@ -73,6 +78,19 @@ public abstract class AbstractESCompat {
         return ImmutableMap.<String, Object>builder().put(ES_SCRIPT_KEY, script);
     }
 
+    /**
+     * Single update applying the deletions, then the additions of multi-valued fields and finally the single-valued
+     * fields of {@code doc} to a document, without painless.
+     */
+    public ImmutableMap.Builder<String, Object> prepareNativeUpdate(List<Map<String, Object>> deletions,
+                                                                    List<Map<String, Object>> additions,
+                                                                    Map<String, Object> doc) {
+        Map<String, Object> script = ImmutableMap.of(ES_SOURCE_KEY, ES_NATIVE_UPDATE_SOURCE,
+            ES_LANG_KEY, ES_NATIVE_UPDATE_LANG,
+            ES_PARAMS_KEY, ImmutableMap.of(ES_PARAMS_DELETIONS_KEY, deletions, ES_PARAMS_ADDITIONS_KEY, additions, ES_DOC_KEY, doc));
+        return ImmutableMap.<String, Object>builder().put(ES_SCRIPT_KEY, script);
+    }
+
     public ImmutableMap.Builder<String, Object> prepareInlineScript(String source, List<Map<String, Object>> fields) {
         Map<String, Object> script = ImmutableMap.of(ES_SOURCE_KEY, source,
             ES_PARAMS_KEY, ImmutableMap.of(ES_PARAMS_FIELDS_KEY, fields),
@@ -195,7 +213,8 @@ public abstract class AbstractESCompat {
         }
 
         if (!request.getSorts().isEmpty()) {
-            requestBody.put("sort", request.getSorts());
+            // plain maps rather than RestSortInfo, so that clients not using Jackson can serialize the request
+            requestBody.put("sort", request.getSorts().stream().map(AbstractESCompat::sortAsMap).collect(Collectors.toList()));
         }
 
         if (request.isDisableSourceRetrieval()) {
@@ -205,6 +224,19 @@ public abstract class AbstractESCompat {
         return requestBody;
     }
 
+    private static Map<String, Object> sortAsMap(Map<String, OpenSearchRequest.RestSortInfo> sort) {
+        final Map<String, Object> result = new HashMap<>();
+        sort.forEach((key, info) -> {
+            final Map<String, Object> options = new HashMap<>();
+            options.put("order", info.getOrder());
+            if (info.getUnmappedType() != null) {
+                options.put("unmapped_type", info.getUnmappedType());
+            }
+            result.put(key, options);
+        });
+        return result;
+    }
+
     @SuppressWarnings("unchecked")
     public Map<String, Object> createRequestBody(Map<String, Object> query, Parameter<?>[] parameters) {
         final Map<String, Object> requestBody = new HashMap<>();
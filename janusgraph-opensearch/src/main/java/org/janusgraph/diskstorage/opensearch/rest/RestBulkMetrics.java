@@ -0,0 +1,125 @@
+package org.janusgraph.diskstorage.opensearch.rest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the chunked bulk requests sent by a {@link RestOpenSearchClient}. The latency of a chunk covers all of
+ * its attempts, including the backoff between retries. Once registered they are published over JMX as
+ * {@code org.janusgraph.diskstorage.opensearch:type=RestBulkMetrics,name=<index name>}.
+ */
+public class RestBulkMetrics implements RestBulkMetricsMBean {
+
+    private static final Logger log = LoggerFactory.getLogger(RestBulkMetrics.class);
+
+    private final LongAdder chunks = new LongAdder();
+    private final LongAdder items = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder retriedItems = new LongAdder();
+    private final LongAdder failedItems = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+
+    private ObjectName objectName;
+
+    void chunk(int itemCount, long byteCount, long latencyNanos) {
+        chunks.increment();
+        items.add(itemCount);
+        bytes.add(byteCount);
+        totalLatencyNanos.add(latencyNanos);
+        maxLatencyNanos.accumulate(latencyNanos);
+    }
+
+    void retry(int itemCount) {
+        retries.increment();
+        retriedItems.add(itemCount);
+    }
+
+    void failed(int itemCount) {
+        failedItems.add(itemCount);
+    }
+
+    synchronized void register(String name) {
+        unregister();
+        try {
+            objectName = new ObjectName("org.janusgraph.diskstorage.opensearch:type=RestBulkMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (Exception e) {
+            log.warn("Unable to register the bulk metrics of {} over JMX", name, e);
+            objectName = null;
+        }
+    }
+
+    synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception e) {
+            log.warn("Unable to unregister the bulk metrics {} from JMX", objectName, e);
+        }
+        objectName = null;
+    }
+
+    @Override
+    public long getChunks() {
+        return chunks.sum();
+    }
+
+    @Override
+    public long getItems() {
+        return items.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * Number of requests that sent rejected items again
+     */
+    @Override
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    @Override
+    public long getRetriedItems() {
+        return retriedItems.sum();
+    }
+
+    /**
+     * Items that still failed after all retries or with an error that is not retried
+     */
+    @Override
+    public long getFailedItems() {
+        return failedItems.sum();
+    }
+
+    @Override
+    public double getMeanLatencyMillis() {
+        final long count = chunks.sum();
+        return count == 0 ? 0 : (double) totalLatencyNanos.sum() / count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public double getMaxLatencyMillis() {
+        return (double) maxLatencyNanos.get() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        return "RestBulkMetrics{chunks=" + getChunks() + ", items=" + getItems() + ", bytes=" + getBytes() +
+            ", retries=" + getRetries() + ", retriedItems=" + getRetriedItems() + ", failedItems=" + getFailedItems() +
+            ", meanLatencyMillis=" + getMeanLatencyMillis() + ", maxLatencyMillis=" + getMaxLatencyMillis() + "}";
+    }
+}
@@ -0,0 +1,23 @@
+package org.janusgraph.diskstorage.opensearch.rest;
+
+/**
+ * JMX view of the {@link RestBulkMetrics} of a mixed index
+ */
+public interface RestBulkMetricsMBean {
+
+    long getChunks();
+
+    long getItems();
+
+    long getBytes();
+
+    long getRetries();
+
+    long getRetriedItems();
+
+    long getFailedItems();
+
+    double getMeanLatencyMillis();
+
+    double getMaxLatencyMillis();
+}
@@ -76,6 +76,16 @@ public class RestClientSetup {
         Integer retryOnConflict = config.has(OpenSearchIndex.RETRY_ON_CONFLICT) ? config.get(OpenSearchIndex.RETRY_ON_CONFLICT) : null;
         client.setRetryOnConflict(retryOnConflict);
 
+        final int bulkChunkSize = config.get(OpenSearchIndex.BULK_CHUNK_SIZE);
+        Preconditions.checkArgument(bulkChunkSize >= 1, "Bulk chunk size should be greater than or equal to 1");
+        final int bulkConcurrency = config.get(OpenSearchIndex.BULK_CONCURRENCY);
+        Preconditions.checkArgument(bulkConcurrency >= 1, "Bulk concurrency should be greater than or equal to 1");
+        final int bulkMaxRetries = config.get(OpenSearchIndex.BULK_MAX_RETRIES);
+        Preconditions.checkArgument(bulkMaxRetries >= 0, "Bulk max retries should be greater than or equal to 0");
+        client.setBulkChunking(bulkChunkSize, bulkConcurrency);
+        client.setBulkRetries(bulkMaxRetries, config.get(OpenSearchIndex.BULK_RETRY_INITIAL_WAIT));
+        client.registerBulkMetrics(OpenSearchIndex.determineIndexName(config));
+
         return client;
     }
 
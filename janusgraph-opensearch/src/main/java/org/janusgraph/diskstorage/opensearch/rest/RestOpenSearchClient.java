@@ -3,6 +3,7 @@ package org.janusgraph.diskstorage.opensearch.rest;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.HttpEntity;
 import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
@@ -19,6 +20,7 @@ import org.janusgraph.core.attribute.Geoshape;
 import org.janusgraph.diskstorage.opensearch.OpenMajorVersion;
 import org.janusgraph.diskstorage.opensearch.OpenSearchClient;
 import org.janusgraph.diskstorage.opensearch.OpenSearchMutation;
+import org.janusgraph.diskstorage.opensearch.OpenSearchStats;
 import org.janusgraph.diskstorage.opensearch.mapping.IndexMapping;
 import org.janusgraph.diskstorage.opensearch.mapping.TypedIndexMappings;
 import org.janusgraph.diskstorage.opensearch.mapping.TypelessIndexMappings;
@@ -33,12 +35,22 @@ import org.slf4j.LoggerFactory;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 import static org.janusgraph.util.encoding.StringEncoding.UTF8_CHARSET;
 
@@ -57,6 +69,9 @@ public class RestOpenSearchClient implements OpenSearchClient {
 
     public static final String INCLUDE_TYPE_NAME_PARAMETER = "include_type_name";
 
+    private static final int STATUS_CONFLICT = 409;
+    private static final int STATUS_TOO_MANY_REQUESTS = 429;
+
     private static final byte[] NEW_LINE_BYTES = "\n".getBytes(UTF8_CHARSET);
 
     private static final Request INFO_REQUEST = new Request(REQUEST_TYPE_GET, REQUEST_SEPARATOR);
@@ -97,6 +112,20 @@ public class RestOpenSearchClient implements OpenSearchClient {
 
     private final String retryOnConflictKey;
 
+    private int bulkChunkSize = Integer.MAX_VALUE;
+
+    private int bulkConcurrency = 1;
+
+    private Semaphore bulkPermits = new Semaphore(1);
+
+    private ExecutorService bulkExecutor;
+
+    private int bulkMaxRetries = 0;
+
+    private long bulkRetryInitialWait = 0;
+
+    private final RestBulkMetrics bulkMetrics = new RestBulkMetrics();
+
     public RestOpenSearchClient(RestClient delegate, int scrollKeepAlive, boolean useMappingTypesForES7) {
         this.delegate = delegate;
         majorVersion = getMajorVersion();
@@ -108,6 +137,12 @@ public class RestOpenSearchClient implements OpenSearchClient {
 
     @Override
     public void close() throws IOException {
+        bulkMetrics.unregister();
+        synchronized (this) {
+            if (bulkExecutor != null) {
+                bulkExecutor.shutdownNow();
+            }
+        }
         delegate.close();
     }
 
@@ -222,6 +257,18 @@ public class RestOpenSearchClient implements OpenSearchClient {
         }
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean supportsScript(String language, String context) throws IOException {
+        final Response response = performRequest(REQUEST_TYPE_GET, REQUEST_SEPARATOR + "_script_language", null);
+        try (final InputStream inputStream = response.getEntity().getContent()) {
+            final Map<String, Object> values = mapReader.readValue(inputStream);
+            final List<Map<String, Object>> languages = (List<Map<String, Object>>) values.get("language_contexts");
+            return languages != null && languages.stream().anyMatch(l -> language.equals(l.get("language"))
+                && ((List<Object>) l.get("contexts")).contains(context));
+        }
+    }
+
     @Override
     public void createIndex(String indexName, Map<String, Object> settings) throws IOException {
 
@@ -372,59 +419,330 @@ public class RestOpenSearchClient implements OpenSearchClient {
 
     @Override
     public void bulkRequest(List<OpenSearchMutation> requests, String ingestPipeline) throws IOException {
-        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final StringBuilder builder = new StringBuilder();
+        if (ingestPipeline != null) {
+            APPEND_OP.apply(builder).append("pipeline=").append(ingestPipeline);
+        }
+        if (bulkRefreshEnabled) {
+            APPEND_OP.apply(builder).append("refresh=").append(bulkRefresh);
+        }
+        builder.insert(0, REQUEST_SEPARATOR + "_bulk");
+        final String path = builder.toString();
+
+        // the mutations of a document always go to the same lane: lanes are sent in parallel, the chunks of a lane
+        // one after another, so a later mutation of a document never overtakes an earlier one
+        final int laneCount = Math.max(1, Math.min(bulkConcurrency, requests.size()));
+        final List<List<OpenSearchMutation>> lanes = new ArrayList<>(laneCount);
+        for (int i = 0; i < laneCount; i++) {
+            lanes.add(new ArrayList<>());
+        }
         for (final OpenSearchMutation request : requests) {
-            Map<String, Object> requestData = new HashMap<>();
-
-//            if (useMappingTypes) {
-//                requestData.put("_index", request.getIndex());
-//                requestData.put("_type", request.getType());
-//                requestData.put("_id", request.getId());
-//            } else {
-//                requestData.put("_index", request.getIndex());
-//                requestData.put("_id", request.getId());
-//            }
+            lanes.get(Math.floorMod(key(request).hashCode(), laneCount)).add(request);
+        }
 
-            requestData.put("_index", request.getIndex());
-            requestData.put("_id", request.getId());
+        final List<Object> errors = new ArrayList<>();
+        final List<Future<List<Object>>> sent = new ArrayList<>();
+        IOException failure = null;
+        try {
+            for (int i = 0; i < laneCount - 1; i++) {
+                if (!lanes.get(i).isEmpty()) {
+                    sent.add(submitBulkLane(path, lanes.get(i)));
+                }
+            }
+            errors.addAll(bulkLaneWithPermit(path, lanes.get(laneCount - 1)));
+        } catch (IOException e) {
+            failure = e;
+        }
 
-            if (retryOnConflict != null && request.getRequestType() == OpenSearchMutation.RequestType.UPDATE) {
-                requestData.put(retryOnConflictKey, retryOnConflict);
+        for (int i = 0; i < sent.size(); i++) {
+            try {
+                errors.addAll(sent.get(i).get());
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                sent.subList(i, sent.size()).forEach(future -> future.cancel(true));
+                if (failure == null) {
+                    failure = new InterruptedIOException("Interrupted while waiting for bulk requests");
+                }
+                break;
             }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        if (!errors.isEmpty()) {
+            errors.forEach(error -> log.error("Failed to execute ES query: {}", error));
+            throw new IOException("Failure(s) in Opensearch bulk request: " + errors);
+        }
+    }
 
-            outputStream.write(mapWriter.writeValueAsBytes(
-                ImmutableMap.of(request.getRequestType().name().toLowerCase(), requestData))
-            );
+    private static String key(OpenSearchMutation request) {
+        return request.getIndex() + "/" + request.getId();
+    }
+
+    /**
+     * Writes the action line and source line of one mutation in the bulk format
+     */
+    private void writeBulkItem(OpenSearchMutation request, ByteArrayOutputStream outputStream) throws IOException {
+        Map<String, Object> requestData = new HashMap<>();
+
+        requestData.put("_index", request.getIndex());
+        requestData.put("_id", request.getId());
+
+        if (retryOnConflict != null && request.getRequestType() == OpenSearchMutation.RequestType.UPDATE) {
+            requestData.put(retryOnConflictKey, retryOnConflict);
+        }
+
+        outputStream.write(mapWriter.writeValueAsBytes(
+            ImmutableMap.of(request.getRequestType().name().toLowerCase(), requestData))
+        );
+        outputStream.write(NEW_LINE_BYTES);
+        if (request.getSource() != null) {
+            outputStream.write(mapWriter.writeValueAsBytes(request.getSource()));
             outputStream.write(NEW_LINE_BYTES);
-            if (request.getSource() != null) {
-                outputStream.write(mapWriter.writeValueAsBytes(request.getSource()));
-                outputStream.write(NEW_LINE_BYTES);
-            }
         }
+    }
 
-        final StringBuilder builder = new StringBuilder();
-        if (ingestPipeline != null) {
-            APPEND_OP.apply(builder).append("pipeline=").append(ingestPipeline);
+    private Future<List<Object>> submitBulkLane(String path, List<OpenSearchMutation> items) throws IOException {
+        acquireBulkPermit();
+        try {
+            return getBulkExecutor().submit(() -> {
+                try {
+                    return bulkLane(path, items);
+                } finally {
+                    bulkPermits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            bulkPermits.release();
+            throw new IOException("Bulk executor is shut down", e);
         }
-        if (bulkRefreshEnabled) {
-            APPEND_OP.apply(builder).append("refresh=").append(bulkRefresh);
+    }
+
+    private List<Object> bulkLaneWithPermit(String path, List<OpenSearchMutation> items) throws IOException {
+        acquireBulkPermit();
+        try {
+            return bulkLane(path, items);
+        } finally {
+            bulkPermits.release();
         }
-        builder.insert(0, REQUEST_SEPARATOR + "_bulk");
+    }
+
+    private void acquireBulkPermit() throws IOException {
+        try {
+            bulkPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to send a bulk request");
+        }
+    }
+
+    private synchronized ExecutorService getBulkExecutor() {
+        if (bulkExecutor == null) {
+            bulkExecutor = Executors.newFixedThreadPool(bulkConcurrency,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("opensearch-bulk-%d").build());
+        }
+        return bulkExecutor;
+    }
 
-        final Response response = performRequest(REQUEST_TYPE_POST, builder.toString(), outputStream.toByteArray());
+    /**
+     * Sends the mutations of one lane in chunks of at most {@code bulkChunkSize} bytes, each chunk after the previous
+     * one has been acknowledged. A mutation is serialized only when its chunk is filled, and only the chunk keeps its bytes.
+     */
+    private List<Object> bulkLane(String path, List<OpenSearchMutation> mutations) throws IOException {
+        final List<Object> errors = new ArrayList<>();
+        final ByteArrayOutputStream item = new ByteArrayOutputStream();
+        BulkChunk chunk = new BulkChunk();
+        for (final OpenSearchMutation mutation : mutations) {
+            item.reset();
+            writeBulkItem(mutation, item);
+            if (!chunk.items.isEmpty() && chunk.size() + item.size() > bulkChunkSize) {
+                errors.addAll(bulkChunk(path, chunk));
+                chunk = new BulkChunk();
+            }
+            chunk.items.add(new BulkItem(key(mutation), chunk.size(), item.size()));
+            item.writeTo(chunk);
+        }
+        if (!chunk.items.isEmpty()) {
+            errors.addAll(bulkChunk(path, chunk));
+        }
+        return errors;
+    }
+
+    /**
+     * Sends one chunk and sends the items rejected with 429 or 409 again with an exponential backoff.
+     * <p>
+     * A request carries at most one pending mutation of each document, the later mutations of a document wait for
+     * the earlier one to be acknowledged. A rejected mutation therefore only holds back the mutations of its own
+     * document, which have not been sent yet, and mutations that succeeded are never sent again. This matters for
+     * scripted updates like the LIST addition, which append the value again each time they run.
+     *
+     * @return errors of the items that failed for another reason than a missing document or that are still rejected
+     * after {@code bulkMaxRetries} retries
+     */
+    private List<Object> bulkChunk(String path, BulkChunk chunk) throws IOException {
+        final long start = System.nanoTime();
+        final List<Object> errors = new ArrayList<>();
+        long bytes = 0;
+        int attempt = 0;
+        List<BulkItem> pending = chunk.items;
+        try {
+            while (!pending.isEmpty()) {
+                final List<BulkItem> batch = new ArrayList<>();
+                final Set<String> keys = new HashSet<>();
+                for (final BulkItem item : pending) {
+                    if (keys.add(item.key)) {
+                        batch.add(item);
+                    }
+                }
+                final byte[] body = chunk.body(batch);
+                bytes += body.length;
+                final List<BulkItem> rejected = new ArrayList<>();
+                final List<Object> rejections = new ArrayList<>();
+                final RestBulkResponse bulkResponse = sendBulk(path, body);
+                if (bulkResponse == null) {
+                    rejected.addAll(batch);
+                    rejections.add("Bulk request of " + batch.size() + " items rejected with status " + STATUS_TOO_MANY_REQUESTS);
+                } else {
+                    final List<Map<String, RestBulkResponse.RestBulkItemResponse>> responseItems = bulkResponse.getItems();
+                    for (int i = 0; i < responseItems.size(); i++) {
+                        final RestBulkResponse.RestBulkItemResponse item = responseItems.get(i).values().iterator().next();
+                        if (item.getStatus() == STATUS_TOO_MANY_REQUESTS || item.getStatus() == STATUS_CONFLICT) {
+                            rejected.add(batch.get(i));
+                            rejections.add(item.getError());
+                        } else if (item.getError() != null && item.getStatus() != 404) {
+                            errors.add(item.getError());
+                        }
+                    }
+                }
+                batch.forEach(item -> item.done = true);
+                if (!rejected.isEmpty()) {
+                    if (attempt >= bulkMaxRetries) {
+                        errors.addAll(rejections);
+                    } else {
+                        final long wait = bulkRetryInitialWait << Math.min(attempt, 20);
+                        attempt++;
+                        bulkMetrics.retry(rejected.size());
+                        log.debug("Retrying {} rejected bulk items in {} ms, attempt {} of {}", rejected.size(), wait, attempt, bulkMaxRetries);
+                        try {
+                            Thread.sleep(wait);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException("Interrupted while waiting to retry rejected bulk items");
+                        }
+                        rejected.forEach(item -> item.done = false);
+                    }
+                }
+                final List<BulkItem> next = new ArrayList<>(pending.size() - batch.size() + rejected.size());
+                for (final BulkItem item : pending) {
+                    if (!item.done) {
+                        next.add(item);
+                    }
+                }
+                pending = next;
+            }
+        } finally {
+            final long latency = System.nanoTime() - start;
+            bulkMetrics.chunk(chunk.items.size(), bytes, latency);
+            log.debug("Bulk chunk of {} items ({} bytes) took {} ms with {} retries", chunk.items.size(), bytes,
+                TimeUnit.NANOSECONDS.toMillis(latency), attempt);
+        }
+        bulkMetrics.failed(errors.size());
+        return errors;
+    }
+
+    /**
+     * @return the response or null if the whole request was rejected with 429
+     */
+    private RestBulkResponse sendBulk(String path, byte[] body) throws IOException {
+        final Response response;
+        try {
+            response = performRequest(REQUEST_TYPE_POST, path, body);
+        } catch (ResponseException e) {
+            if (e.getResponse().getStatusLine().getStatusCode() == STATUS_TOO_MANY_REQUESTS) {
+                return null;
+            }
+            throw e;
+        }
         try (final InputStream inputStream = response.getEntity().getContent()) {
-            final RestBulkResponse bulkResponse = mapper.readValue(inputStream, RestBulkResponse.class);
-            final List<Object> errors = bulkResponse.getItems().stream()
-                .flatMap(item -> item.values().stream())
-                .filter(item -> item.getError() != null && item.getStatus() != 404)
-                .map(RestBulkResponse.RestBulkItemResponse::getError).collect(Collectors.toList());
-            if (!errors.isEmpty()) {
-                errors.forEach(error -> log.error("Failed to execute ES query: {}", error));
-                throw new IOException("Failure(s) in Opensearch bulk request: " + errors);
+            return mapper.readValue(inputStream, RestBulkResponse.class);
+        }
+    }
+
+    /**
+     * The serialized mutations of one chunk, one after another
+     */
+    private static final class BulkChunk extends ByteArrayOutputStream {
+
+        private final List<BulkItem> items = new ArrayList<>();
+
+        /**
+         * Request body of the given items of this chunk
+         */
+        private byte[] body(List<BulkItem> batch) {
+            if (batch.size() == items.size()) {
+                return toByteArray();
             }
+            int size = 0;
+            for (final BulkItem item : batch) {
+                size += item.length;
+            }
+            final byte[] body = new byte[size];
+            int offset = 0;
+            for (final BulkItem item : batch) {
+                System.arraycopy(buf, item.offset, body, offset, item.length);
+                offset += item.length;
+            }
+            return body;
         }
     }
 
+    /**
+     * Position of one serialized mutation in its chunk and the index and id of the document it applies to
+     */
+    private static final class BulkItem {
+
+        private final String key;
+        private final int offset;
+        private final int length;
+        // acknowledged, or failed for good
+        private boolean done;
+
+        private BulkItem(String key, int offset, int length) {
+            this.key = key;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    public void setBulkChunking(int bulkChunkSize, int bulkConcurrency) {
+        this.bulkChunkSize = bulkChunkSize;
+        this.bulkConcurrency = bulkConcurrency;
+        this.bulkPermits = new Semaphore(bulkConcurrency);
+    }
+
+    public void setBulkRetries(int bulkMaxRetries, long bulkRetryInitialWait) {
+        this.bulkMaxRetries = bulkMaxRetries;
+        this.bulkRetryInitialWait = bulkRetryInitialWait;
+    }
+
+    /**
+     * Chunk latency, size and retry counters of all bulk requests sent by this client
+     */
+    public RestBulkMetrics getBulkMetrics() {
+        return bulkMetrics;
+    }
+
+    /**
+     * Publishes the bulk metrics of this client over JMX under the given name until the client is closed
+     */
+    public void registerBulkMetrics(String name) {
+        bulkMetrics.register(name);
+    }
+
     public void setRetryOnConflict(Integer retryOnConflict) {
         this.retryOnConflict = retryOnConflict;
     }
@@ -474,24 +792,44 @@ public class RestOpenSearchClient implements OpenSearchClient {
         }
     }
 
-    private Number adaptNumberType(double value, Class<? extends Number> expectedType) {
-        if (expectedType == null) return value;
-        else if (Byte.class.isAssignableFrom(expectedType)) return (byte) value;
-        else if (Short.class.isAssignableFrom(expectedType)) return (short) value;
-        else if (Integer.class.isAssignableFrom(expectedType)) return (int) value;
-        else if (Long.class.isAssignableFrom(expectedType)) return (long) value;
-        else if (Float.class.isAssignableFrom(expectedType)) return (float) value;
-        else return value;
+    @Override
+    @SuppressWarnings("unchecked")
+    public OpenSearchStats stats(String indexName, Map<String, Object> requestData, String fieldName) throws IOException {
+
+        final Request request = new Request(REQUEST_TYPE_GET, REQUEST_SEPARATOR + indexName + REQUEST_SEPARATOR + "_search");
+
+        requestData.put("size", 0);
+        requestData.put("track_total_hits", true);
+        requestData.put("aggs", ImmutableMap.of("agg_result", ImmutableMap.of("stats", ImmutableMap.of("field", fieldName))));
+        final byte[] requestDataBytes = mapper.writeValueAsBytes(requestData);
+        if (log.isDebugEnabled()) {
+            log.debug("Opensearch request: " + mapper.writerWithDefaultPrettyPrinter().writeValueAsString(requestData));
+        }
+
+        final Response response = performRequest(request, requestDataBytes);
+        try (final InputStream inputStream = response.getEntity().getContent()) {
+            final Map<String, Object> values = mapReader.readValue(inputStream);
+            final Map<String, Object> total = (Map<String, Object>) ((Map<String, Object>) values.get("hits")).get("total");
+            final Map<String, Object> stats = (Map<String, Object>) ((Map<String, Object>) values.get("aggregations")).get("agg_result");
+            return new OpenSearchStats(((Number) total.get("value")).longValue(),
+                doubleValue(stats.get("min")), doubleValue(stats.get("max")),
+                doubleValue(stats.get("avg")), doubleValue(stats.get("sum")));
+        }
+    }
+
+    private static double doubleValue(Object value) {
+        // min, max and avg are null when no document has the field
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
     }
 
     @Override
     public Number min(String indexName, Map<String, Object> requestData, String fieldName, Class<? extends Number> expectedType) throws IOException {
-        return adaptNumberType(executeAggs(indexName, requestData, "min", fieldName), expectedType);
+        return OpenSearchStats.adaptNumberType(executeAggs(indexName, requestData, "min", fieldName), expectedType);
     }
 
     @Override
     public Number max(String indexName, Map<String, Object> requestData, String fieldName, Class<? extends Number> expectedType) throws IOException {
-        return adaptNumberType(executeAggs(indexName, requestData, "max", fieldName), expectedType);
+        return OpenSearchStats.adaptNumberType(executeAggs(indexName, requestData, "max", fieldName), expectedType);
     }
 
     @Override
@@ -501,12 +839,7 @@ public class RestOpenSearchClient implements OpenSearchClient {
 
     @Override
     public Number sum(String indexName, Map<String, Object> requestData, String fieldName, Class<? extends Number> expectedType) throws IOException {
-        Class<? extends Number> returnType;
-        double sum = executeAggs(indexName, requestData, "sum", fieldName);
-        if (Float.class.isAssignableFrom(expectedType) || Double.class.isAssignableFrom(expectedType))
-            return sum;
-        else
-            return (long) sum;
+        return OpenSearchStats.adaptSumType(executeAggs(indexName, requestData, "sum", fieldName), expectedType);
     }
 
     @Override
@@ -532,6 +865,30 @@ public class RestOpenSearchClient implements OpenSearchClient {
         delegate.performRequest(new Request(REQUEST_TYPE_DELETE, REQUEST_SEPARATOR + "_search" + REQUEST_SEPARATOR + "scroll" + REQUEST_SEPARATOR + scrollId));
     }
 
+    @Override
+    public String createPointInTime(String indexName) throws IOException {
+        final Request request = new Request(REQUEST_TYPE_POST,
+            REQUEST_SEPARATOR + indexName + REQUEST_SEPARATOR + "_search" + REQUEST_SEPARATOR + "point_in_time");
+        request.addParameter("keep_alive", scrollKeepAlive);
+        final Response response = performRequest(request, null);
+        try (final InputStream inputStream = response.getEntity().getContent()) {
+            final Map<String, Object> values = mapReader.readValue(inputStream);
+            return (String) values.get("pit_id");
+        }
+    }
+
+    @Override
+    public RestSearchResponse searchPointInTime(String pitId, Map<String, Object> requestData) throws IOException {
+        requestData.put("pit", ImmutableMap.of("id", pitId, "keep_alive", scrollKeepAlive));
+        return search(requestData, REQUEST_SEPARATOR + "_search");
+    }
+
+    @Override
+    public void deletePointInTime(String pitId) throws IOException {
+        performRequest(REQUEST_TYPE_DELETE, REQUEST_SEPARATOR + "_search" + REQUEST_SEPARATOR + "point_in_time",
+            mapWriter.writeValueAsBytes(ImmutableMap.of("pit_id", ImmutableList.of(pitId))));
+    }
+
     public void setBulkRefresh(String bulkRefresh) {
         this.bulkRefresh = bulkRefresh;
         bulkRefreshEnabled = bulkRefresh != null && !bulkRefresh.equalsIgnoreCase("false");
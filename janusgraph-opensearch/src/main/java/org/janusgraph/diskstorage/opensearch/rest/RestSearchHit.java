@@ -26,6 +26,8 @@ public class RestSearchHit {
 
     private Map<String,List<Object>> fields;
 
+    private List<Object> sort;
+
     public String getIndex() {
         return index;
     }
@@ -74,4 +76,12 @@ public class RestSearchHit {
         return this.fields != null ? this.fields.get(name) : null;
     }
 
+    public List<Object> getSort() {
+        return sort;
+    }
+
+    public void setSort(List<Object> sort) {
+        this.sort = sort;
+    }
+
 }
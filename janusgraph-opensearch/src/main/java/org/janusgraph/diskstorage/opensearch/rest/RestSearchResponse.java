@@ -5,6 +5,8 @@ import org.apache.tinkerpop.shaded.jackson.annotation.JsonProperty;
 import org.janusgraph.diskstorage.indexing.RawQuery;
 import org.janusgraph.diskstorage.opensearch.OpenSearchResponse;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.stream.Stream;
 
 @JsonIgnoreProperties(ignoreUnknown=true)
@@ -18,6 +20,9 @@ public class RestSearchResponse extends OpenSearchResponse {
     @JsonProperty("_scroll_id")
     private String scrollId;
 
+    @JsonProperty("pit_id")
+    private String pitId;
+
     @Override
     public long getTook() {
         return took;
@@ -64,4 +69,20 @@ public class RestSearchResponse extends OpenSearchResponse {
     public void setScrollId(String scrollId) {
         this.scrollId = scrollId;
     }
+
+    @Override
+    public String getPitId() {
+        return pitId;
+    }
+
+    @Override
+    public void setPitId(String pitId) {
+        this.pitId = pitId;
+    }
+
+    @Override
+    public List<Object> getLastSortValues() {
+        final List<RestSearchHit> searchHits = hits.getHits();
+        return searchHits.isEmpty() ? Collections.emptyList() : searchHits.get(searchHits.size() - 1).getSort();
+    }
 }
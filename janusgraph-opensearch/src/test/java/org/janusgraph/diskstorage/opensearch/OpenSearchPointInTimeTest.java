@@ -0,0 +1,170 @@
+package org.janusgraph.diskstorage.opensearch;
+
+import org.janusgraph.diskstorage.indexing.RawQuery;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class OpenSearchPointInTimeTest {
+
+    private final Deque<Object> pages = new ArrayDeque<>();
+    private final List<String> searchedPits = new ArrayList<>();
+    private final List<Map<String, Object>> requests = new ArrayList<>();
+    private final List<String> deletedPits = new ArrayList<>();
+
+    // only the point in time calls are used by the iterator
+    @SuppressWarnings("unchecked")
+    private final OpenSearchClient client = (OpenSearchClient) Proxy.newProxyInstance(
+        OpenSearchClient.class.getClassLoader(), new Class<?>[]{OpenSearchClient.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "searchPointInTime":
+                    searchedPits.add((String) args[0]);
+                    requests.add(new HashMap<>((Map<String, Object>) args[1]));
+                    final Object page = pages.remove();
+                    if (page instanceof IOException) {
+                        throw (IOException) page;
+                    }
+                    return page;
+                case "deletePointInTime":
+                    deletedPits.add((String) args[0]);
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+
+    @Test
+    public void pagesWithSearchAfterUntilShortPage() {
+        pages.add(page(2, 4, null));
+        pages.add(page(4, 5, null));
+
+        final OpenSearchPointInTime iterator = new OpenSearchPointInTime(client, "pit", firstRequest(), 2, Long.MAX_VALUE,
+            page(0, 2, null), Runnable::run);
+
+        assertEquals(ids(0, 5), drain(iterator));
+        assertEquals(2, requests.size());
+        for (Map<String, Object> request : requests) {
+            assertFalse(request.containsKey("from"));
+            assertEquals(2, request.get("size"));
+        }
+        assertEquals(Collections.singletonList("1"), requests.get(0).get("search_after"));
+        assertEquals(Collections.singletonList("3"), requests.get(1).get("search_after"));
+        assertEquals(Collections.singletonList("pit"), deletedPits);
+    }
+
+    @Test
+    public void stopsAtTheLimit() {
+        pages.add(page(3, 5, null));
+
+        final OpenSearchPointInTime iterator = new OpenSearchPointInTime(client, "pit", firstRequest(), 3, 5,
+            page(0, 3, null), Runnable::run);
+
+        assertEquals(ids(0, 5), drain(iterator));
+        // the last page only asks for the rest of the limit
+        assertEquals(2, requests.get(0).get("size"));
+        assertEquals(Collections.singletonList("pit"), deletedPits);
+    }
+
+    @Test
+    public void followsTheUpdatedPointInTimeId() {
+        pages.add(page(2, 4, "pit-3"));
+        pages.add(page(4, 4, null));
+
+        final OpenSearchPointInTime iterator = new OpenSearchPointInTime(client, "pit-1", firstRequest(), 2, Long.MAX_VALUE,
+            page(0, 2, "pit-2"), Runnable::run);
+
+        assertEquals(ids(0, 4), drain(iterator));
+        assertEquals(Arrays.asList("pit-2", "pit-3"), searchedPits);
+        assertEquals(Collections.singletonList("pit-3"), deletedPits);
+    }
+
+    @Test
+    public void closeKeepsTheCurrentPageAndDeletesThePointInTimeOnce() {
+        pages.add(page(2, 4, null));
+
+        final OpenSearchPointInTime iterator = new OpenSearchPointInTime(client, "pit", firstRequest(), 2, Long.MAX_VALUE,
+            page(0, 2, null), Runnable::run);
+        iterator.close();
+        iterator.close();
+
+        assertEquals(ids(0, 2), drain(iterator));
+        assertEquals(Collections.singletonList("pit"), deletedPits);
+    }
+
+    @Test
+    public void failedPageDeletesThePointInTime() {
+        pages.add(new IOException("search failed"));
+
+        final OpenSearchPointInTime iterator = new OpenSearchPointInTime(client, "pit", firstRequest(), 2, Long.MAX_VALUE,
+            page(0, 2, null), Runnable::run);
+        iterator.next();
+        iterator.next();
+
+        assertThrows(UncheckedIOException.class, iterator::hasNext);
+        assertEquals(Collections.singletonList("pit"), deletedPits);
+    }
+
+    @Test
+    public void emptyFirstPage() {
+        final OpenSearchPointInTime iterator = new OpenSearchPointInTime(client, "pit", firstRequest(), 2, Long.MAX_VALUE,
+            page(0, 0, null), Runnable::run);
+
+        assertFalse(iterator.hasNext());
+        assertThrows(NoSuchElementException.class, iterator::next);
+        assertTrue(requests.isEmpty());
+        assertEquals(Collections.singletonList("pit"), deletedPits);
+    }
+
+    private static Map<String, Object> firstRequest() {
+        final Map<String, Object> request = new HashMap<>();
+        request.put("from", 0);
+        request.put("size", 2);
+        request.put("sort", Collections.singletonList("_id"));
+        return request;
+    }
+
+    /**
+     * Response holding the documents {@code from} to {@code to} (exclusive), sorted by their id.
+     */
+    private static OpenSearchResponse page(int from, int to, String pitId) {
+        final OpenSearchResponse response = new OpenSearchResponse();
+        response.setResults(IntStream.range(from, to)
+            .mapToObj(id -> new RawQuery.Result<>(String.valueOf(id), 1.0))
+            .collect(Collectors.toList()));
+        response.setPitId(pitId);
+        if (to > from) {
+            response.setLastSortValues(Collections.singletonList(String.valueOf(to - 1)));
+        }
+        return response;
+    }
+
+    private static List<String> ids(int from, int to) {
+        return IntStream.range(from, to).mapToObj(String::valueOf).collect(Collectors.toList());
+    }
+
+    private static List<String> drain(OpenSearchPointInTime iterator) {
+        final List<String> ids = new ArrayList<>();
+        while (iterator.hasNext()) {
+            ids.add(iterator.next().getResult());
+        }
+        return ids;
+    }
+}
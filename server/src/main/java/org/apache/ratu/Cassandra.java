@@ -8,6 +8,7 @@
 
 package org.apache.ratu;
 
+import org.apache.cassandra.service.StorageService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,6 +17,17 @@ public class Cassandra {
     private static final Logger logger = LoggerFactory.getLogger(Cassandra.class);
 
     public static void active() {
+        try {
+            launch();
+        } catch (Exception e) {
+            logger.error("Cassandra 启动错误:",e);
+        }
+    }
+
+    /**
+     * 启动 Cassandra，失败时抛出异常
+     */
+    public static void launch() throws Exception {
         String cassandraHome = System.getProperty("opensearch.path.home");
         String cassandraConfig=System.getProperty("opensearch.path.conf");
         System.setProperty("cassandra.config", "file://"+cassandraConfig+"/cassandra.yaml");
@@ -24,11 +36,14 @@ public class Cassandra {
         System.setProperty("cassandra.logdir",System.getProperty("opensearch.logs.base_path"));
         System.setProperty("java.library.path",cassandraHome+"/lib/sigar-bin");
 
-        try {
-            org.apache.cassandra.service.CassandraDaemon daemon = new org.apache.cassandra.service.CassandraDaemon();
-            daemon.activate();
-        } catch (Exception e) {
-            logger.error("Cassandra 启动错误:",e);
-        }
+        org.apache.cassandra.service.CassandraDaemon daemon = new org.apache.cassandra.service.CassandraDaemon();
+        daemon.activate();
+    }
+
+    /**
+     * commitlog 重放完成且 CQL 端口已开始服务
+     */
+    public static boolean isReady() {
+        return StorageService.instance.isNativeTransportRunning();
     }
 }
@@ -14,6 +14,8 @@ import io.grpc.Server;
 import io.grpc.ServerBuilder;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.Scriptengines;
+import org.apache.ratu.graph.LocalOpenSearchClient;
+import org.apache.ratu.graph.VirtualThreadGremlinExecutor;
 import org.apache.tinkerpop.gremlin.server.GraphManager;
 import org.apache.tinkerpop.gremlin.server.GremlinServer;
 import org.apache.tinkerpop.gremlin.server.Settings;
@@ -32,6 +34,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
 
 public class JanusgraphServer {
 
@@ -46,6 +50,8 @@ public class JanusgraphServer {
     private Server grpcServer = null;
     public static final String MANIFEST_JANUSGRAPH_VERSION_ATTRIBUTE = "janusgraphVersion";
     public static final String MANIFEST_TINKERPOP_VERSION_ATTRIBUTE = "tinkerpopVersion";
+    public static final String VIRTUAL_THREADS_PROPERTY = "ratu.janusgraph.virtual_threads";
+    public static final String MAX_CONCURRENCY_PROPERTY = "ratu.janusgraph.max_concurrency";
 
     private final String cassandraConfigFile;
 
@@ -55,28 +61,36 @@ public class JanusgraphServer {
     }
 
     public static void active() {
-
         try {
-            String janusgraphConfig = System.getProperty("opensearch.path.conf");
-            String janusgraphHome = System.getProperty("opensearch.path.home");
-            String file = janusgraphConfig + "/gremlin-server-cql-opensearch.yaml";
-            System.setProperty("log4j2.configurationFile", "file:" + janusgraphConfig + "/log4j2.xml");
-            System.setProperty("javaagent", janusgraphHome + "/lib/jamm-0.3.2.jar");
-            String cassandraYaml = janusgraphConfig + "/cassandra.yaml";
-            printHeader();
-
-            JanusgraphServer janusGraphServer = new JanusgraphServer(file, cassandraYaml);
-            janusGraphServer.start().exceptionally(t -> {
-                logger.error("JanusGraph Server was unable to start and will now begin shutdown", t);
-                janusGraphServer.stop().join();
-                return null;
-            }).join();
-
+            launch();
         } catch (Exception e) {
             logger.error("JanusgraphServer 启动错误:", e);
         }
     }
 
+    /**
+     * 启动 JanusGraph Server，Gremlin Server 开始服务后返回，失败时关闭已启动的部分并抛出异常
+     */
+    public static void launch() throws Exception {
+        String janusgraphConfig = System.getProperty("opensearch.path.conf");
+        String janusgraphHome = System.getProperty("opensearch.path.home");
+        String file = janusgraphConfig + "/gremlin-server-cql-opensearch.yaml";
+        System.setProperty("log4j2.configurationFile", "file:" + janusgraphConfig + "/log4j2.xml");
+        System.setProperty("javaagent", janusgraphHome + "/lib/jamm-0.3.2.jar");
+        String cassandraYaml = janusgraphConfig + "/cassandra.yaml";
+        printHeader();
+        // 混合索引配置为 LOCAL_NODE 时直接调用本节点的 transport action
+        LocalOpenSearchClient.register();
+
+        JanusgraphServer janusGraphServer = new JanusgraphServer(file, cassandraYaml);
+        janusGraphServer.start().whenComplete((v, t) -> {
+            if (t != null) {
+                logger.error("JanusGraph Server was unable to start and will now begin shutdown", t);
+                janusGraphServer.stop().join();
+            }
+        }).join();
+    }
+
 
     private Server createGrpcServer(JanusGraphSettings janusGraphSettings, GraphManager graphManager) {
         JanusGraphContextHandler janusGraphContextHandler = new JanusGraphContextHandler(graphManager);
@@ -97,7 +111,9 @@ public class JanusgraphServer {
 
                 //this.janusGraphSettings = JanusGraphSettings.read(this.confPath);
 
-                this.gremlinServer = new GremlinServer(this.janusGraphSettings);
+                ExecutorService evaluationExecutor = createEvaluationExecutor();
+                this.gremlinServer = evaluationExecutor == null ? new GremlinServer(this.janusGraphSettings)
+                    : new GremlinServer(this.janusGraphSettings, evaluationExecutor);
                 CompletableFuture<Void> grpcServerFuture = CompletableFuture.completedFuture((Void) null);
                 if (this.janusGraphSettings.getGrpcServer().isEnabled()) {
                     grpcServerFuture = CompletableFuture.runAsync(() -> {
@@ -254,6 +270,24 @@ public class JanusgraphServer {
         this.janusGraphSettings.writeBufferLowWaterMark = DatabaseDescriptor.getJanusgraph_writebufferlowwatermark();
     }
 
+    /**
+     * 配置 -Dratu.janusgraph.virtual_threads=true 时 Gremlin 脚本在虚拟线程上执行，同时执行的脚本数由
+     * ratu.janusgraph.max_concurrency 限制；未配置或 JDK 不支持虚拟线程时返回 null，使用 Gremlin Server 的线程池
+     */
+    private ExecutorService createEvaluationExecutor() {
+        if (!Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY)) {
+            return null;
+        }
+        ThreadFactory threadFactory = VirtualThreadGremlinExecutor.virtualThreadFactory("gremlin-virtual-");
+        if (threadFactory == null) {
+            logger.warn("{} 需要 JDK 21 及以上版本，使用 Gremlin Server 线程池", VIRTUAL_THREADS_PROPERTY);
+            return null;
+        }
+        int maxConcurrency = Integer.getInteger(MAX_CONCURRENCY_PROPERTY, Runtime.getRuntime().availableProcessors() * 32);
+        logger.info("Gremlin 脚本在虚拟线程上执行，最大并发 {}，最大排队 {}", maxConcurrency, this.janusGraphSettings.maxWorkQueueSize);
+        return new VirtualThreadGremlinExecutor(threadFactory, maxConcurrency, this.janusGraphSettings.maxWorkQueueSize);
+    }
+
     private static void configure(ServerGremlinExecutor serverGremlinExecutor) {
         GraphManager graphManager = serverGremlinExecutor.getGraphManager();
         if (graphManager instanceof JanusGraphManager) {
@@ -0,0 +1,386 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu;
+
+import org.apache.ratu.second.esclient.LocalNode;
+import org.opensearch.cluster.ClusterState;
+import org.opensearch.cluster.health.ClusterHealthStatus;
+import org.opensearch.cluster.health.ClusterStateHealth;
+import org.opensearch.gateway.GatewayService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * 按依赖关系并行启动 OpenSearch、Cassandra、JanusGraph。
+ * <p>
+ * 每个阶段在自己的线程上执行：所有依赖就绪后执行启动动作，动作返回后轮询就绪探测，探测通过才算就绪，
+ * 依赖它的阶段随即开始；任一阶段失败或就绪超时，依赖它的阶段不再启动。
+ * 用 {@link #tolerantPhase} 添加的阶段就绪超时后只输出警告（状态为 DEGRADED），依赖它的阶段照常启动；
+ * 用 {@link #patientPhase} 添加的阶段就绪超时后输出警告并继续等待，依赖它的阶段等到它就绪后启动。
+ * 全部阶段结束后输出每个阶段等待依赖、启动、等待就绪的耗时。
+ */
+public class RatuStartup {
+
+    private static final Logger logger = LoggerFactory.getLogger(RatuStartup.class);
+
+    public static final String READY_TIMEOUT_PROPERTY = "ratu.startup.ready_timeout_seconds";
+
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    // JanusGraph 未设置 index.[X].index-name 时的索引名
+    private static final String DEFAULT_GRAPH_INDEX_NAME = "janusgraph";
+
+    private static final Pattern GRAPH_INDEX_KEY = Pattern.compile("index\\.([^.]+)\\..+");
+
+    /**
+     * 阶段的启动动作
+     */
+    @FunctionalInterface
+    public interface Action {
+        void run() throws Exception;
+    }
+
+    public enum State {
+        PENDING, STARTING, WAITING_READY, READY, DEGRADED, FAILED, SKIPPED
+    }
+
+    /**
+     * 就绪超时后的处理
+     */
+    private enum OnTimeout {
+        // 阶段失败，依赖它的阶段跳过
+        FAIL,
+        // 状态为 DEGRADED，依赖它的阶段照常启动
+        DEGRADE,
+        // 输出警告并继续等待
+        KEEP_WAITING
+    }
+
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+    private final long readyTimeoutMillis;
+    private long startNanos;
+
+    public RatuStartup() {
+        this(TimeUnit.SECONDS.toMillis(Long.getLong(READY_TIMEOUT_PROPERTY, 600)));
+    }
+
+    public RatuStartup(long readyTimeoutMillis) {
+        this.readyTimeoutMillis = readyTimeoutMillis;
+    }
+
+    /**
+     * 添加一个阶段，依赖必须是已经添加的阶段
+     *
+     * @param action    启动动作，为 null 时只等待就绪
+     * @param readiness 就绪探测，为 null 时启动动作返回即就绪
+     */
+    public RatuStartup phase(String name, Action action, BooleanSupplier readiness, String... dependencies) {
+        return addPhase(name, action, readiness, OnTimeout.FAIL, dependencies);
+    }
+
+    /**
+     * 添加一个只等待就绪的阶段，就绪超时后输出警告，依赖它的阶段仍然启动
+     */
+    public RatuStartup tolerantPhase(String name, BooleanSupplier readiness, String... dependencies) {
+        return addPhase(name, null, readiness, OnTimeout.DEGRADE, dependencies);
+    }
+
+    /**
+     * 添加一个不会因就绪超时而失败的阶段：每次超时输出警告并继续等待，用于依赖它的阶段无法在它未就绪时启动，
+     * 而它迟早会就绪的情况（如等待选出集群管理节点）
+     */
+    public RatuStartup patientPhase(String name, Action action, BooleanSupplier readiness, String... dependencies) {
+        return addPhase(name, action, readiness, OnTimeout.KEEP_WAITING, dependencies);
+    }
+
+    private RatuStartup addPhase(String name, Action action, BooleanSupplier readiness, OnTimeout onTimeout, String... dependencies) {
+        if (phases.containsKey(name)) {
+            throw new IllegalArgumentException("启动阶段 [" + name + "] 重复");
+        }
+        List<Phase> depends = new ArrayList<>(dependencies.length);
+        for (String dependency : dependencies) {
+            Phase phase = phases.get(dependency);
+            if (phase == null) {
+                throw new IllegalArgumentException("启动阶段 [" + name + "] 依赖的 [" + dependency + "] 不存在");
+            }
+            depends.add(phase);
+        }
+        phases.put(name, new Phase(name, action, readiness, onTimeout, depends));
+        return this;
+    }
+
+    /**
+     * 启动所有阶段，返回的 future 在所有阶段结束（就绪、失败或跳过）后完成
+     */
+    public synchronized CompletableFuture<Void> start() {
+        startNanos = System.nanoTime();
+        for (Phase phase : phases.values()) {
+            CompletableFuture<?>[] depends = phase.dependencies.stream().map(d -> d.ready).toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(depends).whenComplete((v, t) -> {
+                if (t != null) {
+                    phase.skip(t);
+                } else {
+                    // 各子系统创建的线程继承启动线程的 daemon 属性，与 main 线程一致
+                    Thread thread = new Thread(phase::run, "ratu-startup-" + phase.name);
+                    thread.setDaemon(false);
+                    thread.start();
+                }
+            });
+        }
+        CompletableFuture<?>[] all = phases.values().stream()
+            .map(phase -> phase.ready.handle((v, t) -> null))
+            .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(all).thenRun(this::report);
+    }
+
+    /**
+     * 阶段当前状态，用于健康检查
+     */
+    public State state(String name) {
+        Phase phase = phases.get(name);
+        if (phase == null) {
+            throw new IllegalArgumentException("启动阶段 [" + name + "] 不存在");
+        }
+        return phase.state;
+    }
+
+    /**
+     * 所有阶段都已就绪
+     */
+    public boolean isReady() {
+        return phases.values().stream().allMatch(phase -> phase.state == State.READY);
+    }
+
+    /**
+     * 所有阶段都没有失败或被跳过，DEGRADED 的阶段不影响健康状态
+     */
+    public boolean isHealthy() {
+        return phases.values().stream().noneMatch(phase -> phase.state == State.FAILED || phase.state == State.SKIPPED);
+    }
+
+    private void report() {
+        for (Phase phase : phases.values()) {
+            logger.info("启动阶段 [{}] {}：等待依赖 {} ms，启动 {} ms，等待就绪 {} ms，结束于 {} ms",
+                phase.name, phase.state, millis(phase.waitNanos), millis(phase.actionNanos), millis(phase.readyNanos),
+                millis(phase.finishedNanos - startNanos));
+        }
+        logger.info("启动{}，总耗时 {} ms", isReady() ? "完成" : "未完成", millis(System.nanoTime() - startNanos));
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(Math.max(nanos, 0));
+    }
+
+    private final class Phase {
+
+        final String name;
+        final Action action;
+        final BooleanSupplier readiness;
+        final OnTimeout onTimeout;
+        final List<Phase> dependencies;
+        final CompletableFuture<Void> ready = new CompletableFuture<>();
+
+        volatile State state = State.PENDING;
+        long waitNanos;
+        long actionNanos;
+        long readyNanos;
+        long finishedNanos;
+
+        Phase(String name, Action action, BooleanSupplier readiness, OnTimeout onTimeout, List<Phase> dependencies) {
+            this.name = name;
+            this.action = action;
+            this.readiness = readiness;
+            this.onTimeout = onTimeout;
+            this.dependencies = dependencies;
+        }
+
+        void run() {
+            long started = System.nanoTime();
+            waitNanos = started - startNanos;
+            try {
+                state = State.STARTING;
+                logger.info("启动阶段 [{}] 开始", name);
+                if (action != null) {
+                    action.run();
+                }
+                long actionDone = System.nanoTime();
+                actionNanos = actionDone - started;
+                state = State.WAITING_READY;
+                boolean isReady = awaitReady();
+                readyNanos = System.nanoTime() - actionDone;
+                if (isReady) {
+                    finish(State.READY);
+                    logger.info("启动阶段 [{}] 就绪", name);
+                } else {
+                    finish(State.DEGRADED);
+                    logger.warn("启动阶段 [{}] {} ms 内未就绪，依赖它的阶段继续启动", name, readyTimeoutMillis);
+                }
+                ready.complete(null);
+            } catch (Throwable t) {
+                finish(State.FAILED);
+                logger.error("启动阶段 [{}] 失败:", name, t);
+                ready.completeExceptionally(t);
+            }
+        }
+
+        /**
+         * 等待就绪探测通过；超时时 DEGRADE 的阶段返回 false，KEEP_WAITING 的阶段继续等待，其他阶段抛出 TimeoutException
+         */
+        private boolean awaitReady() throws Exception {
+            if (readiness == null) {
+                return true;
+            }
+            long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(readyTimeoutMillis);
+            long deadline = System.nanoTime() + timeoutNanos;
+            while (!probe()) {
+                if (System.nanoTime() - deadline > 0) {
+                    switch (onTimeout) {
+                        case DEGRADE:
+                            return false;
+                        case KEEP_WAITING:
+                            logger.warn("启动阶段 [{}] 已等待 {} ms 仍未就绪，继续等待", name, millis(System.nanoTime() - startNanos));
+                            deadline += timeoutNanos;
+                            break;
+                        default:
+                            throw new TimeoutException("启动阶段 [" + name + "] " + readyTimeoutMillis + " ms 内未就绪");
+                    }
+                }
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            }
+            return true;
+        }
+
+        private boolean probe() {
+            try {
+                return readiness.getAsBoolean();
+            } catch (RuntimeException e) {
+                logger.debug("启动阶段 [{}] 就绪探测异常", name, e);
+                return false;
+            }
+        }
+
+        void skip(Throwable cause) {
+            finish(State.SKIPPED);
+            Throwable reason = cause instanceof CompletionException && cause.getCause() != null ? cause.getCause() : cause;
+            logger.error("依赖未就绪，启动阶段 [{}] 跳过: {}", name, reason.toString());
+            ready.completeExceptionally(reason);
+        }
+
+        private void finish(State finalState) {
+            finishedNanos = System.nanoTime();
+            state = finalState;
+        }
+    }
+
+    /**
+     * OpenSearch 节点已启动且集群状态已恢复，索引是否存在等元数据可以查询，分片可能还在恢复
+     */
+    public static boolean openSearchStarted() {
+        if (!LocalNode.isStarted()) {
+            return false;
+        }
+        ClusterState state = LocalNode.clusterState();
+        return state.nodes().getClusterManagerNodeId() != null
+            && !state.blocks().hasGlobalBlock(GatewayService.STATE_NOT_RECOVERED_BLOCK);
+    }
+
+    /**
+     * 给定索引名的 JanusGraph 混合索引（索引名本身或以 索引名_ 开头的索引）的主分片都已分配；
+     * 没有给定索引名时以整个集群不是 red 为准
+     */
+    public static boolean openSearchShardsRecovered(Collection<String> graphIndexNames) {
+        if (!openSearchStarted()) {
+            return false;
+        }
+        ClusterState state = LocalNode.clusterState();
+        if (graphIndexNames.isEmpty()) {
+            return new ClusterStateHealth(state).getStatus() != ClusterHealthStatus.RED;
+        }
+        String[] indices = Arrays.stream(state.metadata().getConcreteAllIndices())
+            .filter(index -> graphIndexNames.stream().anyMatch(name -> index.equals(name) || index.startsWith(name + "_")))
+            .toArray(String[]::new);
+        return new ClusterStateHealth(state, indices).getStatus() != ClusterHealthStatus.RED;
+    }
+
+    /**
+     * 配置目录中图的 properties 文件里 JanusGraph 混合索引的索引名（index.[X].index-name，未设置时为 janusgraph）
+     */
+    static Set<String> graphIndexNames(Path configDirectory) {
+        Set<String> names = new TreeSet<>();
+        if (configDirectory == null || !Files.isDirectory(configDirectory)) {
+            return names;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(configDirectory, "*.properties")) {
+            for (Path file : files) {
+                Properties properties = new Properties();
+                try (Reader reader = Files.newBufferedReader(file, UTF_8)) {
+                    properties.load(reader);
+                }
+                for (String key : properties.stringPropertyNames()) {
+                    Matcher matcher = GRAPH_INDEX_KEY.matcher(key);
+                    if (matcher.matches()) {
+                        names.add(properties.getProperty("index." + matcher.group(1) + ".index-name", DEFAULT_GRAPH_INDEX_NAME).trim());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("读取 {} 中图的配置失败，分片恢复以整个集群为准:", configDirectory, e);
+            names.clear();
+        }
+        return names;
+    }
+
+    /**
+     * OpenSearch、Cassandra、JanusGraph 的启动顺序：
+     * Cassandra 加载表结构时二级索引会查询、创建 OpenSearch 索引并重放 outbox，因此等待集群状态恢复，不等待分片恢复。
+     * 集群状态恢复需要选出集群管理节点，多节点集群中可能要等其他节点启动，因此 opensearch 阶段超时后继续等待，
+     * 而不是跳过 Cassandra 与 JanusGraph；
+     * JanusGraph 打开图时需要 CQL 端口和可写的混合索引，等待 Cassandra 与图的混合索引的分片恢复都完成，
+     * 图的混合索引按配置目录中图的 properties 文件确定，与图无关的索引不影响启动；
+     * 分片恢复超时后只输出警告，JanusGraph 照常启动。
+     * <p>
+     * 原来的顺序启动中 OpenSearch 的启动在分片恢复前返回，commitlog 重放本来就与分片恢复同时进行，
+     * 这里的依赖关系用于让每个阶段在依赖真正就绪后才开始，并输出每个阶段的耗时，不以缩短启动时间为目的。
+     */
+    public static RatuStartup node(Action openSearch) {
+        String configDirectory = System.getProperty("opensearch.path.conf");
+        Set<String> graphIndexNames = graphIndexNames(configDirectory == null ? null : Paths.get(configDirectory));
+        logger.info("启动时等待分片恢复的 JanusGraph 混合索引：{}", graphIndexNames.isEmpty() ? "（未找到，以整个集群为准）" : graphIndexNames);
+        return new RatuStartup()
+            .patientPhase("opensearch", openSearch, RatuStartup::openSearchStarted)
+            .tolerantPhase("opensearch-shards", () -> openSearchShardsRecovered(graphIndexNames), "opensearch")
+            .phase("cassandra", Cassandra::launch, Cassandra::isReady, "opensearch")
+            .phase("janusgraph", JanusgraphServer::launch, null, "cassandra", "opensearch-shards");
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.graph;
+
+import org.opensearch.common.settings.Settings;
+import org.opensearch.plugins.Plugin;
+import org.opensearch.plugins.ScriptPlugin;
+import org.opensearch.script.ScriptContext;
+import org.opensearch.script.ScriptEngine;
+import org.opensearch.script.UpdateScript;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_DOC_KEY;
+import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_NATIVE_UPDATE_LANG;
+import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_NATIVE_UPDATE_SOURCE;
+import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_PARAMS_ADDITIONS_KEY;
+import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_PARAMS_DELETIONS_KEY;
+
+/**
+ * 提供 JanusGraph 混合索引更新文档时使用的 Java 脚本语言，在分片的 bulk 更新中直接修改 _source，
+ * 代替 painless 的 PARAMETERIZED_ADDITION_SCRIPT、PARAMETERIZED_DELETION_SCRIPT：
+ * 先删除 deletions 中的值，再添加 additions 中 LIST、SET 的值，最后写入 doc 中 SINGLE 的值；文档没有变化时不写入。
+ */
+public class GraphUpdateScriptPlugin extends Plugin implements ScriptPlugin {
+
+    @Override
+    public ScriptEngine getScriptEngine(Settings settings, Collection<ScriptContext<?>> contexts) {
+        return new GraphUpdateScriptEngine();
+    }
+
+    static class GraphUpdateScriptEngine implements ScriptEngine {
+
+        @Override
+        public String getType() {
+            return ES_NATIVE_UPDATE_LANG;
+        }
+
+        @Override
+        public <FactoryType> FactoryType compile(String name, String code, ScriptContext<FactoryType> context, Map<String, String> params) {
+            if (context != UpdateScript.CONTEXT) {
+                throw new IllegalArgumentException(getType() + " scripts cannot be used for context [" + context.name + "]");
+            }
+            if (!ES_NATIVE_UPDATE_SOURCE.equals(code)) {
+                throw new IllegalArgumentException("Unknown " + getType() + " script [" + code + "]");
+            }
+            UpdateScript.Factory factory = GraphUpdateScript::new;
+            return context.factoryClazz.cast(factory);
+        }
+
+        @Override
+        public Set<ScriptContext<?>> getSupportedContexts() {
+            return Collections.singleton(UpdateScript.CONTEXT);
+        }
+    }
+
+    static class GraphUpdateScript extends UpdateScript {
+
+        GraphUpdateScript(Map<String, Object> params, Map<String, Object> ctx) {
+            super(params, ctx);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void execute() {
+            Map<String, Object> source = (Map<String, Object>) getCtx().get("_source");
+            Map<String, Object> params = getParams();
+            boolean changed = false;
+            for (Map<String, Object> field : fields(params.get(ES_PARAMS_DELETIONS_KEY))) {
+                String name = (String) field.get("name");
+                if ("SINGLE".equals(field.get("cardinality"))) {
+                    changed |= source.containsKey(name);
+                    source.remove(name);
+                } else {
+                    List<Object> values = values(source, name, false);
+                    if (values != null) {
+                        int index = indexOf(values, field.get("value"));
+                        if (index >= 0) {
+                            values.remove(index);
+                            changed = true;
+                        }
+                    }
+                }
+            }
+            for (Map<String, Object> field : fields(params.get(ES_PARAMS_ADDITIONS_KEY))) {
+                List<Object> values = values(source, (String) field.get("name"), true);
+                Object value = field.get("value");
+                if (!"SET".equals(field.get("cardinality")) || indexOf(values, value) == -1) {
+                    values.add(value);
+                    changed = true;
+                }
+            }
+            Object doc = params.get(ES_DOC_KEY);
+            if (doc != null) {
+                for (Map.Entry<String, Object> entry : ((Map<String, Object>) doc).entrySet()) {
+                    changed |= !Objects.equals(source.put(entry.getKey(), entry.getValue()), entry.getValue());
+                }
+            }
+            // 文档没有变化时不重新写入
+            if (!changed) {
+                getCtx().put("op", "none");
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static List<Map<String, Object>> fields(Object fields) {
+            return fields == null ? Collections.emptyList() : (List<Map<String, Object>>) fields;
+        }
+
+        /**
+         * 字段当前的值列表，单个值转为列表，create 为 false 时字段不存在返回 null
+         */
+        @SuppressWarnings("unchecked")
+        private static List<Object> values(Map<String, Object> source, String name, boolean create) {
+            Object value = source.get(name);
+            if (value instanceof List) {
+                return (List<Object>) value;
+            }
+            if (value == null && !create) {
+                return null;
+            }
+            List<Object> values = new ArrayList<>();
+            if (value != null) {
+                values.add(value);
+            }
+            source.put(name, values);
+            return values;
+        }
+
+        /**
+         * _source 解析出的数字类型与参数中的可能不同（Integer 与 Long），数字按数值比较
+         */
+        private static int indexOf(List<Object> values, Object value) {
+            for (int i = 0; i < values.size(); i++) {
+                Object existing = values.get(i);
+                if (existing instanceof Number && value instanceof Number) {
+                    if (sameNumber((Number) existing, (Number) value)) {
+                        return i;
+                    }
+                } else if (existing == null ? value == null : existing.equals(value)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static boolean sameNumber(Number a, Number b) {
+            if (isWhole(a) && isWhole(b)) {
+                return a.longValue() == b.longValue();
+            }
+            return Double.compare(a.doubleValue(), b.doubleValue()) == 0;
+        }
+
+        private static boolean isWhole(Number number) {
+            return number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte;
+        }
+    }
+}
@@ -0,0 +1,503 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.graph;
+
+import org.apache.ratu.second.esclient.LocalNode;
+import org.janusgraph.diskstorage.configuration.Configuration;
+import org.janusgraph.diskstorage.indexing.RawQuery;
+import org.janusgraph.diskstorage.opensearch.OpenMajorVersion;
+import org.janusgraph.diskstorage.opensearch.OpenSearchClient;
+import org.janusgraph.diskstorage.opensearch.OpenSearchIndex;
+import org.janusgraph.diskstorage.opensearch.OpenSearchMutation;
+import org.janusgraph.diskstorage.opensearch.OpenSearchResponse;
+import org.janusgraph.diskstorage.opensearch.OpenSearchSetup;
+import org.janusgraph.diskstorage.opensearch.OpenSearchStats;
+import org.janusgraph.diskstorage.opensearch.mapping.IndexMapping;
+import org.janusgraph.diskstorage.opensearch.script.ESScript;
+import org.janusgraph.diskstorage.opensearch.script.ESScriptResponse;
+import org.opensearch.Version;
+import org.opensearch.action.ActionRequestBuilder;
+import org.opensearch.action.admin.cluster.health.ClusterHealthResponse;
+import org.opensearch.action.admin.cluster.storedscripts.GetScriptLanguageAction;
+import org.opensearch.action.admin.cluster.storedscripts.GetScriptLanguageRequest;
+import org.opensearch.action.admin.cluster.storedscripts.GetScriptLanguageResponse;
+import org.opensearch.action.admin.indices.mapping.get.GetMappingsResponse;
+import org.opensearch.action.admin.indices.settings.get.GetSettingsResponse;
+import org.opensearch.action.bulk.BulkItemResponse;
+import org.opensearch.action.bulk.BulkRequest;
+import org.opensearch.action.bulk.BulkResponse;
+import org.opensearch.action.delete.DeleteRequest;
+import org.opensearch.action.index.IndexRequest;
+import org.opensearch.action.search.CreatePitRequest;
+import org.opensearch.action.search.CreatePitResponse;
+import org.opensearch.action.search.DeletePitRequest;
+import org.opensearch.action.search.DeletePitResponse;
+import org.opensearch.action.search.SearchRequest;
+import org.opensearch.action.search.SearchResponse;
+import org.opensearch.action.support.PlainActionFuture;
+import org.opensearch.action.support.WriteRequest;
+import org.opensearch.action.update.UpdateRequest;
+import org.opensearch.client.Client;
+import org.opensearch.cluster.metadata.IndexAbstraction;
+import org.opensearch.cluster.metadata.IndexMetadata;
+import org.opensearch.cluster.metadata.MappingMetadata;
+import org.opensearch.cluster.metadata.Metadata;
+import org.opensearch.common.action.ActionFuture;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.common.xcontent.XContentHelper;
+import org.opensearch.common.xcontent.XContentType;
+import org.opensearch.core.action.ActionResponse;
+import org.opensearch.core.common.bytes.BytesReference;
+import org.opensearch.core.rest.RestStatus;
+import org.opensearch.core.xcontent.DeprecationHandler;
+import org.opensearch.core.xcontent.ToXContent;
+import org.opensearch.core.xcontent.XContentBuilder;
+import org.opensearch.core.xcontent.XContentParser;
+import org.opensearch.script.StoredScriptSource;
+import org.opensearch.search.SearchHit;
+import org.opensearch.search.aggregations.AggregationBuilders;
+import org.opensearch.search.aggregations.metrics.NumericMetricsAggregation;
+import org.opensearch.search.aggregations.metrics.Stats;
+import org.opensearch.search.builder.PointInTimeBuilder;
+import org.opensearch.search.builder.SearchSourceBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JanusGraph 混合索引使用的 {@link OpenSearchClient}，直接调用同一个 JVM 内 OpenSearch 节点的 transport action
+ * （bulk、search、scroll、point in time、count 和聚合），省去 REST_CLIENT 的 HTTP 连接和请求/响应的 JSON 序列化与解析。
+ * 通过 {@link OpenSearchSetup#LOCAL_NODE} 选用，由 {@link #register()} 注册。
+ */
+public class LocalOpenSearchClient implements OpenSearchClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalOpenSearchClient.class);
+
+    private static final String AGG_NAME = "agg_result";
+
+    private final TimeValue scrollKeepAlive;
+
+    private WriteRequest.RefreshPolicy bulkRefresh = WriteRequest.RefreshPolicy.NONE;
+
+    private Integer retryOnConflict;
+
+    public LocalOpenSearchClient(int scrollKeepAliveSeconds) {
+        this.scrollKeepAlive = TimeValue.timeValueSeconds(scrollKeepAliveSeconds);
+    }
+
+    /**
+     * 注册为 {@link OpenSearchSetup#LOCAL_NODE} 使用的客户端，需要在打开图之前调用
+     */
+    public static void register() {
+        OpenSearchSetup.registerLocalClient(LocalOpenSearchClient::connect);
+    }
+
+    /**
+     * 按 JanusGraph 索引配置创建客户端，本地节点没有启动时退回 REST 客户端
+     */
+    public static OpenSearchClient connect(Configuration config) throws IOException {
+        if (!LocalNode.isStarted()) {
+            logger.warn("本地 OpenSearch 节点没有启动，JanusGraph 索引使用 {}", OpenSearchSetup.REST_CLIENT);
+            return OpenSearchSetup.REST_CLIENT.connect(config).getClient();
+        }
+        LocalOpenSearchClient client = new LocalOpenSearchClient(config.get(OpenSearchIndex.ES_SCROLL_KEEP_ALIVE));
+        if (config.has(OpenSearchIndex.BULK_REFRESH)) {
+            client.setBulkRefresh(config.get(OpenSearchIndex.BULK_REFRESH));
+        }
+        if (config.has(OpenSearchIndex.RETRY_ON_CONFLICT)) {
+            client.setRetryOnConflict(config.get(OpenSearchIndex.RETRY_ON_CONFLICT));
+        }
+        return client;
+    }
+
+    public void setBulkRefresh(String bulkRefresh) {
+        this.bulkRefresh = bulkRefresh == null || bulkRefresh.equalsIgnoreCase("false")
+            ? WriteRequest.RefreshPolicy.NONE
+            : WriteRequest.RefreshPolicy.parse(bulkRefresh);
+    }
+
+    public void setRetryOnConflict(Integer retryOnConflict) {
+        this.retryOnConflict = retryOnConflict;
+    }
+
+    @Override
+    public OpenMajorVersion getMajorVersion() {
+        return OpenMajorVersion.parse(Version.CURRENT.toString());
+    }
+
+    @Override
+    public void clusterHealthRequest(String timeout) throws IOException {
+        ClusterHealthResponse response = execute(client().admin().cluster().prepareHealth()
+            .setWaitForYellowStatus()
+            .setTimeout(timeout));
+        if (response.isTimedOut()) {
+            throw new IOException("Opensearch timeout waiting for yellow status");
+        }
+    }
+
+    @Override
+    public boolean indexExists(String indexName) {
+        return metadata().getIndicesLookup().containsKey(indexName);
+    }
+
+    @Override
+    public boolean isIndex(String indexName) {
+        return metadata().hasIndex(indexName);
+    }
+
+    @Override
+    public boolean isAlias(String aliasName) {
+        return metadata().hasAlias(aliasName);
+    }
+
+    @Override
+    public void createStoredScript(String scriptName, Map<String, Object> script) throws IOException {
+        execute(client().admin().cluster().preparePutStoredScript()
+            .setId(scriptName)
+            .setContent(BytesReference.bytes(toXContent(script)), XContentType.SMILE));
+    }
+
+    @Override
+    public ESScriptResponse getStoredScript(String scriptName) throws IOException {
+        StoredScriptSource source = execute(client().admin().cluster().prepareGetStoredScript(scriptName)).getSource();
+        ESScriptResponse response = new ESScriptResponse();
+        response.setFound(source != null);
+        if (source != null) {
+            ESScript script = new ESScript();
+            script.setLang(source.getLang());
+            script.setSource(source.getSource());
+            response.setScript(script);
+        }
+        return response;
+    }
+
+    @Override
+    public boolean supportsScript(String language, String context) throws IOException {
+        GetScriptLanguageResponse response = execute(client().execute(GetScriptLanguageAction.INSTANCE, new GetScriptLanguageRequest()));
+        Set<String> contexts = response.info.languageContexts.get(language);
+        return contexts != null && contexts.contains(context);
+    }
+
+    @Override
+    public void createIndex(String indexName, Map<String, Object> settings) throws IOException {
+        // 与 REST 客户端一样，每个节点一个分片，其余节点各放一个副本
+        int nodes = LocalNode.clusterState().nodes().getSize();
+        settings.put("number_of_shards", nodes);
+        settings.put("number_of_replicas", nodes - 1);
+        execute(client().admin().indices().prepareCreate(indexName).setSettings(settings));
+    }
+
+    @Override
+    public void updateIndexSettings(String indexName, Map<String, Object> settings) throws IOException {
+        execute(client().admin().indices().prepareUpdateSettings(indexName).setSettings(settings));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void updateClusterSettings(Map<String, Object> settings) throws IOException {
+        Map<String, ?> persistent = (Map<String, ?>) settings.getOrDefault("persistent", Collections.emptyMap());
+        Map<String, ?> transientSettings = (Map<String, ?>) settings.getOrDefault("transient", Collections.emptyMap());
+        execute(client().admin().cluster().prepareUpdateSettings()
+            .setPersistentSettings(persistent)
+            .setTransientSettings(transientSettings));
+    }
+
+    @Override
+    public Map<String, Object> getIndexSettings(String indexName) throws IOException {
+        GetSettingsResponse response = execute(client().admin().indices().prepareGetSettings(indexName));
+        Settings settings = response.getIndexToSettings().get(indexName);
+        // REST 接口返回 settings.index 下的内容
+        if (settings == null) {
+            return null;
+        }
+        XContentBuilder builder = XContentType.SMILE.contentBuilder().startObject();
+        settings.getByPrefix("index.").toXContent(builder, ToXContent.EMPTY_PARAMS);
+        builder.endObject();
+        return XContentHelper.convertToMap(BytesReference.bytes(builder), false, XContentType.SMILE).v2();
+    }
+
+    @Override
+    public void createMapping(String indexName, String typeName, Map<String, Object> mapping) throws IOException {
+        execute(client().admin().indices().preparePutMapping(indexName).setSource(mapping));
+    }
+
+    @Override
+    public IndexMapping getMapping(String indexName, String typeName) throws IOException {
+        GetMappingsResponse response;
+        try {
+            response = execute(client().admin().indices().prepareGetMappings(indexName));
+        } catch (IOException e) {
+            logger.info("获取 OpenSearch 索引 {} 的 mapping 失败", indexName, e);
+            return null;
+        }
+        MappingMetadata metadata = response.getMappings().get(indexName);
+        if (metadata == null) {
+            return null;
+        }
+        Map<String, Object> source = metadata.sourceAsMap();
+        IndexMapping mapping = new IndexMapping();
+        mapping.setProperties(source.containsKey("properties") ? asMap(source.get("properties")) : null);
+        if (source.containsKey("dynamic")) {
+            mapping.setDynamic(String.valueOf(source.get("dynamic")));
+        }
+        return mapping;
+    }
+
+    @Override
+    public void deleteIndex(String indexName) throws IOException {
+        // 与 REST 客户端一样只删除别名指向的索引
+        IndexAbstraction abstraction = metadata().getIndicesLookup().get(indexName);
+        if (abstraction == null || abstraction.getType() != IndexAbstraction.Type.ALIAS) {
+            return;
+        }
+        List<String> indices = new ArrayList<>();
+        for (IndexMetadata index : abstraction.getIndices()) {
+            indices.add(index.getIndex().getName());
+        }
+        if (!indices.isEmpty()) {
+            execute(client().admin().indices().prepareDelete(indices.toArray(new String[0])));
+        }
+    }
+
+    @Override
+    public void clearStore(String indexName, String storeName) throws IOException {
+        String name = indexName + "_" + storeName;
+        if (indexExists(name)) {
+            execute(client().admin().indices().prepareDelete(name));
+        }
+    }
+
+    @Override
+    public void bulkRequest(List<OpenSearchMutation> requests, String ingestPipeline) throws IOException {
+        BulkRequest bulk = new BulkRequest();
+        for (OpenSearchMutation request : requests) {
+            switch (request.getRequestType()) {
+                case INDEX:
+                    bulk.add(new IndexRequest(request.getIndex()).id(request.getId()).source(request.getSource()));
+                    break;
+                case UPDATE:
+                    bulk.add(updateRequest(request));
+                    break;
+                case DELETE:
+                    bulk.add(new DeleteRequest(request.getIndex(), request.getId()));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported request type " + request.getRequestType());
+            }
+        }
+        if (ingestPipeline != null) {
+            bulk.pipeline(ingestPipeline);
+        }
+        bulk.setRefreshPolicy(bulkRefresh);
+
+        BulkResponse response = execute(client().bulk(bulk));
+        if (response.hasFailures()) {
+            List<String> errors = new ArrayList<>();
+            for (BulkItemResponse item : response.getItems()) {
+                if (item.isFailed() && item.status() != RestStatus.NOT_FOUND) {
+                    errors.add(item.getFailureMessage());
+                }
+            }
+            if (!errors.isEmpty()) {
+                errors.forEach(error -> logger.error("Failed to execute ES query: {}", error));
+                throw new IOException("Failure(s) in Opensearch bulk request: " + errors);
+            }
+        }
+    }
+
+    /**
+     * 更新请求的内容（script、upsert、doc）与 REST _bulk 中的相同，用 UpdateRequest 自己的解析器解析
+     */
+    private UpdateRequest updateRequest(OpenSearchMutation request) throws IOException {
+        UpdateRequest update = new UpdateRequest(request.getIndex(), request.getId());
+        try (XContentParser parser = parser(request.getSource())) {
+            update.fromXContent(parser);
+        }
+        if (retryOnConflict != null) {
+            update.retryOnConflict(retryOnConflict);
+        }
+        return update;
+    }
+
+    @Override
+    public long countTotal(String indexName, Map<String, Object> requestData) throws IOException {
+        SearchSourceBuilder source = searchSource(requestData).size(0).trackTotalHits(true);
+        SearchResponse response = execute(client().prepareSearch(indexName).setSource(source));
+        return response.getHits().getTotalHits().value;
+    }
+
+    /**
+     * 与 REST 客户端一样用名为 agg_result 的单值指标聚合计算，不取回命中的文档
+     */
+    private double executeAggs(String indexName, Map<String, Object> requestData, String agg, String fieldName) throws IOException {
+        requestData.put("aggs", Collections.singletonMap(AGG_NAME, Collections.singletonMap(agg, Collections.singletonMap("field", fieldName))));
+        SearchSourceBuilder source = searchSource(requestData).size(0);
+        SearchResponse response = execute(client().prepareSearch(indexName).setSource(source));
+        NumericMetricsAggregation.SingleValue result = response.getAggregations().get(AGG_NAME);
+        // 没有文档时 REST 响应中的值为 null，解析为 0
+        return Double.isFinite(result.value()) ? result.value() : 0;
+    }
+
+    @Override
+    public OpenSearchStats stats(String indexName, Map<String, Object> requestData, String fieldName) throws IOException {
+        SearchSourceBuilder source = searchSource(requestData)
+            .size(0)
+            .trackTotalHits(true)
+            .aggregation(AggregationBuilders.stats(AGG_NAME).field(fieldName));
+        SearchResponse response = execute(client().prepareSearch(indexName).setSource(source));
+        Stats stats = response.getAggregations().get(AGG_NAME);
+        return new OpenSearchStats(response.getHits().getTotalHits().value, stats.getMin(), stats.getMax(), stats.getAvg(), stats.getSum());
+    }
+
+    @Override
+    public Number min(String indexName, Map<String, Object> requestData, String fieldName, Class<? extends Number> expectedType) throws IOException {
+        return OpenSearchStats.adaptNumberType(executeAggs(indexName, requestData, "min", fieldName), expectedType);
+    }
+
+    @Override
+    public Number max(String indexName, Map<String, Object> requestData, String fieldName, Class<? extends Number> expectedType) throws IOException {
+        return OpenSearchStats.adaptNumberType(executeAggs(indexName, requestData, "max", fieldName), expectedType);
+    }
+
+    @Override
+    public double avg(String indexName, Map<String, Object> requestData, String fieldName) throws IOException {
+        return executeAggs(indexName, requestData, "avg", fieldName);
+    }
+
+    @Override
+    public Number sum(String indexName, Map<String, Object> requestData, String fieldName, Class<? extends Number> expectedType) throws IOException {
+        return OpenSearchStats.adaptSumType(executeAggs(indexName, requestData, "sum", fieldName), expectedType);
+    }
+
+    @Override
+    public OpenSearchResponse search(String indexName, Map<String, Object> request, boolean useScroll) throws IOException {
+        SearchRequest searchRequest = new SearchRequest(indexName).source(searchSource(request));
+        if (useScroll) {
+            searchRequest.scroll(scrollKeepAlive);
+        }
+        return toResponse(execute(client().search(searchRequest)));
+    }
+
+    @Override
+    public OpenSearchResponse search(String scrollId) throws IOException {
+        return toResponse(execute(client().prepareSearchScroll(scrollId).setScroll(scrollKeepAlive)));
+    }
+
+    @Override
+    public void deleteScroll(String scrollId) throws IOException {
+        execute(client().prepareClearScroll().addScrollId(scrollId));
+    }
+
+    @Override
+    public String createPointInTime(String indexName) throws IOException {
+        PlainActionFuture<CreatePitResponse> future = PlainActionFuture.newFuture();
+        client().createPit(new CreatePitRequest(scrollKeepAlive, false, indexName), future);
+        return execute(future).getId();
+    }
+
+    @Override
+    public OpenSearchResponse searchPointInTime(String pitId, Map<String, Object> request) throws IOException {
+        SearchSourceBuilder source = searchSource(request)
+            .pointInTimeBuilder(new PointInTimeBuilder(pitId).setKeepAlive(scrollKeepAlive));
+        return toResponse(execute(client().search(new SearchRequest().source(source))));
+    }
+
+    @Override
+    public void deletePointInTime(String pitId) throws IOException {
+        PlainActionFuture<DeletePitResponse> future = PlainActionFuture.newFuture();
+        client().deletePits(new DeletePitRequest(pitId), future);
+        execute(future);
+    }
+
+    @Override
+    public void addAlias(String alias, String index) throws IOException {
+        execute(client().admin().indices().prepareAliases().addAlias(index, alias));
+    }
+
+    @Override
+    public void close() {
+        // 节点的生命周期由 Bootstrap 管理
+    }
+
+    private static OpenSearchResponse toResponse(SearchResponse response) {
+        SearchHit[] hits = response.getHits().getHits();
+        List<RawQuery.Result<String>> results = new ArrayList<>(hits.length);
+        for (SearchHit hit : hits) {
+            // 按字段排序时没有评分
+            results.add(new RawQuery.Result<>(hit.getId(), Float.isNaN(hit.getScore()) ? 0f : hit.getScore()));
+        }
+        OpenSearchResponse result = new OpenSearchResponse();
+        result.setTook(response.getTook().millis());
+        result.setScrollId(response.getScrollId());
+        result.setPitId(response.pointInTimeId());
+        result.setLastSortValues(hits.length == 0 ? Collections.emptyList() : Arrays.asList(hits[hits.length - 1].getSortValues()));
+        result.setResults(results);
+        return result;
+    }
+
+    /**
+     * 用节点的解析器把 JanusGraph 生成的请求体解析为 SearchSourceBuilder
+     */
+    private static SearchSourceBuilder searchSource(Map<String, Object> request) throws IOException {
+        try (XContentParser parser = parser(request)) {
+            return SearchSourceBuilder.fromXContent(parser);
+        }
+    }
+
+    /**
+     * 请求体中有 double[] 等 MapXContentParser 不支持的值（如地理坐标），所以先用 XContentBuilder 写成 SMILE 再解析
+     */
+    private static XContentParser parser(Map<String, Object> source) throws IOException {
+        return XContentType.SMILE.xContent().createParser(
+            LocalNode.xContentRegistry(),
+            DeprecationHandler.THROW_UNSUPPORTED_OPERATION,
+            BytesReference.bytes(toXContent(source)).streamInput()
+        );
+    }
+
+    private static XContentBuilder toXContent(Map<String, Object> source) throws IOException {
+        return XContentType.SMILE.contentBuilder().map(source);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(Object value) {
+        return (Map<String, Object>) value;
+    }
+
+    private static Client client() {
+        return LocalNode.client();
+    }
+
+    private static Metadata metadata() {
+        return LocalNode.clusterState().metadata();
+    }
+
+    /**
+     * 同步执行请求，与 REST 客户端一样把失败作为 IOException 抛出
+     */
+    private static <Response extends ActionResponse> Response execute(ActionRequestBuilder<?, Response> builder) throws IOException {
+        return execute(builder.execute());
+    }
+
+    private static <Response> Response execute(ActionFuture<Response> future) throws IOException {
+        try {
+            return future.actionGet();
+        } catch (RuntimeException e) {
+            throw new IOException("Error executing Opensearch request: " + e.getMessage(), e);
+        }
+    }
+}
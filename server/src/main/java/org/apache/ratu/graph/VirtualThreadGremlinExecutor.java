@@ -0,0 +1,177 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.graph;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Timer;
+import org.apache.tinkerpop.gremlin.server.GremlinServer;
+import org.apache.tinkerpop.gremlin.server.util.MetricManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Gremlin Server 的脚本执行器：每个请求一个虚拟线程，同时执行的请求数由信号量限制，
+ * 阻塞在 Cassandra 读取或混合索引请求上的脚本不再占用固定数量的平台线程。
+ * 等待信号量的请求超过 maxWaiting 时拒绝，与 Gremlin Server 线程池的 maxWorkQueueSize 一致。
+ * 排队时间与执行时间记录在 Gremlin Server 的 MetricManager 中，和 op.eval 等指标一起输出。
+ */
+public class VirtualThreadGremlinExecutor extends AbstractExecutorService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadGremlinExecutor.class);
+
+    private final ThreadFactory threadFactory;
+    private final Semaphore permits;
+    private final int maxWaiting;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    private final Object lock = new Object();
+    private int active = 0;
+    private volatile boolean shutdown = false;
+
+    private final Timer queueWait = MetricManager.INSTANCE.getTimer(name(GremlinServer.class, "virtual-executor", "queue-wait"));
+    private final Timer execution = MetricManager.INSTANCE.getTimer(name(GremlinServer.class, "virtual-executor", "execution"));
+    private final Counter rejected = MetricManager.INSTANCE.getCounter(name(GremlinServer.class, "virtual-executor", "rejected"));
+
+    public VirtualThreadGremlinExecutor(ThreadFactory threadFactory, int maxConcurrency, int maxWaiting) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency 必须大于 0: " + maxConcurrency);
+        }
+        this.threadFactory = threadFactory;
+        this.permits = new Semaphore(maxConcurrency);
+        this.maxWaiting = maxWaiting;
+    }
+
+    /**
+     * 虚拟线程的 ThreadFactory，JDK 不支持虚拟线程（低于 21）时返回 null
+     */
+    public static ThreadFactory virtualThreadFactory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.debug("当前 JDK 不支持虚拟线程", e);
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (shutdown) {
+            rejected.inc();
+            throw new RejectedExecutionException("Gremlin 虚拟线程执行器已关闭");
+        }
+        if (waiting.incrementAndGet() > maxWaiting) {
+            waiting.decrementAndGet();
+            rejected.inc();
+            throw new RejectedExecutionException("等待执行的 Gremlin 请求超过 " + maxWaiting);
+        }
+        final long submitted = System.nanoTime();
+        final Thread thread = threadFactory.newThread(() -> run(command, submitted));
+        synchronized (lock) {
+            active++;
+        }
+        threads.add(thread);
+        thread.start();
+    }
+
+    private void run(Runnable command, long submitted) {
+        try {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                // shutdownNow 时还在排队的请求不再执行
+                waiting.decrementAndGet();
+                return;
+            }
+            waiting.decrementAndGet();
+            final long started = System.nanoTime();
+            queueWait.update(started - submitted, TimeUnit.NANOSECONDS);
+            try {
+                // 启用 SecurityManager 时虚拟线程没有任何权限，按本类的权限执行，与平台线程池一致
+                AccessController.doPrivileged((PrivilegedAction<Void>) () -> {
+                    command.run();
+                    return null;
+                });
+            } finally {
+                execution.update(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                permits.release();
+            }
+        } finally {
+            threads.remove(Thread.currentThread());
+            synchronized (lock) {
+                if (--active == 0) {
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * 等待信号量的请求数
+     */
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        threads.forEach(Thread::interrupt);
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        synchronized (lock) {
+            return shutdown && active == 0;
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (lock) {
+            while (!(shutdown && active == 0)) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,383 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second;
+
+import org.apache.cassandra.cql3.CQL3Type;
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.DecimalType;
+import org.apache.cassandra.db.marshal.ListType;
+import org.apache.cassandra.db.marshal.MapType;
+import org.apache.cassandra.db.marshal.SetType;
+import org.apache.cassandra.db.rows.Cell;
+import org.apache.cassandra.db.rows.ColumnData;
+import org.apache.cassandra.db.rows.ComplexColumnData;
+import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.schema.ColumnMetadata;
+import org.apache.cassandra.schema.TableMetadata;
+import org.apache.cassandra.transport.ProtocolVersion;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.ratu.second.esclient.IndexLayout;
+import org.opensearch.common.io.stream.BytesStreamOutput;
+import org.opensearch.common.xcontent.XContentType;
+import org.opensearch.core.common.bytes.BytesReference;
+import org.opensearch.core.xcontent.XContentBuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * 把 Cassandra 的行编码为索引文档。
+ * <p>
+ * 创建索引（或表结构变更）时按 schema 为每一列编译一个类型确定的写入器，写入时不再按类型名分支，
+ * 单元格直接流式写入 {@link XContentBuilder}，线程复用同一个输出缓冲区，每行只分配一次最终文档的字节数组。
+ * <p>
+ * partial 模式用于局部更新：被删除或为空的列写入 null（text 类型为空字符串），不填充默认值；
+ * 非 frozen 集合总是写入完整的值：整体赋值时就是本次写入的元素，元素级的追加、删除无法用字段覆盖表达，
+ * 写入调用方读出的当前值（见 {@link #updatesElements}）；
+ * map 写为对象，doc_as_upsert 会与已有的对象合并，因此写入 map 的行要用替换顶层字段的更新写入（见 {@link #replacesObjects}）。
+ */
+public final class DocumentEncoder {
+
+    public static final String DOCUMENT_FORMAT = "document_format";
+
+    public static final String UPDATE_MODE = "update_mode";
+
+    private static final ThreadLocal<BytesStreamOutput> buffers = ThreadLocal.withInitial(() -> new BytesStreamOutput(1024));
+
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.ROOT).withZone(ZoneId.systemDefault());
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd", Locale.ROOT).withZone(ZoneId.systemDefault());
+
+    @FunctionalInterface
+    private interface ValueWriter {
+        void write(XContentBuilder builder, ByteBuffer value) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface ColumnWriter {
+        void write(XContentBuilder builder, ColumnData data) throws IOException;
+    }
+
+    public final TableMetadata metadata;
+    public final XContentType contentType;
+
+    public final boolean partial;
+
+    private final ColumnMetadata[] columns;
+    private final ColumnWriter[] writers;
+    // partial 模式下非 frozen 集合列的下标
+    private final int[] collectionColumns;
+    // partial 模式下非 frozen map 列的下标
+    private final int[] mapColumns;
+
+    private DocumentEncoder(TableMetadata metadata, XContentType contentType, boolean partial, List<ColumnMetadata> columns, List<ColumnWriter> writers) {
+        this.metadata = metadata;
+        this.contentType = contentType;
+        this.partial = partial;
+        this.columns = columns.toArray(new ColumnMetadata[0]);
+        this.writers = writers.toArray(new ColumnWriter[0]);
+        this.collectionColumns = partial
+            ? IntStream.range(0, this.columns.length).filter(i -> this.columns[i].type.isMultiCell()).toArray()
+            : new int[0];
+        this.mapColumns = partial
+            ? IntStream.range(0, this.columns.length)
+                .filter(i -> this.columns[i].type.isMultiCell() && this.columns[i].type instanceof MapType)
+                .toArray()
+            : new int[0];
+    }
+
+    /**
+     * 为 schema 中出现的列编译写入器
+     */
+    public static DocumentEncoder compile(@Nonnull TableMetadata metadata,
+                                          @Nonnull Map<String, Map<String, String>> schema,
+                                          @Nonnull XContentType contentType,
+                                          boolean partial) {
+        List<ColumnMetadata> columns = new ArrayList<>();
+        List<ColumnWriter> writers = new ArrayList<>();
+        for (ColumnMetadata column : metadata.regularAndStaticColumns()) {
+            Map<String, String> field = schema.get(column.name.toString());
+            if (field != null) {
+                columns.add(column);
+                writers.add(partial ? partialWriter(column, field) : columnWriter(column, field));
+            }
+        }
+        return new DocumentEncoder(metadata, contentType, partial, columns, writers);
+    }
+
+    /**
+     * 编码一行，主键以字符串写在最前面，token 不为空时写在主键之后；行中没有的列不写入
+     */
+    public BytesReference encode(@Nonnull Row row, @Nonnull String primaryKey, @Nonnull String primaryKeyValue, @Nullable Long token) throws IOException {
+        return encode(row, null, primaryKey, primaryKeyValue, token);
+    }
+
+    /**
+     * 编码一行，partial 模式下元素级修改的集合列写入 current 中的完整值，current 中没有该列时写入 null
+     */
+    public BytesReference encode(@Nonnull Row row, @Nullable Row current, @Nonnull String primaryKey, @Nonnull String primaryKeyValue,
+                                 @Nullable Long token) throws IOException {
+        BytesStreamOutput out = buffers.get();
+        out.reset();
+        try (XContentBuilder builder = new XContentBuilder(contentType.xContent(), out)) {
+            builder.startObject();
+            builder.field(primaryKey, primaryKeyValue);
+            if (token != null) {
+                builder.field(IndexLayout.TOKEN_FIELD, token.longValue());
+            }
+            for (int i = 0; i < columns.length; i++) {
+                ColumnData data = row.getColumnData(columns[i]);
+                if (data == null) {
+                    continue;
+                }
+                if (partial && isElementUpdate(columns[i], data)) {
+                    data = current == null ? null : current.getColumnData(columns[i]);
+                    if (data == null) {
+                        builder.nullField(columns[i].name.toString());
+                        continue;
+                    }
+                }
+                writers[i].write(builder, data);
+            }
+            builder.endObject();
+        }
+        return out.copyBytes();
+    }
+
+    /**
+     * 该类型的列为空或被删除时，写入的内容能否与真实的值区分；
+     * 完整写入时空值写入默认内容（0、false、"null" 等），只有不写入该字段的类型才能区分，
+     * partial 模式写入 null
+     */
+    public static boolean keepsNulls(@Nonnull AbstractType<?> type, boolean partial) {
+        return partial || emptyWriter(type) == null;
+    }
+
+    /**
+     * partial 模式下该行是否有元素级修改的集合列，编码时需要传入读出的当前行
+     */
+    public boolean updatesElements(@Nonnull Row row) {
+        for (int i : collectionColumns) {
+            ColumnData data = row.getColumnData(columns[i]);
+            if (data != null && isElementUpdate(columns[i], data)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * partial 模式下该行是否写入了 map 列：写入的是完整的对象，要替换文档中的字段，而不是与已有的对象合并
+     */
+    public boolean replacesObjects(@Nonnull Row row) {
+        for (int i : mapColumns) {
+            if (row.getColumnData(columns[i]) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 非 frozen 集合没有集合级删除标记说明是元素级修改
+     */
+    private static boolean isElementUpdate(ColumnMetadata column, ColumnData data) {
+        return column.type.isMultiCell() && ((ComplexColumnData) data).complexDeletion().isLive();
+    }
+
+    private static ColumnWriter columnWriter(ColumnMetadata column, Map<String, String> field) {
+        String name = column.name.toString();
+        AbstractType<?> type = column.type;
+
+        if (type.isMultiCell() && type instanceof ListType) {
+            ValueWriter elements = elementWriter(((ListType<?>) type).getElementsType());
+            return (builder, data) -> {
+                builder.startArray(name);
+                for (Cell<?> cell : (ComplexColumnData) data) {
+                    elements.write(builder, cell.buffer());
+                }
+                builder.endArray();
+            };
+        }
+        if (type.isMultiCell() && type instanceof SetType) {
+            // set 的元素在 cell path 中
+            ValueWriter elements = elementWriter(((SetType<?>) type).getElementsType());
+            return (builder, data) -> {
+                builder.startArray(name);
+                for (Cell<?> cell : (ComplexColumnData) data) {
+                    elements.write(builder, cell.path().get(0));
+                }
+                builder.endArray();
+            };
+        }
+        if (type.isMultiCell() && type instanceof MapType) {
+            AbstractType<?> keys = ((MapType<?, ?>) type).getKeysType();
+            ValueWriter values = elementWriter(((MapType<?, ?>) type).getValuesType());
+            return (builder, data) -> {
+                builder.startObject(name);
+                for (Cell<?> cell : (ComplexColumnData) data) {
+                    builder.field(keys.getString(cell.path().get(0)));
+                    values.write(builder, cell.buffer());
+                }
+                builder.endObject();
+            };
+        }
+
+        ValueWriter writer = valueWriter(type, field);
+        ValueWriter empty = emptyWriter(type);
+        return (builder, data) -> {
+            ByteBuffer value = ((Cell<?>) data).buffer();
+            if (value.hasRemaining()) {
+                builder.field(name);
+                writer.write(builder, value);
+            } else if (empty != null) {
+                builder.field(name);
+                empty.write(builder, value);
+            }
+        };
+    }
+
+    /**
+     * 局部更新的写入器：只表达本次写入改变的字段
+     */
+    private static ColumnWriter partialWriter(ColumnMetadata column, Map<String, String> field) {
+        String name = column.name.toString();
+        AbstractType<?> type = column.type;
+
+        if (type.isMultiCell()) {
+            // 集合总是写入完整的值，元素级修改由 encode 换成当前值
+            return columnWriter(column, field);
+        }
+
+        ValueWriter writer = valueWriter(type, field);
+        boolean text = type.asCQL3Type() == CQL3Type.Native.TEXT
+            || type.asCQL3Type() == CQL3Type.Native.VARCHAR
+            || type.asCQL3Type() == CQL3Type.Native.ASCII;
+        return (builder, data) -> {
+            Cell<?> cell = (Cell<?>) data;
+            ByteBuffer value = cell.buffer();
+            if (cell.isTombstone()) {
+                builder.nullField(name);
+            } else if (value.hasRemaining()) {
+                builder.field(name);
+                writer.write(builder, value);
+            } else if (text) {
+                builder.field(name, "");
+            } else {
+                builder.nullField(name);
+            }
+        };
+    }
+
+    private static ValueWriter elementWriter(AbstractType<?> type) {
+        ValueWriter writer = valueWriter(type, null);
+        return (builder, value) -> {
+            if (value.hasRemaining()) {
+                writer.write(builder, value);
+            } else {
+                builder.nullValue();
+            }
+        };
+    }
+
+    private static ValueWriter valueWriter(AbstractType<?> type, @Nullable Map<String, String> field) {
+        CQL3Type cql3Type = type.asCQL3Type();
+        if (!(cql3Type instanceof CQL3Type.Native)) {
+            // frozen 集合、UDT、tuple 按 CQL 的 JSON 表示写入字符串
+            return (builder, value) -> builder.value(type.toJSONString(value, ProtocolVersion.CURRENT));
+        }
+        switch ((CQL3Type.Native) cql3Type) {
+            case FLOAT:
+                return (builder, value) -> builder.value(ByteBufferUtil.toFloat(value));
+            case DOUBLE:
+                return (builder, value) -> builder.value(ByteBufferUtil.toDouble(value));
+            case DECIMAL:
+                return (builder, value) -> builder.value(DecimalType.instance.compose(value).doubleValue());
+            case INT:
+                return (builder, value) -> builder.value(ByteBufferUtil.toInt(value));
+            case BIGINT:
+            case TIME:
+                return (builder, value) -> builder.value(ByteBufferUtil.toLong(value));
+            case SMALLINT:
+                return (builder, value) -> builder.value(ByteBufferUtil.toShort(value));
+            case TINYINT:
+                return (builder, value) -> builder.value(Byte.toUnsignedInt(ByteBufferUtil.toByte(value)));
+            case VARINT:
+                return (builder, value) -> builder.value(new BigInteger(ByteBufferUtil.getArray(value)));
+            case BOOLEAN:
+                return (builder, value) -> builder.value(value.get(value.position()) != 0);
+            case ASCII:
+            case TEXT:
+            case VARCHAR:
+            case BLOB:
+                return (builder, value) -> builder.value(ByteBufferUtil.string(value));
+            case TIMESTAMP:
+                DateTimeFormatter formatter = timestampFormatter(field == null ? null : field.get("pattern"));
+                return (builder, value) -> builder.value(formatter.format(Instant.ofEpochMilli(ByteBufferUtil.toLong(value))));
+            default:
+                // uuid、timeuuid、inet、date、duration 等使用 Cassandra 的字符串表示
+                return (builder, value) -> builder.value(type.getString(value));
+        }
+    }
+
+    /**
+     * 空值写入的默认内容，与原有的写入结果保持一致；返回 null 时不写入该字段
+     */
+    @Nullable
+    private static ValueWriter emptyWriter(AbstractType<?> type) {
+        CQL3Type cql3Type = type.asCQL3Type();
+        if (!(cql3Type instanceof CQL3Type.Native)) {
+            return (builder, value) -> builder.value("null");
+        }
+        switch ((CQL3Type.Native) cql3Type) {
+            case FLOAT:
+            case DOUBLE:
+            case DECIMAL:
+            case INT:
+            case BIGINT:
+            case SMALLINT:
+            case TINYINT:
+            case VARINT:
+            case UUID:
+                return (builder, value) -> builder.value(0);
+            case BOOLEAN:
+                return (builder, value) -> builder.value(false);
+            case INET:
+                return (builder, value) -> builder.value("0.0.0.0");
+            case DURATION:
+                return (builder, value) -> builder.value("0");
+            case TEXT:
+                return (builder, value) -> builder.startArray().endArray();
+            case TIMESTAMP:
+                // 时间为空时写入当前时间
+                return (builder, value) -> builder.value(DATE_TIME.format(Instant.now()));
+            case TIME:
+                return null;
+            default:
+                return (builder, value) -> builder.value("null");
+        }
+    }
+
+    private static DateTimeFormatter timestampFormatter(@Nullable String pattern) {
+        if ("yyyy-MM-dd".equals(pattern) || "yyyy/MM/dd".equals(pattern)) {
+            return DATE;
+        }
+        return DATE_TIME;
+    }
+}
@@ -16,17 +16,21 @@
 package org.apache.ratu.second;
 
 import com.alibaba.fastjson2.JSONObject;
-import com.google.common.base.Stopwatch;
+import com.codahale.metrics.Timer;
 import org.apache.cassandra.cql3.Operator;
 import org.apache.cassandra.cql3.statements.schema.IndexTarget;
 import org.apache.cassandra.db.*;
+import org.apache.cassandra.db.filter.ColumnFilter;
 import org.apache.cassandra.db.filter.RowFilter;
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.db.marshal.UTF8Type;
 import org.apache.cassandra.db.partitions.PartitionIterator;
 import org.apache.cassandra.db.partitions.PartitionUpdate;
 import org.apache.cassandra.db.partitions.UnfilteredPartitionIterator;
+import org.apache.cassandra.db.partitions.UnfilteredPartitionIterators;
+import org.apache.cassandra.db.rows.ColumnData;
 import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.db.rows.RowIterator;
 import org.apache.cassandra.exceptions.InvalidRequestException;
 import org.apache.cassandra.index.Index;
 import org.apache.cassandra.index.IndexRegistry;
@@ -36,24 +40,45 @@ import org.apache.cassandra.notifications.INotificationConsumer;
 import org.apache.cassandra.schema.ColumnMetadata;
 import org.apache.cassandra.schema.IndexMetadata;
 import org.apache.cassandra.schema.TableMetadata;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.ratu.second.esclient.AggregationRows;
+import org.apache.ratu.second.esclient.BoundQuery;
+import org.apache.ratu.second.esclient.BulkItem;
 import org.apache.ratu.second.esclient.ElasticIndex;
 import org.apache.ratu.second.esclient.EsPartitionIterator;
-import org.apache.ratu.second.esclient.SearchResult;
+import org.apache.ratu.second.esclient.EsTransport;
+import org.apache.ratu.second.esclient.IndexLayout;
+import org.apache.ratu.second.esclient.IndexMetrics;
+import org.apache.ratu.second.esclient.IndexOnlyRows;
+import org.apache.ratu.second.esclient.IndexingPipeline;
+import org.apache.ratu.second.esclient.RowHydrator;
+import org.apache.ratu.second.esclient.QueryResultCache;
+import org.apache.ratu.second.esclient.QueryTemplate;
+import org.apache.ratu.second.esclient.RestTransport;
+import org.apache.ratu.second.esclient.RowSource;
+import org.apache.ratu.second.esclient.SearchCursors;
+import org.apache.ratu.second.esclient.SearchHitStream;
 import org.apache.ratu.second.esclient.SearchResultRow;
+import org.apache.ratu.second.exception.BulkRejectedException;
 import org.apache.ratu.second.exception.CreateSecondIndexException;
 import org.apache.ratu.second.indexers.EsIndexer;
 import org.apache.ratu.second.indexers.NoOpPartitionIterator;
 import org.opensearch.common.settings.Settings;
+import org.opensearch.common.xcontent.XContentType;
+import org.opensearch.core.common.bytes.BytesReference;
+import org.opensearch.index.query.QueryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.CharacterCodingException;
 import java.security.SecureRandom;
 import java.util.*;
 import java.util.concurrent.Callable;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 
@@ -89,6 +114,9 @@ public class ElasticSecondaryIndex implements Index, INotificationConsumer {
 
     public final Map<String, Map<String, String>> schema;
 
+    // schema 中能从 _source 无损还原的列
+    private final Set<String> indexOnlyColumns;
+
     private List<String> partitionKeysNames;
     private List<String> clusteringColumnsNames;
     private boolean hasClusteringColumns;
@@ -99,12 +127,47 @@ public class ElasticSecondaryIndex implements Index, INotificationConsumer {
 
     private final ElasticIndex elasticIndex;
 
-    public Boolean asyncWrite = false;
+    // 共享索引或按节点划分的本地索引
+    public final IndexLayout layout;
+
+    public final IndexingPipeline pipeline;
+
+    // 写入、查询各阶段的指标，见 IndexMetrics
+    public final IndexMetrics metrics;
+
+    // 查询结果缓存，见 QueryResultCache
+    private final QueryResultCache queryCache;
+
+    // 为已有数据构建索引
+    private final IndexBuilder builder;
+
+    // 写入文档的格式，只有 local transport 能直接使用 smile/cbor
+    private final XContentType documentFormat;
+
+    // partial：按局部更新写入本次变化的字段；full：整文档覆盖写入
+    private final boolean partialUpdates;
+
+    // 按当前表结构编译的行编码器，表结构变化时重新编译
+    private volatile DocumentEncoder encoder;
 
     public Boolean isRollOver = false;
 
     public Integer minDocCount= 10000;
 
+    public int hydrateBatchSize = 100;
+
+    public int hydrateConcurrency = 2;
+
+    public ConsistencyLevel hydrateConsistency = ConsistencyLevel.ONE;
+
+    // 流式搜索每页的命中数
+    public int esPageSize = 1000;
+
+    public String pitKeepAlive = "2m";
+
+    // search_after 翻页的排序字段，保证相同得分的文档顺序稳定
+    private final String tiebreaker;
+
 
 
 
@@ -141,23 +204,51 @@ public class ElasticSecondaryIndex implements Index, INotificationConsumer {
 
         hasClusteringColumns = !clusteringColumnsNames.isEmpty();
 
-        elasticIndex = new ElasticIndex(partitionKeysNames, clusteringColumnsNames);
-
         Map<String, String> options = config.options;
+        EsTransport transport = EsTransport.of(options.get(EsTransport.TRANSPORT));
+        elasticIndex = new ElasticIndex(partitionKeysNames, clusteringColumnsNames, transport);
+
         refreshSecond = options.get("refresh_seconds") == null ? "-1" : Integer.valueOf(options.get("refresh_seconds")) + "s";
-        asyncWrite = options.get("async_write") == null ? false : Boolean.parseBoolean(options.get("async_write"));
         isRollOver = options.get("is_roll_over") == null ? false : Boolean.parseBoolean(options.get("is_roll_over"));
         minDocCount = options.get("min_doc_count") != null ? Integer.parseInt(options.get("min_doc_count")) : 10000;
+        hydrateBatchSize = options.get(RowHydrator.HYDRATE_BATCH_SIZE) != null ? Integer.parseInt(options.get(RowHydrator.HYDRATE_BATCH_SIZE)) : 100;
+        hydrateConcurrency = options.get(RowHydrator.HYDRATE_CONCURRENCY) != null ? Integer.parseInt(options.get(RowHydrator.HYDRATE_CONCURRENCY)) : 2;
+        hydrateConsistency = options.get(RowHydrator.HYDRATE_CONSISTENCY) != null ? ConsistencyLevel.valueOf(options.get(RowHydrator.HYDRATE_CONSISTENCY).toUpperCase(Locale.ROOT)) : ConsistencyLevel.ONE;
         String schema = options.get("schema");
         Map<String, Map<String, String>> filedes = (Map<String, Map<String, String>>) JSONObject.parseObject(Utils.pattern(schema), Map.class).get("fields");
         this.schema = filedes;
+        this.partialUpdates = "partial".equalsIgnoreCase(options.get(DocumentEncoder.UPDATE_MODE));
+        Set<String> restorable = new HashSet<>();
+        for (ColumnMetadata column : metadata.columns()) {
+            if (filedes.containsKey(column.name.toString()) && IndexOnlyRows.isRestorable(column, partialUpdates)) {
+                restorable.add(column.name.toString());
+            }
+        }
+        this.indexOnlyColumns = Collections.unmodifiableSet(restorable);
+        esPageSize = options.get("page_size") != null ? Integer.parseInt(options.get("page_size")) : 1000;
+        pitKeepAlive = options.get("pit_keep_alive") != null ? options.get("pit_keep_alive") : "2m";
+        this.tiebreaker = tiebreaker(partitionKeysNames.get(0), filedes);
+        this.layout = IndexLayout.of(this.index_name, ksName, elasticIndex, options, baseCfs.getPartitioner(), isRollOver);
+        this.metrics = IndexMetrics.register(ksName, cfName);
+        this.queryCache = new QueryResultCache(this.index_name, metrics, options);
+        try {
+            this.pipeline = new IndexingPipeline(this.index_name, elasticIndex, metrics, options);
+        } catch (IOException e) {
+            metrics.release();
+            logger.error("索引 outbox 打开异常:", e);
+            throw new CreateSecondIndexException("索引 outbox 打开异常:" + e.getMessage());
+        }
+        this.documentFormat = transport == RestTransport.INSTANCE || options.get(DocumentEncoder.DOCUMENT_FORMAT) == null
+            ? XContentType.JSON
+            : XContentType.valueOf(options.get(DocumentEncoder.DOCUMENT_FORMAT).trim().toUpperCase(Locale.ROOT));
+        this.encoder = DocumentEncoder.compile(metadata, filedes, documentFormat, partialUpdates);
 
         //此处创建为一个普通索引，目标是想要创建一个滚动索引
         //创建滚动索引的方法基于ism插件，也就是根据传入的参数进行判断，创建对应的索引类型（普通索引，滚动索引）
 
         // 判断是否有索引，如果没有就创建索引
         try {
-            if (!elasticIndex.isExistsIndex(this.index_name)) {
+            if (!elasticIndex.isExistsIndex(layout.index)) {
 //                JvmInfo jvmInfo = JvmInfo.jvmInfo();
 //                ByteSizeValue maxHeapSize = jvmInfo.getMem().getHeapMax();
 //                long maxHeapSizeMb = maxHeapSize.getMb();
@@ -168,7 +259,9 @@ public class ElasticSecondaryIndex implements Index, INotificationConsumer {
 //            settingsBuilder.put("index.translog.durability","async");
 //            settingsBuilder.put("index.translog.flush_threshold_size",maxHeapSizeMb+"mb");
 //            settingsBuilder.put("index.translog.sync_interval","240s");
-                if (isRollOver) {
+                if (layout.local) {
+                    layout.create(layout.settings(settingsBuilder).build(), layout.fields(filedes));
+                } else if (isRollOver) {
                     elasticIndex.newRollOverIndex(this.index_name, settingsBuilder.build(), filedes,minDocCount);
                 } else {
                     elasticIndex.newIndex(this.index_name, settingsBuilder.build(), filedes);
@@ -176,14 +269,24 @@ public class ElasticSecondaryIndex implements Index, INotificationConsumer {
             }
         }catch (Exception e){
             logger.error("索引创建异常:",e);
+            pipeline.close();
+            metrics.release();
             throw new CreateSecondIndexException("索引创建异常:"+e.getMessage());
         }
+
+        // 重放上次停止前 outbox 中未确认的写入
+        pipeline.replay();
+
+        this.builder = new IndexBuilder(this, options);
+        builder.registerMBean();
+        layout.register();
     }
 
 
     @Override
     public Callable<?> getInitializationTask() {
-        return null;
+        // 索引创建后（或上次构建没有完成时）扫描已有数据写入索引，构建完成后标记为已构建，重启时不再扫描
+        return SystemKeyspace.isIndexBuilt(ksName, idxName) ? null : builder;
     }
 
     @Override
@@ -193,7 +296,12 @@ public class ElasticSecondaryIndex implements Index, INotificationConsumer {
 
     @Override
     public Callable<?> getMetadataReloadTask(IndexMetadata indexMetadata) {
-        return null;
+        // 表结构变化后重新编译行编码器
+        return () -> {
+            encoder = DocumentEncoder.compile(baseCfs.metadata(), schema, documentFormat, partialUpdates);
+            queryCache.release();
+            return null;
+        };
     }
 
     @Override
@@ -214,6 +322,11 @@ public class ElasticSecondaryIndex implements Index, INotificationConsumer {
     @Override
     public Callable<?> getInvalidateTask() {
         // 删除索引
+        builder.discard();
+        pipeline.drop();
+        layout.unregister();
+        queryCache.release();
+        metrics.release();
         try {
             elasticIndex.dropIndex(this.index_name);
         } catch (Exception e) {
@@ -272,8 +385,12 @@ public class ElasticSecondaryIndex implements Index, INotificationConsumer {
 
     @Override
     public Indexer indexerFor(DecoratedKey key, RegularAndStaticColumns columns, int nowInSec, WriteContext ctx, IndexTransaction.Type transactionType) {
+        if (transactionType == IndexTransaction.Type.CLEANUP) {
+            // cleanup 会逐个分区删除文档，结束后再按查询删除不再负责的 token 范围内剩余的文档
+            layout.onCleanup();
+        }
         // 索引新数据
-        return new EsIndexer(this, key, nowInSec, false, asyncWrite);
+        return new EsIndexer(this, key, nowInSec, false);
     }
 
     @Override
@@ -293,96 +410,290 @@ public class ElasticSecondaryIndex implements Index, INotificationConsumer {
 
 
     @Nullable
-    public void index(@Nonnull DecoratedKey decoratedKey, @Nonnull Row newRow, @Nullable Row oldRow, int nowInSec, Boolean asyncWrite) {
+    public CompletableFuture<Void> index(@Nonnull DecoratedKey decoratedKey, @Nonnull Row newRow, @Nullable Row oldRow, int nowInSec) {
+        return index(decoratedKey, newRow, false);
+    }
+
+    /**
+     * 建索引时写入扫描到的整行。扫描与实时写入并发，扫描到的行可能比已经写入的文档旧：
+     * 整体写入时与实时写入一样以行的时间戳作为外部版本号，局部更新时只补上文档中还没有的字段
+     */
+    @Nullable
+    public CompletableFuture<Void> backfill(@Nonnull DecoratedKey decoratedKey, @Nonnull Row row) {
+        return index(decoratedKey, row, true);
+    }
 
+    @Nullable
+    private CompletableFuture<Void> index(DecoratedKey decoratedKey, Row newRow, boolean backfill) {
         String primaryKey = decoratedKey.getPrimaryKey(this.baseCfs.metadata());
         String primaryKeyValue = decoratedKey.getPrimaryKeyValue(this.baseCfs.metadata()).replace("'", "");
         try {
-            Map<String, Object> maps = Utils.toMaps(newRow, this.schema);
-            maps.put(primaryKey, primaryKeyValue);
-            HashMap<String, Object> jsonMap = new HashMap<>();
-            for (String key : this.schema.keySet()) {
-                jsonMap.put(key, maps.get(key));
+            DocumentEncoder encoder = this.encoder;
+            // 集合的元素级修改无法用字段覆盖表达，读出本节点上的当前值整体写入；建索引时扫描到的就是完整的行
+            Row current = backfill ? newRow : encoder.updatesElements(newRow) ? readCurrent(decoratedKey) : null;
+            BytesReference document = encoder.encode(newRow, current, primaryKey, primaryKeyValue, layout.token(decoratedKey));
+
+            // 索引数据，交给批量写入管道；整体写入带上行的时间戳作为版本号，局部更新以 doc_as_upsert 合并到已有文档，写入 map 时替换字段
+            BulkItem item;
+            if (!encoder.partial) {
+                item = BulkItem.index(layout.index, primaryKeyValue, document, encoder.contentType, maxTimestamp(newRow));
+            } else if (backfill) {
+                item = BulkItem.fill(layout.index, primaryKeyValue, document, encoder.contentType);
+            } else if (encoder.replacesObjects(newRow)) {
+                item = BulkItem.replace(layout.index, primaryKeyValue, document, encoder.contentType);
+            } else {
+                item = BulkItem.update(layout.index, primaryKeyValue, document, encoder.contentType);
             }
-
-            // 索引数据
-            elasticIndex.indexData(jsonMap, index_name, primaryKeyValue, asyncWrite,isRollOver);
+            return invalidateOnAck(pipeline.submit(item));
+        } catch (BulkRejectedException e) {
+            // 队列已满，拒绝本次写入以反压 Cassandra 写路径
+            throw e;
         } catch (Exception e) {
             logger.error("Index " + index_name + " data Exception:", e);
         }
+        return null;
+    }
+
+    /**
+     * 写入被确认（或最终失败）后再让查询结果缓存失效：提前失效时，确认之前开始的查询会以新的写入序号缓存不含这次写入的结果
+     */
+    private CompletableFuture<Void> invalidateOnAck(CompletableFuture<Void> future) {
+        future.whenComplete((ignored, error) -> queryCache.onWrite());
+        return future;
+    }
+
+    /**
+     * 读出本节点上该分区的当前行。索引的 commit 在写入 memtable 之后调用，读到的行已经包含本次写入
+     */
+    @Nullable
+    private Row readCurrent(DecoratedKey key) {
+        SinglePartitionReadCommand command = SinglePartitionReadCommand.fullPartitionRead(baseCfs.metadata(), FBUtilities.nowInSeconds(), key);
+        try (ReadExecutionController controller = command.executionController();
+             UnfilteredPartitionIterator unfiltered = command.executeLocally(controller);
+             PartitionIterator partitions = UnfilteredPartitionIterators.filter(unfiltered, command.nowInSec())) {
+            if (partitions.hasNext()) {
+                try (RowIterator partition = partitions.next()) {
+                    return partition.hasNext() ? partition.next() : null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 行中最新的写入时间戳（微秒），包括主键的 liveness、行删除和每个单元格
+     */
+    private static long maxTimestamp(Row row) {
+        long timestamp = Math.max(row.primaryKeyLivenessInfo().timestamp(), row.deletion().time().markedForDeleteAt());
+        for (ColumnData data : row) {
+            timestamp = Math.max(timestamp, data.maxTimestamp());
+        }
+        return timestamp < 0 ? BulkItem.NO_VERSION : timestamp;
     }
 
+    /**
+     * 删除文档，与写入一样交给批量写入管道；以删除的时间戳作为版本号，建索引时扫描到的旧行不会再写回
+     */
     @Nullable
-    public void delete(DecoratedKey decoratedKey) {
-        final Stopwatch time = Stopwatch.createStarted();
-        String primaryKeyValue = decoratedKey.getPrimaryKeyValue(baseCfs.metadata());
+    public CompletableFuture<Void> delete(DecoratedKey decoratedKey, DeletionTime deletionTime) {
+        String primaryKeyValue = decoratedKey.getPrimaryKeyValue(baseCfs.metadata()).replace("'", "");
         try {
             //删除索引数据
-            elasticIndex.delData(index_name, primaryKeyValue,this.isRollOver);
+            return invalidateOnAck(pipeline.submit(BulkItem.delete(layout.index, primaryKeyValue, deletionTime.markedForDeleteAt())));
+        } catch (BulkRejectedException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("delete data Exception:", e);
         }
-        logger.info("delete data 结果，primaryKeyValue：" + primaryKeyValue + " took {}ms", time.elapsed(TimeUnit.MILLISECONDS));
+        return null;
     }
 
 
     @Nonnull
     public UnfilteredPartitionIterator search(ReadExecutionController controller, ReadCommand command) {
-        final Stopwatch time = Stopwatch.createStarted();
-        final String queryString = Utils.queryString(command);
-        Map map = JSONObject.parseObject(Utils.pattern(queryString), Map.class);
-
-        boolean refresh = map.get("refresh") == null ? false : Boolean.parseBoolean(map.get("refresh").toString());
-
-        if (refresh) {
-            try {
-                boolean b = true;
-                // 刷新索引
-                b = elasticIndex.refreshData(index_name);
-                logger.info("refresh data 结果:" + b);
-            } catch (Exception e) {
-                logger.error("refresh data faild:", e);
-            }
+        final QueryMetaData queryMetaData = new QueryMetaData(Utils.queryString(command));
+        // 按模板缓存编译结果，只绑定表达式中的参数
+        BoundQuery query;
+        try (Timer.Context ignored = metrics.translateLatency.time()) {
+            query = QueryTemplate.bind(queryMetaData.query);
+        }
+
+        // 回表读取的一致性级别，查询表达式中的 consistency 优先于索引参数
+        ConsistencyLevel consistency = query.option("consistency") == null ? hydrateConsistency : ConsistencyLevel.valueOf(query.option("consistency").toString().toUpperCase(Locale.ROOT));
+
+        if (query.refresh()) {
+            // 等待本节点已确认的写入可以被搜索到，不再强制刷新索引
+            pipeline.awaitSearchable();
         }
 
         final String searchId = UUID.randomUUID().toString();
 
-        SearchResult searchResult = null;
-        SearchResultRow searchResultRow = null;
+        // 查询结果缓存：refresh 的查询不读缓存，结果仍然写入
+        String cacheKey = null;
+        QueryResultCache.State cacheState = null;
+        if (queryCache.enabled(query) && (!query.isAggregation() || runsAggregation(command))) {
+            cacheKey = queryCache.key(query, command);
+            cacheState = queryCache.state(searchTarget(command, query));
+            QueryResultCache.Entry cached = query.refresh() ? null : queryCache.get(cacheKey, cacheState);
+            if (cached != null) {
+                cached.restoreCursor();
+                RowSource rows = cached.aggregations != null ? new AggregationRows(baseCfs, command, cached.aggregations) : cached.rows();
+                return new EsPartitionIterator(this, null, null, rows, partitionKeysNames, command, searchId);
+            }
+        }
+
+        if (query.isAggregation()) {
+            return aggregate(command, query, searchId, cacheKey, cacheState);
+        }
+
+        // Cassandra 分页时，下一页从上一页最后一个分区键开始，接着消费挂起的流式搜索
+        String cursorPrefix = SearchCursors.prefix(index_name, queryMetaData.query);
+        SearchHitStream stream = null;
+        SearchCursors.Position position = null;
+        ByteBuffer pagingKey = pagingKey(command);
+        if (pagingKey != null) {
+            String cursorKey = SearchCursors.key(cursorPrefix, pagingKey);
+            stream = SearchCursors.resume(cursorKey);
+            if (stream == null) {
+                // 游标已过期或被淘汰时从上一页最后一个命中之后重新搜索，不能从第一条命中重新开始
+                position = SearchCursors.position(cursorKey);
+                if (position == null) {
+                    throw new InvalidRequestException("索引 " + index_name + " 的分页位置已过期，请重新查询");
+                }
+            }
+        }
+        Iterator<SearchResultRow> hits = Collections.emptyIterator();
+        QueryResultCache.Recorder recorder = cacheKey == null ? null : queryCache.recorder(cacheKey, cacheState, command.limits().count());
         try {
-            // 搜索数据
-            searchResult = elasticIndex.searchData(index_name, map);
-            if (searchResult.items.size() == 0){
-                searchResult = new SearchResult(new ArrayList<>());
-                searchResultRow = new SearchResultRow(new String[]{},new JSONObject());
-            }else {
-                searchResultRow = searchResult.items.get((searchResult.items.size() - 1));
-                //searchResult.items.remove((searchResult.items.size() - 1));
-                fillPartitionAndClusteringKeys(searchResult.items);
+            if (stream == null) {
+                // 搜索数据
+                int pageSize = Math.max(1, Math.min(esPageSize, command.limits().count()));
+                stream = elasticIndex.searchStream(layout.index, query, layout.tokenFilter(command), pageSize, pitKeepAlive, tiebreaker, this::fillPartitionAndClusteringKeys, metrics);
+                if (position != null) {
+                    stream.seek(position);
+                }
             }
+            // 在这里拉取第一页，出错时返回空结果
+            stream.hasNext();
+            hits = stream;
         } catch (Exception e) {
-            e.printStackTrace();
             logger.error("query data faild:", e);
+            if (recorder != null) {
+                recorder.fail();
+            }
+            if (stream != null) {
+                stream.close();
+                stream = null;
+            }
+        }
+
+        // 显式指定 load-rows 时以其为准，否则查询的列全部被索引覆盖时直接用 _source 构造结果
+        boolean indexOnly = queryMetaData.loadRowsSpecified() ? !queryMetaData.loadRows() : isCoveredByIndex(command.columnFilter());
+        RowSource rows = indexOnly
+            ? new IndexOnlyRows(baseCfs, command, hits)
+            : new RowHydrator(baseCfs, command, consistency, hits, hydrateBatchSize, hydrateConcurrency, metrics);
+        return new EsPartitionIterator(this, stream, cursorPrefix, rows, partitionKeysNames, command, searchId, recorder);
+    }
+
+    /**
+     * 聚合只在单分区读或者从环起点开始的范围读上执行
+     */
+    private static boolean runsAggregation(ReadCommand command) {
+        return command instanceof SinglePartitionReadCommand || ((PartitionRangeReadCommand) command).dataRange().keyRange().left.isMinimum();
+    }
+
+    /**
+     * 实际搜索的索引：local 布局下范围查询的聚合在别名上执行，每个节点的索引只取主副本的 token 范围（见 {@link IndexLayout#singleCopyFilter}）
+     */
+    private String searchTarget(ReadCommand command, BoundQuery query) {
+        return layout.local && query.isAggregation() && !(command instanceof SinglePartitionReadCommand) ? layout.alias : layout.index;
+    }
+
+    /**
+     * 只有聚合的查询：size 为 0 执行一次，不取回命中、不回表，每个桶构造一行。
+     * 范围查询被 Cassandra 按 token 范围拆分或分页时，只在从环起点开始的第一个请求上执行，所有桶在这一页返回，
+     * 超过一页的行数时拒绝查询（见 {@link AggregationRows}）；
+     * local 布局下在别名上执行，每个节点的索引只取它作为主副本的 token 范围，同一份数据不会按副本数重复计算
+     */
+    private UnfilteredPartitionIterator aggregate(ReadCommand command, BoundQuery query, String searchId,
+                                                  @Nullable String cacheKey, @Nullable QueryResultCache.State cacheState) {
+        Map<String, Object> aggregations = Collections.emptyMap();
+        if (runsAggregation(command)) {
+            QueryBuilder filter = command instanceof SinglePartitionReadCommand ? layout.tokenFilter(command) : layout.singleCopyFilter();
+            try (Timer.Context ignored = metrics.searchLatency.time()) {
+                aggregations = elasticIndex.aggregate(searchTarget(command, query), query, filter);
+                if (cacheKey != null) {
+                    queryCache.putAggregations(cacheKey, cacheState, aggregations);
+                }
+            } catch (Exception e) {
+                logger.error("aggregate data faild:", e);
+            }
+        }
+        RowSource rows = new AggregationRows(baseCfs, command, aggregations);
+        return new EsPartitionIterator(this, null, null, rows, partitionKeysNames, command, searchId);
+    }
+
+    /**
+     * 分页查询的起始分区键（上一页最后返回的分区），不是分页查询时返回 null
+     */
+    @Nullable
+    private static ByteBuffer pagingKey(ReadCommand command) {
+        if (command instanceof PartitionRangeReadCommand) {
+            PartitionPosition left = ((PartitionRangeReadCommand) command).dataRange().keyRange().left;
+            if (left instanceof DecoratedKey) {
+                return ((DecoratedKey) left).getKey();
+            }
         }
-        logger.info("{} select data took {}ms", index_name, time.elapsed(TimeUnit.MILLISECONDS));
-        return new EsPartitionIterator(this, searchResult, partitionKeysNames, command, searchId, searchResultRow.docMetadata);
+        return null;
     }
 
 
+    /**
+     * 主键写在 _source 中时按主键排序，text 类型使用 keyword 子字段；否则退回到 _id
+     */
+    private static String tiebreaker(String primaryKey, Map<String, Map<String, String>> fields) {
+        Map<String, String> field = fields.get(primaryKey);
+        if (field == null) {
+            return "_id";
+        }
+        return "text".equals(field.get("type")) ? primaryKey + ".keyword" : primaryKey;
+    }
+
+    /**
+     * 查询的列是否都能从索引的 _source 还原
+     */
+    public boolean isCoveredByIndex(ColumnFilter columnFilter) {
+        for (ColumnMetadata column : columnFilter.queriedColumns()) {
+            if (!column.isPrimaryKeyColumn() && !indexOnlyColumns.contains(column.name.toString())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public void fillPartitionAndClusteringKeys(List<SearchResultRow> searchResultRows) {
+        fillPartitionAndClusteringKeys(searchResultRows, baseCfs.metadata(), partitionKeysNames.size(), clusteringColumnsNames.size());
+    }
+
+    /**
+     * 把命中的主键拆分为分区键和聚簇键，分区键编码为 Cassandra 的分区键
+     */
+    public static void fillPartitionAndClusteringKeys(List<SearchResultRow> searchResultRows, TableMetadata metadata,
+                                                      int partitionKeyCount, int clusteringColumnCount) {
+        boolean hasClusteringColumns = clusteringColumnCount > 0;
         for (SearchResultRow searchResultRow : searchResultRows) {
             String[] rawKey = searchResultRow.primaryKey;
             final String[] partitionKeys;
             final String[] clusteringKeys;
 
             if (hasClusteringColumns) {
-                clusteringKeys = new String[clusteringColumnsNames.size()];
-                partitionKeys = new String[partitionKeysNames.size()];
+                clusteringKeys = new String[clusteringColumnCount];
+                partitionKeys = new String[partitionKeyCount];
 
                 int pkPos = 0;
                 int ckPos = 0;
                 for (String key : rawKey) {
-                    if (pkPos < partitionKeysNames.size()) {
+                    if (pkPos < partitionKeyCount) {
                         partitionKeys[pkPos] = key;
                     } else {
                         clusteringKeys[ckPos] = key;
@@ -395,7 +706,7 @@ public class ElasticSecondaryIndex implements Index, INotificationConsumer {
                 clusteringKeys = null;
             }
 
-            searchResultRow.partitionKey = Utils.getPartitionKeys(partitionKeys, baseCfs.metadata());
+            searchResultRow.partitionKey = Utils.getPartitionKeys(partitionKeys, metadata);
             searchResultRow.clusteringKeys = clusteringKeys;
         }
     }
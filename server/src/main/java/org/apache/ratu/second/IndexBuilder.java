@@ -0,0 +1,376 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second;
+
+import com.google.common.util.concurrent.RateLimiter;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.DataRange;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.PartitionRangeReadCommand;
+import org.apache.cassandra.db.ReadExecutionController;
+import org.apache.cassandra.db.SystemKeyspace;
+import org.apache.cassandra.db.filter.ColumnFilter;
+import org.apache.cassandra.db.filter.DataLimits;
+import org.apache.cassandra.db.filter.RowFilter;
+import org.apache.cassandra.db.partitions.PartitionIterator;
+import org.apache.cassandra.db.partitions.UnfilteredPartitionIterator;
+import org.apache.cassandra.db.partitions.UnfilteredPartitionIterators;
+import org.apache.cassandra.db.rows.RowIterator;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.schema.TableMetadata;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.ratu.second.exception.BaseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 为已有数据构建索引。
+ * <p>
+ * 整个 token 环被切分成 build_parallelism * 4 个范围，build_parallelism 个线程并行地按范围读取本地数据
+ * （memtable 和 SSTable 合并后的结果），经过索引的行编码器交给批量写入管道，由管道的排队上限反压，
+ * 另外可以用 build_rate_limit 限制每秒写入的行数。
+ * <p>
+ * 每个范围每写入 build_checkpoint_rows 行，等待这些文档被确认后把当前分区的 token 记录到检查点文件
+ * （commitlog 同级的 es_build 目录）；构建中断后下次从检查点继续，全部完成后在系统表中标记索引已构建并删除检查点文件。
+ * 每个范围按 build_page_size 个分区分页读取，每页使用新的读命令，从上一页最后一个分区之后继续。
+ */
+public class IndexBuilder implements IndexBuilderMBean, Callable<Void> {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexBuilder.class);
+
+    public static final String BUILD_PARALLELISM = "build_parallelism";
+    public static final String BUILD_RATE_LIMIT = "build_rate_limit";
+    public static final String BUILD_CHECKPOINT_ROWS = "build_checkpoint_rows";
+    public static final String BUILD_PAGE_SIZE = "build_page_size";
+
+    private static final String RANGES = "ranges";
+    private static final String DONE = "done";
+
+    private final ElasticSecondaryIndex index;
+    private final int parallelism;
+    private final int checkpointRows;
+    private final int pageSize;
+    private final RateLimiter rateLimiter;
+    private final Path checkpointFile;
+
+    private final AtomicLong rowsIndexed = new AtomicLong();
+    private final AtomicInteger rangesCompleted = new AtomicInteger();
+    private volatile int rangesTotal = 0;
+    private volatile String state = "IDLE";
+    private volatile long startNanos = System.nanoTime();
+
+    private Properties checkpoints = new Properties();
+    private ObjectName objectName;
+
+    public IndexBuilder(@Nonnull ElasticSecondaryIndex index, @Nonnull Map<String, String> options) {
+        this.index = index;
+        this.parallelism = options.get(BUILD_PARALLELISM) != null
+            ? Integer.parseInt(options.get(BUILD_PARALLELISM))
+            : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.checkpointRows = options.get(BUILD_CHECKPOINT_ROWS) != null ? Integer.parseInt(options.get(BUILD_CHECKPOINT_ROWS)) : 10000;
+        this.pageSize = options.get(BUILD_PAGE_SIZE) != null ? Integer.parseInt(options.get(BUILD_PAGE_SIZE)) : 1000;
+        double rate = options.get(BUILD_RATE_LIMIT) != null ? Double.parseDouble(options.get(BUILD_RATE_LIMIT)) : 0;
+        this.rateLimiter = rate > 0 ? RateLimiter.create(rate) : null;
+        this.checkpointFile = Paths.get(DatabaseDescriptor.getCommitLogLocation()).toAbsolutePath()
+            .resolveSibling("es_build").resolve(index.index_name + ".properties");
+    }
+
+    /**
+     * 执行构建，有检查点时从检查点继续；任一范围失败时抛出异常，已完成的范围保留在检查点中
+     */
+    @Override
+    public synchronized Void call() throws Exception {
+        TableMetadata metadata = index.baseCfs.metadata();
+        IPartitioner partitioner = metadata.partitioner;
+        List<Range<Token>> ranges = split(partitioner, parallelism * 4);
+
+        loadCheckpoints(ranges.size());
+        rangesTotal = ranges.size();
+        rangesCompleted.set(0);
+        rowsIndexed.set(0);
+        startNanos = System.nanoTime();
+        state = "RUNNING";
+        logger.info("Building index {} over {} token ranges with {} threads", index.index_name, ranges.size(), parallelism);
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r);
+            thread.setDaemon(true);
+            thread.setName("EsIndexBuild" + thread.getId());
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>(ranges.size());
+            for (int i = 0; i < ranges.size(); i++) {
+                int slot = i;
+                Range<Token> range = ranges.get(i);
+                String checkpoint = checkpoints.getProperty(String.valueOf(slot));
+                if (DONE.equals(checkpoint)) {
+                    rangesCompleted.incrementAndGet();
+                    continue;
+                }
+                Token start = checkpoint == null ? range.left : partitioner.getTokenFactory().fromString(checkpoint);
+                if (start.equals(range.right)) {
+                    // 最后写入的分区正好在范围的右端点
+                    rangesCompleted.incrementAndGet();
+                    continue;
+                }
+                futures.add(executor.submit(() -> build(metadata, slot, new Range<>(start, range.right))));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            state = "FAILED";
+            logger.error("Build index " + index.index_name + " Exception:", e.getCause());
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } catch (Exception e) {
+            state = "FAILED";
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // 记录完成标记后再删除检查点，getInitializationTask 据此在重启时跳过构建
+        SystemKeyspace.setIndexBuilt(index.ksName, index.idxName);
+        Files.deleteIfExists(checkpointFile);
+        state = "COMPLETED";
+        logger.info("Built index {}: {} rows in {}s", index.index_name, rowsIndexed.get(),
+            TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos));
+        return null;
+    }
+
+    @Override
+    public void rebuild() {
+        Thread thread = new Thread(() -> {
+            try {
+                synchronized (this) {
+                    // 重建中断后重启时从头继续构建
+                    SystemKeyspace.setIndexRemoved(index.ksName, index.idxName);
+                    Files.deleteIfExists(checkpointFile);
+                    checkpoints = new Properties();
+                }
+                call();
+            } catch (Exception e) {
+                logger.error("Rebuild index " + index.index_name + " Exception:", e);
+            }
+        });
+        thread.setDaemon(true);
+        thread.setName("EsIndexRebuild");
+        thread.start();
+    }
+
+    /**
+     * 索引被删除时放弃检查点
+     */
+    public void discard() {
+        unregisterMBean();
+        try {
+            Files.deleteIfExists(checkpointFile);
+        } catch (IOException e) {
+            logger.warn("Delete build checkpoint " + checkpointFile + " Exception:", e);
+        }
+    }
+
+    @Override
+    public String getState() {
+        return state;
+    }
+
+    @Override
+    public double getProgress() {
+        int total = rangesTotal;
+        return total == 0 ? 0 : (double) rangesCompleted.get() / total;
+    }
+
+    @Override
+    public int getRangesTotal() {
+        return rangesTotal;
+    }
+
+    @Override
+    public int getRangesCompleted() {
+        return rangesCompleted.get();
+    }
+
+    @Override
+    public long getRowsIndexed() {
+        return rowsIndexed.get();
+    }
+
+    @Override
+    public double getRowsPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds <= 0 ? 0 : rowsIndexed.get() / seconds;
+    }
+
+    private void build(TableMetadata metadata, int slot, Range<Token> range) {
+        List<CompletableFuture<Void>> pending = new ArrayList<>(checkpointRows);
+        DecoratedKey last = null;
+        int rows;
+        do {
+            // 每页使用新的读命令和 ReadExecutionController，不在整个范围的扫描期间持有 OpOrder 和 SSTable 引用；
+            // 索引表只有一个主键列，每个分区只有一行，按行数限制即按分区数分页
+            DataRange dataRange = last == null
+                ? DataRange.forTokenRange(range)
+                : DataRange.forKeyRange(new Range<>(last, range.right.maxKeyBound()));
+            PartitionRangeReadCommand command = PartitionRangeReadCommand.create(metadata,
+                FBUtilities.nowInSeconds(),
+                ColumnFilter.all(metadata),
+                RowFilter.NONE,
+                DataLimits.cqlLimits(pageSize),
+                dataRange);
+
+            rows = 0;
+            try (ReadExecutionController controller = command.executionController();
+                 UnfilteredPartitionIterator unfiltered = command.executeLocally(controller);
+                 PartitionIterator partitions = UnfilteredPartitionIterators.filter(unfiltered, command.nowInSec())) {
+                while (partitions.hasNext()) {
+                    try (RowIterator partition = partitions.next()) {
+                        last = partition.partitionKey();
+                        while (partition.hasNext()) {
+                            if (rateLimiter != null) {
+                                rateLimiter.acquire();
+                            }
+                            CompletableFuture<Void> future = index.backfill(last, partition.next());
+                            if (future != null) {
+                                pending.add(future);
+                            }
+                            rowsIndexed.incrementAndGet();
+                            rows++;
+                        }
+                    }
+                    if (pending.size() >= checkpointRows) {
+                        acknowledge(pending);
+                        saveCheckpoint(slot, metadata.partitioner.getTokenFactory().toString(last.getToken()));
+                    }
+                }
+            }
+        } while (rows >= pageSize);
+        acknowledge(pending);
+        saveCheckpoint(slot, DONE);
+        rangesCompleted.incrementAndGet();
+    }
+
+    /**
+     * 等待已提交的文档被确认，有失败时中止该范围，保证检查点之前的数据都已写入
+     */
+    private void acknowledge(List<CompletableFuture<Void>> pending) {
+        index.pipeline.flush();
+        index.pipeline.await(pending);
+        for (CompletableFuture<Void> future : pending) {
+            if (!future.isDone() || future.isCompletedExceptionally()) {
+                throw new BaseException("Index " + index.index_name + " build aborted, bulk writes were not acknowledged");
+            }
+        }
+        pending.clear();
+    }
+
+    private void loadCheckpoints(int ranges) throws IOException {
+        Properties properties = new Properties();
+        if (Files.exists(checkpointFile)) {
+            try (InputStream in = Files.newInputStream(checkpointFile)) {
+                properties.load(in);
+            }
+            // 切分方式变化后旧的检查点不再适用
+            if (!String.valueOf(ranges).equals(properties.getProperty(RANGES))) {
+                logger.info("Discard build checkpoint of index {}, token ranges changed", index.index_name);
+                properties = new Properties();
+            } else {
+                logger.info("Resume building index {} from {}", index.index_name, checkpointFile);
+            }
+        }
+        properties.setProperty(RANGES, String.valueOf(ranges));
+        checkpoints = properties;
+    }
+
+    private void saveCheckpoint(int slot, String value) {
+        synchronized (checkpointFile) {
+            checkpoints.setProperty(String.valueOf(slot), value);
+            try {
+                Files.createDirectories(checkpointFile.getParent());
+                Path temp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+                try (OutputStream out = Files.newOutputStream(temp)) {
+                    checkpoints.store(out, index.index_name);
+                }
+                Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                logger.warn("Save build checkpoint of index " + index.index_name + " Exception:", e);
+            }
+        }
+    }
+
+    /**
+     * Murmur3Partitioner 按 token 等分；其他分区器不切分，整个 token 环作为一个范围
+     */
+    private static List<Range<Token>> split(IPartitioner partitioner, int parts) {
+        Token minimum = partitioner.getMinimumToken();
+        if (!(partitioner instanceof Murmur3Partitioner) || parts <= 1) {
+            return Collections.singletonList(new Range<>(minimum, minimum));
+        }
+        List<Range<Token>> ranges = new ArrayList<>(parts);
+        long step = (Long.MAX_VALUE / parts) * 2;
+        long left = Long.MIN_VALUE;
+        for (int i = 0; i < parts; i++) {
+            long right = i == parts - 1 ? Long.MAX_VALUE : left + step;
+            ranges.add(new Range<>(new Murmur3Partitioner.LongToken(left), new Murmur3Partitioner.LongToken(right)));
+            left = right;
+        }
+        return ranges;
+    }
+
+    void registerMBean() {
+        try {
+            objectName = new ObjectName("org.apache.ratu.second:type=IndexBuild,name=" + ObjectName.quote(index.index_name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (Exception e) {
+            logger.warn("Register build MBean of index " + index.index_name + " Exception:", e);
+            objectName = null;
+        }
+    }
+
+    private void unregisterMBean() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception e) {
+            logger.warn("Unregister build MBean of index " + index.index_name + " Exception:", e);
+        }
+        objectName = null;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second;
+
+/**
+ * 索引构建进度，通过 JMX 暴露：org.apache.ratu.second:type=IndexBuild,name=索引名。
+ * 可以用 nodetool sjk mx 查看，例如
+ * {@code nodetool sjk mx -b 'org.apache.ratu.second:type=IndexBuild,name="lei.tweets"' -mg -f Progress}
+ */
+public interface IndexBuilderMBean {
+
+    /**
+     * IDLE、RUNNING、COMPLETED 或 FAILED
+     */
+    String getState();
+
+    /**
+     * 已完成的 token 范围占比，0 到 1
+     */
+    double getProgress();
+
+    int getRangesTotal();
+
+    int getRangesCompleted();
+
+    /**
+     * 本次构建已写入的行数
+     */
+    long getRowsIndexed();
+
+    double getRowsPerSecond();
+
+    /**
+     * 丢弃检查点，在后台从头重新构建
+     */
+    void rebuild();
+}
@@ -65,6 +65,13 @@ public class QueryMetaData {
     return value == null ? true : Boolean.valueOf(value);
   }
 
+  /**
+   * @return true when load-rows is set explicitly, in which case it overrides the index-only planning
+   */
+  public boolean loadRowsSpecified() {
+    return options.containsKey(LOAD_ROWS);
+  }
+
   /**
    * @return (false default) return _source when loading data from ES
    */
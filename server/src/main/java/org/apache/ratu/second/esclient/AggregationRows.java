@@ -0,0 +1,227 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+import com.alibaba.fastjson2.JSONObject;
+import com.google.common.collect.ImmutableSet;
+import org.apache.cassandra.cql3.QueryOptions;
+import org.apache.cassandra.db.Clustering;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.LivenessInfo;
+import org.apache.cassandra.db.ReadCommand;
+import org.apache.cassandra.db.rows.BTreeRow;
+import org.apache.cassandra.db.rows.BufferCell;
+import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.exceptions.InvalidRequestException;
+import org.apache.cassandra.schema.ColumnMetadata;
+import org.apache.cassandra.schema.TableMetadata;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.ratu.second.exception.BaseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 只有聚合的查询结果：不取回命中的文档、不回表，把 aggregations 展开为每个桶一行。
+ * <p>
+ * 桶聚合的每个桶是一行，桶的 key 写入与聚合同名的列，doc_count 写入 doc_count（或 count）列，
+ * 桶内的单值指标（avg、sum、max、min、cardinality 等）写入与指标同名的列，多值指标（stats 等）写入“指标名_统计项”列；
+ * 嵌套的桶聚合继续展开，每个最内层的桶一行，外层桶的 key 同样写入对应的列。没有桶聚合时只有一行指标。
+ * 值按列的类型转换，表中没有的列只出现在结果列（aggs 列）的 JSON 中。
+ * <p>
+ * 分区键列没有对应的桶 key，或者多行的桶 key 相同（例如嵌套桶共用外层的 key）时，所有行都用桶的序号（从 1 开始）作为分区键，
+ * 分区键需要是数字、文本或 uuid 类型。只支持单个分区键列、没有聚簇列的表。
+ * <p>
+ * 所有行在一页中返回，Cassandra 的下一页查询不会再执行聚合；行数超过这一页的行数上限（分页大小或 LIMIT）时拒绝查询，
+ * 而不是只返回前面的桶。
+ */
+public class AggregationRows implements RowSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(AggregationRows.class);
+
+    public static final String DOC_COUNT = "doc_count";
+
+    private static final String COUNT = "count";
+
+    // 桶本身的属性，不是子聚合
+    private static final Set<String> BUCKET_PROPERTIES = ImmutableSet.of("key", "key_as_string", DOC_COUNT, "from", "from_as_string", "to", "to_as_string");
+
+    private final ColumnFamilyStore baseCfs;
+    private final ReadCommand command;
+    private final ColumnMetadata partitionKeyColumn;
+    private final Iterator<Map<String, Object>> buckets;
+    // 桶 key 能唯一确定每一行时用作分区键
+    private final boolean keyedByBucket;
+    private final long timestamp;
+    private long ordinal = 0;
+
+    public AggregationRows(@Nonnull ColumnFamilyStore baseCfs, @Nonnull ReadCommand command, @Nonnull Map<String, Object> aggregations) {
+        TableMetadata metadata = baseCfs.metadata();
+        if (metadata.partitionKeyColumns().size() != 1 || !metadata.clusteringColumns().isEmpty()) {
+            throw new InvalidRequestException("Aggregation-only queries on " + metadata
+                + " are not supported, the table needs a single partition key column and no clustering columns");
+        }
+        this.baseCfs = baseCfs;
+        this.command = command;
+        this.partitionKeyColumn = metadata.partitionKeyColumns().get(0);
+        List<Map<String, Object>> rows = new ArrayList<>();
+        // 没有执行聚合（例如不是第一个 token 范围）时没有行
+        if (!aggregations.isEmpty()) {
+            flatten(aggregations, new LinkedHashMap<>(), rows);
+        }
+        if (rows.size() > command.limits().count()) {
+            throw new InvalidRequestException("Aggregation on " + metadata + " returned " + rows.size() + " buckets, more than the "
+                + command.limits().count() + " rows of one page; raise the page size or LIMIT, or lower the size of the bucket aggregations");
+        }
+        this.keyedByBucket = distinctKeys(rows, partitionKeyColumn.name.toString());
+        this.buckets = rows.iterator();
+        this.timestamp = FBUtilities.timestampMicros();
+    }
+
+    /**
+     * 把一层聚合结果展开为行：指标加入当前行，桶聚合的每个桶复制当前行后继续展开
+     */
+    @SuppressWarnings("unchecked")
+    static void flatten(Map<String, Object> aggregations, Map<String, Object> current, List<Map<String, Object>> rows) {
+        Map<String, Object> row = new LinkedHashMap<>(current);
+        Map<String, Object> bucketAggs = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : aggregations.entrySet()) {
+            String name = entry.getKey();
+            if (BUCKET_PROPERTIES.contains(name) || !(entry.getValue() instanceof Map)) {
+                continue;
+            }
+            Map<String, Object> result = (Map<String, Object>) entry.getValue();
+            if (result.containsKey("buckets")) {
+                bucketAggs.put(name, result.get("buckets"));
+            } else if (result.containsKey("value")) {
+                row.put(name, result.get("value"));
+            } else {
+                // 多值指标只取数值和字符串的统计项
+                result.forEach((stat, value) -> {
+                    if (value instanceof Number || value instanceof String) {
+                        row.put(name + "_" + stat, value);
+                    }
+                });
+            }
+        }
+        if (bucketAggs.isEmpty()) {
+            rows.add(row);
+            return;
+        }
+        for (Map.Entry<String, Object> bucketAgg : bucketAggs.entrySet()) {
+            Object buckets = bucketAgg.getValue();
+            if (buckets instanceof Map) {
+                // keyed 桶（filters、range 的 keyed 形式）：key 是对象的键
+                for (Map.Entry<String, Object> keyed : ((Map<String, Object>) buckets).entrySet()) {
+                    bucket(bucketAgg.getKey(), keyed.getKey(), (Map<String, Object>) keyed.getValue(), row, rows);
+                }
+            } else if (buckets instanceof List) {
+                for (Object bucket : (List<Object>) buckets) {
+                    Map<String, Object> properties = (Map<String, Object>) bucket;
+                    Object key = properties.get("key");
+                    bucket(bucketAgg.getKey(), key != null ? key : properties.get("key_as_string"), properties, row, rows);
+                }
+            }
+        }
+    }
+
+    private static void bucket(String name, Object key, Map<String, Object> bucket, Map<String, Object> current, List<Map<String, Object>> rows) {
+        Map<String, Object> row = new LinkedHashMap<>(current);
+        row.put(name, key);
+        row.put(DOC_COUNT, bucket.get(DOC_COUNT));
+        flatten(bucket, row, rows);
+    }
+
+    /**
+     * 每一行都有分区键列对应的桶 key 且互不相同
+     */
+    private static boolean distinctKeys(List<Map<String, Object>> rows, String partitionKey) {
+        Set<Object> keys = new HashSet<>();
+        for (Map<String, Object> row : rows) {
+            Object key = row.get(partitionKey);
+            if (key == null || !keys.add(key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return buckets.hasNext();
+    }
+
+    @Override
+    public RowHydrator.HydratedRow next() {
+        Map<String, Object> values = buckets.next();
+        ordinal++;
+
+        ByteBuffer key = partitionKey(keyedByBucket ? values.get(partitionKeyColumn.name.toString()) : null);
+        DecoratedKey partitionKey = baseCfs.getPartitioner().decorateKey(key);
+
+        Row.Builder rowBuilder = BTreeRow.unsortedBuilder();
+        rowBuilder.newRow(Clustering.EMPTY);
+        rowBuilder.addPrimaryKeyLivenessInfo(LivenessInfo.create(timestamp, command.nowInSec()));
+        for (ColumnMetadata column : command.columnFilter().queriedColumns()) {
+            if (column.isPrimaryKeyColumn()) {
+                continue;
+            }
+            String name = column.name.toString();
+            Object value = values.containsKey(name) ? values.get(name) : COUNT.equals(name) ? values.get(DOC_COUNT) : null;
+            if (value == null) {
+                continue;
+            }
+            try {
+                ByteBuffer buffer = column.type.fromJSONObject(value).bindAndGet(QueryOptions.DEFAULT);
+                rowBuilder.addCell(BufferCell.live(column, timestamp, buffer));
+            } catch (Exception e) {
+                logger.warn("Cannot convert aggregation value {} to column {} of {}", value, name, baseCfs.metadata());
+            }
+        }
+
+        SearchResultRow hit = new SearchResultRow(new String[]{ String.valueOf(ordinal) }, new JSONObject(values));
+        hit.partitionKey = key;
+        return new RowHydrator.HydratedRow(hit, partitionKey, rowBuilder.build());
+    }
+
+    /**
+     * 桶 key 能唯一确定每一行时使用桶 key，否则使用桶的序号
+     */
+    private ByteBuffer partitionKey(@Nullable Object bucketKey) {
+        if (bucketKey != null) {
+            try {
+                return partitionKeyColumn.type.fromJSONObject(bucketKey).bindAndGet(QueryOptions.DEFAULT);
+            } catch (Exception e) {
+                logger.warn("Cannot convert bucket key {} to partition key of {}", bucketKey, baseCfs.metadata());
+            }
+        }
+        try {
+            return partitionKeyColumn.type.fromString(String.valueOf(ordinal));
+        } catch (Exception e) {
+            // 不是数字或文本类型
+        }
+        try {
+            return partitionKeyColumn.type.fromString(new UUID(0L, ordinal).toString());
+        } catch (Exception e) {
+            throw new BaseException("Aggregation rows of " + baseCfs.metadata() + " need a numeric, text or uuid partition key");
+        }
+    }
+}
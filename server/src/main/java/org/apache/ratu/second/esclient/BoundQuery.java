@@ -0,0 +1,87 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+import org.opensearch.index.query.QueryBuilder;
+import org.opensearch.search.aggregations.AggregatorFactories;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+
+/**
+ * 绑定了参数的查询表达式：query 已经是 QueryBuilder，aggs 已经是聚合定义，其余顶层参数（size、from、refresh、consistency 等）按原值保留
+ */
+public final class BoundQuery {
+
+    // 表达式中没有 query 时为 null，表示查询全部
+    @Nullable
+    public final QueryBuilder query;
+
+    // 表达式中没有 aggs 时为 null
+    @Nullable
+    public final AggregatorFactories.Builder aggregations;
+
+    private final Map<String, Object> options;
+
+    // 规范化的表达式：模板加上按顺序绑定的参数，空白、引号写法不同的相同查询一致
+    public final String normalized;
+
+    BoundQuery(@Nullable QueryBuilder query, @Nullable AggregatorFactories.Builder aggregations, Map<String, Object> options, String normalized) {
+        this.query = query;
+        this.aggregations = aggregations;
+        this.options = options;
+        this.normalized = normalized;
+    }
+
+    /**
+     * 只返回聚合结果的查询，不取回命中的文档
+     */
+    public boolean isAggregation() {
+        return aggregations != null && aggregations.count() > 0;
+    }
+
+    @Nullable
+    public Object option(String key) {
+        return options.get(key);
+    }
+
+    // 不设置 size 时与 Opensearch 的默认值一致
+    static final long DEFAULT_SIZE = 10;
+
+    /**
+     * 最多返回的命中数，不设置时为 10，设置为负数（如 -1）时不限
+     */
+    public long size() {
+        Object size = options.get("size");
+        if (size == null) {
+            return DEFAULT_SIZE;
+        }
+        long value = Long.parseLong(size.toString());
+        return value < 0 ? Long.MAX_VALUE : value;
+    }
+
+    public int from() {
+        Object from = options.get("from");
+        return from == null ? 0 : Integer.parseInt(from.toString());
+    }
+
+    /**
+     * 表达式中的 cache 参数，没有设置时为 null，由索引参数 query_cache 决定
+     */
+    @Nullable
+    public Boolean cache() {
+        Object cache = options.get("cache");
+        return cache == null ? null : Boolean.parseBoolean(cache.toString());
+    }
+
+    public boolean refresh() {
+        Object refresh = options.get("refresh");
+        return refresh != null && Boolean.parseBoolean(refresh.toString());
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+import com.alibaba.fastjson2.JSON;
+import org.opensearch.common.io.stream.BytesStreamOutput;
+import org.opensearch.common.xcontent.XContentHelper;
+import org.opensearch.common.xcontent.XContentType;
+import org.opensearch.core.common.bytes.BytesReference;
+import org.opensearch.core.xcontent.XContentBuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * 一条待写入的 _bulk 操作（action 行 + 可选的 source 行），以及它被确认后完成的 future。
+ * 滚动索引的删除可能带着其他 backing 索引中的副本，每个副本在 _bulk 中占一个额外的 delete 操作。
+ */
+public class BulkItem {
+
+    public enum OpType {
+        INDEX("index"),
+        DELETE("delete"),
+        // 局部更新，文档不存在时以 doc 作为新文档写入
+        UPDATE("update"),
+        // 局部更新，顶层字段整体替换而不与已有的对象字段合并，用于写入 map 列
+        REPLACE("update"),
+        // 建索引时的局部更新，只补上文档中还没有的字段，不覆盖实时写入的更新
+        FILL("update");
+
+        public final String action;
+
+        OpType(String action) {
+            this.action = action;
+        }
+    }
+
+    private static final byte[] DOC_PREFIX = "{\"doc\":".getBytes(UTF_8);
+    private static final byte[] DOC_SUFFIX = ",\"doc_as_upsert\":true}".getBytes(UTF_8);
+
+    /**
+     * REPLACE 的更新脚本：doc_as_upsert 会把对象字段与已有的对象合并，putAll 只替换顶层字段
+     */
+    public static final String REPLACE_SCRIPT = "ctx._source.putAll(params.doc)";
+
+    /**
+     * FILL 的更新脚本：已有的字段保持不变，没有字段需要补上时不写入
+     */
+    public static final String FILL_SCRIPT = "boolean changed = false; for (e in params.doc.entrySet()) { if (!ctx._source.containsKey(e.getKey())) "
+        + "{ ctx._source[e.getKey()] = e.getValue(); changed = true; } } if (!changed) { ctx.op = 'noop'; }";
+
+    /**
+     * 不带外部版本号
+     */
+    public static final long NO_VERSION = -1;
+
+    private static final byte[] SCRIPT_PREFIX = scriptPrefix(REPLACE_SCRIPT);
+    private static final byte[] FILL_PREFIX = scriptPrefix(FILL_SCRIPT);
+    private static final byte[] SCRIPT_UPSERT = "}},\"upsert\":".getBytes(UTF_8);
+
+    public final OpType opType;
+    public final String index;
+    public final String id;
+
+    @Nullable
+    public final BytesReference source;
+
+    public final XContentType contentType;
+
+    public final long bytes;
+
+    // index 和 delete 的外部版本号（行的写入时间戳），以 external_gte 写入，旧版本的操作被拒绝；NO_VERSION 时不带版本号
+    public final long version;
+
+    public final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    // 提交时间，用于统计写入到被确认的耗时
+    final long createdNanos = System.nanoTime();
+
+    // 写入 outbox 后的位置，没有启用 outbox 时为 null
+    IndexOutbox.Entry outboxEntry;
+
+    // 滚动索引的删除在发送前查出的实际索引，为 null 时写入 index
+    volatile String resolvedIndex;
+
+    // 滚动后同一 id 还在其他 backing 索引中的副本，每个索引一条 delete，紧跟在本操作之后发送
+    volatile List<String> copies = Collections.emptyList();
+
+    // 批次内被合并进来的同一文档的更早操作，随本操作一起确认
+    final List<BulkItem> absorbed = new ArrayList<>(0);
+
+    private BulkItem(@Nonnull OpType opType, @Nonnull String index, @Nonnull String id, @Nullable BytesReference source, @Nonnull XContentType contentType, long version) {
+        this.opType = opType;
+        this.index = index;
+        this.id = id;
+        this.source = source;
+        this.contentType = contentType;
+        this.version = version;
+        // action 行大约 40 个字节 + 索引名 + id，update 的 doc 包装大约 30 个字节，replace/fill 的 doc 写入两次
+        this.bytes = 40 + index.length() + id.length() + (source == null ? 0 : source.length()) + (opType == OpType.UPDATE ? 30 : 0)
+            + (opType == OpType.REPLACE ? 100 + source.length() : 0) + (opType == OpType.FILL ? 250 + source.length() : 0);
+    }
+
+    private BulkItem(@Nonnull OpType opType, @Nonnull String index, @Nonnull String id, @Nullable BytesReference source, @Nonnull XContentType contentType) {
+        this(opType, index, id, source, contentType, NO_VERSION);
+    }
+
+    public static BulkItem index(@Nonnull String index, @Nonnull String id, @Nonnull BytesReference document, @Nonnull XContentType contentType) {
+        return new BulkItem(OpType.INDEX, index, id, document, contentType);
+    }
+
+    /**
+     * 带外部版本号的 index，已有文档的版本号更大时不写入
+     */
+    public static BulkItem index(@Nonnull String index, @Nonnull String id, @Nonnull BytesReference document, @Nonnull XContentType contentType, long version) {
+        return new BulkItem(OpType.INDEX, index, id, document, contentType, version);
+    }
+
+    public static BulkItem update(@Nonnull String index, @Nonnull String id, @Nonnull BytesReference document, @Nonnull XContentType contentType) {
+        return new BulkItem(OpType.UPDATE, index, id, document, contentType);
+    }
+
+    public static BulkItem replace(@Nonnull String index, @Nonnull String id, @Nonnull BytesReference document, @Nonnull XContentType contentType) {
+        return new BulkItem(OpType.REPLACE, index, id, document, contentType);
+    }
+
+    public static BulkItem fill(@Nonnull String index, @Nonnull String id, @Nonnull BytesReference document, @Nonnull XContentType contentType) {
+        return new BulkItem(OpType.FILL, index, id, document, contentType);
+    }
+
+    /**
+     * 把同一文档的局部更新 later 合并到尚未发送的 index/update/replace 操作 earlier 之后：
+     * later 中的字段覆盖 earlier，操作类型保持 earlier 的类型；任一个是 replace 时局部更新合并为 replace
+     */
+    static BulkItem merge(@Nonnull BulkItem earlier, @Nonnull BulkItem later) throws IOException {
+        Map<String, Object> fields = XContentHelper.convertToMap(earlier.source, true, earlier.contentType).v2();
+        fields.putAll(XContentHelper.convertToMap(later.source, true, later.contentType).v2());
+        BytesReference source = BytesReference.bytes(XContentBuilder.builder(earlier.contentType.xContent()).map(fields));
+
+        OpType opType = earlier.opType == OpType.UPDATE && later.opType == OpType.REPLACE ? OpType.REPLACE : earlier.opType;
+        BulkItem merged = new BulkItem(opType, earlier.index, earlier.id, source, earlier.contentType, earlier.version);
+        merged.outboxEntry = later.outboxEntry;
+        merged.absorbed.addAll(earlier.absorbed);
+        merged.absorbed.add(earlier);
+        merged.absorbed.add(later);
+        return merged;
+    }
+
+    public static BulkItem delete(@Nonnull String index, @Nonnull String id) {
+        return new BulkItem(OpType.DELETE, index, id, null, XContentType.JSON);
+    }
+
+    /**
+     * 带外部版本号的 delete，已有文档的版本号更大时不删除
+     */
+    public static BulkItem delete(@Nonnull String index, @Nonnull String id, long version) {
+        return new BulkItem(OpType.DELETE, index, id, null, XContentType.JSON, version);
+    }
+
+    /**
+     * 带外部版本号的操作被拒绝（409）表示文档已经是更新的版本，与写入成功一样处理
+     */
+    public boolean isSuperseded(int status) {
+        return status == 409 && version != NO_VERSION;
+    }
+
+    /**
+     * 实际写入的索引
+     */
+    public String target() {
+        String resolved = resolvedIndex;
+        return resolved != null ? resolved : index;
+    }
+
+    /**
+     * 以 NDJSON 格式追加到 _bulk 请求体，非 JSON 格式的文档先转换为 JSON
+     */
+    public void writeTo(@Nonnull BytesStreamOutput body) throws IOException {
+        writeAction(body, opType, target());
+        if (source != null) {
+            if (opType == OpType.UPDATE) {
+                body.write(DOC_PREFIX);
+                writeSource(body);
+                body.write(DOC_SUFFIX);
+            } else if (opType == OpType.REPLACE || opType == OpType.FILL) {
+                body.write(opType == OpType.REPLACE ? SCRIPT_PREFIX : FILL_PREFIX);
+                writeSource(body);
+                body.write(SCRIPT_UPSERT);
+                writeSource(body);
+                body.write('}');
+            } else {
+                writeSource(body);
+            }
+            body.write('\n');
+        }
+        for (String copy : copies) {
+            writeAction(body, OpType.DELETE, copy);
+        }
+    }
+
+    private void writeAction(BytesStreamOutput body, OpType type, String targetIndex) throws IOException {
+        String versioning = version == NO_VERSION ? "" : ",\"version\":" + version + ",\"version_type\":\"external_gte\"";
+        String action = "{\"" + type.action + "\":{\"_index\":" + JSON.toJSONString(targetIndex) + ",\"_id\":" + JSON.toJSONString(id) + versioning + "}}\n";
+        body.write(action.getBytes(UTF_8));
+    }
+
+    private static byte[] scriptPrefix(String script) {
+        return ("{\"script\":{\"source\":" + JSON.toJSONString(script) + ",\"lang\":\"painless\",\"params\":{\"doc\":").getBytes(UTF_8);
+    }
+
+    private void writeSource(BytesStreamOutput body) throws IOException {
+        if (contentType == XContentType.JSON) {
+            source.writeTo(body);
+        } else {
+            body.write(XContentHelper.convertToJson(source, false, contentType).getBytes(UTF_8));
+        }
+    }
+}
@@ -26,6 +26,7 @@ import org.opensearch.common.settings.Settings;
 import org.opensearch.common.unit.TimeValue;
 import org.opensearch.common.util.concurrent.ThreadContext;
 import org.opensearch.common.xcontent.XContentType;
+import org.opensearch.core.action.ActionListener;
 import org.opensearch.core.common.Strings;
 import org.opensearch.core.rest.RestStatus;
 import org.opensearch.core.xcontent.DeprecationHandler;
@@ -33,10 +34,14 @@ import org.opensearch.core.xcontent.MediaType;
 import org.opensearch.core.xcontent.NamedXContentRegistry;
 import org.opensearch.core.xcontent.XContentParser;
 import org.opensearch.index.IndexSettings;
+import org.opensearch.index.query.QueryBuilder;
+import org.opensearch.index.query.QueryBuilders;
+import org.opensearch.search.builder.SearchSourceBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
 import java.io.IOException;
@@ -49,6 +54,7 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 import java.util.*;
+import java.util.function.Consumer;
 
 import static java.util.Collections.unmodifiableList;
 import static org.opensearch.env.Environment.PATH_HOME_SETTING;
@@ -83,8 +89,11 @@ public class ElasticIndex {
 
     private static TreeSet<Version> nodeVersions;
 
+    private final EsTransport transport;
 
-    public ElasticIndex(@Nonnull List<String> partitionKeysNames, @Nonnull List<String> clusteringColumnsNames) {
+
+    public ElasticIndex(@Nonnull List<String> partitionKeysNames, @Nonnull List<String> clusteringColumnsNames, @Nonnull EsTransport transport) {
+        this.transport = transport;
         this.partitionKeysNames = partitionKeysNames;
         this.clusteringColumnsNames = clusteringColumnsNames;
         this.hasClusteringColumns = !clusteringColumnsNames.isEmpty();
@@ -122,6 +131,44 @@ public class ElasticIndex {
         return result;
     }
 
+    /**
+     * 创建只属于本节点的索引，并加入以表索引名命名的别名
+     */
+    public Boolean newLocalIndex(String indexName, String alias, Settings setting, Map<String, Map<String, String>> fields) {
+        Boolean result = false;
+        try {
+            result = createIndex(indexName, setting, parseEsCreateIndexMappings(fields), JSON.toJSONString(alias) + ": {}");
+        } catch (IOException e) {
+            logger.error("Index " + indexName + " Create Exception:", e);
+        }
+        return result;
+    }
+
+    /**
+     * 别名或通配符对应的所有索引
+     */
+    public Set<String> resolveIndices(String index) throws IOException {
+        return getIndexJoin(index);
+    }
+
+    /**
+     * 只删除一个索引，不处理别名、策略和模板
+     */
+    public void deleteIndex(String indexName) throws IOException {
+        client().performRequest(new Request("DELETE", "/" + indexName));
+    }
+
+    /**
+     * 按查询在后台删除文档，不等待删除完成，删除期间被更新的文档跳过
+     */
+    public void deleteByQuery(String indexName, QueryBuilder query) throws IOException {
+        Request request = new Request("POST", "/" + indexName + "/_delete_by_query");
+        request.addParameter("conflicts", "proceed");
+        request.addParameter("wait_for_completion", "false");
+        request.setJsonEntity("{\"query\": " + Strings.toString(XContentType.JSON, query) + "}");
+        client().performRequest(request);
+    }
+
     public Boolean newRollOverIndex(String indexName, Settings setting, Map<String, Map<String, String>> fields,Integer minDocCount) throws Exception {
         Boolean result = createRollOverIndex(indexName, setting, parseEsCreateIndexMappings(fields),minDocCount);
         return result;
@@ -138,23 +185,16 @@ public class ElasticIndex {
         return false;
     }
 
-    public void indexData(Map<String, Object> maps, String indexName, String primaryKeyValue, Boolean asyncWrite,Boolean isRollOver) {
-        // 索引数据
-        try {
-            bulkIndexData(maps,indexName,primaryKeyValue, asyncWrite,isRollOver);
-        } catch (Exception e) {
-            logger.error("Add Index Data to " + indexName + " Exception:", e);
-        }
+    /**
+     * 异步执行一批 bulk 操作，响应解析为 map 后回调
+     */
+    public void bulk(List<BulkItem> items, ActionListener<Map<String, Object>> listener) {
+        transport.bulk(items, listener);
     }
 
 
 
 
-    public Boolean delData(String indexName, String primaryKeyValue,Boolean isRollOver) throws IOException {
-        // 删除数据
-        return delIndexData(indexName, primaryKeyValue,isRollOver);
-    }
-
     public void dropIndex(String indexName) {
         // 删除索引
         try {
@@ -168,134 +208,87 @@ public class ElasticIndex {
     public boolean refreshData(String indexName) {
         // refresh 索引
         try {
-            return refreshIndex(indexName);
+            return transport.refresh(indexName);
         } catch (IOException e) {
             e.printStackTrace();
         }
         return false;
     }
 
-    public SearchResult searchData(String indexName, Map<String, Object> mappings) {
-        // 普通搜索
-        List<SearchResultRow> rowList = new ArrayList<>();
-        Map<String, Object> query = (Map<String, Object>) mappings.get("query");
-        query.put("size",mappings.get("size"));
-        query.put("from",mappings.get("from"));
-
-        String json = "";
-        if (query != null) {
-            if (query.get("bool") != null) {
-                json = parseEsBool(query);
-            } else {
-                json = parseEsQuery(query);
-            }
+    /**
+     * 流式搜索：通过 point-in-time + search_after 按页拉取命中结果，只有被消费时才请求下一页
+     */
+    public SearchHitStream searchStream(String indexName, BoundQuery query, @Nullable QueryBuilder filter, int pageSize, String keepAlive,
+                                        String tiebreaker, Consumer<List<SearchResultRow>> keyFiller, IndexMetrics metrics) {
+        QueryBuilder builder = query.query;
+        if (filter != null) {
+            // 附加的过滤条件不参与评分
+            builder = QueryBuilders.boolQuery().must(builder != null ? builder : QueryBuilders.matchAllQuery()).filter(filter);
         }
-        try {
-            Map<String, Object> mp = searchIndexData(indexName, json);
-
-            List<String> primaryKeys;
-
-            if (hasClusteringColumns) {
-                primaryKeys = new ArrayList<>(partitionKeysNames.size() + clusteringColumnsNames.size());
-                primaryKeys.addAll(partitionKeysNames);
-                primaryKeys.addAll(clusteringColumnsNames);
-            } else {
-                primaryKeys = partitionKeysNames;
-            }
-
-            int pkSize = primaryKeys.size();
+        return new SearchHitStream(this, indexName, builder, pageSize, query.size(), query.from(), keepAlive, tiebreaker, keyFiller, metrics);
+    }
 
-            Map<String, Object> hitsMap = (Map<String, Object>) mp.get("hits");
+    /**
+     * 只执行聚合：size 为 0、不统计总命中数，返回响应中的 aggregations
+     */
+    public Map<String, Object> aggregate(String indexName, BoundQuery query, @Nullable QueryBuilder filter) throws IOException {
+        QueryBuilder builder = query.query;
+        if (filter != null) {
+            builder = QueryBuilders.boolQuery().must(builder != null ? builder : QueryBuilders.matchAllQuery()).filter(filter);
+        }
+        SearchSourceBuilder source = new SearchSourceBuilder().size(0).trackTotalHits(false);
+        if (builder != null) {
+            source.query(builder);
+        }
+        query.aggregations.getAggregatorFactories().forEach(source::aggregation);
+        query.aggregations.getPipelineAggregatorFactories().forEach(source::aggregation);
+        return transport.aggregate(indexName, source);
+    }
 
-            List<Map<String, Object>> hits2List = (List<Map<String, Object>>) hitsMap.get("hits");
+    /**
+     * 从 hits 的 _source 中取出主键，转换为搜索结果行
+     */
+    public List<SearchResultRow> toRows(List<Map<String, Object>> hits2List) {
+        List<SearchResultRow> rowList = new ArrayList<>(hits2List.size());
+        List<String> primaryKeys;
+
+        if (hasClusteringColumns) {
+            primaryKeys = new ArrayList<>(partitionKeysNames.size() + clusteringColumnsNames.size());
+            primaryKeys.addAll(partitionKeysNames);
+            primaryKeys.addAll(clusteringColumnsNames);
+        } else {
+            primaryKeys = partitionKeysNames;
+        }
 
+        int pkSize = primaryKeys.size();
 
-            for (int i = 0; i < hits2List.size(); i++) {
+        for (int i = 0; i < hits2List.size(); i++) {
 
-                Map<String, Object> sourceMaps = (Map<String, Object>) hits2List.get(i).get("_source");
-                String[] primaryKey = new String[pkSize];
-                int keyNb = 0;
+            Map<String, Object> sourceMaps = (Map<String, Object>) hits2List.get(i).get("_source");
+            String[] primaryKey = new String[pkSize];
+            int keyNb = 0;
 
-                for (String keyName : primaryKeys) {
-                    String value = sourceMaps.get(keyName).toString();
-                    if (value == null) {
-                        continue;
-                    } else {
-                        primaryKey[keyNb] = value;
-                    }
-                    keyNb++;
+            for (String keyName : primaryKeys) {
+                String value = sourceMaps.get(keyName).toString();
+                if (value == null) {
+                    continue;
+                } else {
+                    primaryKey[keyNb] = value;
                 }
-
-                SearchResultRow searchResultRow = new SearchResultRow(primaryKey, new JSONObject(sourceMaps));
-                rowList.add(searchResultRow);
+                keyNb++;
             }
-//            Map<String, Aggregate> aggregations = search.aggregations();
-//            if (aggregations.size() != 0) {
-//                Map<Object, Object> map = AggsUtils.aggsData(aggregations.get("aggs"));
-//                String[] primaryKey = new String[1];
-//                primaryKey[0] = String.valueOf(search.hits().hits().size() + 1);
-//                SearchResultRow row = new SearchResultRow(primaryKey, JSONObject.parseObject(JSON.toJSONString(map)));
-//                rowList.add(row);
-//            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
 
-        return new SearchResult(rowList);
+            SearchResultRow searchResultRow = new SearchResultRow(primaryKey, new JSONObject(sourceMaps));
+            rowList.add(searchResultRow);
+        }
+        return rowList;
     }
 
-    private String parseAggs(Map<String, Object> mappings) {
-        return mappings.get("aggs").toString();
+    public EsTransport transport() {
+        return transport;
     }
 
 
-    // 普通查询
-    private static String parseEsQuery(Map<String, Object> queryMps) {
-        Map<String, Object> aggsMaps = new HashMap<>();
-        Map<String, Object> fieldMaps = new HashMap<>();
-        Map<String, Object> whereMaps = new HashMap<>();
-        for (String m : queryMps.keySet()) {
-            if (!m.equals("type") && !m.equals("field")&& !m.equals("size")&&!m.equals("from")) {
-                whereMaps.put(m, queryMps.get(m));
-            }
-        }
-        Object value = queryMps.get("value");
-        if (value == null) {
-            fieldMaps.put(queryMps.get("field").toString(), whereMaps);
-        } else {
-            fieldMaps.put(queryMps.get("field").toString(), value);
-        }
-        aggsMaps.put(queryMps.get("type").toString(), fieldMaps);
-        Map<String, Object> query = new HashMap<>();
-        query.put("query", aggsMaps);
-        query.put("size", queryMps.get("size"));
-        query.put("from", queryMps.get("from"));
-        return JSON.toJSONString(query);
-    }
-
-    // bool 查询
-    private static String parseEsBool(Map<String, Object> boolMps) {
-        Map<String, Object> aggsMaps = new HashMap<>();
-        Map<String, List<Map<String, Object>>> filter = (Map<String, List<Map<String, Object>>>) boolMps.get("bool");
-        Map<String, Object> boolWhere = new HashMap<>();
-        for (String key : filter.keySet()) {
-            List<Object> list = new ArrayList<>();
-            List<Map<String, Object>> mapList = filter.get(key);
-            mapList.stream().forEach(mps -> {
-                String s = parseEsQuery(mps);
-                Map map = JSONObject.parseObject(s, Map.class);
-                list.add(map);
-            });
-            boolWhere.put(key, list);
-        }
-        aggsMaps.put("bool", boolWhere);
-        Map<String, Object> query = new HashMap<>();
-        query.put("query", aggsMaps);
-        //query.put("size", boolMps.get("size"));
-        //query.put("from", boolMps.get("from"));
-        return JSON.toJSONString(query);
-    }
-
     //创建索引格式mappings
     private static String parseEsCreateIndexMappings(Map<String, Map<String, String>> fields) {
         HashMap<String, Object> map1 = new HashMap<>();
@@ -554,109 +547,6 @@ public class ElasticIndex {
     }
 
 
-    private static Boolean bulkIndexData(Map<String, Object> maps,String indexName,String primaryKeyValue, Boolean asyncWrite,Boolean isRollOver) throws IOException {
-        String json = "{ \"index\" : { \"_index\" : \"" +
-            indexName + "\", \"_id\" : \"" +
-            primaryKeyValue + "\" } }\n" +
-            JSON.toJSONString(maps) + "\n";
-
-        //?filter_path=errors
-        Request request = new Request("POST", "_bulk");
-        request.setJsonEntity(json);
-        if (!asyncWrite) {
-            Response response = client().performRequest(request);
-            int statusCode = response.getStatusLine().getStatusCode();
-            if (statusCode != 200) {
-                return false;
-            }
-            return true;
-        } else {
-            client().performRequestAsync(request, new ResponseListener() {
-                @Override
-                public void onSuccess(Response response) {
-
-                }
-
-                @Override
-                public void onFailure(Exception exception) {
-                    logger.error("Async Write Data to " + indexName + " Execption", exception);
-                }
-            });
-        }
-        return true;
-    }
-
-    private static Boolean addIndexData(String index, String json, String id, Boolean asyncWrite) throws IOException {
-        Request request = new Request("PUT", "/" + index + "/_doc/" + id);
-        request.setJsonEntity(json);
-        request.addParameter("timeout", "1000ms");
-        if (!asyncWrite) {
-            Response response = client().performRequest(request);
-            int statusCode = response.getStatusLine().getStatusCode();
-            if (statusCode != 200) {
-                return false;
-            }
-            return true;
-
-        } else {
-            client().performRequestAsync(request, new ResponseListener() {
-                @Override
-                public void onSuccess(Response response) {
-                    //logger.debug("Async Write Data Response:"+response);
-                }
-
-                @Override
-                public void onFailure(Exception exception) {
-                    logger.error("Async Write Data to " + index + " Execption", exception);
-                }
-            });
-            return true;
-        }
-    }
-
-    private static String getIndexById(String index, String id) throws IOException {
-        Request request = new Request("POST", "/" + index + "/_search/");
-        request.setJsonEntity(" {\n" +
-            "    \"query\": {\n" +
-            "        \"ids\": {\n" +
-            "            \"values\": [\n" +
-            "                "+ id +"\n" +
-            "            ]\n" +
-            "        }\n" +
-            "    }\n" +
-            "}");
-
-        try {
-            Response response = client().performRequest(request);
-
-            Map<String, Object> map = entityAsMap(response);
-            Map<String, Object> hitsMap = (Map<String, Object>) map.get("hits");
-
-            List<Map<String, Object>> hits2List = (List<Map<String, Object>>) hitsMap.get("hits");
-            if (hits2List.isEmpty()) {
-                return index;
-            }
-            return hits2List.get(0).get("_index").toString();
-        }catch (Exception e){
-            return index;
-        }
-    }
-
-    private static Boolean delIndexData(String index, String id,Boolean isRollOver) throws IOException {
-        String indexName = isRollOver ? getIndexById(index,id) : index;
-
-        //兼容滚动索引的数据删除
-        Request request = new Request("DELETE", "/" + indexName + "/_doc/" + id);
-
-        Response response = client().performRequest(request);
-        Map<String, Object> map = entityAsMap(response);
-        String result = map.get("result").toString();
-        if (result.equals("deleted")) {
-            return true;
-        }
-        return false;
-    }
-
     /**
      * 删除索引分两类
      * 1.普通索引
@@ -708,16 +598,6 @@ public class ElasticIndex {
         return map.keySet();
     }
 
-    private static Boolean refreshIndex(String index) throws IOException {
-        Request request = new Request("GET", "/" + index + "/_refresh");
-        Response response = client().performRequest(request);
-        Map<String, Object> map = entityAsMap(response);
-        Map shardsMaps = (Map) map.get("_shards");
-        Object successful = shardsMaps.get("successful");
-        return Boolean.valueOf(successful.toString());
-    }
-
-
     protected static boolean indexExists(String index) throws IOException {
         Response response = client().performRequest(new Request("HEAD", "/" + index));
         return RestStatus.OK.getStatus() == response.getStatusLine().getStatusCode();
@@ -736,20 +616,6 @@ public class ElasticIndex {
     }
 
 
-    private static Map<String, Object> searchIndexData(String index, String dslJson) throws IOException {
-        Request request = new Request("GET", "/" + index + "/_search");
-        if (!StringUtils.isBlank(dslJson)) {
-            request.setJsonEntity(dslJson);
-        }
-        logger.info("dslJson------------>"+dslJson);
-        logger.info("dslJson------------>"+dslJson);
-        logger.info("dslJson------------>"+dslJson);
-        logger.info("dslJson------------>"+dslJson);
-        logger.info("dslJson------------>"+dslJson);
-        Response response = client().performRequest(request);
-        return entityAsMap(response);
-    }
-
     protected static void expectSoftDeletesWarning(Request request, String indexName) {
         final List<String> expectedWarnings = Collections.singletonList(
             "Creating indices with soft-deletes disabled is deprecated and will be removed in future Elasticsearch versions. " +
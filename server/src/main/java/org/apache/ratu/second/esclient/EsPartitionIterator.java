@@ -19,14 +19,9 @@
 package org.apache.ratu.second.esclient;
 
 import com.alibaba.fastjson2.JSONObject;
-import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import org.apache.cassandra.db.*;
-import org.apache.cassandra.db.filter.DataLimits;
-import org.apache.cassandra.db.filter.RowFilter;
-import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.db.marshal.UTF8Type;
-import org.apache.cassandra.db.partitions.PartitionIterator;
 import org.apache.cassandra.db.partitions.UnfilteredPartitionIterator;
 import org.apache.cassandra.db.rows.BTreeRow;
 import org.apache.cassandra.db.rows.BufferCell;
@@ -34,13 +29,11 @@ import org.apache.cassandra.db.rows.Row;
 import org.apache.cassandra.db.rows.UnfilteredRowIterator;
 import org.apache.cassandra.schema.ColumnMetadata;
 import org.apache.cassandra.schema.TableMetadata;
-import org.apache.cassandra.service.StorageProxy;
 import org.apache.cassandra.tracing.Tracing;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.ratu.second.ElasticSecondaryIndex;
 
 import java.nio.ByteBuffer;
-import java.util.Iterator;
 import java.util.List;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -54,7 +47,11 @@ public class EsPartitionIterator implements UnfilteredPartitionIterator {
     private static final String ES_HITS = "hits";
     private static final String ES_SOURCE = "_source";
 
-    private final Iterator<SearchResultRow> esResultIterator;
+    private final RowSource rows;
+    private final SearchHitStream stream;
+    // 挂起游标时使用的键前缀（索引 + 查询表达式）
+    private final String cursorPrefix;
+    private ByteBuffer lastKey;
     private final ColumnFamilyStore baseCfs;
     private final ReadCommand command;
 
@@ -62,23 +59,78 @@ public class EsPartitionIterator implements UnfilteredPartitionIterator {
 
     private final List<String> partitionKeysNames;
 
-    private final JSONObject aggsResult;
+    private final TableMetadata metadata;
 
+    // 存放 es 原始数据或聚合桶的列
+    private final ColumnMetadata resultColumn;
 
-    public EsPartitionIterator(ElasticSecondaryIndex index, SearchResult searchResult, List<String> partitionKeysNames, ReadCommand command, String searchId, JSONObject object) {
+    // 不使用查询结果缓存时为 null
+    private final QueryResultCache.Recorder recorder;
+    private boolean exhausted;
+
+
+    public EsPartitionIterator(ElasticSecondaryIndex index, SearchHitStream stream, String cursorPrefix, RowSource rows,
+                               List<String> partitionKeysNames, ReadCommand command, String searchId) {
+        this(index, stream, cursorPrefix, rows, partitionKeysNames, command, searchId, null);
+    }
+
+    public EsPartitionIterator(ElasticSecondaryIndex index, SearchHitStream stream, String cursorPrefix, RowSource rows,
+                               List<String> partitionKeysNames, ReadCommand command, String searchId,
+                               QueryResultCache.Recorder recorder) {
         this.baseCfs = index.baseCfs;
+        this.metadata = this.baseCfs.metadata();
 
-        this.esResultIterator = searchResult.items.iterator();
+        this.rows = rows;
+        this.stream = stream;
+        this.cursorPrefix = cursorPrefix;
         this.command = command;
         this.index = index;
         this.partitionKeysNames = partitionKeysNames;
-        this.aggsResult= object;
+        this.resultColumn = resultColumn(this.metadata);
+        this.recorder = recorder;
         Tracing.trace("ESI {} FakePartitionIterator initialized", searchId);
     }
 
+    static ColumnMetadata resultColumn(TableMetadata metadata) {
+        ColumnMetadata columnMetadata = ColumnMetadata.regularColumn(metadata, ByteBufferUtil.bytes("aggs"), UTF8Type.instance);
+
+        if (!metadata.columns().contains(columnMetadata)){
+            columnMetadata = metadata.columns().iterator().next();
+        }
+
+        boolean primaryKeyKind = columnMetadata.kind.isPrimaryKeyKind();
+        if (primaryKeyKind) {
+            ImmutableList<ColumnMetadata> cMetadata = metadata.columns().asList();
+            for (int i = 0; i < cMetadata.size() ; i++) {
+                ColumnMetadata  column = cMetadata.get(i);
+                if (!column.name.equals(columnMetadata.name)){
+                    columnMetadata = column;
+                    break;
+                }
+            }
+        }
+        return columnMetadata;
+    }
+
     @Override
     public void close() {
-
+        rows.close();
+        String cursorKey = null;
+        SearchCursors.Position position = null;
+        if (stream != null) {
+            // 预取但没有返回的结果放回流中；还有剩余时挂起，等待 Cassandra 以最后一个分区键发起下一页查询
+            stream.rewind();
+            if (lastKey != null && stream.hasMore()) {
+                cursorKey = SearchCursors.key(cursorPrefix, lastKey);
+                position = SearchCursors.suspend(cursorKey, stream);
+            } else {
+                stream.close();
+            }
+        }
+        if (recorder != null) {
+            // 下一页的位置随结果一起缓存，从缓存返回这一页后下一页仍然可以接着查询
+            recorder.finish(exhausted, cursorKey, position);
+        }
     }
 
     @Override
@@ -88,95 +140,60 @@ public class EsPartitionIterator implements UnfilteredPartitionIterator {
 
     @Override
     public boolean hasNext() {
-        return esResultIterator.hasNext();
+        if (rows.hasNext()) {
+            return true;
+        }
+        exhausted = true;
+        return false;
     }
 
     @Override
     public UnfilteredRowIterator next() {
 
-        if (!esResultIterator.hasNext()) {
+        if (!rows.hasNext()) {
             return null;
         }
 
-        SearchResultRow esResult = esResultIterator.next();
-
-        JSONObject jsonMetadata = esResult.docMetadata;
-
-        //And PK value
-        DecoratedKey partitionKey = baseCfs.getPartitioner().decorateKey(esResult.partitionKey);
-
-
-        ColumnMetadata columnMetadata = ColumnMetadata.regularColumn(this.baseCfs.metadata(), ByteBufferUtil.bytes("aggs"), UTF8Type.instance);
-
-        TableMetadata.Builder tableBuild=this.baseCfs.metadata().unbuild();
-        //tableBuild.addColumn(columnMetadata);
-        TableMetadata build = tableBuild.build();
-
-
-
-
-        SinglePartitionReadCommand readCommand = SinglePartitionReadCommand.create(
-                build,
-                command.nowInSec(),
-                command.columnFilter(),
-                RowFilter.NONE,
-                DataLimits.NONE,
-                partitionKey,
-                command.clusteringIndexFilter(partitionKey));
-
-
-        PartitionIterator partition =
-                StorageProxy.read(SinglePartitionReadCommand.Group.one(readCommand), ConsistencyLevel.ALL, System.nanoTime());
-
-
-        Row next = partition.next().next();
+        RowHydrator.HydratedRow hydrated = rows.next();
+        if (stream != null) {
+            stream.consumed(hydrated.hit);
+        }
+        lastKey = hydrated.partitionKey.getKey();
 
-        // 以下新增，分割线
-        Row.Builder rowBuilder = BTreeRow.unsortedBuilder();
+        JSONObject jsonMetadata = hydrated.hit.docMetadata;
 
-        rowBuilder.newRow(next.clustering());  //need to be first
-        rowBuilder.addPrimaryKeyLivenessInfo(next.primaryKeyLivenessInfo());
-        rowBuilder.addRowDeletion(next.deletion());
+        DecoratedKey partitionKey = hydrated.partitionKey;
 
-        // 判断是否显示聚合的结果，要是不显示聚合结果，就显示es取回来的原始数据
-        JSONObject result = null;
-        if (!aggsResult.isEmpty()){
-            result=aggsResult;
-        }else {
-            result = jsonMetadata;
+        // es 取回来的原始数据；聚合查询时是这一行对应的桶
+        ByteBuffer value = ByteBufferUtil.bytes(jsonMetadata.toString(), UTF_8);
+        if (recorder != null) {
+            recorder.add(hydrated, value.remaining());
         }
 
-        if (!this.baseCfs.metadata().columns().contains(columnMetadata)){
-            columnMetadata = this.baseCfs.metadata().columns().iterator().next();
-        }
+        Row next = withResultCell(hydrated.row, resultColumn, value, index.indexColumnName);
 
-        boolean primaryKeyKind = columnMetadata.kind.isPrimaryKeyKind();
-        if (primaryKeyKind) {
-            ImmutableList<ColumnMetadata> cMetadata = this.baseCfs.metadata().columns().asList();
-            for (int i = 0; i < cMetadata.size() ; i++) {
-                ColumnMetadata  metadata= cMetadata.get(i);
-                if (!metadata.name.equals(columnMetadata.name)){
-                    columnMetadata = metadata;
-                    break;
-                }
-            }
-        }
+        return new SingleRowIterator(metadata, next, partitionKey, metadata.regularAndStaticColumns());
+    }
 
+    /**
+     * 复制行并写入结果列，去掉索引列本身的单元格
+     */
+    static Row withResultCell(Row row, ColumnMetadata resultColumn, ByteBuffer value, String indexColumnName) {
+        Row.Builder rowBuilder = BTreeRow.unsortedBuilder();
 
-        //add metadata cell
-        ByteBuffer value = ByteBufferUtil.bytes(result.toString(), UTF_8);
+        rowBuilder.newRow(row.clustering());  //need to be first
+        rowBuilder.addPrimaryKeyLivenessInfo(row.primaryKeyLivenessInfo());
+        rowBuilder.addRowDeletion(row.deletion());
 
-        BufferCell metadataCell = BufferCell.live(columnMetadata, System.currentTimeMillis(), value);
+        BufferCell metadataCell = BufferCell.live(resultColumn, System.currentTimeMillis(), value);
         rowBuilder.addCell(metadataCell);
         //copy existing cells
-        next.cells().forEach(cell -> {
-            if (!index.indexColumnName.equals(cell.column().name.toString())) {
+        row.cells().forEach(cell -> {
+            if (!indexColumnName.equals(cell.column().name.toString())) {
                 rowBuilder.addCell(cell);
             }
         });
 
-        next = rowBuilder.build();
-
-        return new SingleRowIterator(build, next, partitionKey, build.regularAndStaticColumns());
+        return rowBuilder.build();
     }
 }
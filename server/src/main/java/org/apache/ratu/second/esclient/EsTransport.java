@@ -0,0 +1,78 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.search.builder.SearchSourceBuilder;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 二级索引读写热路径上用到的 OpenSearch 调用，通过索引参数 transport 选择实现：
+ * <ul>
+ *     <li>rest（默认）：{@link RestTransport}，通过 REST 接口访问</li>
+ *     <li>local：{@link LocalTransport}，直接调用同一个 JVM 内节点的 transport action</li>
+ * </ul>
+ * 建索引、删索引等管理操作仍然走 REST。
+ */
+public interface EsTransport {
+
+    String TRANSPORT = "transport";
+
+    /**
+     * 执行一批 bulk 操作，回调的 map 结构与 _bulk 接口的响应一致，只包含 errors 和每条的 status/error/_index/_seq_no，
+     * 能直接得到分片号时还有 _shard
+     */
+    void bulk(List<BulkItem> items, ActionListener<Map<String, Object>> listener);
+
+    /**
+     * 执行查询，返回 hits.hits 数组，每个元素包含 _index、_id、_source，指定了排序时还有 sort。
+     * 使用 point-in-time 查询时 index 为 null
+     */
+    List<Map<String, Object>> search(String index, SearchSourceBuilder source) throws IOException;
+
+    /**
+     * 执行只有聚合的查询（size 为 0），返回响应中的 aggregations 对象，没有聚合结果时为空
+     */
+    Map<String, Object> aggregate(String index, SearchSourceBuilder source) throws IOException;
+
+    /**
+     * 创建 point-in-time，返回 pit id
+     */
+    String openPit(String index, String keepAlive) throws IOException;
+
+    void closePit(String pitId) throws IOException;
+
+    boolean refresh(String index) throws IOException;
+
+    /**
+     * 查出一批文档实际所在的索引（index 为滚动索引的别名时），回调 id -> 索引名列表，
+     * 滚动后同一 id 可能在多个 backing 索引中；没有找到的文档不在结果中
+     */
+    void locate(String index, Collection<String> ids, ActionListener<Map<String, List<String>>> listener);
+
+    /**
+     * locate 查询的 size：每个 id 在每一代 backing 索引中最多一份，不超过默认的 max_result_window
+     */
+    static int locateSize(int ids, int generations) {
+        return (int) Math.min(10000L, (long) ids * generations);
+    }
+
+    static EsTransport of(String transport) {
+        if (transport == null || "rest".equalsIgnoreCase(transport)) {
+            return RestTransport.INSTANCE;
+        } else if ("local".equalsIgnoreCase(transport)) {
+            return LocalTransport.INSTANCE;
+        }
+        throw new IllegalArgumentException("Unknown transport [" + transport + "], expected rest or local");
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+import org.apache.cassandra.concurrent.ScheduledExecutors;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.PartitionPosition;
+import org.apache.cassandra.db.PartitionRangeReadCommand;
+import org.apache.cassandra.db.ReadCommand;
+import org.apache.cassandra.db.SinglePartitionReadCommand;
+import org.apache.cassandra.db.SystemKeyspace;
+import org.apache.cassandra.dht.AbstractBounds;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.locator.InetAddressAndPort;
+import org.apache.cassandra.service.IEndpointLifecycleSubscriber;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.FBUtilities;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.index.query.BoolQueryBuilder;
+import org.opensearch.index.query.QueryBuilder;
+import org.opensearch.index.query.QueryBuilders;
+import org.opensearch.index.query.RangeQueryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 索引在 OpenSearch 中的物理布局。
+ * <p>
+ * shared：所有节点写入同一个多分片索引，查询在整个索引上执行。
+ * <p>
+ * local：每个 Cassandra 节点只写自己的单分片索引（索引名加上节点的 host id），分片固定分配在同机的 OpenSearch 节点上，
+ * 所有节点的索引通过与表同名的别名关联。文档额外记录分区键的 token，查询只在本节点的索引上按读请求的 token 范围过滤，
+ * 索引数据与 Cassandra 副本一一对应，查询不再跨节点扇出。节点离开集群后，其索引由其余节点删除；
+ * token 范围迁走（其他节点加入、移动 token）或者执行 cleanup 后，本节点索引中不再负责的 token 范围的文档按查询删除。
+ */
+public final class IndexLayout implements IEndpointLifecycleSubscriber {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexLayout.class);
+
+    public static final String LAYOUT = "layout";
+
+    public static final String TOKEN_FIELD = "ratu_token";
+
+    // 节点离开集群后，等待 gossip 状态稳定再清理
+    private static final long RECONCILE_DELAY_SECONDS = 30;
+
+    // 别名，也就是共享布局下的索引名
+    public final String alias;
+
+    public final boolean local;
+
+    // 本节点读写的索引
+    public final String index;
+
+    private final String keyspace;
+
+    private final ElasticIndex elasticIndex;
+
+    // 已经安排了一次 reconcile，还没有执行
+    private final AtomicBoolean reconcileScheduled = new AtomicBoolean();
+
+    private IndexLayout(String alias, boolean local, String index, String keyspace, ElasticIndex elasticIndex) {
+        this.alias = alias;
+        this.local = local;
+        this.index = index;
+        this.keyspace = keyspace;
+        this.elasticIndex = elasticIndex;
+    }
+
+    public static IndexLayout of(String indexName, String keyspace, ElasticIndex elasticIndex, Map<String, String> options,
+                                 IPartitioner partitioner, boolean isRollOver) {
+        String layout = options.get(LAYOUT) != null ? options.get(LAYOUT).trim().toLowerCase(Locale.ROOT) : "shared";
+        if (!"local".equals(layout)) {
+            return new IndexLayout(indexName, false, indexName, keyspace, elasticIndex);
+        }
+        if (!(partitioner instanceof Murmur3Partitioner) || isRollOver) {
+            logger.warn("Index {} 的 local 布局需要 Murmur3Partitioner 且不能是滚动索引，使用 shared 布局", indexName);
+            return new IndexLayout(indexName, false, indexName, keyspace, elasticIndex);
+        }
+        String hostId = SystemKeyspace.getOrInitializeLocalHostId().toString();
+        return new IndexLayout(indexName, true, indexName + "." + hostId, keyspace, elasticIndex);
+    }
+
+    /**
+     * local 布局下固定为单分片、无副本，并要求分片分配在本机的 OpenSearch 节点上
+     */
+    public Settings.Builder settings(Settings.Builder settings) {
+        if (local) {
+            settings.put("number_of_shards", 1);
+            settings.put("number_of_replicas", "0");
+            if (LocalNode.isStarted()) {
+                settings.put("index.routing.allocation.require._name", LocalNode.nodeName());
+            } else {
+                settings.put("index.routing.allocation.require._ip", FBUtilities.getJustBroadcastAddress().getHostAddress());
+            }
+        }
+        return settings;
+    }
+
+    /**
+     * local 布局下的映射增加 token 字段
+     */
+    public Map<String, Map<String, String>> fields(Map<String, Map<String, String>> fields) {
+        if (!local) {
+            return fields;
+        }
+        Map<String, Map<String, String>> withToken = new HashMap<>(fields);
+        Map<String, String> token = new HashMap<>();
+        token.put("type", "long");
+        withToken.put(TOKEN_FIELD, token);
+        return withToken;
+    }
+
+    public Boolean create(Settings settings, Map<String, Map<String, String>> fields) {
+        return elasticIndex.newLocalIndex(index, alias, settings, fields);
+    }
+
+    /**
+     * 写入文档的 token，shared 布局不写入
+     */
+    @Nullable
+    public Long token(DecoratedKey key) {
+        return local ? (Long) key.getToken().getTokenValue() : null;
+    }
+
+    /**
+     * 读请求 token 范围对应的过滤条件，shared 布局或者整个 token 环时返回 null。
+     * 同一个 token 上可能有多个分区键，边界上的分区键一律包含在内
+     */
+    @Nullable
+    public QueryBuilder tokenFilter(ReadCommand command) {
+        if (!local) {
+            return null;
+        }
+        if (command instanceof SinglePartitionReadCommand) {
+            return QueryBuilders.termQuery(TOKEN_FIELD, token(((SinglePartitionReadCommand) command).partitionKey()));
+        }
+        if (!(command instanceof PartitionRangeReadCommand)) {
+            return null;
+        }
+        AbstractBounds<PartitionPosition> bounds = ((PartitionRangeReadCommand) command).dataRange().keyRange();
+        if (bounds.left.isMinimum() && bounds.right.isMinimum()) {
+            return null;
+        }
+        RangeQueryBuilder range = QueryBuilders.rangeQuery(TOKEN_FIELD);
+        if (!bounds.left.isMinimum()) {
+            Object token = bounds.left.getToken().getTokenValue();
+            if (bounds.left.kind() == PartitionPosition.Kind.MAX_BOUND) {
+                range.gt(token);
+            } else {
+                range.gte(token);
+            }
+        }
+        if (!bounds.right.isMinimum()) {
+            Object token = bounds.right.getToken().getTokenValue();
+            if (bounds.right.kind() == PartitionPosition.Kind.MIN_BOUND) {
+                range.lt(token);
+            } else {
+                range.lte(token);
+            }
+        }
+        return range;
+    }
+
+    /**
+     * 本节点负责的 token 范围（包括正在迁入的范围）对应的过滤条件，shared 布局或者本节点负责整个 token 环时返回 null
+     */
+    @Nullable
+    public QueryBuilder ownedTokenFilter() {
+        return local ? tokenRanges(ownedRanges()) : null;
+    }
+
+    /**
+     * 在别名上跨所有节点索引执行的查询（范围查询的聚合）只取一份数据：每个节点的索引只取它作为主副本的 token 范围，
+     * 所有节点的主副本范围合起来正好是整个 token 环。shared 布局返回 null
+     */
+    @Nullable
+    public QueryBuilder singleCopyFilter() {
+        if (!local) {
+            return null;
+        }
+        BoolQueryBuilder filter = QueryBuilders.boolQuery().minimumShouldMatch(1);
+        for (Map.Entry<InetAddressAndPort, UUID> endpoint : StorageService.instance.getTokenMetadata().getEndpointToHostIdMapForReading().entrySet()) {
+            List<Range<Token>> primary = Range.normalize(StorageService.instance.getPrimaryRangesForEndpoint(keyspace, endpoint.getKey()));
+            BoolQueryBuilder copy = QueryBuilders.boolQuery().filter(QueryBuilders.termQuery("_index", alias + "." + endpoint.getValue()));
+            QueryBuilder tokens = tokenRanges(primary);
+            if (tokens != null) {
+                copy.filter(tokens);
+            }
+            filter.should(copy);
+        }
+        return filter;
+    }
+
+    /**
+     * 一组 token 范围的过滤条件，包含整个 token 环时返回 null，没有任何范围时不匹配任何文档
+     */
+    @Nullable
+    private static QueryBuilder tokenRanges(List<Range<Token>> ranges) {
+        if (ranges.isEmpty()) {
+            return QueryBuilders.boolQuery().mustNot(QueryBuilders.matchAllQuery());
+        }
+        BoolQueryBuilder filter = QueryBuilders.boolQuery();
+        for (Range<Token> range : ranges) {
+            if (range.left.isMinimum() && range.right.isMinimum()) {
+                return null;
+            }
+            RangeQueryBuilder tokens = QueryBuilders.rangeQuery(TOKEN_FIELD);
+            // token 范围左开右闭，最小 token 表示环的起点或终点
+            if (!range.left.isMinimum()) {
+                tokens.gt(range.left.getTokenValue());
+            }
+            if (!range.right.isMinimum()) {
+                tokens.lte(range.right.getTokenValue());
+            }
+            filter.should(tokens);
+        }
+        return filter.minimumShouldMatch(1);
+    }
+
+    private List<Range<Token>> ownedRanges() {
+        List<Range<Token>> ranges = new ArrayList<>(StorageService.instance.getLocalReplicas(keyspace).ranges());
+        ranges.addAll(StorageService.instance.getTokenMetadata().getPendingRanges(keyspace, FBUtilities.getBroadcastAddressAndPort()).ranges());
+        return Range.normalize(ranges);
+    }
+
+    public void register() {
+        if (local) {
+            StorageService.instance.register(this);
+            scheduleReconcile();
+        }
+    }
+
+    public void unregister() {
+        if (local) {
+            StorageService.instance.unregister(this);
+        }
+    }
+
+    /**
+     * 删除 host id 已不在集群中的节点索引，以及本节点索引中不再负责的 token 范围的文档
+     */
+    public void reconcile() {
+        reconcileScheduled.set(false);
+        if (!StorageService.instance.isJoined()) {
+            return;
+        }
+        pruneForeignTokens();
+        Set<String> hostIds = StorageService.instance.getHostIdToEndpoint().keySet();
+        if (hostIds.isEmpty()) {
+            return;
+        }
+        try {
+            String prefix = alias + ".";
+            for (String name : elasticIndex.resolveIndices(prefix + "*")) {
+                String hostId = name.substring(prefix.length());
+                if (!hostIds.contains(hostId)) {
+                    logger.info("节点 {} 已离开集群，删除其索引 {}", hostId, name);
+                    elasticIndex.deleteIndex(name);
+                }
+            }
+        } catch (Exception e) {
+            // 其他节点可能已经删除
+            logger.warn("Index {} reconcile faild: {}", alias, e.getMessage());
+        }
+    }
+
+    /**
+     * 按查询在后台删除不在本节点负责的 token 范围内的文档，正在迁入的范围不删除
+     */
+    private void pruneForeignTokens() {
+        try {
+            if (StorageService.instance.getLocalReplicas(keyspace).ranges().isEmpty()) {
+                // 刚启动或者 keyspace 的副本信息还不完整，不能据此删除
+                return;
+            }
+            QueryBuilder owned = ownedTokenFilter();
+            if (owned == null) {
+                return;
+            }
+            logger.info("删除索引 {} 中不再属于本节点 token 范围的文档", index);
+            elasticIndex.deleteByQuery(index, QueryBuilders.boolQuery().mustNot(owned));
+        } catch (Exception e) {
+            logger.warn("Index {} prune foreign tokens failed: {}", index, e.getMessage());
+        }
+    }
+
+    private void scheduleReconcile() {
+        if (reconcileScheduled.compareAndSet(false, true)) {
+            ScheduledExecutors.optionalTasks.schedule(this::reconcile, RECONCILE_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 本节点执行了 cleanup，cleanup 结束后删除不再负责的 token 范围的文档
+     */
+    public void onCleanup() {
+        if (local) {
+            scheduleReconcile();
+        }
+    }
+
+    @Override
+    public void onJoinCluster(InetAddressAndPort endpoint) {
+        // 新节点完成加入后接管了一部分 token 范围
+        scheduleReconcile();
+    }
+
+    @Override
+    public void onLeaveCluster(InetAddressAndPort endpoint) {
+        scheduleReconcile();
+    }
+
+    @Override
+    public void onUp(InetAddressAndPort endpoint) {
+    }
+
+    @Override
+    public void onDown(InetAddressAndPort endpoint) {
+    }
+
+    @Override
+    public void onMove(InetAddressAndPort endpoint) {
+        scheduleReconcile();
+    }
+}
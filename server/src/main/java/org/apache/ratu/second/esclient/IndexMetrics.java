@@ -0,0 +1,205 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import org.apache.cassandra.metrics.CassandraMetricsRegistry.MetricName;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.cassandra.metrics.CassandraMetricsRegistry.Metrics;
+
+/**
+ * 每个二级索引一组的指标，注册在 Cassandra 的 TableMetrics 下（org.apache.cassandra.metrics:type=Table,keyspace=ks,scope=表名,name=EsIndex...），
+ * 可以用 nodetool sjk mx 或任意 JMX 客户端查看；同时通过 OpenSearch 的 _nodes/stats/secondary_index 输出。
+ * <ul>
+ *     <li>EsIndexIndexLatency / EsIndexDeleteLatency：写入、删除从提交到被 OpenSearch 确认的耗时</li>
+ *     <li>EsIndexBulkBatchSize：每个 _bulk 请求的操作数</li>
+ *     <li>EsIndexQueueDepth / EsIndexOutboxBacklog：已提交未确认的操作数、outbox 中积压的操作数</li>
+ *     <li>EsIndexRejected / EsIndexFailed：队列已满被拒绝的写入、被 OpenSearch 拒绝的文档</li>
+ *     <li>EsIndexTranslateLatency / EsIndexSearchLatency / EsIndexHydrateLatency：查询表达式编译、每页搜索、每批回表读取的耗时</li>
+ *     <li>EsIndexHitsPerQuery：每次查询命中的文档数</li>
+ *     <li>EsIndexQueryCacheHits / EsIndexQueryCacheMisses / EsIndexQueryCacheEvictions：查询结果缓存（{@link QueryResultCache}）的命中、未命中和因容量不足被淘汰的结果数</li>
+ * </ul>
+ */
+public final class IndexMetrics {
+
+    private static final String GROUP = "org.apache.cassandra.metrics";
+    private static final String TYPE = "Table";
+    private static final String PREFIX = "EsIndex";
+
+    // 本节点上所有索引的指标：索引名 -> 指标
+    private static final Map<String, IndexMetrics> registry = new ConcurrentHashMap<>();
+
+    public final String indexName;
+    private final String keyspace;
+    private final String table;
+
+    public final Timer indexLatency;
+    public final Timer deleteLatency;
+    public final Histogram bulkBatchSize;
+    public final Counter rejected;
+    public final Counter failed;
+
+    public final Timer translateLatency;
+    public final Timer searchLatency;
+    public final Timer hydrateLatency;
+    public final Histogram hitsPerQuery;
+
+    public final Counter queryCacheHits;
+    public final Counter queryCacheMisses;
+    public final Counter queryCacheEvictions;
+
+    private final List<MetricName> names = new ArrayList<>();
+
+    private volatile IndexingPipeline pipeline;
+
+    private IndexMetrics(String keyspace, String table) {
+        this.indexName = keyspace + "." + table;
+        this.keyspace = keyspace;
+        this.table = table;
+        this.indexLatency = Metrics.timer(name("IndexLatency"));
+        this.deleteLatency = Metrics.timer(name("DeleteLatency"));
+        this.bulkBatchSize = Metrics.histogram(name("BulkBatchSize"), false);
+        this.rejected = Metrics.counter(name("Rejected"));
+        this.failed = Metrics.counter(name("Failed"));
+        this.translateLatency = Metrics.timer(name("TranslateLatency"));
+        this.searchLatency = Metrics.timer(name("SearchLatency"));
+        this.hydrateLatency = Metrics.timer(name("HydrateLatency"));
+        this.hitsPerQuery = Metrics.histogram(name("HitsPerQuery"), false);
+        this.queryCacheHits = Metrics.counter(name("QueryCacheHits"));
+        this.queryCacheMisses = Metrics.counter(name("QueryCacheMisses"));
+        this.queryCacheEvictions = Metrics.counter(name("QueryCacheEvictions"));
+        Metrics.register(name("QueueDepth"), (Gauge<Integer>) () -> pipeline == null ? 0 : pipeline.queueDepth());
+        Metrics.register(name("OutboxBacklog"), (Gauge<Long>) () -> pipeline == null ? 0L : pipeline.backlog());
+    }
+
+    /**
+     * 注册索引的指标；同名索引重建时替换旧的指标
+     */
+    public static IndexMetrics register(@Nonnull String keyspace, @Nonnull String table) {
+        IndexMetrics previous = registry.remove(keyspace + "." + table);
+        if (previous != null) {
+            previous.unregisterMetrics();
+        }
+        IndexMetrics metrics = new IndexMetrics(keyspace, table);
+        registry.put(metrics.indexName, metrics);
+        return metrics;
+    }
+
+    @Nullable
+    static IndexMetrics get(@Nonnull String indexName) {
+        return registry.get(indexName);
+    }
+
+    /**
+     * 队列深度和 outbox 积压从写入管道读取
+     */
+    void bind(@Nonnull IndexingPipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * 索引被删除时注销所有指标
+     */
+    public void release() {
+        registry.remove(indexName, this);
+        unregisterMetrics();
+    }
+
+    void recordAcknowledged(@Nonnull BulkItem item) {
+        Timer timer = item.opType == BulkItem.OpType.DELETE ? deleteLatency : indexLatency;
+        timer.update(System.nanoTime() - item.createdNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 本节点所有索引的指标快照，用于 _nodes/stats
+     */
+    public static SecondaryIndexStats stats() {
+        Map<String, Map<String, Object>> indices = new LinkedHashMap<>();
+        for (IndexMetrics metrics : registry.values()) {
+            indices.put(metrics.indexName, metrics.snapshot());
+        }
+        return new SecondaryIndexStats(indices);
+    }
+
+    private Map<String, Object> snapshot() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        IndexingPipeline pipeline = this.pipeline;
+        stats.put("queue_depth", pipeline == null ? 0L : (long) pipeline.queueDepth());
+        stats.put("outbox_backlog", pipeline == null ? 0L : pipeline.backlog());
+        stats.put("rejected", rejected.getCount());
+        stats.put("failed", failed.getCount());
+        stats.put("index_latency", timer(indexLatency));
+        stats.put("delete_latency", timer(deleteLatency));
+        stats.put("bulk_batch_size", histogram(bulkBatchSize));
+        stats.put("translate_latency", timer(translateLatency));
+        stats.put("search_latency", timer(searchLatency));
+        stats.put("hydrate_latency", timer(hydrateLatency));
+        stats.put("hits_per_query", histogram(hitsPerQuery));
+        Map<String, Object> queryCache = new LinkedHashMap<>();
+        queryCache.put("hits", queryCacheHits.getCount());
+        queryCache.put("misses", queryCacheMisses.getCount());
+        queryCache.put("evictions", queryCacheEvictions.getCount());
+        stats.put("query_cache", queryCache);
+        return stats;
+    }
+
+    private static Map<String, Object> timer(Timer timer) {
+        Snapshot snapshot = timer.getSnapshot();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", timer.getCount());
+        stats.put("mean_millis", millis(snapshot.getMean()));
+        stats.put("p50_millis", millis(snapshot.getMedian()));
+        stats.put("p99_millis", millis(snapshot.get99thPercentile()));
+        stats.put("max_millis", millis(snapshot.getMax()));
+        return stats;
+    }
+
+    private static Map<String, Object> histogram(Histogram histogram) {
+        Snapshot snapshot = histogram.getSnapshot();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", histogram.getCount());
+        stats.put("mean", snapshot.getMean());
+        stats.put("p50", snapshot.getMedian());
+        stats.put("p99", snapshot.get99thPercentile());
+        stats.put("max", snapshot.getMax());
+        return stats;
+    }
+
+    private static double millis(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private MetricName name(String metric) {
+        String name = PREFIX + metric;
+        String mbean = GROUP + ":type=" + TYPE + ",keyspace=" + keyspace + ",scope=" + table + ",name=" + name;
+        MetricName metricName = new MetricName(GROUP, TYPE, name, keyspace + "." + table, mbean);
+        names.add(metricName);
+        return metricName;
+    }
+
+    private void unregisterMetrics() {
+        for (MetricName name : names) {
+            Metrics.remove(name);
+        }
+        names.clear();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+import com.google.common.collect.ImmutableSet;
+import org.apache.cassandra.cql3.CQL3Type;
+import org.apache.cassandra.cql3.QueryOptions;
+import org.apache.cassandra.db.Clustering;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.LivenessInfo;
+import org.apache.cassandra.db.ReadCommand;
+import org.apache.cassandra.db.rows.BTreeRow;
+import org.apache.cassandra.db.rows.BufferCell;
+import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.schema.ColumnMetadata;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.ratu.second.DocumentEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 索引覆盖查询：所有查询的列都在索引 schema 中时，直接用 OpenSearch 返回的 _source 构造 CQL 结果行，不再回表读取 Cassandra。
+ */
+public class IndexOnlyRows implements RowSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexOnlyRows.class);
+
+    /**
+     * 写入索引时可以无损还原的类型；timestamp 按 pattern 格式化、集合类型只写入了部分元素，不能从 _source 还原
+     */
+    private static final Set<CQL3Type> RESTORABLE_TYPES = ImmutableSet.of(
+        CQL3Type.Native.INT,
+        CQL3Type.Native.BIGINT,
+        CQL3Type.Native.FLOAT,
+        CQL3Type.Native.DOUBLE,
+        CQL3Type.Native.BOOLEAN,
+        CQL3Type.Native.TEXT,
+        CQL3Type.Native.VARCHAR,
+        CQL3Type.Native.ASCII,
+        CQL3Type.Native.UUID,
+        CQL3Type.Native.INET
+    );
+
+    private final ColumnFamilyStore baseCfs;
+    private final ReadCommand command;
+    private final Iterator<SearchResultRow> hits;
+    private final long timestamp;
+
+    public IndexOnlyRows(@Nonnull ColumnFamilyStore baseCfs, @Nonnull ReadCommand command, @Nonnull Iterator<SearchResultRow> hits) {
+        this.baseCfs = baseCfs;
+        this.command = command;
+        this.hits = hits;
+        this.timestamp = FBUtilities.timestampMicros();
+    }
+
+    /**
+     * 该列的值能否从 _source 还原：类型可以无损还原，且空值不会被写成默认内容
+     *
+     * @param partial 索引是否按 partial 模式写入
+     */
+    public static boolean isRestorable(@Nonnull ColumnMetadata column, boolean partial) {
+        return RESTORABLE_TYPES.contains(column.type.asCQL3Type()) && DocumentEncoder.keepsNulls(column.type, partial);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return hits.hasNext();
+    }
+
+    @Override
+    public RowHydrator.HydratedRow next() {
+        SearchResultRow hit = hits.next();
+        DecoratedKey partitionKey = baseCfs.getPartitioner().decorateKey(hit.partitionKey);
+
+        Row.Builder rowBuilder = BTreeRow.unsortedBuilder();
+        rowBuilder.newRow(clustering(hit));
+        rowBuilder.addPrimaryKeyLivenessInfo(LivenessInfo.create(timestamp, command.nowInSec()));
+
+        Map<String, Object> source = hit.docMetadata;
+        for (ColumnMetadata column : command.columnFilter().queriedColumns()) {
+            Object value = source.get(column.name.toString());
+            if (value == null) {
+                continue;
+            }
+            try {
+                ByteBuffer buffer = column.type.fromJSONObject(value).bindAndGet(QueryOptions.DEFAULT);
+                rowBuilder.addCell(BufferCell.live(column, timestamp, buffer));
+            } catch (Exception e) {
+                logger.warn("Cannot restore column {} of {} from _source value {}", column.name, baseCfs.metadata(), value);
+            }
+        }
+        return new RowHydrator.HydratedRow(hit, partitionKey, rowBuilder.build());
+    }
+
+    /**
+     * 按命中的聚簇键构造行的 clustering，没有聚簇列时为 EMPTY
+     */
+    private Clustering<?> clustering(SearchResultRow hit) {
+        List<ColumnMetadata> clusteringColumns = baseCfs.metadata().clusteringColumns();
+        if (clusteringColumns.isEmpty()) {
+            return Clustering.EMPTY;
+        }
+        ByteBuffer[] values = new ByteBuffer[clusteringColumns.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = clusteringColumns.get(i).type.fromString(hit.clusteringKeys[i]);
+        }
+        return Clustering.make(values);
+    }
+}
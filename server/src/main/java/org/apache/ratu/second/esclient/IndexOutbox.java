@@ -0,0 +1,438 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.ratu.second.exception.BulkRejectedException;
+import org.opensearch.common.xcontent.XContentType;
+import org.opensearch.core.common.bytes.BytesArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.management.ObjectName;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * async 索引的持久化 outbox。
+ * <p>
+ * 提交到批量写入管道的每个操作先追加到 commitlog 旁边的段文件中（默认 commitlog 同级的 es_outbox/索引名 目录），
+ * 被 OpenSearch 确认后才算完成；一个段文件写满后封存，其中的操作全部确认后删除。
+ * 节点重启时按顺序重放残留段文件中的操作，index/delete 都是按 id 的幂等操作，重复执行不会改变结果。
+ * <p>
+ * 段文件只追加写入，按 outbox_sync_ms 周期刷盘，与 Cassandra periodic 模式的 commitlog 一致。
+ * 每条记录格式：长度、CRC32、序号、时间戳、操作类型、文档格式、索引名、id、文档；重放时遇到不完整或校验失败的记录即停止读取该段。
+ */
+public class IndexOutbox implements IndexOutboxMBean, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexOutbox.class);
+
+    public static final String OUTBOX = "outbox";
+    public static final String OUTBOX_DIRECTORY = "outbox_directory";
+    public static final String OUTBOX_SEGMENT_MB = "outbox_segment_mb";
+    public static final String OUTBOX_SYNC_MS = "outbox_sync_ms";
+
+    private static final String SEGMENT_PREFIX = "outbox-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * 一条记录在 outbox 中的位置
+     */
+    static final class Entry {
+        final Segment segment;
+        final long sequence;
+        final long timestamp;
+
+        Entry(Segment segment, long sequence, long timestamp) {
+            this.segment = segment;
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private static final class Segment {
+        final long id;
+        final Path path;
+        final AtomicInteger pending = new AtomicInteger();
+        volatile boolean sealed;
+
+        Segment(long id, Path path) {
+            this.id = id;
+            this.path = path;
+        }
+    }
+
+    private final String indexName;
+    private final Path directory;
+    private final long segmentBytes;
+    public final long syncIntervalMillis;
+
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final ConcurrentSkipListMap<Long, Entry> pending = new ConcurrentSkipListMap<>();
+    private final AtomicLong backlog = new AtomicLong();
+
+    private final ByteArrayOutputStream scratch = new ByteArrayOutputStream(1024);
+    private final DataOutputStream scratchOut = new DataOutputStream(scratch);
+    private final CRC32 crc = new CRC32();
+
+    private Segment current;
+    private FileChannel channel;
+    private long currentBytes;
+    private long nextSequence;
+    private boolean dirty;
+
+    private ObjectName objectName;
+
+    private List<BulkItem> recovered = Collections.emptyList();
+
+    private IndexOutbox(String indexName, Path directory, long segmentBytes, long syncIntervalMillis) {
+        this.indexName = indexName;
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.syncIntervalMillis = syncIntervalMillis;
+    }
+
+    /**
+     * 打开索引的 outbox，残留段文件中的记录通过 {@link #takeRecovered()} 取出重放，新的操作写入新的段文件
+     */
+    public static IndexOutbox open(@Nonnull String indexName, @Nonnull Map<String, String> options) throws IOException {
+        Path directory = options.get(OUTBOX_DIRECTORY) != null
+            ? Paths.get(options.get(OUTBOX_DIRECTORY), indexName)
+            : Paths.get(DatabaseDescriptor.getCommitLogLocation()).toAbsolutePath().resolveSibling("es_outbox").resolve(indexName);
+        long segmentBytes = (options.get(OUTBOX_SEGMENT_MB) != null ? Long.parseLong(options.get(OUTBOX_SEGMENT_MB)) : 32) * 1024 * 1024;
+        long syncIntervalMillis = options.get(OUTBOX_SYNC_MS) != null ? Long.parseLong(options.get(OUTBOX_SYNC_MS)) : 1000;
+
+        Files.createDirectories(directory);
+        IndexOutbox outbox = new IndexOutbox(indexName, directory, segmentBytes, syncIntervalMillis);
+        outbox.recovered = outbox.recover();
+        outbox.roll();
+        outbox.registerMBean();
+        return outbox;
+    }
+
+    /**
+     * 取出启动时从残留段文件中读出的操作，只能取一次
+     */
+    public synchronized List<BulkItem> takeRecovered() {
+        List<BulkItem> items = recovered;
+        recovered = Collections.emptyList();
+        return items;
+    }
+
+    /**
+     * 追加一条操作，写入失败时拒绝本次写入
+     */
+    public synchronized void append(@Nonnull BulkItem item) {
+        long sequence = nextSequence++;
+        long timestamp = System.currentTimeMillis();
+        try {
+            scratch.reset();
+            scratchOut.writeLong(sequence);
+            scratchOut.writeLong(timestamp);
+            scratchOut.writeByte(item.opType.ordinal());
+            scratchOut.writeByte(item.contentType.ordinal());
+            scratchOut.writeUTF(item.index);
+            scratchOut.writeUTF(item.id);
+            if (item.source == null) {
+                scratchOut.writeInt(-1);
+            } else {
+                scratchOut.writeInt(item.source.length());
+                item.source.writeTo(scratchOut);
+            }
+            scratchOut.writeLong(item.version);
+            scratchOut.flush();
+
+            byte[] bytes = scratch.toByteArray();
+            crc.reset();
+            crc.update(bytes, 0, bytes.length);
+            ByteBuffer header = ByteBuffer.allocate(8);
+            header.putInt(bytes.length).putInt((int) crc.getValue()).flip();
+            ByteBuffer payload = ByteBuffer.wrap(bytes);
+            ByteBuffer[] buffers = new ByteBuffer[]{header, payload};
+            while (payload.hasRemaining()) {
+                channel.write(buffers);
+            }
+            currentBytes += 8 + bytes.length;
+            dirty = true;
+        } catch (IOException e) {
+            throw new BulkRejectedException("Cannot append to outbox of index " + indexName + ": " + e.getMessage());
+        }
+
+        Entry entry = new Entry(current, sequence, timestamp);
+        current.pending.incrementAndGet();
+        pending.put(sequence, entry);
+        backlog.incrementAndGet();
+        item.outboxEntry = entry;
+
+        if (currentBytes >= segmentBytes) {
+            try {
+                roll();
+            } catch (IOException e) {
+                logger.error("Roll outbox segment of index " + indexName + " Exception:", e);
+            }
+        }
+    }
+
+    /**
+     * 操作已被 OpenSearch 确认（或确定无法写入），段内操作全部确认后删除封存的段文件
+     */
+    public void ack(@Nonnull BulkItem item) {
+        Entry entry = item.outboxEntry;
+        if (entry == null || pending.remove(entry.sequence) == null) {
+            return;
+        }
+        backlog.decrementAndGet();
+        if (entry.segment.pending.decrementAndGet() == 0 && entry.segment.sealed) {
+            delete(entry.segment);
+        }
+    }
+
+    /**
+     * 把已写入的记录刷到磁盘
+     */
+    public synchronized void sync() {
+        if (!dirty || channel == null) {
+            return;
+        }
+        try {
+            channel.force(false);
+            dirty = false;
+        } catch (IOException e) {
+            logger.error("Sync outbox of index " + indexName + " Exception:", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        sync();
+        unregisterMBean();
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Close outbox of index " + indexName + " Exception:", e);
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * 索引被删除时连同未确认的操作一起删除
+     */
+    public synchronized void destroy() {
+        close();
+        for (Segment segment : segments) {
+            delete(segment);
+        }
+        try {
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            logger.warn("Delete outbox directory " + directory + " Exception:", e);
+        }
+    }
+
+    @Override
+    public long getBacklog() {
+        return backlog.get();
+    }
+
+    @Override
+    public long getOldestEntryAgeMillis() {
+        Map.Entry<Long, Entry> oldest = pending.firstEntry();
+        return oldest == null ? 0 : Math.max(0, System.currentTimeMillis() - oldest.getValue().timestamp);
+    }
+
+    @Override
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    private synchronized void roll() throws IOException {
+        Segment previous = current;
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+        }
+        long id = previous == null ? 0 : previous.id + 1;
+        for (Segment segment : segments) {
+            id = Math.max(id, segment.id + 1);
+        }
+        Segment segment = new Segment(id, directory.resolve(SEGMENT_PREFIX + id + SEGMENT_SUFFIX));
+        channel = FileChannel.open(segment.path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segments.add(segment);
+        current = segment;
+        currentBytes = 0;
+        dirty = false;
+
+        if (previous != null) {
+            previous.sealed = true;
+            if (previous.pending.get() == 0) {
+                delete(previous);
+            }
+        }
+    }
+
+    private void delete(Segment segment) {
+        if (!segments.remove(segment)) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            logger.warn("Delete outbox segment " + segment.path + " Exception:", e);
+        }
+    }
+
+    /**
+     * 读出残留段文件中的所有记录，这些段全部视为已封存
+     */
+    private List<BulkItem> recover() throws IOException {
+        List<Segment> found = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    long id = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                    found.add(new Segment(id, path));
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignore unknown file {} in outbox of index {}", path, indexName);
+                }
+            }
+        }
+        found.sort(Comparator.comparingLong(segment -> segment.id));
+
+        List<BulkItem> items = new ArrayList<>();
+        for (Segment segment : found) {
+            segment.sealed = true;
+            segments.add(segment);
+            readSegment(segment, items);
+            if (segment.pending.get() == 0) {
+                delete(segment);
+            }
+        }
+        return items;
+    }
+
+    private void readSegment(Segment segment, List<BulkItem> items) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment.path)))) {
+            while (true) {
+                int length;
+                int checksum;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                    if (length <= 0 || length > segmentBytes + (64 << 20)) {
+                        logger.warn("Corrupted record in outbox segment {}, skip the rest of it", segment.path);
+                        return;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    // 段尾不完整的记录是写入时被中断的，丢弃即可
+                    return;
+                }
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    logger.warn("Checksum mismatch in outbox segment {}, skip the rest of it", segment.path);
+                    return;
+                }
+                items.add(decode(segment, payload));
+            }
+        }
+    }
+
+    private BulkItem decode(Segment segment, byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            long sequence = in.readLong();
+            long timestamp = in.readLong();
+            BulkItem.OpType opType = BulkItem.OpType.values()[in.readByte()];
+            XContentType contentType = XContentType.values()[in.readByte()];
+            String index = in.readUTF();
+            String id = in.readUTF();
+            int sourceLength = in.readInt();
+
+            byte[] source = sourceLength < 0 ? null : new byte[sourceLength];
+            if (source != null) {
+                in.readFully(source);
+            }
+            // 较早的记录没有版本号
+            long version = in.available() >= Long.BYTES ? in.readLong() : BulkItem.NO_VERSION;
+
+            BulkItem item;
+            if (opType == BulkItem.OpType.DELETE || source == null) {
+                item = BulkItem.delete(index, id, version);
+            } else if (opType == BulkItem.OpType.UPDATE) {
+                item = BulkItem.update(index, id, new BytesArray(source), contentType);
+            } else if (opType == BulkItem.OpType.REPLACE) {
+                item = BulkItem.replace(index, id, new BytesArray(source), contentType);
+            } else if (opType == BulkItem.OpType.FILL) {
+                item = BulkItem.fill(index, id, new BytesArray(source), contentType);
+            } else {
+                item = BulkItem.index(index, id, new BytesArray(source), contentType, version);
+            }
+
+            Entry entry = new Entry(segment, sequence, timestamp);
+            segment.pending.incrementAndGet();
+            pending.put(sequence, entry);
+            backlog.incrementAndGet();
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            item.outboxEntry = entry;
+            return item;
+        }
+    }
+
+    private void registerMBean() {
+        try {
+            objectName = new ObjectName("org.apache.ratu.second:type=IndexOutbox,name=" + ObjectName.quote(indexName));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (Exception e) {
+            logger.warn("Register outbox MBean of index " + indexName + " Exception:", e);
+            objectName = null;
+        }
+    }
+
+    private void unregisterMBean() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception e) {
+            logger.warn("Unregister outbox MBean of index " + indexName + " Exception:", e);
+        }
+        objectName = null;
+    }
+}
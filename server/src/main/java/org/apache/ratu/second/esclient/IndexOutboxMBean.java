@@ -0,0 +1,30 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+/**
+ * 索引 outbox 的积压情况，通过 JMX 暴露：org.apache.ratu.second:type=IndexOutbox,name=索引名
+ */
+public interface IndexOutboxMBean {
+
+    /**
+     * 已记录但尚未被 OpenSearch 确认的操作数
+     */
+    long getBacklog();
+
+    /**
+     * 最早一条未确认操作的等待时间（毫秒），没有积压时为 0
+     */
+    long getOldestEntryAgeMillis();
+
+    /**
+     * outbox 在磁盘上的段文件数
+     */
+    int getSegmentCount();
+}
@@ -0,0 +1,765 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+import org.apache.ratu.second.exception.BulkRejectedException;
+import org.opensearch.core.action.ActionListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 每个二级索引一个的批量写入管道。
+ * <p>
+ * 所有 EsIndexer 产生的文档都先进入这里，按文档数、字节数或最长等待时间合并成一个 _bulk 请求，
+ * 同时最多只有 bulk_concurrency 个请求在途；排队文档超过 queue_size 时阻塞写入线程，
+ * 等待 queue_timeout_ms 后仍无空位则拒绝写入，以此对 Cassandra 写路径进行反压。
+ * <ul>
+ *     <li>sync：写入线程等待所在批次被确认；只要有空闲的并发槽位就立即发送，
+ *     槽位全忙时到达的文档会合并到下一批（group commit）。</li>
+ *     <li>async：写入线程不等待，批次按阈值或 flush_interval_ms 发送。</li>
+ * </ul>
+ * async 模式默认启用持久化 outbox（{@link IndexOutbox}）：文档先追加到 outbox 再进入批次，
+ * 请求失败、429 或 5xx 的文档延迟后重新加入批次，直到被确认；节点重启后重放未确认的文档。
+ * <p>
+ * 滚动索引的删除同样进入批次：发送前用一次 ids 查询找出这一批删除的文档所在的索引，
+ * 没有找到的文档（例如还没有 refresh）按别名删除，落在当前的写入索引上。
+ * <p>
+ * 同一文档的局部更新（update）在批次发送前合并到该文档尚未发送的 index/update 操作中，一个批次内每个文档只写一次。
+ * <p>
+ * 同一文档的操作按提交顺序生效：文档有在途、等待重试或启动时从 outbox 恢复还未重新提交的操作时，
+ * 之后提交的操作先停在该文档的 {@link Lane} 中，前面的操作确认后再按顺序进入批次；
+ * 同一请求中排在重试操作之后的同一文档的操作一起重试。局部更新不支持 external 版本号，因此不用版本号保证顺序。
+ * <p>
+ * 已确认写入的 _seq_no 记录在 {@link SearchableCheckpoints} 中，查询通过 {@link #awaitSearchable()} 等待它们可以被搜索到。
+ */
+public class IndexingPipeline implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexingPipeline.class);
+
+    public static final String DURABILITY = "durability";
+    public static final String BULK_ACTIONS = "bulk_actions";
+    public static final String BULK_SIZE_MB = "bulk_size_mb";
+    public static final String FLUSH_INTERVAL_MS = "flush_interval_ms";
+    public static final String BULK_CONCURRENCY = "bulk_concurrency";
+    public static final String QUEUE_SIZE = "queue_size";
+    public static final String QUEUE_TIMEOUT_MS = "queue_timeout_ms";
+    public static final String REFRESH_WAIT_MS = "refresh_wait_ms";
+
+    public enum Durability {
+        SYNC,
+        ASYNC;
+
+        /**
+         * durability 优先；没有配置时兼容旧的 async_write 选项
+         */
+        public static Durability of(@Nullable String durability, @Nullable String asyncWrite) {
+            if (durability != null) {
+                return Durability.valueOf(durability.trim().toUpperCase(Locale.ROOT));
+            }
+            return Boolean.parseBoolean(asyncWrite) ? ASYNC : SYNC;
+        }
+    }
+
+    private static final ScheduledExecutorService flushScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r);
+        thread.setDaemon(true);
+        thread.setName("EsBulkFlush");
+        return thread;
+    });
+
+    private final String indexName;
+    private final ElasticIndex elasticIndex;
+    private final IndexMetrics metrics;
+
+    public final Durability durability;
+    private final int maxActions;
+    private final long maxBytes;
+    private final long flushIntervalMillis;
+    private final int concurrency;
+    private final int queueSize;
+    private final long queueTimeoutMillis;
+    private final long refreshWaitMillis;
+    // 滚动索引的删除需要先查出文档所在的索引
+    private final boolean rollover;
+
+    // 在途 bulk 请求
+    private final Semaphore inFlight;
+    // 已提交但尚未确认的文档
+    private final Semaphore queued;
+
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private final ScheduledFuture<?> flushTask;
+
+    private final SearchableCheckpoints checkpoints;
+
+    @Nullable
+    private final IndexOutbox outbox;
+
+    @Nullable
+    private final ScheduledFuture<?> syncTask;
+
+    private List<BulkItem> batch = new ArrayList<>();
+    // 当前批次中可以合并局部更新的操作：索引名 + id -> 在批次中的位置
+    private final Map<String, Integer> mergeable = new HashMap<>();
+    // 有在途、等待重试或等待重放的操作的文档：索引名 + id -> 排在这些操作后面的操作
+    private final Map<String, Lane> lanes = new HashMap<>();
+    private long batchBytes = 0;
+    private long batchStartNanos = 0;
+
+    private volatile boolean closed = false;
+
+    public IndexingPipeline(@Nonnull String indexName, @Nonnull ElasticIndex elasticIndex, @Nonnull IndexMetrics metrics,
+                            @Nonnull Map<String, String> options) throws IOException {
+        this.indexName = indexName;
+        this.elasticIndex = elasticIndex;
+        this.metrics = metrics;
+        this.durability = Durability.of(options.get(DURABILITY), options.get("async_write"));
+        this.maxActions = options.get(BULK_ACTIONS) != null ? Integer.parseInt(options.get(BULK_ACTIONS)) : 1000;
+        this.maxBytes = (options.get(BULK_SIZE_MB) != null ? Long.parseLong(options.get(BULK_SIZE_MB)) : 5) * 1024 * 1024;
+        this.flushIntervalMillis = options.get(FLUSH_INTERVAL_MS) != null ? Long.parseLong(options.get(FLUSH_INTERVAL_MS)) : 200;
+        this.concurrency = options.get(BULK_CONCURRENCY) != null ? Integer.parseInt(options.get(BULK_CONCURRENCY)) : 2;
+        this.queueSize = options.get(QUEUE_SIZE) != null ? Integer.parseInt(options.get(QUEUE_SIZE)) : 10000;
+        this.queueTimeoutMillis = options.get(QUEUE_TIMEOUT_MS) != null ? Long.parseLong(options.get(QUEUE_TIMEOUT_MS)) : 30000;
+        this.refreshWaitMillis = options.get(REFRESH_WAIT_MS) != null ? Long.parseLong(options.get(REFRESH_WAIT_MS)) : 10000;
+        this.rollover = options.get("is_roll_over") != null && Boolean.parseBoolean(options.get("is_roll_over"));
+        this.checkpoints = new SearchableCheckpoints(indexName, elasticIndex);
+
+        this.inFlight = new Semaphore(concurrency);
+        this.queued = new Semaphore(queueSize);
+
+        long tick = Math.max(1, flushIntervalMillis / 2);
+        this.flushTask = flushScheduler.scheduleWithFixedDelay(this::flushIfLingered, tick, tick, TimeUnit.MILLISECONDS);
+
+        boolean outboxEnabled = options.get(IndexOutbox.OUTBOX) != null ? Boolean.parseBoolean(options.get(IndexOutbox.OUTBOX)) : true;
+        if (durability == Durability.ASYNC && outboxEnabled) {
+            this.outbox = IndexOutbox.open(indexName, options);
+            this.syncTask = flushScheduler.scheduleWithFixedDelay(outbox::sync, outbox.syncIntervalMillis, outbox.syncIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.outbox = null;
+            this.syncTask = null;
+        }
+        metrics.bind(this);
+    }
+
+    /**
+     * 提交一条操作，返回的 future 在所在批次被 OpenSearch 确认后完成。
+     * 排队文档已满时阻塞，超过 queue_timeout_ms 抛出 {@link BulkRejectedException}。
+     */
+    public CompletableFuture<Void> submit(@Nonnull BulkItem item) {
+        if (closed) {
+            metrics.rejected.inc();
+            throw new BulkRejectedException("Index " + indexName + " bulk pipeline is closed");
+        }
+        try {
+            if (!queued.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                metrics.rejected.inc();
+                throw new BulkRejectedException("Index " + indexName + " bulk queue is full, " + queueSize + " docs pending");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            metrics.rejected.inc();
+            throw new BulkRejectedException("Interrupted while waiting for index " + indexName + " bulk queue");
+        }
+        // 启动时从 outbox 读出的操作已经有 outbox 位置
+        boolean recovered = item.outboxEntry != null;
+        if (outbox != null && !recovered) {
+            try {
+                outbox.append(item);
+            } catch (RuntimeException e) {
+                queued.release();
+                throw e;
+            }
+        }
+
+        List<BulkItem> ready = null;
+        synchronized (this) {
+            if (recovered) {
+                // 重放的操作早于所有新的操作，进入批次后放行排在它后面的操作
+                enqueue(item);
+                vacate(item);
+            } else {
+                Lane lane = lanes.get(key(item));
+                if (lane != null) {
+                    lane.parked.add(item);
+                } else {
+                    enqueue(item);
+                }
+            }
+            if (batch.size() >= maxActions || batchBytes >= maxBytes) {
+                ready = drain();
+            }
+        }
+
+        if (ready != null) {
+            inFlight.acquireUninterruptibly();
+            send(ready);
+        } else if (durability == Durability.SYNC) {
+            flushIfIdle();
+        }
+        return item.future;
+    }
+
+    /**
+     * sync 模式下等待一组操作被确认，失败只记录日志，与原有的写入行为保持一致
+     */
+    public void await(@Nonnull List<CompletableFuture<Void>> futures) {
+        if (futures.isEmpty()) {
+            return;
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("Index " + indexName + " bulk write Exception:", e);
+        }
+    }
+
+    /**
+     * 等待本节点已确认的写入可以被搜索到，最多等待 refresh_wait_ms。
+     * 只包含已经确认的写入：sync 模式下 Cassandra 写入返回前已确认，async 模式下还在队列中的写入不在其中
+     */
+    public void awaitSearchable() {
+        checkpoints.await(refreshWaitMillis);
+    }
+
+    /**
+     * 立即发送当前批次
+     */
+    public void flush() {
+        List<BulkItem> ready;
+        synchronized (this) {
+            ready = drain();
+        }
+        if (ready != null) {
+            inFlight.acquireUninterruptibly();
+            send(ready);
+        }
+    }
+
+    /**
+     * outbox 中积压的文档数，没有启用 outbox 时为 0
+     */
+    public long backlog() {
+        return outbox == null ? 0 : outbox.getBacklog();
+    }
+
+    /**
+     * 已提交但尚未确认的操作数
+     */
+    public int queueDepth() {
+        return queueSize - queued.availablePermits();
+    }
+
+    /**
+     * 关闭管道；outbox 中未确认的文档保留在磁盘上，下次启动时重放
+     */
+    @Override
+    public void close() {
+        closed = true;
+        flushTask.cancel(false);
+        flush();
+        // 等待在途请求结束
+        try {
+            if (inFlight.tryAcquire(concurrency, queueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                inFlight.release(concurrency);
+            } else {
+                logger.warn("Index {} bulk pipeline closed with pending requests", indexName);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (outbox != null) {
+            syncTask.cancel(false);
+            outbox.close();
+        }
+    }
+
+    /**
+     * 索引被删除时关闭管道并删除 outbox
+     */
+    public void drop() {
+        close();
+        if (outbox != null) {
+            outbox.destroy();
+        }
+    }
+
+    /**
+     * 在后台线程中重新提交启动时从 outbox 读出的文档，不阻塞索引的创建；需要在 OpenSearch 索引创建之后调用
+     */
+    public void replay() {
+        List<BulkItem> items = outbox == null ? Collections.emptyList() : outbox.takeRecovered();
+        if (items.isEmpty()) {
+            return;
+        }
+        logger.info("Replaying {} pending operations of index {} from outbox", items.size(), indexName);
+        // 在返回前占住这些文档，之后的新操作排在重放的操作后面
+        synchronized (this) {
+            for (BulkItem item : items) {
+                occupy(item);
+            }
+        }
+        Thread thread = new Thread(() -> {
+            for (BulkItem item : items) {
+                while (!closed) {
+                    try {
+                        submit(item);
+                        break;
+                    } catch (BulkRejectedException e) {
+                        // 队列已满，继续等待
+                    }
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.setName("EsOutboxReplay");
+        thread.start();
+    }
+
+    /**
+     * 在所有索引共用的 flushScheduler 线程上执行，不能阻塞：没有空闲并发槽位时批次留到下一次检查
+     */
+    private void flushIfLingered() {
+        try {
+            synchronized (this) {
+                if (batch.isEmpty() || System.nanoTime() - batchStartNanos < TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis)) {
+                    return;
+                }
+            }
+            if (!inFlight.tryAcquire()) {
+                return;
+            }
+            List<BulkItem> ready;
+            synchronized (this) {
+                ready = drain();
+            }
+            if (ready != null) {
+                send(ready);
+            } else {
+                inFlight.release();
+            }
+        } catch (Exception e) {
+            logger.error("Index " + indexName + " scheduled flush Exception:", e);
+        }
+    }
+
+    /**
+     * 有空闲并发槽位时立即发送；不会阻塞，可以在响应回调线程中调用
+     */
+    private void flushIfIdle() {
+        if (!inFlight.tryAcquire()) {
+            return;
+        }
+        List<BulkItem> ready;
+        synchronized (this) {
+            ready = drain();
+        }
+        if (ready != null) {
+            send(ready);
+        } else {
+            inFlight.release();
+        }
+    }
+
+    /**
+     * 局部更新合并到批次中同一文档的前一个操作，合并后的操作继承本操作的排队许可，被合并的操作的许可立即释放。
+     * 调用方必须持有 this 锁
+     */
+    private boolean mergeIntoBatch(BulkItem item) {
+        if (item.opType != BulkItem.OpType.UPDATE && item.opType != BulkItem.OpType.REPLACE) {
+            return false;
+        }
+        Integer position = mergeable.get(key(item));
+        if (position == null) {
+            return false;
+        }
+        BulkItem earlier = batch.get(position);
+        // 建索引的补全操作不能与实时的更新合并，否则实时更新的字段也只在缺失时才写入
+        if (earlier.contentType != item.contentType || earlier.opType == BulkItem.OpType.FILL) {
+            return false;
+        }
+        BulkItem merged;
+        try {
+            merged = BulkItem.merge(earlier, item);
+        } catch (IOException e) {
+            logger.warn("Merge update of " + indexName + "/" + item.id + " Exception:", e);
+            return false;
+        }
+        batch.set(position, merged);
+        batchBytes += merged.bytes - earlier.bytes;
+        queued.release();
+        return true;
+    }
+
+    /**
+     * 把操作加入当前批次，局部更新尽量合并到同一文档的前一个操作中。调用方必须持有 this 锁
+     */
+    private void enqueue(BulkItem item) {
+        if (batch.isEmpty()) {
+            batchStartNanos = System.nanoTime();
+        }
+        if (!mergeIntoBatch(item)) {
+            batch.add(item);
+            batchBytes += item.bytes;
+            if (item.opType == BulkItem.OpType.DELETE) {
+                mergeable.remove(key(item));
+            } else {
+                mergeable.put(key(item), batch.size() - 1);
+            }
+        }
+    }
+
+    /**
+     * 同一文档的操作的顺序：outstanding 是还没有结束且不在当前批次中的操作数，
+     * 大于 0 时新的操作停在 parked 中
+     */
+    private static final class Lane {
+        int outstanding;
+        final List<BulkItem> parked = new ArrayList<>(0);
+    }
+
+    /**
+     * 操作离开当前批次（发送或等待重放）。调用方必须持有 this 锁
+     */
+    private void occupy(BulkItem item) {
+        lanes.computeIfAbsent(key(item), k -> new Lane()).outstanding++;
+    }
+
+    /**
+     * 操作已结束或重新进入批次，文档没有其它未结束的操作时停下的操作按顺序进入批次。调用方必须持有 this 锁
+     */
+    private void vacate(BulkItem item) {
+        String key = key(item);
+        Lane lane = lanes.get(key);
+        if (lane == null || --lane.outstanding > 0) {
+            return;
+        }
+        lanes.remove(key);
+        for (BulkItem parked : lane.parked) {
+            enqueue(parked);
+        }
+    }
+
+    /**
+     * 已处理完响应的请求：除了重试的操作都已结束
+     */
+    private synchronized void settle(List<BulkItem> items, List<BulkItem> retry) {
+        Set<BulkItem> retrying = Collections.newSetFromMap(new IdentityHashMap<>());
+        retrying.addAll(retry);
+        for (BulkItem item : items) {
+            if (!retrying.contains(item)) {
+                vacate(item);
+            }
+        }
+    }
+
+    private static String key(BulkItem item) {
+        return item.index + '\u0000' + item.id;
+    }
+
+    @Nullable
+    private List<BulkItem> drain() {
+        if (batch.isEmpty()) {
+            return null;
+        }
+        List<BulkItem> ready = batch;
+        batch = new ArrayList<>(Math.min(maxActions, 1024));
+        batchBytes = 0;
+        mergeable.clear();
+        for (BulkItem item : ready) {
+            occupy(item);
+        }
+        return ready;
+    }
+
+    /**
+     * 调用方必须已经持有一个 inFlight 许可
+     */
+    private void send(List<BulkItem> items) {
+        Map<String, List<BulkItem>> deletes = rollover ? unresolvedDeletes(items) : Collections.emptyMap();
+        if (deletes.isEmpty()) {
+            bulk(items);
+            return;
+        }
+        // 每个别名一次查询，全部返回后再发送整个批次
+        AtomicInteger remaining = new AtomicInteger(deletes.size());
+        for (Map.Entry<String, List<BulkItem>> entry : deletes.entrySet()) {
+            Map<String, BulkItem> byId = new HashMap<>();
+            for (BulkItem item : entry.getValue()) {
+                byId.put(item.id, item);
+            }
+            ActionListener<Map<String, List<String>>> listener = new ActionListener<Map<String, List<String>>>() {
+                @Override
+                public void onResponse(Map<String, List<String>> located) {
+                    located.forEach((id, indexes) -> {
+                        BulkItem item = byId.get(id);
+                        if (item != null && !indexes.isEmpty()) {
+                            // 每个找到的索引一条 delete
+                            item.resolvedIndex = indexes.get(0);
+                            item.copies = indexes.size() > 1 ? new ArrayList<>(indexes.subList(1, indexes.size())) : Collections.emptyList();
+                        }
+                    });
+                    done();
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    logger.warn("Locate " + byId.size() + " deleted docs of " + entry.getKey() + " Exception:", e);
+                    done();
+                }
+
+                private void done() {
+                    if (remaining.decrementAndGet() == 0) {
+                        bulk(items);
+                    }
+                }
+            };
+            try {
+                elasticIndex.transport().locate(entry.getKey(), byId.keySet(), listener);
+            } catch (Exception e) {
+                listener.onFailure(e);
+            }
+        }
+    }
+
+    private static Map<String, List<BulkItem>> unresolvedDeletes(List<BulkItem> items) {
+        Map<String, List<BulkItem>> deletes = new HashMap<>();
+        for (BulkItem item : items) {
+            if (item.opType == BulkItem.OpType.DELETE && item.resolvedIndex == null) {
+                deletes.computeIfAbsent(item.index, index -> new ArrayList<>()).add(item);
+            }
+        }
+        return deletes;
+    }
+
+    private void bulk(List<BulkItem> items) {
+        metrics.bulkBatchSize.update(items.size());
+        try {
+            elasticIndex.bulk(items, new ActionListener<Map<String, Object>>() {
+                @Override
+                public void onResponse(Map<String, Object> response) {
+                    List<BulkItem> retry = Collections.emptyList();
+                    try {
+                        retry = complete(items, response);
+                    } finally {
+                        settle(items, retry);
+                        release(items.size() - retry.size());
+                        retry(retry);
+                    }
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    List<BulkItem> retry = Collections.emptyList();
+                    try {
+                        logger.error("Bulk Write " + items.size() + " docs to " + indexName + " Exception", e);
+                        retry = fail(items, e);
+                    } finally {
+                        settle(items, retry);
+                        release(items.size() - retry.size());
+                        retry(retry);
+                    }
+                }
+            });
+        } catch (Exception e) {
+            logger.error("Bulk Write " + items.size() + " docs to " + indexName + " Exception", e);
+            List<BulkItem> retry = fail(items, e);
+            settle(items, retry);
+            release(items.size() - retry.size());
+            retry(retry);
+        }
+    }
+
+    /**
+     * 释放在途许可和已确认文档的排队许可；重试的文档继续占用排队许可
+     */
+    private void release(int acknowledged) {
+        inFlight.release();
+        queued.release(acknowledged);
+        if (durability == Durability.SYNC) {
+            flushIfIdle();
+        }
+    }
+
+    private void succeed(BulkItem item) {
+        acknowledge(item);
+        item.future.complete(null);
+        if (item.absorbed.isEmpty()) {
+            metrics.recordAcknowledged(item);
+        }
+        // 合并后的操作是新建的，耗时按合并前的各个操作统计
+        for (BulkItem absorbed : item.absorbed) {
+            absorbed.future.complete(null);
+            metrics.recordAcknowledged(absorbed);
+        }
+    }
+
+    private void completeExceptionally(BulkItem item, Exception e) {
+        metrics.failed.inc(Math.max(1, item.absorbed.size()));
+        item.future.completeExceptionally(e);
+        for (BulkItem absorbed : item.absorbed) {
+            absorbed.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * 从 outbox 中移除该操作以及合并进来的操作
+     */
+    private void acknowledge(BulkItem item) {
+        if (outbox != null) {
+            outbox.ack(item);
+            for (BulkItem absorbed : item.absorbed) {
+                outbox.ack(absorbed);
+            }
+        }
+    }
+
+    /**
+     * 整个请求失败：写入了 outbox 的文档全部重试，其余的文档失败
+     */
+    private List<BulkItem> fail(List<BulkItem> items, Exception e) {
+        List<BulkItem> retry = new ArrayList<>();
+        for (BulkItem item : items) {
+            if (item.outboxEntry != null) {
+                retry.add(item);
+            } else {
+                completeExceptionally(item, e);
+            }
+        }
+        return retry;
+    }
+
+    /**
+     * 延迟后把文档重新放回批次，排在这期间停下的同一文档的操作之前；管道已关闭时放弃，文档保留在 outbox 中等待重启后重放
+     */
+    private void retry(List<BulkItem> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        flushScheduler.schedule(() -> {
+            if (closed) {
+                return;
+            }
+            synchronized (this) {
+                if (batch.isEmpty()) {
+                    batchStartNanos = System.nanoTime();
+                }
+                for (BulkItem item : items) {
+                    batch.add(item);
+                    batchBytes += item.bytes;
+                    // 重试的操作排在后面，之后的更新不能再合并到它之前的操作上
+                    mergeable.remove(key(item));
+                }
+                for (BulkItem item : items) {
+                    vacate(item);
+                }
+            }
+        }, RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 记录写入到达的检查点，没有写入（noop、删除不存在的文档）时没有 _seq_no
+     */
+    private void record(BulkItem item, Map<String, Object> result) {
+        Object seqNo = result.get("_seq_no");
+        Object index = result.get("_index");
+        if (!(seqNo instanceof Number) || ((Number) seqNo).longValue() < 0 || index == null) {
+            return;
+        }
+        try {
+            checkpoints.record(index.toString(), item.id, (Number) result.get("_shard"), ((Number) seqNo).longValue());
+        } catch (Exception e) {
+            logger.warn("Record checkpoint of " + indexName + "/" + item.id + " Exception:", e);
+        }
+    }
+
+    /**
+     * 处理 bulk 响应，返回需要重试的文档
+     */
+    @SuppressWarnings("unchecked")
+    private List<BulkItem> complete(List<BulkItem> items, Map<String, Object> response) {
+        List<Map<String, Object>> results = (List<Map<String, Object>>) response.get("items");
+        if (!Boolean.TRUE.equals(response.get("errors"))) {
+            int position = 0;
+            for (BulkItem item : items) {
+                if (results != null) {
+                    record(item, (Map<String, Object>) results.get(position).values().iterator().next());
+                }
+                position += 1 + item.copies.size();
+                succeed(item);
+            }
+            return Collections.emptyList();
+        }
+
+        List<BulkItem> retry = new ArrayList<>();
+        // 有操作重试的文档，同一请求中排在后面的操作也要在它之后重新执行
+        Set<String> retryKeys = new HashSet<>();
+        int failed = 0;
+        int position = 0;
+        for (BulkItem item : items) {
+            Map<String, Object> result = (Map<String, Object>) results.get(position++).values().iterator().next();
+            int status = ((Number) result.get("status")).intValue();
+            // 副本的删除结果：取第一个没有成功的结果作为整个操作的结果
+            for (int i = 0; i < item.copies.size(); i++) {
+                Map<String, Object> copy = (Map<String, Object>) results.get(position++).values().iterator().next();
+                int copyStatus = ((Number) copy.get("status")).intValue();
+                if (status < 300 && copyStatus >= 300 && copyStatus != 404 && !item.isSuperseded(copyStatus)) {
+                    result = copy;
+                    status = copyStatus;
+                }
+            }
+            if (item.outboxEntry != null && retryKeys.contains(key(item))) {
+                retry.add(item);
+            } else if (status < 300 || (item.opType == BulkItem.OpType.DELETE && status == 404) || item.isSuperseded(status)) {
+                // 版本冲突表示文档已经是更新的写入，不需要重试
+                record(item, result);
+                succeed(item);
+            } else if (item.outboxEntry != null && (status == 429 || status >= 500)) {
+                // 暂时性失败，保留在 outbox 中重试
+                retry.add(item);
+                retryKeys.add(key(item));
+            } else {
+                failed++;
+                acknowledge(item);
+                completeExceptionally(item,
+                    new BulkRejectedException("Bulk " + item.opType.action + " " + indexName + "/" + item.id + " failed: " + result.get("error")));
+            }
+        }
+        if (failed > 0) {
+            logger.error("Bulk Write to {} failed for {} of {} docs", indexName, failed, items.size());
+        }
+        if (!retry.isEmpty()) {
+            logger.warn("Bulk Write to {} will retry {} of {} docs", indexName, retry.size(), items.size());
+        }
+        return retry;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+import org.opensearch.client.Client;
+import org.opensearch.cluster.ClusterState;
+import org.opensearch.cluster.metadata.IndexAbstraction;
+import org.opensearch.cluster.metadata.IndexMetadata;
+import org.opensearch.cluster.service.ClusterService;
+import org.opensearch.core.index.shard.ShardId;
+import org.opensearch.core.xcontent.NamedXContentRegistry;
+import org.opensearch.index.IndexService;
+import org.opensearch.index.engine.Engine;
+import org.opensearch.index.shard.IndexShard;
+import org.opensearch.indices.IndicesService;
+import org.opensearch.node.Node;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 持有与 Cassandra 运行在同一个 JVM 中的 OpenSearch 节点，节点启动后由 Bootstrap 设置。
+ */
+public final class LocalNode {
+
+    private static volatile Node node;
+
+    private LocalNode() {
+    }
+
+    public static void set(Node localNode) {
+        node = localNode;
+    }
+
+    public static boolean isStarted() {
+        return node != null;
+    }
+
+    public static Client client() {
+        return node().client();
+    }
+
+    public static String nodeName() {
+        return Node.NODE_NAME_SETTING.get(node().settings());
+    }
+
+    public static NamedXContentRegistry xContentRegistry() {
+        return node().injector().getInstance(NamedXContentRegistry.class);
+    }
+
+    public static ClusterState clusterState() {
+        return node().injector().getInstance(ClusterService.class).state();
+    }
+
+    /**
+     * 本节点上的分片，不在本节点时返回 null
+     */
+    @Nullable
+    public static IndexShard indexShard(ShardId shardId) {
+        IndexService indexService = node().injector().getInstance(IndicesService.class).indexService(shardId.getIndex());
+        return indexService == null ? null : indexService.getShardOrNull(shardId.id());
+    }
+
+    /**
+     * 索引（或别名、滚动索引的写入别名）当前可搜索的 reader 版本，每个分片一个，内容变化后版本随之变化。
+     * 节点未启动、索引不存在、有副本或者有分片不在本节点上时返回 null
+     */
+    @Nullable
+    public static long[] readerVersions(String name) {
+        Node localNode = node;
+        if (localNode == null) {
+            return null;
+        }
+        IndexAbstraction abstraction = clusterState().metadata().getIndicesLookup().get(name);
+        if (abstraction == null) {
+            return null;
+        }
+        IndicesService indicesService = localNode.injector().getInstance(IndicesService.class);
+        List<Long> versions = new ArrayList<>();
+        for (IndexMetadata metadata : abstraction.getIndices()) {
+            IndexService indexService = indicesService.indexService(metadata.getIndex());
+            if (metadata.getNumberOfReplicas() > 0 || indexService == null || indexService.numberOfShards() < metadata.getNumberOfShards()) {
+                return null;
+            }
+            for (IndexShard shard : indexService) {
+                try (Engine.Searcher searcher = shard.acquireSearcher("query_cache")) {
+                    versions.add(searcher.getDirectoryReader().getVersion());
+                } catch (Exception e) {
+                    // 分片正在恢复或已关闭
+                    return null;
+                }
+            }
+        }
+        long[] result = new long[versions.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = versions.get(i);
+        }
+        return result;
+    }
+
+    private static Node node() {
+        Node localNode = node;
+        if (localNode == null) {
+            throw new IllegalStateException("Local OpenSearch node is not started");
+        }
+        return localNode;
+    }
+}
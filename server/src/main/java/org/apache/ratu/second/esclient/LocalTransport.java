@@ -0,0 +1,189 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+import org.opensearch.action.admin.indices.refresh.RefreshRequest;
+import org.opensearch.action.admin.indices.refresh.RefreshResponse;
+import org.opensearch.action.bulk.BulkItemResponse;
+import org.opensearch.action.bulk.BulkRequest;
+import org.opensearch.action.bulk.BulkResponse;
+import org.opensearch.action.delete.DeleteRequest;
+import org.opensearch.action.index.IndexRequest;
+import org.opensearch.action.search.CreatePitRequest;
+import org.opensearch.action.search.CreatePitResponse;
+import org.opensearch.action.search.DeletePitRequest;
+import org.opensearch.action.search.DeletePitResponse;
+import org.opensearch.action.search.SearchRequest;
+import org.opensearch.action.search.SearchResponse;
+import org.opensearch.action.support.PlainActionFuture;
+import org.opensearch.action.update.UpdateRequest;
+import org.opensearch.cluster.metadata.IndexAbstraction;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.common.xcontent.XContentHelper;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.core.common.bytes.BytesReference;
+import org.opensearch.core.xcontent.MediaTypeRegistry;
+import org.opensearch.core.xcontent.ToXContent;
+import org.opensearch.core.xcontent.XContentBuilder;
+import org.opensearch.index.VersionType;
+import org.opensearch.index.query.QueryBuilders;
+import org.opensearch.script.Script;
+import org.opensearch.script.ScriptType;
+import org.opensearch.search.SearchHit;
+import org.opensearch.search.aggregations.Aggregations;
+import org.opensearch.search.builder.SearchSourceBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 直接调用同一个 JVM 内 OpenSearch 节点的 transport action（TransportBulkAction、TransportSearchAction 等），
+ * 省去 HTTP 连接、请求/响应的 JSON 序列化和解析。
+ */
+public class LocalTransport implements EsTransport {
+
+    public static final LocalTransport INSTANCE = new LocalTransport();
+
+    @Override
+    public void bulk(List<BulkItem> items, ActionListener<Map<String, Object>> listener) {
+        BulkRequest request = new BulkRequest();
+        for (BulkItem item : items) {
+            if (item.opType == BulkItem.OpType.DELETE) {
+                request.add(versioned(new DeleteRequest(item.target(), item.id), item));
+                for (String copy : item.copies) {
+                    request.add(versioned(new DeleteRequest(copy, item.id), item));
+                }
+            } else if (item.opType == BulkItem.OpType.UPDATE) {
+                request.add(new UpdateRequest(item.target(), item.id).doc(BytesReference.toBytes(item.source), item.contentType).docAsUpsert(true));
+            } else if (item.opType == BulkItem.OpType.REPLACE || item.opType == BulkItem.OpType.FILL) {
+                Map<String, Object> doc = XContentHelper.convertToMap(item.source, false, item.contentType).v2();
+                String script = item.opType == BulkItem.OpType.REPLACE ? BulkItem.REPLACE_SCRIPT : BulkItem.FILL_SCRIPT;
+                request.add(new UpdateRequest(item.target(), item.id)
+                    .script(new Script(ScriptType.INLINE, Script.DEFAULT_SCRIPT_LANG, script, Collections.singletonMap("doc", doc)))
+                    .upsert(BytesReference.toBytes(item.source), item.contentType));
+            } else if (item.version != BulkItem.NO_VERSION) {
+                request.add(new IndexRequest(item.target()).id(item.id).source(item.source, item.contentType)
+                    .version(item.version).versionType(VersionType.EXTERNAL_GTE));
+            } else {
+                request.add(new IndexRequest(item.target()).id(item.id).source(item.source, item.contentType));
+            }
+        }
+        LocalNode.client().bulk(request, ActionListener.map(listener, LocalTransport::toBulkMap));
+    }
+
+    private static DeleteRequest versioned(DeleteRequest request, BulkItem item) {
+        return item.version == BulkItem.NO_VERSION ? request : request.version(item.version).versionType(VersionType.EXTERNAL_GTE);
+    }
+
+    @Override
+    public List<Map<String, Object>> search(String index, SearchSourceBuilder source) {
+        SearchRequest request = index == null ? new SearchRequest() : new SearchRequest(index);
+        SearchResponse response = LocalNode.client().search(request.source(source)).actionGet();
+
+        SearchHit[] hits = response.getHits().getHits();
+        List<Map<String, Object>> result = new ArrayList<>(hits.length);
+        for (SearchHit hit : hits) {
+            result.add(toHitMap(hit));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Object> aggregate(String index, SearchSourceBuilder source) throws IOException {
+        SearchResponse response = LocalNode.client().search(new SearchRequest(index).source(source)).actionGet();
+        Aggregations aggregations = response.getAggregations();
+        if (aggregations == null) {
+            return Collections.emptyMap();
+        }
+        // 转换为与 REST 响应相同的结构
+        XContentBuilder builder = MediaTypeRegistry.JSON.contentBuilder().startObject();
+        aggregations.toXContentInternal(builder, ToXContent.EMPTY_PARAMS);
+        builder.endObject();
+        return XContentHelper.convertToMap(BytesReference.bytes(builder), false, MediaTypeRegistry.JSON).v2();
+    }
+
+    @Override
+    public String openPit(String index, String keepAlive) {
+        PlainActionFuture<CreatePitResponse> future = PlainActionFuture.newFuture();
+        LocalNode.client().createPit(new CreatePitRequest(TimeValue.parseTimeValue(keepAlive, "keep_alive"), false, index), future);
+        return future.actionGet().getId();
+    }
+
+    @Override
+    public void closePit(String pitId) {
+        PlainActionFuture<DeletePitResponse> future = PlainActionFuture.newFuture();
+        LocalNode.client().deletePits(new DeletePitRequest(pitId), future);
+        future.actionGet();
+    }
+
+    @Override
+    public boolean refresh(String index) {
+        RefreshResponse response = LocalNode.client().admin().indices().refresh(new RefreshRequest(index)).actionGet();
+        return response.getSuccessfulShards() > 0;
+    }
+
+    @Override
+    public void locate(String index, Collection<String> ids, ActionListener<Map<String, List<String>>> listener) {
+        // 同一 id 可能在每一代 backing 索引中各有一份
+        IndexAbstraction abstraction = LocalNode.clusterState().metadata().getIndicesLookup().get(index);
+        int generations = abstraction == null ? 1 : Math.max(1, abstraction.getIndices().size());
+        SearchSourceBuilder source = new SearchSourceBuilder()
+            .query(QueryBuilders.idsQuery().addIds(ids.toArray(new String[0])))
+            .size(EsTransport.locateSize(ids.size(), generations))
+            .fetchSource(false);
+        LocalNode.client().search(new SearchRequest(index).source(source), ActionListener.map(listener, response -> {
+            Map<String, List<String>> located = new HashMap<>();
+            for (SearchHit hit : response.getHits().getHits()) {
+                located.computeIfAbsent(hit.getId(), id -> new ArrayList<>(1)).add(hit.getIndex());
+            }
+            return located;
+        }));
+    }
+
+    static Map<String, Object> toHitMap(SearchHit hit) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("_index", hit.getIndex());
+        map.put("_id", hit.getId());
+        map.put("_source", hit.getSourceAsMap());
+        if (hit.getSortValues().length > 0) {
+            map.put("sort", Arrays.asList(hit.getSortValues()));
+        }
+        return map;
+    }
+
+    /**
+     * 转换为与 REST _bulk 接口（filter_path=errors,items.*.status,items.*.error,items.*._index,items.*._seq_no）相同的结构，
+     * 另外带上分片号 _shard
+     */
+    private static Map<String, Object> toBulkMap(BulkResponse response) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("errors", response.hasFailures());
+        List<Map<String, Object>> items = new ArrayList<>(response.getItems().length);
+        for (BulkItemResponse item : response.getItems()) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("status", item.status().getStatus());
+            result.put("_index", item.getIndex());
+            if (item.isFailed()) {
+                result.put("error", item.getFailureMessage());
+            } else {
+                result.put("_seq_no", item.getResponse().getSeqNo());
+                result.put("_shard", item.getResponse().getShardId().id());
+            }
+            items.add(Collections.singletonMap(item.getOpType().getLowercase(), result));
+        }
+        map.put("items", items);
+        return map;
+    }
+}
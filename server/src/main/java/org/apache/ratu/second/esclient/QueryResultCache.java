@@ -0,0 +1,296 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+import com.alibaba.fastjson2.JSON;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.cassandra.db.PartitionRangeReadCommand;
+import org.apache.cassandra.db.ReadCommand;
+import org.apache.cassandra.db.SinglePartitionReadCommand;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 节点级的查询结果缓存，所有二级索引共享，按结果占用的字节数限制大小（系统属性 ratu.query_cache_size_mb，默认 64）。
+ * <p>
+ * 键为"索引 + 规范化的查询表达式 + 读请求的列、条数和范围（包含分页位置）"，值为回表后的行或者聚合结果。
+ * 查询开始前记下 {@link State}，取出结果时状态不同即失效：
+ * <ul>
+ *     <li>写入序号：本节点上这张表每有一次写入或删除被 OpenSearch 确认后加一，确认之前开始的查询记下的是旧的序号，
+ *     结果即使没有包含这次写入也不会在新的序号下被取出</li>
+ *     <li>reader 版本：索引的分片都在本节点且没有副本时，每个分片当前可搜索的 reader 版本，refresh 出新数据后变化</li>
+ * </ul>
+ * 无法得到 reader 版本（分片在其他节点、走 REST 访问外部集群）时，只靠写入序号和 query_cache_ttl_ms 过期：
+ * 其他节点的写入、以及本节点确认之后 refresh 之前开始的查询，结果最多在 query_cache_ttl_ms 内是旧的。
+ * <p>
+ * 索引参数 query_cache 为 true 时启用，表达式中的 cache 参数优先；带 refresh: true 的查询不读缓存，结果仍然写入缓存。
+ */
+public final class QueryResultCache {
+
+    public static final String QUERY_CACHE = "query_cache";
+    public static final String QUERY_CACHE_TTL_MS = "query_cache_ttl_ms";
+
+    private static final String SIZE_PROPERTY = "ratu.query_cache_size_mb";
+
+    // 每个缓存结果的固定开销
+    private static final int ENTRY_OVERHEAD = 256;
+    private static final int ROW_OVERHEAD = 64;
+
+    private static final long MAX_WEIGHT = Long.getLong(SIZE_PROPERTY, 64) * 1024 * 1024;
+
+    // 超过这个大小的结果不缓存，避免一个大结果挤掉其他结果
+    private static final long MAX_ENTRY_WEIGHT = MAX_WEIGHT / 16;
+
+    private static final Cache<String, Entry> results = CacheBuilder.newBuilder()
+        .maximumWeight(MAX_WEIGHT)
+        .<String, Entry>weigher((key, entry) -> entry.weight)
+        .<String, Entry>removalListener(notification -> {
+            Entry entry = notification.getValue();
+            if (notification.wasEvicted() && entry != null) {
+                IndexMetrics metrics = IndexMetrics.get(entry.index);
+                if (metrics != null) {
+                    metrics.queryCacheEvictions.inc();
+                }
+            }
+        })
+        .build();
+
+    private final String indexName;
+    private final IndexMetrics metrics;
+    private final boolean enabled;
+    private final long ttlNanos;
+
+    private final AtomicLong writes = new AtomicLong();
+
+    public QueryResultCache(@Nonnull String indexName, @Nonnull IndexMetrics metrics, @Nonnull Map<String, String> options) {
+        this.indexName = indexName;
+        this.metrics = metrics;
+        this.enabled = options.get(QUERY_CACHE) != null && Boolean.parseBoolean(options.get(QUERY_CACHE));
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(options.get(QUERY_CACHE_TTL_MS) != null ? Long.parseLong(options.get(QUERY_CACHE_TTL_MS)) : 10000);
+    }
+
+    /**
+     * 查询是否使用缓存
+     */
+    public boolean enabled(@Nonnull BoundQuery query) {
+        Boolean cache = query.cache();
+        return cache != null ? cache : enabled;
+    }
+
+    /**
+     * 本节点上这张表的一次写入已被确认，之前缓存的结果全部失效
+     */
+    public void onWrite() {
+        writes.incrementAndGet();
+    }
+
+    public String key(@Nonnull BoundQuery query, @Nonnull ReadCommand command) {
+        StringBuilder key = new StringBuilder(indexName).append('\u0000')
+            .append(query.normalized).append('\u0000')
+            .append(command.columnFilter()).append('\u0000')
+            .append(command.limits()).append('\u0000');
+        if (command instanceof SinglePartitionReadCommand) {
+            SinglePartitionReadCommand single = (SinglePartitionReadCommand) command;
+            key.append(ByteBufferUtil.bytesToHex(single.partitionKey().getKey()))
+                .append(single.clusteringIndexFilter().toString(command.metadata()));
+        } else if (command instanceof PartitionRangeReadCommand) {
+            // 范围的左边界就是分页位置
+            key.append(((PartitionRangeReadCommand) command).dataRange().toString(command.metadata()));
+        }
+        return key.toString();
+    }
+
+    /**
+     * 查询开始前的状态，target 是实际搜索的索引或别名
+     */
+    public State state(@Nonnull String target) {
+        return new State(writes.get(), LocalNode.readerVersions(target));
+    }
+
+    /**
+     * 取出仍然有效的结果，失效的结果被移除
+     */
+    @Nullable
+    public Entry get(@Nonnull String key, @Nonnull State current) {
+        Entry entry = results.getIfPresent(key);
+        if (entry != null && entry.state.equals(current) && (current.readerVersions != null || System.nanoTime() - entry.createdNanos < ttlNanos)) {
+            metrics.queryCacheHits.inc();
+            return entry;
+        }
+        if (entry != null) {
+            results.asMap().remove(key, entry);
+        }
+        metrics.queryCacheMisses.inc();
+        return null;
+    }
+
+    public void putAggregations(@Nonnull String key, @Nonnull State state, @Nonnull Map<String, Object> aggregations) {
+        long weight = ENTRY_OVERHEAD + key.length() * 2L + JSON.toJSONString(aggregations).length() * 2L;
+        if (weight <= MAX_ENTRY_WEIGHT) {
+            results.put(key, new Entry(indexName, state, null, aggregations, (int) weight, null, null));
+        }
+    }
+
+    /**
+     * 记录一页返回的行，返回完成后写入缓存
+     */
+    public Recorder recorder(@Nonnull String key, @Nonnull State state, int limit) {
+        return new Recorder(key, state, limit);
+    }
+
+    /**
+     * 索引被删除时移除它的所有结果
+     */
+    public void release() {
+        String prefix = indexName + '\u0000';
+        results.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    /**
+     * 查询开始前的写入序号和 reader 版本
+     */
+    public static final class State {
+        final long writes;
+        @Nullable
+        final long[] readerVersions;
+
+        State(long writes, @Nullable long[] readerVersions) {
+            this.writes = writes;
+            this.readerVersions = readerVersions;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof State)) {
+                return false;
+            }
+            State other = (State) o;
+            return writes == other.writes && Arrays.equals(readerVersions, other.readerVersions);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(writes) + Arrays.hashCode(readerVersions);
+        }
+    }
+
+    public static final class Entry {
+        final String index;
+        final State state;
+        @Nullable
+        private final List<RowHydrator.HydratedRow> rows;
+        @Nullable
+        public final Map<String, Object> aggregations;
+        final int weight;
+        final long createdNanos = System.nanoTime();
+        // 结果之后还有命中时，下一页的游标键和位置
+        @Nullable
+        private final String cursorKey;
+        @Nullable
+        private final SearchCursors.Position position;
+
+        Entry(String index, State state, @Nullable List<RowHydrator.HydratedRow> rows, @Nullable Map<String, Object> aggregations, int weight,
+              @Nullable String cursorKey, @Nullable SearchCursors.Position position) {
+            this.index = index;
+            this.state = state;
+            this.rows = rows;
+            this.aggregations = aggregations;
+            this.weight = weight;
+            this.cursorKey = cursorKey;
+            this.position = position;
+        }
+
+        /**
+         * 从缓存返回这一页时重新记下下一页的位置，下一页从这里继续而不是从第一条命中开始
+         */
+        public void restoreCursor() {
+            if (cursorKey != null && position != null) {
+                SearchCursors.remember(cursorKey, position);
+            }
+        }
+
+        /**
+         * 重放缓存的行，聚合结果没有行
+         */
+        public RowSource rows() {
+            Iterator<RowHydrator.HydratedRow> iterator = rows == null ? Collections.emptyIterator() : rows.iterator();
+            return new RowSource() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public RowHydrator.HydratedRow next() {
+                    return iterator.next();
+                }
+            };
+        }
+    }
+
+    /**
+     * 记录 {@link EsPartitionIterator} 返回的行。行取完，或者返回的行数达到读请求的 limit 时结果才完整，否则不缓存
+     */
+    public final class Recorder {
+        private final String key;
+        private final State state;
+        private final int limit;
+        private final List<RowHydrator.HydratedRow> rows = new ArrayList<>();
+        private long weight;
+        private boolean failed;
+
+        private Recorder(String key, State state, int limit) {
+            this.key = key;
+            this.state = state;
+            this.limit = limit;
+            this.weight = ENTRY_OVERHEAD + key.length() * 2L;
+        }
+
+        void add(RowHydrator.HydratedRow row, int metadataBytes) {
+            if (failed) {
+                return;
+            }
+            rows.add(row);
+            weight += ROW_OVERHEAD + row.row.dataSize() + row.partitionKey.getKey().remaining() + metadataBytes;
+            if (weight > MAX_ENTRY_WEIGHT) {
+                fail();
+                rows.clear();
+            }
+        }
+
+        /**
+         * 搜索或回表出错时结果不完整，不缓存
+         */
+        public void fail() {
+            failed = true;
+        }
+
+        void finish(boolean exhausted, @Nullable String cursorKey, @Nullable SearchCursors.Position position) {
+            if (failed || !(exhausted || rows.size() >= limit)) {
+                return;
+            }
+            // 还有下一页但记不下位置时不缓存，否则从缓存返回后下一页无法继续
+            if (cursorKey != null && position == null) {
+                return;
+            }
+            results.put(key, new Entry(indexName, state, rows, null, (int) weight, cursorKey, position));
+        }
+    }
+}
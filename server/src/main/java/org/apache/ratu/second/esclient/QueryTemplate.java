@@ -0,0 +1,543 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import org.apache.ratu.second.exception.BaseException;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.xcontent.XContentType;
+import org.opensearch.core.xcontent.DeprecationHandler;
+import org.opensearch.core.xcontent.NamedXContentRegistry;
+import org.opensearch.core.xcontent.XContentParser;
+import org.opensearch.index.query.AbstractQueryBuilder;
+import org.opensearch.index.query.BoolQueryBuilder;
+import org.opensearch.index.query.QueryBuilder;
+import org.opensearch.index.query.QueryBuilders;
+import org.opensearch.index.query.RangeQueryBuilder;
+import org.opensearch.search.SearchModule;
+import org.opensearch.search.aggregations.AggregatorFactories;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * CQL 查询表达式的编译缓存。
+ * <p>
+ * 表达式中的字符串和数字（type、field 的值除外）被提取为参数，剩下的结构作为模板。
+ * 每个模板只解析、编译一次，得到按参数构造 {@link QueryBuilder} 的工厂；
+ * 之后同结构的查询只需扫描一遍表达式取出参数再绑定，不再做正则替换、JSON 解析和 DSL 拼接。
+ * <p>
+ * 常用的 term、terms、match、match_phrase、prefix、wildcard、range 直接构造，
+ * 其他查询类型按 OpenSearch 的查询解析器解析，不含参数时在编译时解析一次。
+ * aggs（或 aggregations）按 OpenSearch 的聚合解析器解析，同样在不含参数时只解析一次。
+ */
+public final class QueryTemplate {
+
+    private static final Cache<String, QueryTemplate> templates = CacheBuilder.newBuilder()
+        .maximumSize(1000)
+        .build();
+
+    // 这些键的值决定查询的结构，保留在模板里
+    private static final Set<String> STRUCTURAL_KEYS = ImmutableSet.of("type", "field");
+
+    private static final Set<String> RANGE_KEYS = ImmutableSet.of("gt", "gte", "lt", "lte", "format", "time_zone", "boost");
+
+    // 模板中参数占位符的前缀，表达式中的字符串不会进入模板，不会与之冲突
+    private static final char PARAM = '\u0000';
+
+    private static volatile NamedXContentRegistry searchRegistry;
+
+    @FunctionalInterface
+    private interface Binder {
+        Object bind(Object[] params);
+    }
+
+    @FunctionalInterface
+    private interface QueryFactory {
+        QueryBuilder build(Object[] params) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface AggsFactory {
+        AggregatorFactories.Builder build(Object[] params) throws IOException;
+    }
+
+    @Nullable
+    private final QueryFactory query;
+    @Nullable
+    private final AggsFactory aggs;
+    private final Map<String, Binder> options;
+
+    private QueryTemplate(@Nullable QueryFactory query, @Nullable AggsFactory aggs, Map<String, Binder> options) {
+        this.query = query;
+        this.aggs = aggs;
+        this.options = options;
+    }
+
+    /**
+     * 按模板编译（或取出已编译的）表达式并绑定参数
+     */
+    public static BoundQuery bind(@Nonnull String expression) {
+        List<Object> params = new ArrayList<>();
+        try {
+            String template = template(expression, params);
+            QueryTemplate compiled = templates.get(template, () -> compile(template));
+            return compiled.bind(params.toArray(), template + JSON.toJSONString(params));
+        } catch (ExecutionException e) {
+            throw new BaseException("Invalid query expression " + expression + ": " + e.getCause().getMessage(), e.getCause());
+        } catch (Exception e) {
+            throw new BaseException("Invalid query expression " + expression + ": " + e.getMessage(), e);
+        }
+    }
+
+    private BoundQuery bind(Object[] params, String normalized) throws IOException {
+        Map<String, Object> bound = new HashMap<>();
+        for (Map.Entry<String, Binder> option : options.entrySet()) {
+            bound.put(option.getKey(), option.getValue().bind(params));
+        }
+        return new BoundQuery(query == null ? null : query.build(params), aggs == null ? null : aggs.build(params), bound, normalized);
+    }
+
+    /**
+     * 把表达式规范化为 JSON 模板，字面量按出现顺序放入 params。
+     * 键可以不加引号，字符串可以用单引号或双引号
+     */
+    static String template(String expression, List<Object> params) {
+        StringBuilder out = new StringBuilder(expression.length());
+        String lastKey = null;
+        int n = expression.length();
+        int i = 0;
+        while (i < n) {
+            char c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            if (isDelimiter(c)) {
+                out.append(c);
+                i++;
+                continue;
+            }
+
+            String text;
+            boolean quoted = c == '"' || c == '\'';
+            if (quoted) {
+                StringBuilder literal = new StringBuilder();
+                i = readQuoted(expression, i, literal);
+                text = literal.toString();
+            } else {
+                int start = i;
+                while (i < n && !isDelimiter(expression.charAt(i)) && !Character.isWhitespace(expression.charAt(i))) {
+                    i++;
+                }
+                text = expression.substring(start, i);
+            }
+
+            int next = i;
+            while (next < n && Character.isWhitespace(expression.charAt(next))) {
+                next++;
+            }
+            if (next < n && expression.charAt(next) == ':') {
+                // 键
+                out.append(JSON.toJSONString(text));
+                lastKey = text;
+            } else if (!quoted && ("true".equals(text) || "false".equals(text) || "null".equals(text))) {
+                out.append(text);
+            } else if (lastKey != null && STRUCTURAL_KEYS.contains(lastKey)) {
+                out.append(JSON.toJSONString(text));
+            } else {
+                params.add(quoted ? text : number(text));
+                out.append(JSON.toJSONString(PARAM + Integer.toString(params.size() - 1)));
+            }
+        }
+        return out.toString();
+    }
+
+    private static boolean isDelimiter(char c) {
+        return c == '{' || c == '}' || c == '[' || c == ']' || c == ':' || c == ',';
+    }
+
+    /**
+     * 读取从 start 开始的引号字符串，返回结束引号之后的位置
+     */
+    private static int readQuoted(String expression, int start, StringBuilder literal) {
+        char quote = expression.charAt(start);
+        int i = start + 1;
+        while (i < expression.length()) {
+            char c = expression.charAt(i++);
+            if (c == quote) {
+                return i;
+            }
+            if (c != '\\' || i >= expression.length()) {
+                literal.append(c);
+                continue;
+            }
+            char escaped = expression.charAt(i++);
+            switch (escaped) {
+                case 'n':
+                    literal.append('\n');
+                    break;
+                case 't':
+                    literal.append('\t');
+                    break;
+                case 'r':
+                    literal.append('\r');
+                    break;
+                case 'b':
+                    literal.append('\b');
+                    break;
+                case 'f':
+                    literal.append('\f');
+                    break;
+                case 'u':
+                    literal.append((char) Integer.parseInt(expression.substring(i, i + 4), 16));
+                    i += 4;
+                    break;
+                default:
+                    literal.append(escaped);
+            }
+        }
+        throw new IllegalArgumentException("Unterminated string at " + start);
+    }
+
+    private static Object number(String text) {
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            // 不是整数
+        }
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            // 不加引号的字符串
+            return text;
+        }
+    }
+
+    private static QueryTemplate compile(String template) throws IOException {
+        JSONObject root = JSONObject.parseObject(template);
+        QueryFactory query = null;
+        AggsFactory aggs = null;
+        Map<String, Binder> options = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : root.entrySet()) {
+            if ("query".equals(entry.getKey())) {
+                query = compileQuery(asMap(entry.getValue()));
+            } else if ("aggs".equals(entry.getKey()) || "aggregations".equals(entry.getKey())) {
+                aggs = compileAggs(asMap(entry.getValue()));
+            } else {
+                options.put(entry.getKey(), binder(entry.getValue()));
+            }
+        }
+        return new QueryTemplate(query, aggs, options);
+    }
+
+    private static AggsFactory compileAggs(Map<String, Object> aggs) throws IOException {
+        if (!hasParams(aggs)) {
+            AggregatorFactories.Builder parsed = parseAggs(aggs);
+            return params -> parsed;
+        }
+        Binder binder = binder(aggs);
+        return params -> parseAggs(binder.bind(params));
+    }
+
+    private static QueryFactory compileQuery(Map<String, Object> query) {
+        if (query.get("bool") != null) {
+            return compileBool(asMap(query.get("bool")));
+        }
+        Object type = query.get("type");
+        Object field = query.get("field");
+        if (!(type instanceof String) || !(field instanceof String)) {
+            throw new IllegalArgumentException("query needs type and field: " + query);
+        }
+
+        // 有 value 时查询体就是 value，否则是除 type、field、size、from 以外的所有键
+        Binder value = query.get("value") != null ? binder(query.get("value")) : null;
+        Map<String, Object> props = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : query.entrySet()) {
+            String key = entry.getKey();
+            if (!"type".equals(key) && !"field".equals(key) && !"size".equals(key) && !"from".equals(key)) {
+                props.put(key, entry.getValue());
+            }
+        }
+
+        QueryFactory typed = compileTyped((String) type, (String) field, value, props);
+        if (typed != null) {
+            return typed;
+        }
+        Object body = value != null ? query.get("value") : props;
+        if (!hasParams(body)) {
+            QueryBuilder parsed = parse((String) type, (String) field, body);
+            return params -> parsed;
+        }
+        Binder bodyBinder = binder(body);
+        return params -> parse((String) type, (String) field, bodyBinder.bind(params));
+    }
+
+    private static QueryFactory compileBool(Map<String, Object> bool) {
+        Map<String, List<QueryFactory>> clauses = new LinkedHashMap<>();
+        Binder minimumShouldMatch = null;
+        Binder boost = null;
+        for (Map.Entry<String, Object> entry : bool.entrySet()) {
+            switch (entry.getKey()) {
+                case "must":
+                case "should":
+                case "must_not":
+                case "filter":
+                    List<QueryFactory> children = new ArrayList<>();
+                    Object value = entry.getValue();
+                    for (Object child : value instanceof List ? (List<?>) value : Collections.singletonList(value)) {
+                        children.add(compileQuery(asMap(child)));
+                    }
+                    clauses.put(entry.getKey(), children);
+                    break;
+                case "minimum_should_match":
+                    minimumShouldMatch = binder(entry.getValue());
+                    break;
+                case "boost":
+                    boost = binder(entry.getValue());
+                    break;
+                default:
+                    throw new IllegalArgumentException("unsupported bool clause [" + entry.getKey() + "]");
+            }
+        }
+        Binder msm = minimumShouldMatch;
+        Binder boolBoost = boost;
+        return params -> {
+            BoolQueryBuilder builder = QueryBuilders.boolQuery();
+            for (Map.Entry<String, List<QueryFactory>> clause : clauses.entrySet()) {
+                for (QueryFactory child : clause.getValue()) {
+                    QueryBuilder query = child.build(params);
+                    switch (clause.getKey()) {
+                        case "must":
+                            builder.must(query);
+                            break;
+                        case "should":
+                            builder.should(query);
+                            break;
+                        case "must_not":
+                            builder.mustNot(query);
+                            break;
+                        default:
+                            builder.filter(query);
+                    }
+                }
+            }
+            if (msm != null) {
+                builder.minimumShouldMatch(String.valueOf(msm.bind(params)));
+            }
+            if (boolBoost != null) {
+                builder.boost(Float.parseFloat(String.valueOf(boolBoost.bind(params))));
+            }
+            return builder;
+        };
+    }
+
+    /**
+     * 常用查询直接构造，不支持的形式返回 null
+     */
+    @Nullable
+    private static QueryFactory compileTyped(String type, String field, @Nullable Binder value, Map<String, Object> props) {
+        switch (type) {
+            case "term":
+                if (value != null) {
+                    return params -> QueryBuilders.termQuery(field, value.bind(params));
+                }
+                break;
+            case "terms":
+                if (value != null) {
+                    return params -> {
+                        Object values = value.bind(params);
+                        return QueryBuilders.termsQuery(field, values instanceof Collection ? (Collection<?>) values : Collections.singletonList(values));
+                    };
+                }
+                break;
+            case "match":
+            case "match_phrase":
+                Binder text = value;
+                if (text == null && props.size() == 1 && props.containsKey("query")) {
+                    text = binder(props.get("query"));
+                }
+                if (text != null) {
+                    Binder matchText = text;
+                    return "match".equals(type)
+                        ? params -> QueryBuilders.matchQuery(field, matchText.bind(params))
+                        : params -> QueryBuilders.matchPhraseQuery(field, matchText.bind(params));
+                }
+                break;
+            case "prefix":
+                if (value != null) {
+                    return params -> QueryBuilders.prefixQuery(field, String.valueOf(value.bind(params)));
+                }
+                break;
+            case "wildcard":
+                if (value != null) {
+                    return params -> QueryBuilders.wildcardQuery(field, String.valueOf(value.bind(params)));
+                }
+                break;
+            case "range":
+                if (value == null && RANGE_KEYS.containsAll(props.keySet())) {
+                    Map<String, Binder> bounds = new LinkedHashMap<>();
+                    props.forEach((key, bound) -> bounds.put(key, binder(bound)));
+                    return params -> {
+                        RangeQueryBuilder range = QueryBuilders.rangeQuery(field);
+                        for (Map.Entry<String, Binder> bound : bounds.entrySet()) {
+                            Object v = bound.getValue().bind(params);
+                            switch (bound.getKey()) {
+                                case "gt":
+                                    range.gt(v);
+                                    break;
+                                case "gte":
+                                    range.gte(v);
+                                    break;
+                                case "lt":
+                                    range.lt(v);
+                                    break;
+                                case "lte":
+                                    range.lte(v);
+                                    break;
+                                case "format":
+                                    range.format(String.valueOf(v));
+                                    break;
+                                case "time_zone":
+                                    range.timeZone(String.valueOf(v));
+                                    break;
+                                default:
+                                    range.boost(Float.parseFloat(String.valueOf(v)));
+                            }
+                        }
+                        return range;
+                    };
+                }
+                break;
+            default:
+                break;
+        }
+        return null;
+    }
+
+    /**
+     * 用 OpenSearch 的查询解析器解析 {type: {field: body}}
+     */
+    private static QueryBuilder parse(String type, String field, Object body) throws IOException {
+        String json = JSON.toJSONString(Collections.singletonMap(type, Collections.singletonMap(field, body)));
+        try (
+            XContentParser parser = XContentType.JSON.xContent()
+                .createParser(registry(), DeprecationHandler.THROW_UNSUPPORTED_OPERATION, json)
+        ) {
+            return AbstractQueryBuilder.parseInnerQueryBuilder(parser);
+        }
+    }
+
+    /**
+     * 用 OpenSearch 的聚合解析器解析 aggs 的内容
+     */
+    private static AggregatorFactories.Builder parseAggs(Object aggs) throws IOException {
+        try (
+            XContentParser parser = XContentType.JSON.xContent()
+                .createParser(registry(), DeprecationHandler.THROW_UNSUPPORTED_OPERATION, JSON.toJSONString(aggs))
+        ) {
+            parser.nextToken();
+            return AggregatorFactories.parseAggregators(parser);
+        }
+    }
+
+    private static NamedXContentRegistry registry() {
+        if (LocalNode.isStarted()) {
+            return LocalNode.xContentRegistry();
+        }
+        NamedXContentRegistry registry = searchRegistry;
+        if (registry == null) {
+            registry = new NamedXContentRegistry(new SearchModule(Settings.EMPTY, Collections.emptyList()).getNamedXContents());
+            searchRegistry = registry;
+        }
+        return registry;
+    }
+
+    private static Binder binder(Object value) {
+        int param = paramIndex(value);
+        if (param >= 0) {
+            return params -> params[param];
+        }
+        if (value instanceof Map) {
+            Map<String, Binder> entries = new LinkedHashMap<>();
+            ((Map<?, ?>) value).forEach((key, entry) -> entries.put(key.toString(), binder(entry)));
+            return params -> {
+                Map<String, Object> bound = new LinkedHashMap<>();
+                entries.forEach((key, entry) -> bound.put(key, entry.bind(params)));
+                return bound;
+            };
+        }
+        if (value instanceof List) {
+            List<Binder> elements = new ArrayList<>();
+            for (Object element : (List<?>) value) {
+                elements.add(binder(element));
+            }
+            return params -> {
+                List<Object> bound = new ArrayList<>(elements.size());
+                for (Binder element : elements) {
+                    bound.add(element.bind(params));
+                }
+                return bound;
+            };
+        }
+        return params -> value;
+    }
+
+    private static boolean hasParams(Object value) {
+        if (paramIndex(value) >= 0) {
+            return true;
+        }
+        if (value instanceof Map) {
+            for (Object entry : ((Map<?, ?>) value).values()) {
+                if (hasParams(entry)) {
+                    return true;
+                }
+            }
+        } else if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                if (hasParams(element)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static int paramIndex(Object value) {
+        if (value instanceof String) {
+            String text = (String) value;
+            if (!text.isEmpty() && text.charAt(0) == PARAM) {
+                return Integer.parseInt(text.substring(1));
+            }
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(Object value) {
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException("expected an object but got " + value);
+        }
+        return (Map<String, Object>) value;
+    }
+}
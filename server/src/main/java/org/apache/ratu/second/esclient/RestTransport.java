@@ -0,0 +1,195 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.opensearch.client.Request;
+import org.opensearch.client.Response;
+import org.opensearch.client.ResponseListener;
+import org.opensearch.common.io.stream.BytesStreamOutput;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.core.common.Strings;
+import org.opensearch.core.common.bytes.BytesReference;
+import org.opensearch.core.xcontent.MediaTypeRegistry;
+import org.opensearch.search.builder.SearchSourceBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.ratu.second.esclient.ElasticIndex.client;
+import static org.apache.ratu.second.esclient.ElasticIndex.entityAsMap;
+
+/**
+ * 通过 REST 接口访问 OpenSearch
+ */
+public class RestTransport implements EsTransport {
+
+    private static final Logger logger = LoggerFactory.getLogger(RestTransport.class);
+
+    public static final RestTransport INSTANCE = new RestTransport();
+
+    @Override
+    public void bulk(List<BulkItem> items, ActionListener<Map<String, Object>> listener) {
+        long bytes = 0;
+        for (BulkItem item : items) {
+            bytes += item.bytes;
+        }
+        BytesStreamOutput body = new BytesStreamOutput((int) Math.min(Integer.MAX_VALUE - 8, bytes + 64));
+        try {
+            for (BulkItem item : items) {
+                item.writeTo(body);
+            }
+        } catch (IOException e) {
+            listener.onFailure(e);
+            return;
+        }
+
+        Request request = new Request("POST", "/_bulk");
+        request.addParameter("filter_path", "errors,items.*.status,items.*.error,items.*._index,items.*._seq_no");
+        request.setEntity(new ByteArrayEntity(BytesReference.toBytes(body.bytes()), ContentType.APPLICATION_JSON));
+        client().performRequestAsync(request, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                Map<String, Object> map;
+                try {
+                    map = entityAsMap(response);
+                } catch (Exception e) {
+                    listener.onFailure(e);
+                    return;
+                }
+                listener.onResponse(map);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                listener.onFailure(exception);
+            }
+        });
+    }
+
+    @Override
+    public List<Map<String, Object>> search(String index, SearchSourceBuilder source) throws IOException {
+        Map<String, Object> mp = searchIndexData(index, Strings.toString(MediaTypeRegistry.JSON, source));
+        Map<String, Object> hitsMap = (Map<String, Object>) mp.get("hits");
+        return (List<Map<String, Object>>) hitsMap.get("hits");
+    }
+
+    @Override
+    public Map<String, Object> aggregate(String index, SearchSourceBuilder source) throws IOException {
+        Request request = new Request("POST", "/" + index + "/_search");
+        request.addParameter("filter_path", "aggregations");
+        String dslJson = Strings.toString(MediaTypeRegistry.JSON, source);
+        request.setJsonEntity(dslJson);
+        logger.debug("aggregate {}: {}", index, dslJson);
+        Map<String, Object> aggregations = (Map<String, Object>) entityAsMap(client().performRequest(request)).get("aggregations");
+        return aggregations == null ? Collections.emptyMap() : aggregations;
+    }
+
+    @Override
+    public String openPit(String index, String keepAlive) throws IOException {
+        Request request = new Request("POST", "/" + index + "/_search/point_in_time");
+        request.addParameter("keep_alive", keepAlive);
+        Response response = client().performRequest(request);
+        return entityAsMap(response).get("pit_id").toString();
+    }
+
+    @Override
+    public void closePit(String pitId) throws IOException {
+        Request request = new Request("DELETE", "/_search/point_in_time");
+        request.setJsonEntity("{\"pit_id\":[" + JSON.toJSONString(pitId) + "]}");
+        client().performRequest(request);
+    }
+
+    @Override
+    public boolean refresh(String index) throws IOException {
+        Request request = new Request("GET", "/" + index + "/_refresh");
+        Response response = client().performRequest(request);
+        Map<String, Object> map = entityAsMap(response);
+        Map shardsMaps = (Map) map.get("_shards");
+        Object successful = shardsMaps.get("successful");
+        return Boolean.valueOf(successful.toString());
+    }
+
+    @Override
+    public void locate(String index, Collection<String> ids, ActionListener<Map<String, List<String>>> listener) {
+        // 兼容滚动索引的数据删除：先查出别名后面的 backing 索引数，再用一次 ids 查询找出这一批文档所在的所有索引
+        client().performRequestAsync(new Request("GET", "/" + index + "/_alias"), new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                int generations;
+                try {
+                    generations = Math.max(1, entityAsMap(response).size());
+                } catch (Exception e) {
+                    listener.onFailure(e);
+                    return;
+                }
+                searchIds(index, ids, generations, listener);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                listener.onFailure(exception);
+            }
+        });
+    }
+
+    private void searchIds(String index, Collection<String> ids, int generations, ActionListener<Map<String, List<String>>> listener) {
+        Request request = new Request("POST", "/" + index + "/_search");
+        request.addParameter("filter_path", "hits.hits._index,hits.hits._id");
+        JSONObject body = new JSONObject()
+            .fluentPut("size", EsTransport.locateSize(ids.size(), generations))
+            .fluentPut("_source", false)
+            .fluentPut("query", new JSONObject().fluentPut("ids", new JSONObject().fluentPut("values", ids)));
+        request.setJsonEntity(body.toJSONString());
+        client().performRequestAsync(request, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                Map<String, List<String>> located = new HashMap<>();
+                try {
+                    Map<String, Object> hitsMap = (Map<String, Object>) entityAsMap(response).get("hits");
+                    if (hitsMap != null) {
+                        for (Map<String, Object> hit : (List<Map<String, Object>>) hitsMap.get("hits")) {
+                            located.computeIfAbsent(hit.get("_id").toString(), id -> new ArrayList<>(1)).add(hit.get("_index").toString());
+                        }
+                    }
+                } catch (Exception e) {
+                    listener.onFailure(e);
+                    return;
+                }
+                listener.onResponse(located);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                listener.onFailure(exception);
+            }
+        });
+    }
+
+    private static Map<String, Object> searchIndexData(String index, String dslJson) throws IOException {
+        Request request = new Request("GET", index == null ? "/_search" : "/" + index + "/_search");
+        if (!StringUtils.isBlank(dslJson)) {
+            request.setJsonEntity(dslJson);
+        }
+        logger.debug("search {}: {}", index, dslJson);
+        Response response = client().performRequest(request);
+        return entityAsMap(response);
+    }
+}
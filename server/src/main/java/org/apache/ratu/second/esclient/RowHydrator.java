@@ -0,0 +1,215 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+import com.codahale.metrics.Timer;
+import com.google.common.collect.AbstractIterator;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.ReadCommand;
+import org.apache.cassandra.db.SinglePartitionReadCommand;
+import org.apache.cassandra.db.filter.DataLimits;
+import org.apache.cassandra.db.filter.RowFilter;
+import org.apache.cassandra.db.partitions.PartitionIterator;
+import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.db.rows.RowIterator;
+import org.apache.cassandra.schema.TableMetadata;
+import org.apache.cassandra.service.StorageProxy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把搜索结果按主键从 Cassandra 读回完整的行。
+ * <p>
+ * 命中的主键按 hydrate_batch_size 分批，每批作为一个多分区读（SinglePartitionReadCommand.Group）一次下发，
+ * 同时最多有 hydrate_concurrency 批在读；消费当前批时后续批次已经在预取。
+ * 结果按命中顺序返回，Cassandra 中已经不存在的行会被跳过。
+ * 命中结果按需从流中拉取，只会比消费进度多取 hydrate_batch_size * hydrate_concurrency 条。
+ */
+public class RowHydrator extends AbstractIterator<RowHydrator.HydratedRow> implements RowSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(RowHydrator.class);
+
+    public static final String HYDRATE_BATCH_SIZE = "hydrate_batch_size";
+    public static final String HYDRATE_CONCURRENCY = "hydrate_concurrency";
+    public static final String HYDRATE_CONSISTENCY = "hydrate_consistency";
+
+    /**
+     * 所有查询共用的回表线程数：同时执行的读请求（concurrent_reads）每个按默认的 hydrate_concurrency（2）计算。
+     * 每个查询最多只有 hydrate_concurrency 批在排队，超出线程数的批次在队列中等待
+     */
+    private static final int HYDRATE_THREADS = Math.max(2, DatabaseDescriptor.getConcurrentReaders() * 2);
+
+    private static final ExecutorService executorService;
+
+    static {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(HYDRATE_THREADS, HYDRATE_THREADS, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r);
+            thread.setDaemon(true);
+            thread.setName("EsHydrate" + thread.getId());
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        executorService = executor;
+    }
+
+    public static class HydratedRow {
+        public final SearchResultRow hit;
+        public final DecoratedKey partitionKey;
+        public final Row row;
+
+        HydratedRow(SearchResultRow hit, DecoratedKey partitionKey, Row row) {
+            this.hit = hit;
+            this.partitionKey = partitionKey;
+            this.row = row;
+        }
+    }
+
+    private final ColumnFamilyStore baseCfs;
+    private final TableMetadata metadata;
+    private final ReadCommand command;
+    private final ConsistencyLevel consistencyLevel;
+    private final Iterator<SearchResultRow> hits;
+    private final int batchSize;
+    private final int concurrency;
+    private final IndexMetrics metrics;
+
+    private final Deque<Future<List<HydratedRow>>> pending = new ArrayDeque<>();
+    private Iterator<HydratedRow> current = Collections.emptyIterator();
+
+    public RowHydrator(@Nonnull ColumnFamilyStore baseCfs,
+                       @Nonnull ReadCommand command,
+                       @Nonnull ConsistencyLevel consistencyLevel,
+                       @Nonnull Iterator<SearchResultRow> hits,
+                       int batchSize,
+                       int concurrency,
+                       @Nonnull IndexMetrics metrics) {
+        this.baseCfs = baseCfs;
+        this.metadata = baseCfs.metadata();
+        this.command = command;
+        this.consistencyLevel = consistencyLevel;
+        this.hits = hits;
+        this.batchSize = Math.max(1, batchSize);
+        this.concurrency = Math.max(1, concurrency);
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected HydratedRow computeNext() {
+        while (!current.hasNext()) {
+            fillWindow();
+            Future<List<HydratedRow>> next = pending.poll();
+            if (next == null) {
+                return endOfData();
+            }
+            current = await(next).iterator();
+            // 当前批次开始被消费，立即补上预取窗口
+            fillWindow();
+        }
+        return current.next();
+    }
+
+    /**
+     * 放弃还没消费的预取批次
+     */
+    @Override
+    public void close() {
+        pending.forEach(future -> future.cancel(false));
+        pending.clear();
+    }
+
+    private void fillWindow() {
+        while (pending.size() < concurrency && hits.hasNext()) {
+            List<SearchResultRow> batch = new ArrayList<>(batchSize);
+            while (batch.size() < batchSize && hits.hasNext()) {
+                batch.add(hits.next());
+            }
+            pending.add(executorService.submit(() -> read(batch)));
+        }
+    }
+
+    private List<HydratedRow> await(Future<List<HydratedRow>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            logger.error("Hydrate rows from " + metadata + " Exception:", e.getCause());
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private List<HydratedRow> read(List<SearchResultRow> batch) {
+        try (Timer.Context ignored = metrics.hydrateLatency.time()) {
+            return readBatch(batch);
+        }
+    }
+
+    private List<HydratedRow> readBatch(List<SearchResultRow> batch) {
+        List<SinglePartitionReadCommand> commands = new ArrayList<>(batch.size());
+        List<DecoratedKey> keys = new ArrayList<>(batch.size());
+        for (SearchResultRow hit : batch) {
+            DecoratedKey partitionKey = baseCfs.getPartitioner().decorateKey(hit.partitionKey);
+            keys.add(partitionKey);
+            commands.add(SinglePartitionReadCommand.create(
+                metadata,
+                command.nowInSec(),
+                command.columnFilter(),
+                RowFilter.NONE,
+                DataLimits.NONE,
+                partitionKey,
+                command.clusteringIndexFilter(partitionKey)));
+        }
+
+        Map<DecoratedKey, Row> rows = new HashMap<>(batch.size() * 2);
+        // 流式查询中后面的批次可能在很久之后才预取，读超时从这一批开始计算
+        long queryStartNanoTime = System.nanoTime();
+        try (PartitionIterator partitions = StorageProxy.read(SinglePartitionReadCommand.Group.create(commands, DataLimits.NONE), consistencyLevel, queryStartNanoTime)) {
+            while (partitions.hasNext()) {
+                try (RowIterator partition = partitions.next()) {
+                    if (partition.hasNext()) {
+                        rows.put(partition.partitionKey(), partition.next());
+                    }
+                }
+            }
+        }
+
+        List<HydratedRow> result = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Row row = rows.get(keys.get(i));
+            if (row != null) {
+                result.add(new HydratedRow(batch.get(i), keys.get(i), row));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,21 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+import java.util.Iterator;
+
+/**
+ * 按命中顺序提供搜索结果对应的 Cassandra 行，可以回表读取（{@link RowHydrator}），
+ * 也可以直接由 _source 构造（{@link IndexOnlyRows}）。
+ */
+public interface RowSource extends Iterator<RowHydrator.HydratedRow> {
+
+    default void close() {
+    }
+}
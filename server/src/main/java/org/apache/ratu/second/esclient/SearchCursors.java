@@ -0,0 +1,108 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 挂起的流式搜索。
+ * <p>
+ * Cassandra 分页时，下一页的查询只带着上一页最后一个分区键重新下发，无法携带 search_after 状态。
+ * 一页返回后把还没有消费完的 {@link SearchHitStream} 按"索引 + 查询表达式 + 最后一个分区键"挂起，
+ * 下一页查询以这个分区键作为起点时直接接着消费，不必从头重新搜索。
+ * 超过一分钟没有被取回的游标会被关闭并释放 point-in-time。
+ * <p>
+ * 挂起时同时记下最后一个返回的命中的排序值和已返回的命中数（{@link Position}），保留十分钟；
+ * 游标过期或被淘汰后，下一页用 search_after 从这个位置重新搜索，而不是从第一条命中重新开始。
+ */
+public final class SearchCursors {
+
+    private static final Cache<String, SearchHitStream> cursors = CacheBuilder.newBuilder()
+        .maximumSize(10000)
+        .expireAfterWrite(60, TimeUnit.SECONDS)
+        .<String, SearchHitStream>removalListener(notification -> {
+            if (notification.getCause() != RemovalCause.EXPLICIT && notification.getValue() != null) {
+                notification.getValue().close();
+            }
+        })
+        .build();
+
+    private static final Cache<String, Position> positions = CacheBuilder.newBuilder()
+        .maximumSize(100000)
+        .expireAfterWrite(10, TimeUnit.MINUTES)
+        .build();
+
+    /**
+     * 下一页的起点：上一页最后一个命中的排序值，以及到这个命中为止已经返回的命中数
+     */
+    public static final class Position {
+        final Object[] searchAfter;
+        final long returned;
+
+        Position(@Nonnull Object[] searchAfter, long returned) {
+            this.searchAfter = searchAfter;
+            this.returned = returned;
+        }
+    }
+
+    private SearchCursors() {
+    }
+
+    public static String prefix(@Nonnull String index, @Nonnull String query) {
+        return index + '\u0000' + query + '\u0000';
+    }
+
+    public static String key(@Nonnull String prefix, @Nonnull ByteBuffer partitionKey) {
+        return prefix + ByteBufferUtil.bytesToHex(partitionKey);
+    }
+
+    /**
+     * 挂起游标并记下它的位置，返回记下的位置
+     */
+    @Nullable
+    public static Position suspend(@Nonnull String key, @Nonnull SearchHitStream stream) {
+        Position position = stream.position();
+        if (position != null) {
+            positions.put(key, position);
+        }
+        cursors.put(key, stream);
+        return position;
+    }
+
+    /**
+     * 记下下一页的起点，用于没有经过流式搜索返回的一页（例如从查询结果缓存返回）
+     */
+    public static void remember(@Nonnull String key, @Nonnull Position position) {
+        positions.put(key, position);
+    }
+
+    /**
+     * 游标已经不在时，下一页的起点；没有记录时返回 null
+     */
+    @Nullable
+    public static Position position(@Nonnull String key) {
+        return positions.getIfPresent(key);
+    }
+
+    /**
+     * 取回并移除挂起的游标，没有时返回 null
+     */
+    @Nullable
+    public static SearchHitStream resume(@Nonnull String key) {
+        return cursors.asMap().remove(key);
+    }
+}
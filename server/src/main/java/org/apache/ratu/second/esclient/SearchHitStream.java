@@ -0,0 +1,241 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.index.query.QueryBuilder;
+import org.opensearch.search.builder.PointInTimeBuilder;
+import org.opensearch.search.builder.SearchSourceBuilder;
+import org.opensearch.search.sort.SortBuilders;
+import org.opensearch.search.sort.SortOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 基于 point-in-time + search_after 的流式搜索结果。
+ * <p>
+ * 每次只拉取一页（page_size）命中结果，页内结果被消费完才请求下一页；所有页面共享同一个 PIT，
+ * 翻页过程中看到的是同一份索引快照。排序固定为 _score 降序 + tiebreaker 升序，保证 search_after 翻页稳定。
+ * <p>
+ * 已经取出但 Cassandra 分页没有真正返回给客户端的结果，可以通过 {@link #rewind()} 放回，
+ * 挂起后由下一次分页查询继续消费；挂起的流被关闭后，下一页通过 {@link #seek} 从记录的排序值之后重新搜索。
+ */
+public class SearchHitStream implements Iterator<SearchResultRow>, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchHitStream.class);
+
+    private final ElasticIndex elasticIndex;
+    private final String indexName;
+    // 为 null 时查询全部
+    @Nullable
+    private final QueryBuilder query;
+    private final int pageSize;
+    private final long maxHits;
+    private final int from;
+    private final String keepAlive;
+    private final String tiebreaker;
+    private final Consumer<List<SearchResultRow>> keyFiller;
+    private final IndexMetrics metrics;
+
+    // 当前页中还没有被取出的结果
+    private final Deque<SearchResultRow> page = new ArrayDeque<>();
+    // 已经取出但还没有确认被消费的结果
+    private final Deque<SearchResultRow> outstanding = new ArrayDeque<>();
+
+    private String pitId;
+    private Object[] searchAfter;
+    private long fetched = 0;
+    // 已确认被消费的结果数和最后一个结果
+    private long consumed = 0;
+    private SearchResultRow lastConsumed;
+    private boolean exhausted = false;
+    private boolean closed = false;
+
+    SearchHitStream(@Nonnull ElasticIndex elasticIndex,
+                    @Nonnull String indexName,
+                    @Nullable QueryBuilder query,
+                    int pageSize,
+                    long maxHits,
+                    int from,
+                    @Nonnull String keepAlive,
+                    @Nonnull String tiebreaker,
+                    @Nonnull Consumer<List<SearchResultRow>> keyFiller,
+                    @Nonnull IndexMetrics metrics) {
+        this.elasticIndex = elasticIndex;
+        this.indexName = indexName;
+        this.query = query;
+        this.pageSize = Math.max(1, pageSize);
+        this.maxHits = maxHits;
+        this.from = from;
+        this.keepAlive = keepAlive;
+        this.tiebreaker = tiebreaker;
+        this.keyFiller = keyFiller;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (page.isEmpty() && !exhausted) {
+            try {
+                fetchPage();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return !page.isEmpty();
+    }
+
+    @Override
+    public SearchResultRow next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        SearchResultRow row = page.poll();
+        outstanding.add(row);
+        return row;
+    }
+
+    /**
+     * 确认该结果及之前取出的结果已经被消费
+     */
+    public void consumed(@Nonnull SearchResultRow row) {
+        while (!outstanding.isEmpty()) {
+            consumed++;
+            if (outstanding.poll() == row) {
+                lastConsumed = row;
+                return;
+            }
+        }
+    }
+
+    /**
+     * 最后一个被消费的结果之后的位置，没有消费过结果或者结果没有排序值时返回 null
+     */
+    @Nullable
+    public SearchCursors.Position position() {
+        if (lastConsumed == null || lastConsumed.sortValues == null) {
+            return null;
+        }
+        return new SearchCursors.Position(lastConsumed.sortValues, consumed);
+    }
+
+    /**
+     * 从之前记录的位置开始搜索，必须在拉取第一页之前调用
+     */
+    public void seek(@Nonnull SearchCursors.Position position) {
+        searchAfter = position.searchAfter;
+        fetched = position.returned;
+        consumed = position.returned;
+    }
+
+    /**
+     * 把取出但未确认的结果放回队首（例如被预取但没有返回给客户端的行）
+     */
+    public void rewind() {
+        while (!outstanding.isEmpty()) {
+            page.addFirst(outstanding.pollLast());
+        }
+    }
+
+    /**
+     * 是否还有剩余结果，不会触发请求
+     */
+    public boolean hasMore() {
+        return !page.isEmpty() || !exhausted;
+    }
+
+    /**
+     * 释放 point-in-time，并记录本次查询的命中数
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            metrics.hitsPerQuery.update(fetched);
+        }
+        page.clear();
+        outstanding.clear();
+        exhausted = true;
+        if (pitId != null) {
+            try {
+                elasticIndex.transport().closePit(pitId);
+            } catch (Exception e) {
+                logger.warn("Close point in time of " + indexName + " Exception:", e);
+            }
+            pitId = null;
+        }
+    }
+
+    private void fetchPage() throws IOException {
+        long size = Math.min(pageSize, maxHits - fetched);
+        if (size <= 0) {
+            exhausted = true;
+            return;
+        }
+        if (pitId == null) {
+            pitId = elasticIndex.transport().openPit(indexName, keepAlive);
+        }
+
+        SearchSourceBuilder source = new SearchSourceBuilder()
+            .size((int) size)
+            .pointInTimeBuilder(new PointInTimeBuilder(pitId).setKeepAlive(TimeValue.parseTimeValue(keepAlive, "keep_alive")))
+            .sort(SortBuilders.scoreSort().order(SortOrder.DESC))
+            .sort(SortBuilders.fieldSort(tiebreaker).order(SortOrder.ASC));
+        if (query != null) {
+            source.query(query);
+        }
+        if (searchAfter != null) {
+            source.searchAfter(searchAfter);
+        } else if (from > 0) {
+            source.from(from);
+        }
+
+        long start = System.nanoTime();
+        List<Map<String, Object>> hits = elasticIndex.transport().search(null, source);
+        metrics.searchLatency.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (hits.size() < size) {
+            exhausted = true;
+        }
+        if (hits.isEmpty()) {
+            return;
+        }
+        Object sort = hits.get(hits.size() - 1).get("sort");
+        if (sort != null) {
+            searchAfter = ((List<Object>) sort).toArray();
+        } else {
+            // 没有排序值无法继续翻页
+            exhausted = true;
+        }
+
+        List<SearchResultRow> rows = elasticIndex.toRows(hits);
+        for (int i = 0; i < rows.size(); i++) {
+            Object values = hits.get(i).get("sort");
+            if (values != null) {
+                rows.get(i).sortValues = ((List<Object>) values).toArray();
+            }
+        }
+        keyFiller.accept(rows);
+        fetched += rows.size();
+        page.addAll(rows);
+    }
+}
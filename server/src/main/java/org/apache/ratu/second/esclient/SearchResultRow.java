@@ -33,6 +33,9 @@ public class SearchResultRow {
 
     public String[] clusteringKeys;
 
+    // 流式搜索中这条命中的排序值，用于从它之后重新开始搜索
+    public Object[] sortValues;
+
     public SearchResultRow(@Nonnull String[] primaryKey,@Nonnull JSONObject docMetadata){
         this.primaryKey=primaryKey;
         this.docMetadata=docMetadata;
@@ -0,0 +1,182 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+import org.opensearch.cluster.metadata.IndexMetadata;
+import org.opensearch.cluster.routing.OperationRouting;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.core.index.shard.ShardId;
+import org.opensearch.index.IndexSettings;
+import org.opensearch.index.shard.IndexShard;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 写入已到达的检查点：记录本节点每个分片上已被确认的最大 _seq_no，查询指定 refresh 时等待这些检查点可以被搜索到，
+ * 代替每次查询都强制 _refresh。
+ * <ul>
+ *     <li>分片在本节点上、没有副本且开启了定时 refresh 时，注册 {@link IndexShard#addRefreshListener(long, ActionListener)}，
+ *     等待的查询合并到下一次定时 refresh 上，等待者过多时才强制 refresh。</li>
+ *     <li>分片不在本节点、有副本（查询可能落在其他副本上）、没有定时 refresh 或者无法确定分片（OpenSearch 不在同一个 JVM 中）时，
+ *     退回到按索引合并的 _refresh：还没有开始执行的 refresh 被所有等待者共享。</li>
+ * </ul>
+ * 检查点可见后从记录中移除，之后没有新写入的查询不再等待。
+ */
+public class SearchableCheckpoints {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchableCheckpoints.class);
+
+    private static final ExecutorService refreshExecutor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r);
+        thread.setDaemon(true);
+        thread.setName("EsRefresh");
+        return thread;
+    });
+
+    private final String indexName;
+    private final ElasticIndex elasticIndex;
+
+    // 分片 -> 已确认的最大 _seq_no
+    private final Map<ShardId, Long> checkpoints = new ConcurrentHashMap<>();
+    // 无法确定分片的写入所在的索引
+    private final Set<String> unresolved = ConcurrentHashMap.newKeySet();
+    // 还没有开始执行的 refresh：索引名 -> 等待该 refresh 的 future
+    private final Map<String, CompletableFuture<Void>> pendingRefresh = new ConcurrentHashMap<>();
+
+    public SearchableCheckpoints(@Nonnull String indexName, @Nonnull ElasticIndex elasticIndex) {
+        this.indexName = indexName;
+        this.elasticIndex = elasticIndex;
+    }
+
+    /**
+     * 记录一条已确认的写入
+     *
+     * @param index 文档实际写入的索引
+     * @param shard 分片号，响应中没有时按文档 id 计算
+     */
+    void record(@Nonnull String index, @Nonnull String id, @Nullable Number shard, long seqNo) {
+        ShardId shardId = shardId(index, id, shard);
+        if (shardId == null) {
+            unresolved.add(index);
+        } else {
+            checkpoints.merge(shardId, seqNo, Math::max);
+        }
+    }
+
+    @Nullable
+    private static ShardId shardId(String index, String id, @Nullable Number shard) {
+        if (!LocalNode.isStarted()) {
+            return null;
+        }
+        IndexMetadata metadata = LocalNode.clusterState().metadata().index(index);
+        if (metadata == null) {
+            return null;
+        }
+        int shardNum = shard != null ? shard.intValue() : OperationRouting.generateShardId(metadata, id, null);
+        return new ShardId(metadata.getIndex(), shardNum);
+    }
+
+    /**
+     * 等待目前记录的检查点全部可以被搜索到，超时后不再等待
+     */
+    public void await(long timeoutMillis) {
+        Map<ShardId, Long> token = new HashMap<>(checkpoints);
+        Set<String> indices = new HashSet<>(unresolved);
+        unresolved.removeAll(indices);
+        if (token.isEmpty() && indices.isEmpty()) {
+            return;
+        }
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>(token.size() + indices.size());
+        for (Map.Entry<ShardId, Long> entry : token.entrySet()) {
+            CompletableFuture<Void> future = awaitShard(entry.getKey(), entry.getValue());
+            if (future == null) {
+                indices.add(entry.getKey().getIndexName());
+            } else {
+                futures.add(future);
+            }
+        }
+        for (String index : indices) {
+            futures.add(refresh(index));
+        }
+
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(timeoutMillis, TimeUnit.MILLISECONDS);
+            // 已可见的检查点不再需要等待，等待期间有新写入的分片保留
+            token.forEach(checkpoints::remove);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException e) {
+            logger.warn("Index {} writes not searchable after {}ms, searching anyway", indexName, timeoutMillis);
+        } catch (Exception e) {
+            logger.warn("Index " + indexName + " wait for searchable Exception:", e);
+        }
+    }
+
+    /**
+     * 在本节点唯一的分片副本上注册 refresh 监听，不满足条件时返回 null
+     */
+    @Nullable
+    private CompletableFuture<Void> awaitShard(ShardId shardId, long seqNo) {
+        if (!LocalNode.isStarted()) {
+            return null;
+        }
+        IndexMetadata metadata = LocalNode.clusterState().metadata().index(shardId.getIndex());
+        // 没有定时 refresh（refresh_interval 为 -1）时监听永远等不到 refresh
+        if (metadata == null || metadata.getNumberOfReplicas() > 0
+            || IndexSettings.INDEX_REFRESH_INTERVAL_SETTING.get(metadata.getSettings()).millis() <= 0) {
+            return null;
+        }
+        IndexShard shard = LocalNode.indexShard(shardId);
+        if (shard == null) {
+            return null;
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            shard.addRefreshListener(seqNo, ActionListener.wrap(future::complete, future::completeExceptionally));
+        } catch (IllegalStateException e) {
+            // 分片已关闭
+            return null;
+        }
+        return future;
+    }
+
+    /**
+     * 合并的 refresh：执行开始前到达的等待者共享同一次 refresh；已经开始的 refresh 可能不包含之后确认的写入，不能共享
+     */
+    private CompletableFuture<Void> refresh(String index) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        CompletableFuture<Void> pending = pendingRefresh.putIfAbsent(index, future);
+        if (pending != null) {
+            return pending;
+        }
+        refreshExecutor.execute(() -> {
+            pendingRefresh.remove(index, future);
+            // refreshData 自己记录失败，失败时也不再等待
+            elasticIndex.refreshData(index);
+            future.complete(null);
+        });
+        return future;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.core.common.io.stream.StreamOutput;
+import org.opensearch.core.common.io.stream.Writeable;
+import org.opensearch.core.xcontent.ToXContentFragment;
+import org.opensearch.core.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * _nodes/stats 中的 secondary_index 部分：本节点每个二级索引的指标快照，见 {@link IndexMetrics}
+ */
+public class SecondaryIndexStats implements Writeable, ToXContentFragment {
+
+    // 索引名 -> 指标
+    private final Map<String, Map<String, Object>> indices;
+
+    public SecondaryIndexStats(Map<String, Map<String, Object>> indices) {
+        this.indices = indices;
+    }
+
+    public SecondaryIndexStats(StreamInput in) throws IOException {
+        this.indices = in.readMap(StreamInput::readString, StreamInput::readMap);
+    }
+
+    public Map<String, Map<String, Object>> getIndices() {
+        return indices;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeMap(indices, StreamOutput::writeString, StreamOutput::writeMap);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject("secondary_index");
+        for (Map.Entry<String, Map<String, Object>> index : indices.entrySet()) {
+            builder.field(index.getKey(), index.getValue());
+        }
+        builder.endObject();
+        return builder;
+    }
+}
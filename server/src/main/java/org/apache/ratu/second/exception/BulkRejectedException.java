@@ -0,0 +1,15 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.exception;
+
+public class BulkRejectedException extends BaseException {
+    public BulkRejectedException(final String reason){
+        super(reason);
+    }
+}
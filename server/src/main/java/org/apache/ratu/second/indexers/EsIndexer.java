@@ -24,9 +24,14 @@ import org.apache.cassandra.db.DeletionTime;
 import org.apache.cassandra.db.rows.Row;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.ratu.second.ElasticSecondaryIndex;
+import org.apache.ratu.second.esclient.IndexingPipeline;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -42,15 +47,12 @@ public class EsIndexer extends NoOpIndexer {
 
     private LinkedBlockingQueue<Row> rowLinkedBlockingQueue = new LinkedBlockingQueue<>();
 
-    private final Boolean asyncWrite;
-
-    public EsIndexer(ElasticSecondaryIndex index, DecoratedKey key, int nowInSec, boolean withDelete,Boolean asyncWrite) {
+    public EsIndexer(ElasticSecondaryIndex index, DecoratedKey key, int nowInSec, boolean withDelete) {
         this.key = key;
         this.nowInSec = nowInSec;
         this.index = index;
         this.id = ByteBufferUtil.bytesToHex(key.getKey());
         this.delete = withDelete;
-        this.asyncWrite = asyncWrite;
     }
 
 
@@ -80,7 +82,10 @@ public class EsIndexer extends NoOpIndexer {
     @Override
     public void partitionDelete(DeletionTime deletionTime) {
         final Stopwatch time = Stopwatch.createStarted();
-        index.delete(key);
+        CompletableFuture<Void> future = index.delete(key, deletionTime);
+        if (future != null && index.pipeline.durability == IndexingPipeline.Durability.SYNC) {
+            index.pipeline.await(Collections.singletonList(future));
+        }
         logger.debug("{} partitionDelete "+id+" took {}ms", index.index_name, time.elapsed(TimeUnit.MILLISECONDS));
     }
 
@@ -91,9 +96,16 @@ public class EsIndexer extends NoOpIndexer {
 
     @Override
     public void commit() {
-        // 最后统一提交写入
+        // 最后统一提交到批量写入管道，sync 模式下等待本次写入的文档被确认
+        List<CompletableFuture<Void>> futures = new ArrayList<>(rowLinkedBlockingQueue.size());
         while (!rowLinkedBlockingQueue.isEmpty()) {
-            index.index(this.key, rowLinkedBlockingQueue.poll(), null, nowInSec,asyncWrite);
+            CompletableFuture<Void> future = index.index(this.key, rowLinkedBlockingQueue.poll(), null, nowInSec);
+            if (future != null) {
+                futures.add(future);
+            }
+        }
+        if (index.pipeline.durability == IndexingPipeline.Durability.SYNC) {
+            index.pipeline.await(futures);
         }
     }
 }
@@ -32,6 +32,7 @@
 
 package org.opensearch.action.admin.cluster.node.stats;
 
+import org.apache.ratu.second.esclient.SecondaryIndexStats;
 import org.opensearch.Version;
 import org.opensearch.action.support.nodes.BaseNodeResponse;
 import org.opensearch.cluster.node.DiscoveryNode;
@@ -154,6 +155,9 @@ public class NodeStats extends BaseNodeResponse implements ToXContentFragment {
     @Nullable
     private RepositoriesStats repositoriesStats;
 
+    @Nullable
+    private SecondaryIndexStats secondaryIndexStats;
+
     public NodeStats(StreamInput in) throws IOException {
         super(in);
         timestamp = in.readVLong();
@@ -225,6 +229,11 @@ public class NodeStats extends BaseNodeResponse implements ToXContentFragment {
         } else {
             repositoriesStats = null;
         }
+        if (in.getVersion().onOrAfter(Version.V_3_0_0)) {
+            secondaryIndexStats = in.readOptionalWriteable(SecondaryIndexStats::new);
+        } else {
+            secondaryIndexStats = null;
+        }
     }
 
     public NodeStats(
@@ -254,7 +263,8 @@ public class NodeStats extends BaseNodeResponse implements ToXContentFragment {
         @Nullable TaskCancellationStats taskCancellationStats,
         @Nullable SearchPipelineStats searchPipelineStats,
         @Nullable SegmentReplicationRejectionStats segmentReplicationRejectionStats,
-        @Nullable RepositoriesStats repositoriesStats
+        @Nullable RepositoriesStats repositoriesStats,
+        @Nullable SecondaryIndexStats secondaryIndexStats
     ) {
         super(node);
         this.timestamp = timestamp;
@@ -283,6 +293,7 @@ public class NodeStats extends BaseNodeResponse implements ToXContentFragment {
         this.searchPipelineStats = searchPipelineStats;
         this.segmentReplicationRejectionStats = segmentReplicationRejectionStats;
         this.repositoriesStats = repositoriesStats;
+        this.secondaryIndexStats = secondaryIndexStats;
     }
 
     public long getTimestamp() {
@@ -435,6 +446,11 @@ public class NodeStats extends BaseNodeResponse implements ToXContentFragment {
         return repositoriesStats;
     }
 
+    @Nullable
+    public SecondaryIndexStats getSecondaryIndexStats() {
+        return secondaryIndexStats;
+    }
+
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         super.writeTo(out);
@@ -487,6 +503,9 @@ public class NodeStats extends BaseNodeResponse implements ToXContentFragment {
         if (out.getVersion().onOrAfter(Version.V_2_12_0)) {
             out.writeOptionalWriteable(repositoriesStats);
         }
+        if (out.getVersion().onOrAfter(Version.V_3_0_0)) {
+            out.writeOptionalWriteable(secondaryIndexStats);
+        }
     }
 
     @Override
@@ -587,6 +606,9 @@ public class NodeStats extends BaseNodeResponse implements ToXContentFragment {
         if (getRepositoriesStats() != null) {
             getRepositoriesStats().toXContent(builder, params);
         }
+        if (getSecondaryIndexStats() != null) {
+            getSecondaryIndexStats().toXContent(builder, params);
+        }
         return builder;
     }
 }
@@ -216,7 +216,8 @@ public class NodesStatsRequest extends BaseNodesRequest<NodesStatsRequest> {
         SEARCH_PIPELINE("search_pipeline"),
         RESOURCE_USAGE_STATS("resource_usage_stats"),
         SEGMENT_REPLICATION_BACKPRESSURE("segment_replication_backpressure"),
-        REPOSITORIES("repositories");
+        REPOSITORIES("repositories"),
+        SECONDARY_INDEX("secondary_index");
 
         private String metricName;
 
@@ -40,6 +40,8 @@ import org.apache.logging.log4j.core.appender.ConsoleAppender;
 import org.apache.logging.log4j.core.config.Configurator;
 import org.apache.lucene.util.Constants;
 import org.apache.lucene.util.StringHelper;
+import org.apache.ratu.graph.GraphUpdateScriptPlugin;
+import org.apache.ratu.second.esclient.LocalNode;
 import org.opensearch.OpenSearchException;
 import org.opensearch.Version;
 import org.opensearch.cli.KeyStoreAwareCommand;
@@ -239,7 +241,8 @@ final class Bootstrap {
             throw new BootstrapException(e);
         }
 
-        node = new Node(environment) {
+        // JanusGraph 混合索引更新文档使用的 Java 脚本语言
+        node = new Node(environment, Collections.singletonList(GraphUpdateScriptPlugin.class), true) {
             @Override
             protected void validateNodeBeforeAcceptingRequests(
                 final BootstrapContext context,
@@ -337,6 +340,7 @@ final class Bootstrap {
 
     private void start() throws NodeValidationException {
         node.start();
+        LocalNode.set(node);
         keepAliveThread.start();
     }
 
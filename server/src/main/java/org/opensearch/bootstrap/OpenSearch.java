@@ -36,8 +36,7 @@ import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
 import joptsimple.OptionSpecBuilder;
 import joptsimple.util.PathConverter;
-import org.apache.ratu.Cassandra;
-import org.apache.ratu.JanusgraphServer;
+import org.apache.ratu.RatuStartup;
 import org.opensearch.Build;
 import org.opensearch.cli.EnvironmentAwareCommand;
 import org.opensearch.cli.ExitCodes;
@@ -110,27 +109,25 @@ class OpenSearch extends EnvironmentAwareCommand {
 
         LogConfigurator.registerErrorListener();
         final OpenSearch opensearch = new OpenSearch();
-        int status = main(args, opensearch, Terminal.DEFAULT);
-        if (status != ExitCodes.OK) {
-            final String basePath = System.getProperty("opensearch.logs.base_path");
-            // It's possible to fail before logging has been configured, in which case there's no point
-            // suggesting that the user look in the log file.
-            if (basePath != null) {
-                Terminal.DEFAULT.errorPrintln(
-                    "ERROR: OpenSearch did not exit normally - check the logs at "
-                        + basePath
-                        + System.getProperty("file.separator")
-                        + System.getProperty("opensearch.logs.cluster_name")
-                        + ".log"
-                );
+        // OpenSearch、Cassandra、JanusGraph 按依赖关系并行启动，见 RatuStartup.node
+        RatuStartup.node(() -> {
+            int status = main(args, opensearch, Terminal.DEFAULT);
+            if (status != ExitCodes.OK) {
+                final String basePath = System.getProperty("opensearch.logs.base_path");
+                // It's possible to fail before logging has been configured, in which case there's no point
+                // suggesting that the user look in the log file.
+                if (basePath != null) {
+                    Terminal.DEFAULT.errorPrintln(
+                        "ERROR: OpenSearch did not exit normally - check the logs at "
+                            + basePath
+                            + System.getProperty("file.separator")
+                            + System.getProperty("opensearch.logs.cluster_name")
+                            + ".log"
+                    );
+                }
+                exit(status);
             }
-            exit(status);
-        }
-
-        Cassandra.active();
-
-
-        JanusgraphServer.active();
+        }).start().join();
     }
 
     private static void printHeader() {
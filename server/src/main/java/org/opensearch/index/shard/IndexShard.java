@@ -2478,6 +2478,7 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
     private void onNewEngine(Engine newEngine) {
         assert Thread.holdsLock(engineMutex);
         refreshListeners.setCurrentRefreshLocationSupplier(newEngine.translogManager()::getTranslogLastWriteLocation);
+        refreshListeners.setCurrentProcessedCheckpointSupplier(newEngine::getProcessedLocalCheckpoint);
     }
 
     /**
@@ -4565,6 +4566,30 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         }
     }
 
+    /**
+     * Add a listener that is called once all operations up to and including the sequence number {@code checkpoint} are visible for
+     * search. Waiting listeners are coalesced onto the next scheduled refresh instead of each forcing one.
+     *
+     * @param checkpoint the sequence number to wait for
+     * @param listener called once the checkpoint is visible, or right away if the shard isn't ready for reads
+     */
+    public void addRefreshListener(long checkpoint, ActionListener<Void> listener) {
+        final boolean readAllowed;
+        if (isReadAllowed()) {
+            readAllowed = true;
+        } else {
+            synchronized (postRecoveryMutex) {
+                readAllowed = isReadAllowed();
+            }
+        }
+        // NRT Replicas will not accept refresh listeners.
+        if (readAllowed && isSegmentReplicationAllowed() == false) {
+            refreshListeners.addOrNotify(checkpoint, listener);
+        } else {
+            listener.onResponse(null);
+        }
+    }
+
     /**
      * Metrics updater for a refresh
      *
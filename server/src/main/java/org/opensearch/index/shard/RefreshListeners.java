@@ -34,11 +34,14 @@ package org.opensearch.index.shard;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.search.ReferenceManager;
+import org.opensearch.action.support.ContextPreservingActionListener;
 import org.opensearch.common.collect.Tuple;
 import org.opensearch.common.lease.Releasable;
 import org.opensearch.common.metrics.MeanMetric;
 import org.opensearch.common.util.concurrent.RunOnce;
 import org.opensearch.common.util.concurrent.ThreadContext;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.index.seqno.SequenceNumbers;
 import org.opensearch.index.translog.Translog;
 
 import java.io.Closeable;
@@ -47,6 +50,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 
 import static java.util.Objects.requireNonNull;
@@ -95,6 +99,16 @@ public final class RefreshListeners implements ReferenceManager.RefreshListener,
      */
     private volatile Translog.Location lastRefreshedLocation;
 
+    /**
+     * List of listeners waiting for a sequence number checkpoint to become visible. Managed like {@link #refreshListeners} and shares
+     * its listener slots.
+     */
+    private volatile List<Tuple<Long, ActionListener<Void>>> checkpointRefreshListeners = null;
+    /**
+     * The processed local checkpoint that was last made visible by a refresh.
+     */
+    private volatile long lastRefreshedCheckpoint = SequenceNumbers.NO_OPS_PERFORMED;
+
     public RefreshListeners(
         final IntSupplier getMaxRefreshListeners,
         final Runnable forceRefresh,
@@ -182,16 +196,86 @@ public final class RefreshListeners implements ReferenceManager.RefreshListener,
         return true;
     }
 
+    /**
+     * Add a listener that is called once all operations up to and including the sequence number {@code checkpoint} are visible for
+     * search, calling it immediately if they already are. Listeners waiting on the next refresh are coalesced onto it; if this runs out of
+     * listener slots then it forces a refresh instead.
+     *
+     * @param checkpoint the sequence number to wait for
+     * @param listener called once the checkpoint is visible, or failed if the shard is closed
+     * @return did we call the listener (true) or register the listener to call later (false)?
+     */
+    public boolean addOrNotify(long checkpoint, ActionListener<Void> listener) {
+        requireNonNull(listener, "listener cannot be null");
+
+        if (checkpoint <= lastRefreshedCheckpoint) {
+            listener.onResponse(null);
+            return true;
+        }
+        ActionListener<Void> contextPreservingListener = ContextPreservingActionListener.wrapPreservingContext(listener, threadContext);
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("can't wait for refresh on a closed index");
+            }
+            if (checkpoint <= lastRefreshedCheckpoint) {
+                listener.onResponse(null);
+                return true;
+            }
+            final int maxRefreshes = getMaxRefreshListeners.getAsInt();
+            if (refreshForcers == 0 && maxRefreshes > 0 && pendingCount() < maxRefreshes) {
+                addCheckpointListener(checkpoint, contextPreservingListener);
+                return false;
+            }
+        }
+        // No free slot so force a refresh
+        forceRefresh.run();
+        if (checkpoint <= lastRefreshedCheckpoint) {
+            listener.onResponse(null);
+            return true;
+        }
+        // The checkpoint hasn't been processed yet, so the forced refresh couldn't expose it; wait for a later refresh
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("can't wait for refresh on a closed index");
+            }
+            if (checkpoint <= lastRefreshedCheckpoint) {
+                listener.onResponse(null);
+                return true;
+            }
+            addCheckpointListener(checkpoint, contextPreservingListener);
+        }
+        return false;
+    }
+
+    private void addCheckpointListener(long checkpoint, ActionListener<Void> listener) {
+        assert Thread.holdsLock(this);
+        List<Tuple<Long, ActionListener<Void>>> listeners = checkpointRefreshListeners;
+        if (listeners == null) {
+            listeners = new ArrayList<>();
+        }
+        listeners.add(new Tuple<>(checkpoint, listener));
+        checkpointRefreshListeners = listeners;
+    }
+
     @Override
     public void close() throws IOException {
         List<Tuple<Translog.Location, Consumer<Boolean>>> oldListeners;
+        List<Tuple<Long, ActionListener<Void>>> oldCheckpointListeners;
         synchronized (this) {
             oldListeners = refreshListeners;
+            oldCheckpointListeners = checkpointRefreshListeners;
             refreshListeners = null;
+            checkpointRefreshListeners = null;
             closed = true;
         }
         // Fire any listeners we might have had
         fireListeners(oldListeners);
+        if (oldCheckpointListeners != null) {
+            IllegalStateException e = new IllegalStateException("can't wait for refresh on a closed index");
+            for (Tuple<Long, ActionListener<Void>> listener : oldCheckpointListeners) {
+                listener.v2().onFailure(e);
+            }
+        }
     }
 
     /**
@@ -199,17 +283,18 @@ public final class RefreshListeners implements ReferenceManager.RefreshListener,
      */
     public boolean refreshNeeded() {
         // A null list doesn't need a refresh. If we're closed we don't need a refresh either.
-        return refreshListeners != null && false == closed;
+        return (refreshListeners != null || checkpointRefreshListeners != null) && false == closed;
     }
 
     /**
      * The number of pending listeners.
      */
     public int pendingCount() {
-        // No need to synchronize here because we're doing a single volatile read
+        // No need to synchronize here because we're doing volatile reads
         List<Tuple<Translog.Location, Consumer<Boolean>>> listeners = refreshListeners;
+        List<Tuple<Long, ActionListener<Void>>> checkpointListeners = checkpointRefreshListeners;
         // A null list means we haven't accumulated any listeners. Otherwise we need the size.
-        return listeners == null ? 0 : listeners.size();
+        return (listeners == null ? 0 : listeners.size()) + (checkpointListeners == null ? 0 : checkpointListeners.size());
     }
 
     /**
@@ -219,6 +304,13 @@ public final class RefreshListeners implements ReferenceManager.RefreshListener,
         this.currentRefreshLocationSupplier = currentRefreshLocationSupplier;
     }
 
+    /**
+     * Setup the supplier of the processed local checkpoint, used to find the last refreshed checkpoint.
+     */
+    public void setCurrentProcessedCheckpointSupplier(LongSupplier currentProcessedCheckpointSupplier) {
+        this.currentProcessedCheckpointSupplier = currentProcessedCheckpointSupplier;
+    }
+
     /**
      * Snapshot of the translog location before the current refresh if there is a refresh going on or null. Doesn't have to be volatile
      * because when it is used by the refreshing thread.
@@ -226,9 +318,18 @@ public final class RefreshListeners implements ReferenceManager.RefreshListener,
     private Translog.Location currentRefreshLocation;
     private Supplier<Translog.Location> currentRefreshLocationSupplier;
 
+    /**
+     * Snapshot of the processed local checkpoint before the current refresh. Same threading as {@link #currentRefreshLocation}.
+     */
+    private long currentRefreshCheckpoint = SequenceNumbers.NO_OPS_PERFORMED;
+    private LongSupplier currentProcessedCheckpointSupplier;
+
     @Override
     public void beforeRefresh() throws IOException {
         currentRefreshLocation = currentRefreshLocationSupplier.get();
+        if (currentProcessedCheckpointSupplier != null) {
+            currentRefreshCheckpoint = currentProcessedCheckpointSupplier.getAsLong();
+        }
         currentRefreshStartTime = System.nanoTime();
     }
 
@@ -237,6 +338,8 @@ public final class RefreshListeners implements ReferenceManager.RefreshListener,
         // Increment refresh metric before communicating to listeners.
         refreshMetric.inc(System.nanoTime() - currentRefreshStartTime);
 
+        afterRefreshCheckpoint();
+
         /* We intentionally ignore didRefresh here because our timing is a little off. It'd be a useful flag if we knew everything that made
          * it into the refresh, but the way we snapshot the translog position before the refresh, things can sneak into the refresh that we
          * don't know about. */
@@ -303,6 +406,56 @@ public final class RefreshListeners implements ReferenceManager.RefreshListener,
         fireListeners(listenersToFire);
     }
 
+    /**
+     * Fire the checkpoint listeners made visible by this refresh. Every operation up to the checkpoint snapshotted before the refresh is
+     * contained in it, so unlike translog locations nothing can sneak in unaccounted.
+     */
+    private void afterRefreshCheckpoint() {
+        if (currentRefreshCheckpoint <= lastRefreshedCheckpoint) {
+            return;
+        }
+        List<Tuple<Long, ActionListener<Void>>> candidates;
+        synchronized (this) {
+            // Advanced while synchronized so addOrNotify's double check can't register a listener this refresh already covers
+            lastRefreshedCheckpoint = currentRefreshCheckpoint;
+            candidates = checkpointRefreshListeners;
+            if (candidates == null) {
+                return;
+            }
+            checkpointRefreshListeners = null;
+        }
+        List<Tuple<Long, ActionListener<Void>>> listenersToFire = new ArrayList<>();
+        List<Tuple<Long, ActionListener<Void>>> preservedListeners = new ArrayList<>();
+        for (Tuple<Long, ActionListener<Void>> tuple : candidates) {
+            if (tuple.v1() <= currentRefreshCheckpoint) {
+                listenersToFire.add(tuple);
+            } else {
+                preservedListeners.add(tuple);
+            }
+        }
+        if (preservedListeners.isEmpty() == false) {
+            synchronized (this) {
+                if (checkpointRefreshListeners == null) {
+                    if (closed) {
+                        listenersToFire.addAll(preservedListeners);
+                    } else {
+                        checkpointRefreshListeners = preservedListeners;
+                    }
+                } else {
+                    assert closed == false : "Can't be closed and have non-null checkpointRefreshListeners";
+                    checkpointRefreshListeners.addAll(preservedListeners);
+                }
+            }
+        }
+        for (Tuple<Long, ActionListener<Void>> listener : listenersToFire) {
+            try {
+                listener.v2().onResponse(null);
+            } catch (final Exception e) {
+                logger.warn("error firing checkpoint refresh listener", e);
+            }
+        }
+    }
+
     /**
      * Fire some listeners. Does nothing if the list of listeners is null.
      */
@@ -32,6 +32,7 @@
 
 package org.opensearch.node;
 
+import org.apache.ratu.second.esclient.IndexMetrics;
 import org.opensearch.Build;
 import org.opensearch.Version;
 import org.opensearch.action.admin.cluster.node.info.NodeInfo;
@@ -232,7 +233,8 @@ public class NodeService implements Closeable {
         boolean searchPipelineStats,
         boolean resourceUsageStats,
         boolean segmentReplicationTrackerStats,
-        boolean repositoriesStats
+        boolean repositoriesStats,
+        boolean secondaryIndexStats
     ) {
         // for indices stats we want to include previous allocated shards stats as well (it will
         // only be applied to the sensible ones to use, like refresh/merge/flush/indexing stats)
@@ -263,7 +265,8 @@ public class NodeService implements Closeable {
             taskCancellation ? this.taskCancellationMonitoringService.stats() : null,
             searchPipelineStats ? this.searchPipelineService.stats() : null,
             segmentReplicationTrackerStats ? this.segmentReplicationStatsTracker.getTotalRejectionStats() : null,
-            repositoriesStats ? this.repositoriesService.getRepositoriesStats() : null
+            repositoriesStats ? this.repositoriesService.getRepositoriesStats() : null,
+            secondaryIndexStats ? IndexMetrics.stats() : null
         );
     }
 
@@ -0,0 +1,76 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu;
+
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class RatuStartupTests extends OpenSearchTestCase {
+
+    private static final long READY_TIMEOUT_MILLIS = 50;
+
+    public void testTimeoutSkipsDependents() throws Exception {
+        RatuStartup startup = new RatuStartup(READY_TIMEOUT_MILLIS)
+            .phase("a", null, () -> false)
+            .phase("b", null, null, "a");
+        startup.start().get(10, TimeUnit.SECONDS);
+
+        assertEquals(RatuStartup.State.FAILED, startup.state("a"));
+        assertEquals(RatuStartup.State.SKIPPED, startup.state("b"));
+        assertFalse(startup.isHealthy());
+    }
+
+    public void testTolerantTimeoutStartsDependents() throws Exception {
+        RatuStartup startup = new RatuStartup(READY_TIMEOUT_MILLIS)
+            .tolerantPhase("a", () -> false)
+            .phase("b", null, null, "a");
+        startup.start().get(10, TimeUnit.SECONDS);
+
+        assertEquals(RatuStartup.State.DEGRADED, startup.state("a"));
+        assertEquals(RatuStartup.State.READY, startup.state("b"));
+        assertTrue(startup.isHealthy());
+        assertFalse(startup.isReady());
+    }
+
+    public void testPatientPhaseKeepsWaitingPastTheTimeout() throws Exception {
+        AtomicBoolean ready = new AtomicBoolean();
+        RatuStartup startup = new RatuStartup(READY_TIMEOUT_MILLIS)
+            .patientPhase("a", null, ready::get)
+            .phase("b", null, null, "a");
+        CompletableFuture<Void> done = startup.start();
+
+        // 超过几次超时时间后仍在等待，依赖它的阶段没有被跳过
+        Thread.sleep(READY_TIMEOUT_MILLIS * 4);
+        assertEquals(RatuStartup.State.WAITING_READY, startup.state("a"));
+        assertEquals(RatuStartup.State.PENDING, startup.state("b"));
+
+        ready.set(true);
+        done.get(10, TimeUnit.SECONDS);
+        assertTrue(startup.isReady());
+    }
+
+    public void testGraphIndexNames() throws Exception {
+        Path config = createTempDir();
+        Files.write(config.resolve("graph-a.properties"), Arrays.asList("index.ratu.index-name=ratudb", "index.ratu.opensearch.interface=LOCAL_NODE"));
+        Files.write(config.resolve("graph-b.properties"), Arrays.asList("index.search.backend=opensearch", "storage.backend=cql"));
+        Files.write(config.resolve("other.properties"), Collections.singletonList("storage.hostname=127.0.0.1"));
+        Files.write(config.resolve("jvm.options"), Collections.singletonList("index.x.index-name=ignored"));
+
+        assertEquals(new TreeSet<>(Arrays.asList("janusgraph", "ratudb")), RatuStartup.graphIndexNames(config));
+        assertTrue(RatuStartup.graphIndexNames(config.resolve("missing")).isEmpty());
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.graph;
+
+import org.opensearch.common.settings.Settings;
+import org.opensearch.script.UpdateScript;
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_DOC_KEY;
+import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_NATIVE_UPDATE_SOURCE;
+import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_PARAMS_ADDITIONS_KEY;
+import static org.janusgraph.diskstorage.opensearch.OpenSearchConstants.ES_PARAMS_DELETIONS_KEY;
+
+public class GraphUpdateScriptPluginTests extends OpenSearchTestCase {
+
+    private final UpdateScript.Factory factory = new GraphUpdateScriptPlugin()
+        .getScriptEngine(Settings.EMPTY, Collections.singletonList(UpdateScript.CONTEXT))
+        .compile("update", ES_NATIVE_UPDATE_SOURCE, UpdateScript.CONTEXT, Collections.emptyMap());
+
+    public void testListAdditionKeepsDuplicates() {
+        Map<String, Object> source = source("tags", new ArrayList<>(Arrays.asList("a", "b")));
+        Map<String, Object> ctx = execute(source, Collections.emptyList(), Collections.singletonList(field("tags", "a", "LIST")), null);
+
+        assertEquals(Arrays.asList("a", "b", "a"), source.get("tags"));
+        assertNull(ctx.get("op"));
+    }
+
+    public void testSetAdditionSkipsExistingValues() {
+        Map<String, Object> source = source("tags", new ArrayList<>(Arrays.asList("a", "b")));
+        Map<String, Object> ctx = execute(source, Collections.emptyList(), Arrays.asList(field("tags", "b", "SET"), field("tags", "c", "SET")), null);
+
+        assertEquals(Arrays.asList("a", "b", "c"), source.get("tags"));
+        assertNull(ctx.get("op"));
+    }
+
+    public void testAdditionTurnsSingleValueIntoList() {
+        Map<String, Object> source = source("tags", "a");
+        execute(source, Collections.emptyList(), Collections.singletonList(field("tags", "b", "LIST")), null);
+
+        assertEquals(Arrays.asList("a", "b"), source.get("tags"));
+    }
+
+    public void testAdditionCreatesMissingField() {
+        Map<String, Object> source = new HashMap<>();
+        execute(source, Collections.emptyList(), Collections.singletonList(field("tags", "a", "SET")), null);
+
+        assertEquals(Collections.singletonList("a"), source.get("tags"));
+    }
+
+    public void testListDeletionRemovesOneOccurrence() {
+        Map<String, Object> source = source("tags", new ArrayList<>(Arrays.asList("a", "b", "a")));
+        execute(source, Collections.singletonList(field("tags", "a", "LIST")), Collections.emptyList(), null);
+
+        assertEquals(Arrays.asList("b", "a"), source.get("tags"));
+    }
+
+    public void testDeletionComparesNumbersByValue() {
+        // _source 解析出 Integer，参数是 Long
+        Map<String, Object> source = source("ages", new ArrayList<>(Arrays.asList(1, 2)));
+        execute(source, Collections.singletonList(field("ages", 2L, "SET")), Collections.emptyList(), null);
+
+        assertEquals(Collections.singletonList(1), source.get("ages"));
+    }
+
+    public void testSingleDeletionRemovesField() {
+        Map<String, Object> source = source("name", "a");
+        execute(source, Collections.singletonList(field("name", "", "SINGLE")), Collections.emptyList(), null);
+
+        assertFalse(source.containsKey("name"));
+    }
+
+    public void testDeletionsRunBeforeAdditionsAndDoc() {
+        Map<String, Object> source = source("tags", new ArrayList<>(Collections.singletonList("a")));
+        source.put("name", "old");
+        execute(
+            source,
+            Arrays.asList(field("tags", "a", "SET"), field("name", "", "SINGLE")),
+            Collections.singletonList(field("tags", "a", "SET")),
+            Collections.singletonMap("name", "new")
+        );
+
+        assertEquals(Collections.singletonList("a"), source.get("tags"));
+        assertEquals("new", source.get("name"));
+    }
+
+    public void testUnchangedDocumentIsNotWritten() {
+        Map<String, Object> source = source("tags", new ArrayList<>(Collections.singletonList("a")));
+        source.put("name", "a");
+        Map<String, Object> ctx = execute(
+            source,
+            Collections.singletonList(field("tags", "b", "SET")),
+            Collections.singletonList(field("tags", "a", "SET")),
+            Collections.singletonMap("name", "a")
+        );
+
+        assertEquals("none", ctx.get("op"));
+        assertEquals(Collections.singletonList("a"), source.get("tags"));
+    }
+
+    public void testUnknownScriptIsRejected() {
+        expectThrows(
+            IllegalArgumentException.class,
+            () -> new GraphUpdateScriptPlugin.GraphUpdateScriptEngine().compile("update", "other", UpdateScript.CONTEXT, Collections.emptyMap())
+        );
+    }
+
+    private Map<String, Object> execute(Map<String, Object> source, List<Map<String, Object>> deletions, List<Map<String, Object>> additions,
+                                        Map<String, Object> doc) {
+        Map<String, Object> params = new HashMap<>();
+        params.put(ES_PARAMS_DELETIONS_KEY, deletions);
+        params.put(ES_PARAMS_ADDITIONS_KEY, additions);
+        if (doc != null) {
+            params.put(ES_DOC_KEY, doc);
+        }
+        Map<String, Object> ctx = new HashMap<>();
+        ctx.put("_source", source);
+        factory.newInstance(params, ctx).execute();
+        return ctx;
+    }
+
+    private static Map<String, Object> source(String name, Object value) {
+        Map<String, Object> source = new HashMap<>();
+        source.put(name, value);
+        return source;
+    }
+
+    private static Map<String, Object> field(String name, Object value, String cardinality) {
+        Map<String, Object> field = new HashMap<>();
+        field.put("name", name);
+        field.put("value", value);
+        field.put("cardinality", cardinality);
+        return field;
+    }
+}
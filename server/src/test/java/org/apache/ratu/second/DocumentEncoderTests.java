@@ -0,0 +1,197 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.Clustering;
+import org.apache.cassandra.db.DeletionTime;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.db.marshal.ListType;
+import org.apache.cassandra.db.marshal.MapType;
+import org.apache.cassandra.db.marshal.SetType;
+import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.db.rows.BTreeRow;
+import org.apache.cassandra.db.rows.BufferCell;
+import org.apache.cassandra.db.rows.Cell;
+import org.apache.cassandra.db.rows.CellPath;
+import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.schema.ColumnMetadata;
+import org.apache.cassandra.schema.TableMetadata;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.TimeUUID;
+import org.opensearch.action.update.UpdateRequest;
+import org.opensearch.common.xcontent.XContentType;
+import org.opensearch.core.common.bytes.BytesReference;
+import org.opensearch.index.query.QueryBuilder;
+import org.opensearch.index.query.QueryBuilders;
+import org.opensearch.test.OpenSearchSingleNodeTestCase;
+import org.junit.BeforeClass;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * partial 模式下非 frozen 集合的元素级修改：写入读出的完整值后，索引中能搜到每一次修改
+ */
+public class DocumentEncoderTests extends OpenSearchSingleNodeTestCase {
+
+    private static final String INDEX = "docs";
+    private static final long TIMESTAMP = 1000L;
+
+    private static TableMetadata metadata;
+    private static ColumnMetadata list;
+    private static ColumnMetadata set;
+    private static ColumnMetadata map;
+    private static DocumentEncoder encoder;
+
+    // 每个 list 元素的 cell path，按写入顺序递增
+    private final List<ByteBuffer> listPaths = new ArrayList<>();
+
+    @BeforeClass
+    public static void compileEncoder() {
+        DatabaseDescriptor.clientInitialization();
+        metadata = TableMetadata.builder("ks", "t")
+            .partitioner(Murmur3Partitioner.instance)
+            .addPartitionKeyColumn("id", UTF8Type.instance)
+            .addRegularColumn("l", ListType.getInstance(Int32Type.instance, true))
+            .addRegularColumn("s", SetType.getInstance(UTF8Type.instance, true))
+            .addRegularColumn("m", MapType.getInstance(UTF8Type.instance, Int32Type.instance, true))
+            .build();
+        list = metadata.getColumn(ByteBufferUtil.bytes("l"));
+        set = metadata.getColumn(ByteBufferUtil.bytes("s"));
+        map = metadata.getColumn(ByteBufferUtil.bytes("m"));
+
+        Map<String, Map<String, String>> schema = new HashMap<>();
+        schema.put("l", Collections.singletonMap("type", "integer"));
+        schema.put("s", Collections.singletonMap("type", "keyword"));
+        schema.put("m", Collections.singletonMap("type", "object"));
+        encoder = DocumentEncoder.compile(metadata, schema, XContentType.JSON, true);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        createIndex(INDEX);
+        // 初始文档：l = [1, 2]，s = {a, b}，m = {x: 1}
+        Row initial = row(
+            listElement(1),
+            listElement(2),
+            setElement("a"),
+            setElement("b"),
+            mapEntry("x", 1)
+        );
+        write(initial, initial);
+    }
+
+    public void testListAppendIsIndexed() throws Exception {
+        Row update = row(listElement(3));
+        Row current = row(listElementAt(0, 1), listElementAt(1, 2), listElementAt(2, 3), setElement("a"), setElement("b"), mapEntry("x", 1));
+        assertTrue(encoder.updatesElements(update));
+        assertFalse(encoder.replacesObjects(update));
+        write(update, current);
+
+        assertHits(1, QueryBuilders.termQuery("l", 3));
+        assertHits(1, QueryBuilders.termQuery("l", 1));
+    }
+
+    public void testSetRemovalIsIndexed() throws Exception {
+        Row update = row(BufferCell.tombstone(set, TIMESTAMP + 1, FBUtilities.nowInSeconds(), CellPath.create(UTF8Type.instance.decompose("b"))));
+        Row current = row(listElementAt(0, 1), listElementAt(1, 2), setElement("a"), mapEntry("x", 1));
+        assertTrue(encoder.updatesElements(update));
+        write(update, current);
+
+        assertHits(0, QueryBuilders.termQuery("s.keyword", "b"));
+        assertHits(1, QueryBuilders.termQuery("s.keyword", "a"));
+    }
+
+    public void testRemovingTheLastElementClearsTheField() throws Exception {
+        Row update = row(
+            BufferCell.tombstone(set, TIMESTAMP + 1, FBUtilities.nowInSeconds(), CellPath.create(UTF8Type.instance.decompose("a"))),
+            BufferCell.tombstone(set, TIMESTAMP + 1, FBUtilities.nowInSeconds(), CellPath.create(UTF8Type.instance.decompose("b")))
+        );
+        Row current = row(listElementAt(0, 1), listElementAt(1, 2), mapEntry("x", 1));
+        write(update, current);
+
+        assertHits(0, QueryBuilders.existsQuery("s"));
+        assertHits(1, QueryBuilders.termQuery("l", 2));
+    }
+
+    public void testMapPutIsIndexed() throws Exception {
+        Row update = row(mapEntry("y", 2));
+        Row current = row(listElementAt(0, 1), listElementAt(1, 2), setElement("a"), setElement("b"), mapEntry("x", 1), mapEntry("y", 2));
+        assertTrue(encoder.updatesElements(update));
+        // 写入 map 的行整体替换该字段
+        assertTrue(encoder.replacesObjects(update));
+        write(update, current);
+
+        assertHits(1, QueryBuilders.termQuery("m.y", 2));
+        assertHits(1, QueryBuilders.termQuery("m.x", 1));
+    }
+
+    public void testWholeAssignmentDoesNotNeedTheCurrentRow() throws Exception {
+        Row.Builder builder = BTreeRow.unsortedBuilder();
+        builder.newRow(Clustering.EMPTY);
+        builder.addComplexDeletion(list, DeletionTime.build(TIMESTAMP, FBUtilities.nowInSeconds()));
+        builder.addCell(listElement(7));
+        Row update = builder.build();
+        assertFalse(encoder.updatesElements(update));
+        write(update, null);
+
+        assertHits(1, QueryBuilders.termQuery("l", 7));
+        assertHits(0, QueryBuilders.termQuery("l", 1));
+    }
+
+    /**
+     * 与 LocalTransport 写入 update 操作的方式相同；测试节点没有 painless，map 的替换脚本也以 doc_as_upsert 写入，
+     * 对只增加 key 的修改结果相同
+     */
+    private void write(Row update, Row current) throws Exception {
+        BytesReference document = encoder.encode(update, current, "id", "1", null);
+        client().update(new UpdateRequest(INDEX, "1").doc(BytesReference.toBytes(document), XContentType.JSON).docAsUpsert(true)).actionGet();
+        client().admin().indices().prepareRefresh(INDEX).get();
+    }
+
+    private void assertHits(long expected, QueryBuilder query) {
+        assertEquals(query.toString(), expected, client().prepareSearch(INDEX).setQuery(query).get().getHits().getTotalHits().value);
+    }
+
+    private static Row row(Cell<?>... cells) {
+        Row.Builder builder = BTreeRow.unsortedBuilder();
+        builder.newRow(Clustering.EMPTY);
+        Arrays.stream(cells).forEach(builder::addCell);
+        return builder.build();
+    }
+
+    private Cell<?> listElement(int value) {
+        listPaths.add(ByteBuffer.wrap(TimeUUID.Generator.nextTimeUUIDAsBytes()));
+        return listElementAt(listPaths.size() - 1, value);
+    }
+
+    private Cell<?> listElementAt(int position, int value) {
+        while (listPaths.size() <= position) {
+            listPaths.add(ByteBuffer.wrap(TimeUUID.Generator.nextTimeUUIDAsBytes()));
+        }
+        return BufferCell.live(list, TIMESTAMP, Int32Type.instance.decompose(value), CellPath.create(listPaths.get(position)));
+    }
+
+    private static Cell<?> setElement(String element) {
+        return BufferCell.live(set, TIMESTAMP, ByteBufferUtil.EMPTY_BYTE_BUFFER, CellPath.create(UTF8Type.instance.decompose(element)));
+    }
+
+    private static Cell<?> mapEntry(String key, int value) {
+        return BufferCell.live(map, TIMESTAMP, Int32Type.instance.decompose(value), CellPath.create(UTF8Type.instance.decompose(key)));
+    }
+}
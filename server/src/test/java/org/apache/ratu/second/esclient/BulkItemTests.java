@@ -0,0 +1,112 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+import org.opensearch.common.io.stream.BytesStreamOutput;
+import org.opensearch.common.xcontent.XContentHelper;
+import org.opensearch.common.xcontent.XContentType;
+import org.opensearch.core.common.bytes.BytesArray;
+import org.opensearch.core.common.bytes.BytesReference;
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class BulkItemTests extends OpenSearchTestCase {
+
+    public void testMergeOverridesEarlierFields() throws IOException {
+        BulkItem earlier = BulkItem.update("idx", "1", json("{\"a\":1,\"b\":1}"), XContentType.JSON);
+        BulkItem later = BulkItem.update("idx", "1", json("{\"b\":2,\"c\":2}"), XContentType.JSON);
+
+        BulkItem merged = BulkItem.merge(earlier, later);
+
+        assertEquals(BulkItem.OpType.UPDATE, merged.opType);
+        Map<String, Object> fields = XContentHelper.convertToMap(merged.source, true, merged.contentType).v2();
+        assertEquals(1, fields.get("a"));
+        assertEquals(2, fields.get("b"));
+        assertEquals(2, fields.get("c"));
+        assertEquals(Arrays.asList(earlier, later), merged.absorbed);
+    }
+
+    public void testMergeIntoIndexKeepsTheIndexAndItsVersion() throws IOException {
+        BulkItem earlier = BulkItem.index("idx", "1", json("{\"a\":1}"), XContentType.JSON, 100);
+        BulkItem later = BulkItem.update("idx", "1", json("{\"a\":2}"), XContentType.JSON);
+
+        BulkItem merged = BulkItem.merge(earlier, later);
+
+        assertEquals(BulkItem.OpType.INDEX, merged.opType);
+        assertEquals(100, merged.version);
+        assertEquals(2, XContentHelper.convertToMap(merged.source, true, merged.contentType).v2().get("a"));
+    }
+
+    public void testReplaceWinsOverUpdate() throws IOException {
+        BulkItem earlier = BulkItem.update("idx", "1", json("{\"a\":1}"), XContentType.JSON);
+        BulkItem later = BulkItem.replace("idx", "1", json("{\"m\":{\"x\":1}}"), XContentType.JSON);
+
+        assertEquals(BulkItem.OpType.REPLACE, BulkItem.merge(earlier, later).opType);
+    }
+
+    public void testMergeChainsAbsorbedItems() throws IOException {
+        BulkItem first = BulkItem.update("idx", "1", json("{\"a\":1}"), XContentType.JSON);
+        BulkItem second = BulkItem.update("idx", "1", json("{\"b\":1}"), XContentType.JSON);
+        BulkItem third = BulkItem.update("idx", "1", json("{\"c\":1}"), XContentType.JSON);
+
+        BulkItem merged = BulkItem.merge(BulkItem.merge(first, second), third);
+
+        // 合并掉的每个原始操作都随合并后的操作确认
+        assertTrue(merged.absorbed.containsAll(Arrays.asList(first, second, third)));
+        assertEquals(3, XContentHelper.convertToMap(merged.source, true, merged.contentType).v2().size());
+    }
+
+    public void testVersionedItemsAreSupersededByConflicts() {
+        assertTrue(BulkItem.delete("idx", "1", 5).isSuperseded(409));
+        assertFalse(BulkItem.delete("idx", "1", 5).isSuperseded(500));
+        assertFalse(BulkItem.delete("idx", "1").isSuperseded(409));
+    }
+
+    public void testWriteVersionedIndex() throws IOException {
+        BulkItem item = BulkItem.index("idx", "1", json("{\"a\":1}"), XContentType.JSON, 7);
+
+        assertEquals(
+            "{\"index\":{\"_index\":\"idx\",\"_id\":\"1\",\"version\":7,\"version_type\":\"external_gte\"}}\n{\"a\":1}\n",
+            write(item)
+        );
+    }
+
+    public void testWriteUpdate() throws IOException {
+        BulkItem item = BulkItem.update("idx", "1", json("{\"a\":1}"), XContentType.JSON);
+
+        assertEquals("{\"update\":{\"_index\":\"idx\",\"_id\":\"1\"}}\n{\"doc\":{\"a\":1},\"doc_as_upsert\":true}\n", write(item));
+    }
+
+    public void testWriteDeleteWithCopies() throws IOException {
+        BulkItem item = BulkItem.delete("idx", "1");
+        item.copies = Arrays.asList("idx-1", "idx-2");
+
+        assertEquals(
+            "{\"delete\":{\"_index\":\"idx\",\"_id\":\"1\"}}\n"
+                + "{\"delete\":{\"_index\":\"idx-1\",\"_id\":\"1\"}}\n"
+                + "{\"delete\":{\"_index\":\"idx-2\",\"_id\":\"1\"}}\n",
+            write(item)
+        );
+    }
+
+    private static BytesReference json(String json) {
+        return new BytesArray(json);
+    }
+
+    private static String write(BulkItem item) throws IOException {
+        BytesStreamOutput body = new BytesStreamOutput();
+        item.writeTo(body);
+        return new String(BytesReference.toBytes(body.bytes()), UTF_8);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.AsciiType;
+import org.apache.cassandra.db.marshal.BooleanType;
+import org.apache.cassandra.db.marshal.DoubleType;
+import org.apache.cassandra.db.marshal.FloatType;
+import org.apache.cassandra.db.marshal.InetAddressType;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.db.marshal.ListType;
+import org.apache.cassandra.db.marshal.LongType;
+import org.apache.cassandra.db.marshal.MapType;
+import org.apache.cassandra.db.marshal.TimestampType;
+import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.db.marshal.UUIDType;
+import org.apache.cassandra.schema.ColumnMetadata;
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class IndexOnlyRowsTests extends OpenSearchTestCase {
+
+    private static final List<AbstractType<?>> LOSSLESS_TYPES = Arrays.asList(
+        Int32Type.instance,
+        LongType.instance,
+        FloatType.instance,
+        DoubleType.instance,
+        BooleanType.instance,
+        UTF8Type.instance,
+        AsciiType.instance,
+        UUIDType.instance,
+        InetAddressType.instance
+    );
+
+    private static ColumnMetadata column(AbstractType<?> type) {
+        return ColumnMetadata.regularColumn("ks", "t", "c", type);
+    }
+
+    public void testFullModeWritesDefaultsSoNothingIsRestorable() {
+        for (AbstractType<?> type : LOSSLESS_TYPES) {
+            assertFalse(type.asCQL3Type().toString(), IndexOnlyRows.isRestorable(column(type), false));
+        }
+    }
+
+    public void testPartialModeRestoresLosslessTypes() {
+        for (AbstractType<?> type : LOSSLESS_TYPES) {
+            assertTrue(type.asCQL3Type().toString(), IndexOnlyRows.isRestorable(column(type), true));
+        }
+    }
+
+    public void testLossyTypesAreNeverRestorable() {
+        List<AbstractType<?>> lossy = Arrays.asList(
+            TimestampType.instance,
+            ListType.getInstance(Int32Type.instance, true),
+            MapType.getInstance(UTF8Type.instance, Int32Type.instance, true)
+        );
+        for (AbstractType<?> type : lossy) {
+            assertFalse(IndexOnlyRows.isRestorable(column(type), false));
+            assertFalse(IndexOnlyRows.isRestorable(column(type), true));
+        }
+    }
+}
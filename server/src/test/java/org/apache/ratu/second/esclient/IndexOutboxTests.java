@@ -0,0 +1,145 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+import org.opensearch.common.xcontent.XContentType;
+import org.opensearch.core.common.bytes.BytesArray;
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class IndexOutboxTests extends OpenSearchTestCase {
+
+    private Path directory;
+    private Map<String, String> options;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        directory = createTempDir();
+        options = new HashMap<>();
+        options.put(IndexOutbox.OUTBOX_DIRECTORY, directory.toString());
+        options.put(IndexOutbox.OUTBOX_SEGMENT_MB, "1");
+    }
+
+    public void testRecoverUnacknowledgedItemsInOrder() throws IOException {
+        IndexOutbox outbox = IndexOutbox.open("recover", options);
+        assertTrue(outbox.takeRecovered().isEmpty());
+        List<BulkItem> written = Arrays.asList(
+            BulkItem.index("idx", "1", new BytesArray("{\"a\":1}"), XContentType.JSON, 10),
+            BulkItem.update("idx", "2", new BytesArray("{\"b\":2}"), XContentType.JSON),
+            BulkItem.replace("idx", "3", new BytesArray("{\"m\":{}}"), XContentType.JSON),
+            BulkItem.fill("idx", "4", new BytesArray("{\"c\":3}"), XContentType.JSON),
+            BulkItem.delete("idx", "5", 20)
+        );
+        written.forEach(outbox::append);
+        assertEquals(written.size(), outbox.getBacklog());
+        outbox.close();
+
+        IndexOutbox reopened = IndexOutbox.open("recover", options);
+        List<BulkItem> recovered = reopened.takeRecovered();
+        assertEquals(written.size(), recovered.size());
+        for (int i = 0; i < written.size(); i++) {
+            BulkItem expected = written.get(i);
+            BulkItem actual = recovered.get(i);
+            assertEquals(expected.opType, actual.opType);
+            assertEquals(expected.index, actual.index);
+            assertEquals(expected.id, actual.id);
+            assertEquals(expected.source, actual.source);
+            assertEquals(expected.version, actual.version);
+        }
+        assertEquals(written.size(), reopened.getBacklog());
+        // 只能取一次
+        assertTrue(reopened.takeRecovered().isEmpty());
+
+        // 重放的操作确认后，残留的段文件被删除
+        recovered.forEach(reopened::ack);
+        assertEquals(0, reopened.getBacklog());
+        assertEquals(1, reopened.getSegmentCount());
+        reopened.close();
+    }
+
+    public void testTruncatedRecordIsDropped() throws IOException {
+        IndexOutbox outbox = IndexOutbox.open("truncated", options);
+        outbox.append(BulkItem.update("idx", "1", new BytesArray("{\"a\":1}"), XContentType.JSON));
+        outbox.append(BulkItem.update("idx", "2", new BytesArray("{\"a\":2}"), XContentType.JSON));
+        outbox.close();
+
+        // 模拟写入第二条记录时被中断
+        Path segment = onlySegment(directory.resolve("truncated"));
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        IndexOutbox reopened = IndexOutbox.open("truncated", options);
+        List<BulkItem> recovered = reopened.takeRecovered();
+        assertEquals(1, recovered.size());
+        assertEquals("1", recovered.get(0).id);
+        reopened.close();
+    }
+
+    public void testCorruptedRecordStopsTheSegment() throws IOException {
+        IndexOutbox outbox = IndexOutbox.open("corrupted", options);
+        outbox.append(BulkItem.update("idx", "1", new BytesArray("{\"a\":1}"), XContentType.JSON));
+        outbox.append(BulkItem.update("idx", "2", new BytesArray("{\"a\":2}"), XContentType.JSON));
+        outbox.close();
+
+        Path segment = onlySegment(directory.resolve("corrupted"));
+        byte[] bytes = Files.readAllBytes(segment);
+        // 破坏第二条记录的最后一个字节，校验失败
+        bytes[bytes.length - 1] ^= 0x7f;
+        Files.write(segment, bytes);
+
+        IndexOutbox reopened = IndexOutbox.open("corrupted", options);
+        List<BulkItem> recovered = reopened.takeRecovered();
+        assertEquals(1, recovered.size());
+        assertEquals("1", recovered.get(0).id);
+        reopened.close();
+    }
+
+    public void testAcknowledgedSegmentIsDeletedOnRoll() throws IOException {
+        IndexOutbox outbox = IndexOutbox.open("roll", options);
+        // 一条超过段大小的记录写满当前段
+        BulkItem large = BulkItem.index("idx", "1", new BytesArray("{\"a\":\"" + "x".repeat(1024 * 1024) + "\"}"), XContentType.JSON);
+        outbox.append(large);
+        assertEquals(2, outbox.getSegmentCount());
+
+        outbox.ack(large);
+        assertEquals(1, outbox.getSegmentCount());
+        assertEquals(0, outbox.getBacklog());
+        outbox.close();
+
+        IndexOutbox reopened = IndexOutbox.open("roll", options);
+        assertTrue(reopened.takeRecovered().isEmpty());
+        reopened.close();
+    }
+
+    public void testDestroyRemovesTheDirectory() throws IOException {
+        IndexOutbox outbox = IndexOutbox.open("destroyed", options);
+        outbox.append(BulkItem.delete("idx", "1"));
+        outbox.destroy();
+
+        assertFalse(Files.exists(directory.resolve("destroyed")));
+    }
+
+    private static Path onlySegment(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> Files.isRegularFile(path)).sorted().findFirst().orElseThrow(AssertionError::new);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * The OpenSearch Contributors require contributions made to
+ * this file be licensed under the Apache-2.0 license or a
+ * compatible open source license.
+ */
+
+package org.apache.ratu.second.esclient;
+
+import org.apache.ratu.second.exception.BaseException;
+import org.opensearch.index.query.QueryBuilders;
+import org.opensearch.test.OpenSearchTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class QueryTemplateTests extends OpenSearchTestCase {
+
+    public void testLiteralsBecomeParameters() {
+        List<Object> params = new ArrayList<>();
+        String template = QueryTemplate.template("{query: {type: 'term', field: 'name', value: 'a b'}, size: 20}", params);
+
+        assertEquals(Arrays.asList("a b", 20L), params);
+        assertFalse(template.contains("a b"));
+        // type、field 的值决定查询结构，留在模板中
+        assertTrue(template.contains("\"term\""));
+        assertTrue(template.contains("\"name\""));
+    }
+
+    public void testSameStructureSharesTemplate() {
+        List<Object> first = new ArrayList<>();
+        List<Object> second = new ArrayList<>();
+        String a = QueryTemplate.template("{query:{type:term,field:age,value:1}}", first);
+        String b = QueryTemplate.template("{ query : { type : \"term\", field : \"age\", value : 2.5 } }", second);
+
+        assertEquals(a, b);
+        assertEquals(Arrays.<Object>asList(1L), first);
+        assertEquals(Arrays.<Object>asList(2.5), second);
+    }
+
+    public void testQuotedLiteralsAreUnescaped() {
+        List<Object> params = new ArrayList<>();
+        QueryTemplate.template("{query:{type:term,field:name,value:'it\\'s\\n\\u0041'}}", params);
+
+        assertEquals(Arrays.<Object>asList("it's\nA"), params);
+    }
+
+    public void testBooleansAndNullStayInTemplate() {
+        List<Object> params = new ArrayList<>();
+        String template = QueryTemplate.template("{refresh: true, cache: false, x: null}", params);
+
+        assertTrue(params.isEmpty());
+        assertEquals("{\"refresh\":true,\"cache\":false,\"x\":null}", template);
+    }
+
+    public void testTermQuery() {
+        BoundQuery bound = QueryTemplate.bind("{query:{type:term,field:age,value:5}}");
+
+        assertEquals(QueryBuilders.termQuery("age", 5L), bound.query);
+        assertFalse(bound.isAggregation());
+    }
+
+    public void testBindUsesTheNewParameters() {
+        BoundQuery first = QueryTemplate.bind("{query:{type:match,field:title,value:'first'}}");
+        BoundQuery second = QueryTemplate.bind("{query:{type:match,field:title,value:'second'}}");
+
+        assertEquals(QueryBuilders.matchQuery("title", "first"), first.query);
+        assertEquals(QueryBuilders.matchQuery("title", "second"), second.query);
+        assertNotEquals(first.normalized, second.normalized);
+    }
+
+    public void testRangeQuery() {
+        BoundQuery bound = QueryTemplate.bind("{query:{type:range,field:age,gte:18,lt:65}}");
+
+        assertEquals(QueryBuilders.rangeQuery("age").gte(18L).lt(65L), bound.query);
+    }
+
+    public void testBoolQuery() {
+        BoundQuery bound = QueryTemplate.bind(
+            "{query:{bool:{must:[{type:term,field:city,value:'x'}],must_not:{type:prefix,field:name,value:'t'},minimum_should_match:1}}}"
+        );
+
+        assertEquals(
+            QueryBuilders.boolQuery()
+                .must(QueryBuilders.termQuery("city", "x"))
+                .mustNot(QueryBuilders.prefixQuery("name", "t"))
+                .minimumShouldMatch("1"),
+            bound.query
+        );
+    }
+
+    public void testOtherQueryTypesAreParsed() {
+        BoundQuery bound = QueryTemplate.bind("{query:{type:fuzzy,field:name,value:'joe'}}");
+
+        assertEquals(QueryBuilders.fuzzyQuery("name", "joe"), bound.query);
+    }
+
+    public void testAggregationsAreParsed() {
+        BoundQuery bound = QueryTemplate.bind("{aggs:{ages:{terms:{field:age,size:5}}}}");
+
+        assertTrue(bound.isAggregation());
+        assertEquals(1, bound.aggregations.count());
+    }
+
+    public void testOptions() {
+        BoundQuery bound = QueryTemplate.bind("{query:{type:term,field:age,value:1},size:-1,from:5,cache:true}");
+
+        assertEquals(Long.MAX_VALUE, bound.size());
+        assertEquals(5, bound.from());
+        assertEquals(Boolean.TRUE, bound.cache());
+        assertFalse(bound.refresh());
+        assertEquals(BoundQuery.DEFAULT_SIZE, QueryTemplate.bind("{query:{type:term,field:age,value:1}}").size());
+    }
+
+    public void testInvalidExpressionIsRejected() {
+        expectThrows(BaseException.class, () -> QueryTemplate.bind("{query:{type:term}}"));
+        expectThrows(BaseException.class, () -> QueryTemplate.bind("{query:{type:term,field:name,value:'open"));
+    }
+}
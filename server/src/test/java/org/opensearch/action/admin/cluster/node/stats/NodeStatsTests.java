@@ -898,6 +898,7 @@ public class NodeStatsTests extends OpenSearchTestCase {
             null,
             null,
             segmentReplicationRejectionStats,
+            null,
             null
         );
     }
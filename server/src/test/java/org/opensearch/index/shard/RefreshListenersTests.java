@@ -51,6 +51,7 @@ import org.opensearch.common.unit.TimeValue;
 import org.opensearch.common.util.BigArrays;
 import org.opensearch.common.util.concurrent.ThreadContext;
 import org.opensearch.common.util.io.IOUtils;
+import org.opensearch.core.action.ActionListener;
 import org.opensearch.core.common.bytes.BytesArray;
 import org.opensearch.core.common.bytes.BytesReference;
 import org.opensearch.core.index.Index;
@@ -96,6 +97,7 @@ import java.util.function.Consumer;
 
 import static org.opensearch.common.unit.TimeValue.timeValueMillis;
 import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.instanceOf;
 
 /**
  * Tests how {@linkplain RefreshListeners} interacts with {@linkplain InternalEngine}.
@@ -175,6 +177,7 @@ public class RefreshListenersTests extends OpenSearchTestCase {
         engine = new InternalEngine(config);
         engine.translogManager().recoverFromTranslog((s) -> 0, engine.getProcessedLocalCheckpoint(), Long.MAX_VALUE);
         listeners.setCurrentRefreshLocationSupplier(engine.translogManager()::getTranslogLastWriteLocation);
+        listeners.setCurrentProcessedCheckpointSupplier(engine::getProcessedLocalCheckpoint);
     }
 
     @After
@@ -423,6 +426,67 @@ public class RefreshListenersTests extends OpenSearchTestCase {
         assertEquals(1, listeners.pendingCount());
     }
 
+    public void testCheckpointListeners() throws Exception {
+        assertEquals(0, listeners.pendingCount());
+        Engine.IndexResult first = index("1");
+        Engine.IndexResult second = index("2");
+        AtomicBoolean firstCalled = new AtomicBoolean();
+        AtomicBoolean secondCalled = new AtomicBoolean();
+        assertFalse(listeners.addOrNotify(first.getSeqNo(), ActionListener.wrap(() -> firstCalled.set(true))));
+        assertFalse(listeners.addOrNotify(second.getSeqNo(), ActionListener.wrap(() -> secondCalled.set(true))));
+        assertEquals(2, listeners.pendingCount());
+        assertTrue(listeners.refreshNeeded());
+
+        // Both waiters are released by a single refresh
+        engine.refresh("I said so");
+        assertTrue(firstCalled.get());
+        assertTrue(secondCalled.get());
+        assertEquals(0, listeners.pendingCount());
+
+        // Already visible checkpoints are notified inline
+        AtomicBoolean visibleCalled = new AtomicBoolean();
+        assertTrue(listeners.addOrNotify(first.getSeqNo(), ActionListener.wrap(() -> visibleCalled.set(true))));
+        assertTrue(visibleCalled.get());
+
+        // Waiting on a checkpoint that hasn't been processed yet survives refreshes that don't cover it
+        AtomicBoolean laterCalled = new AtomicBoolean();
+        assertFalse(listeners.addOrNotify(second.getSeqNo() + 1, ActionListener.wrap(() -> laterCalled.set(true))));
+        engine.refresh("I said so");
+        assertFalse(laterCalled.get());
+        assertEquals(1, listeners.pendingCount());
+        index("3");
+        engine.refresh("I said so");
+        assertTrue(laterCalled.get());
+        assertEquals(0, listeners.pendingCount());
+    }
+
+    public void testCheckpointListenersTooManyAndClose() throws Exception {
+        Engine.IndexResult index = index("1");
+        List<AtomicBoolean> called = new ArrayList<>(maxListeners);
+        for (int i = 0; i < maxListeners; i++) {
+            AtomicBoolean listenerCalled = new AtomicBoolean();
+            called.add(listenerCalled);
+            assertFalse(listeners.addOrNotify(index.getSeqNo(), ActionListener.wrap(() -> listenerCalled.set(true))));
+        }
+        assertEquals(maxListeners, listeners.pendingCount());
+
+        // Out of slots so this forces a refresh, which releases everyone
+        AtomicBoolean forcingCalled = new AtomicBoolean();
+        assertTrue(listeners.addOrNotify(index.getSeqNo(), ActionListener.wrap(() -> forcingCalled.set(true))));
+        assertTrue(forcingCalled.get());
+        for (AtomicBoolean listenerCalled : called) {
+            assertTrue(listenerCalled.get());
+        }
+        assertEquals(0, listeners.pendingCount());
+
+        // Closing fails the listeners still waiting
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        assertFalse(listeners.addOrNotify(index("2").getSeqNo(), ActionListener.wrap(r -> fail("not refreshed"), failure::set)));
+        listeners.close();
+        assertThat(failure.get(), instanceOf(IllegalStateException.class));
+        assertEquals(0, listeners.pendingCount());
+    }
+
     private Engine.IndexResult index(String id) throws IOException {
         return index(id, "test");
     }